@@ -32,9 +32,16 @@ public interface RoleService {
 
     ConfigKey<Integer> DynamicApiCheckerCachePeriod = new ConfigKey<>("Advanced", Integer.class,
             "dynamic.apichecker.cache.period", "0",
-            "Defines the expiration time in seconds for the Dynamic API Checker cache, determining how long cached data is retained before being refreshed. If set to zero then caching will be disabled",
+            "Defines the expiration time in seconds for the Dynamic API Checker cache, determining how long cached data is retained before being refreshed. " +
+                    "If set to zero then accounts are not cached. Role permissions are cached until the role or its permissions change, and for no longer than this period when it is set",
             false);
 
+    /**
+     * Published on the message bus of each management server, with the id of the role, when a role or its
+     * permissions change.
+     */
+    String MESSAGE_ROLE_PERMISSIONS_CHANGED_EVENT = "Message.RolePermissionsChanged.Event";
+
     boolean isEnabled();
 
     /**
@@ -29,6 +29,7 @@ public class ApiConstants {
     public static final String ADAPTER_TYPE = "adaptertype";
     public static final String ADDITONAL_CONFIG_ENABLED = "additionalconfigenabled";
     public static final String ADDRESS = "address";
+    public static final String AFTER_ID = "afterid";
     public static final String ALGORITHM = "algorithm";
     public static final String ALIAS = "alias";
     public static final String ALLOCATED = "allocated";
@@ -300,6 +301,7 @@ public class ApiConstants {
     public static final String PREVIOUS_OWNER_ID = "previousownerid";
     public static final String PREVIOUS_OWNER_NAME = "previousownername";
     public static final String NEXT_ACL_RULE_ID = "nextaclruleid";
+    public static final String NEXT_AFTER_ID = "nextafterid";
     public static final String NEXT_HOP = "nexthop";
     public static final String MOVE_ACL_CONSISTENCY_HASH = "aclconsistencyhash";
     public static final String IMAGE_PATH = "imagepath";
@@ -16,6 +16,7 @@
 // under the License.
 package org.apache.cloudstack.api;
 
+import java.io.Writer;
 import java.net.InetAddress;
 import java.util.Map;
 
@@ -43,6 +44,14 @@ public interface ApiServerService {
 
     public String handleRequest(Map<String, Object[]> params, String responseType, StringBuilder auditTrailSb) throws ServerApiException;
 
+    /**
+     * Handles the request like {@link #handleRequest(Map, String, StringBuilder)}, but writes the response straight to
+     * {@code out} instead of returning it.
+     *
+     * @return false when there is no response to write, as for the login and logout APIs
+     */
+    public boolean handleRequest(Map<String, Object[]> params, String responseType, StringBuilder auditTrailSb, Writer out) throws ServerApiException;
+
     public Class<?> getCmdClass(String cmdName);
 
     boolean forgotPassword(UserAccount userAccount, Domain domain);
@@ -76,6 +76,12 @@ public class ListEventsCmd extends BaseListProjectAndAccountResourcesCmd {
     @Parameter(name = ApiConstants.STATE, type = CommandType.STRING, description = "The state of the events", since="4.21.0")
     private String state;
 
+    @Parameter(name = ApiConstants.AFTER_ID, type = CommandType.STRING,
+            description = "The " + ApiConstants.NEXT_AFTER_ID + " returned with the previous page. When provided, the events ordered by ID (newest first) after it are listed " +
+                    "instead of the page given by the page parameter, which keeps listing large numbers of events fast",
+            since = "4.23.0")
+    private String afterId;
+
     /////////////////////////////////////////////////////
     /////////////////// Accessors ///////////////////////
     /////////////////////////////////////////////////////
@@ -128,6 +134,10 @@ public class ListEventsCmd extends BaseListProjectAndAccountResourcesCmd {
         return state;
     }
 
+    public String getAfterId() {
+        return afterId;
+    }
+
     /////////////////////////////////////////////////////
     /////////////// API Implementation///////////////////
     /////////////////////////////////////////////////////
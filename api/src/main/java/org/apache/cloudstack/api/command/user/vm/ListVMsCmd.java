@@ -183,6 +183,12 @@ public class ListVMsCmd extends BaseListRetrieveOnlyResourceCountCmd implements
             since = "4.21.0")
     private Long extensionId;
 
+    @Parameter(name = ApiConstants.AFTER_ID, type = CommandType.STRING,
+            description = "The " + ApiConstants.NEXT_AFTER_ID + " returned with the previous page. When provided, the VMs ordered by ID after it are listed " +
+                    "instead of the page given by the page parameter, which keeps listing large numbers of VMs fast",
+            since = "4.23.0")
+    private String afterId;
+
     /////////////////////////////////////////////////////
     /////////////////// Accessors ///////////////////////
     /////////////////////////////////////////////////////
@@ -338,6 +344,10 @@ public class ListVMsCmd extends BaseListRetrieveOnlyResourceCountCmd implements
         return extensionId;
     }
 
+    public String getAfterId() {
+        return afterId;
+    }
+
     /////////////////////////////////////////////////////
     /////////////// API Implementation///////////////////
     /////////////////////////////////////////////////////
@@ -104,6 +104,13 @@ public class ListVolumesCmd extends BaseListRetrieveOnlyResourceCountCmd impleme
     @Parameter(name = ApiConstants.IS_ENCRYPTED, type = CommandType.BOOLEAN, description = "list only volumes that are encrypted", since = "4.19.1",
             authorized = { RoleType.Admin })
     private Boolean encrypted;
+
+    @Parameter(name = ApiConstants.AFTER_ID, type = CommandType.STRING,
+            description = "The " + ApiConstants.NEXT_AFTER_ID + " returned with the previous page. When provided, the volumes ordered by ID (newest first) after it are listed " +
+                    "instead of the page given by the page parameter, which keeps listing large numbers of volumes fast",
+            since = "4.23.0")
+    private String afterId;
+
     /////////////////////////////////////////////////////
     /////////////////// Accessors ///////////////////////
     /////////////////////////////////////////////////////
@@ -169,6 +176,10 @@ public class ListVolumesCmd extends BaseListRetrieveOnlyResourceCountCmd impleme
         return encrypted;
     }
 
+    public String getAfterId() {
+        return afterId;
+    }
+
     /////////////////////////////////////////////////////
     /////////////// API Implementation///////////////////
     /////////////////////////////////////////////////////
@@ -24,6 +24,8 @@ import org.apache.cloudstack.api.ResponseObject;
 public class ListResponse<T extends ResponseObject> extends BaseResponse {
     List<T> responses;
     private transient Integer count;
+    // opaque cursor of the next page, for the list APIs paging by afterid
+    private transient String nextAfterId;
 
     public List<T> getResponses() {
         return responses;
@@ -49,4 +51,12 @@ public class ListResponse<T extends ResponseObject> extends BaseResponse {
 
         return null;
     }
+
+    public String getNextAfterId() {
+        return nextAfterId;
+    }
+
+    public void setNextAfterId(String nextAfterId) {
+        this.nextAfterId = nextAfterId;
+    }
 }
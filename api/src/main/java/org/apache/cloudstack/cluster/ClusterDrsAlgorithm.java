@@ -62,6 +62,26 @@ public interface ClusterDrsAlgorithm extends Adapter {
     boolean needsDrs(Cluster cluster, List<Ternary<Long, Long, Long>> cpuList,
                      List<Ternary<Long, Long, Long>> memoryList) throws ConfigurationException;
 
+    /**
+     * Called before the iterations of a DRS plan for the cluster. The VM lists of the map are updated in place as
+     * migrations are added to the plan, so an algorithm using more than the CPU and memory maps can keep it to follow
+     * the simulated placement of the VMs until the plan is complete.
+     *
+     * @param cluster the cluster the plan is generated for
+     * @param hostVmMap a map of host IDs to the VMs running on each host
+     */
+    default void preparePlan(Cluster cluster, Map<Long, List<VirtualMachine>> hostVmMap) {
+    }
+
+    /**
+     * Called once the DRS plan for the cluster is complete or has failed, to release what was kept by
+     * {@link #preparePlan(Cluster, Map)}.
+     *
+     * @param cluster the cluster the plan was generated for
+     */
+    default void finishPlan(Cluster cluster) {
+    }
+
     /**
      * Calculates the metrics (improvement, cost, benefit) for migrating a VM to a destination host. Improvement is
      * calculated based on the change in cluster imbalance before and after the migration.
@@ -99,34 +119,95 @@ public interface ClusterDrsAlgorithm extends Adapter {
             Host destHost, Long clusterId, long vmMetric, double[] baseMetricsArray,
             Map<Long, Integer> hostIdToIndexMap, Map<Long, Ternary<Long, Long, Long>> hostCpuMap,
             Map<Long, Ternary<Long, Long, Long>> hostMemoryMap) {
-        // Create a copy of the base array and adjust only the two affected hosts
-        double[] adjustedMetrics = new double[baseMetricsArray.length];
-        System.arraycopy(baseMetricsArray, 0, adjustedMetrics, 0, baseMetricsArray.length);
-
         long destHostId = destHost.getId();
         long vmHostId = vm.getHostId();
 
+        // Resolve the settings once, they are the same for both affected hosts
+        Map<Long, Ternary<Long, Long, Long>> metricsMap = "cpu".equals(getClusterDrsMetric(clusterId)) ? hostCpuMap : hostMemoryMap;
+        String metricType = getDrsMetricType(clusterId);
+        boolean useRatio = getDrsMetricUseRatio(clusterId);
+
         // Adjust source host (remove VM resources)
-        Integer sourceIndex = hostIdToIndexMap.get(vmHostId);
-        if (sourceIndex != null && sourceIndex < adjustedMetrics.length) {
-            Map<Long, Ternary<Long, Long, Long>> sourceMetricsMap = getClusterDrsMetric(clusterId).equals("cpu") ? hostCpuMap : hostMemoryMap;
-            Ternary<Long, Long, Long> sourceMetrics = sourceMetricsMap.get(vmHostId);
-            if (sourceMetrics != null) {
-                adjustedMetrics[sourceIndex] = getMetricValuePostMigration(clusterId, sourceMetrics, vmMetric, vmHostId, destHostId, vmHostId);
+        int sourceIndex = -1;
+        double sourceValue = 0.0;
+        Integer index = hostIdToIndexMap.get(vmHostId);
+        Ternary<Long, Long, Long> sourceMetrics = metricsMap.get(vmHostId);
+        if (index != null && index < baseMetricsArray.length && sourceMetrics != null) {
+            Double value = getMetricValuePostMigration(metricType, useRatio, sourceMetrics, -vmMetric);
+            if (value != null) {
+                sourceIndex = index;
+                sourceValue = value;
             }
         }
 
         // Adjust destination host (add VM resources)
-        Integer destIndex = hostIdToIndexMap.get(destHostId);
-        if (destIndex != null && destIndex < adjustedMetrics.length) {
-            Map<Long, Ternary<Long, Long, Long>> destMetricsMap = getClusterDrsMetric(clusterId).equals("cpu") ? hostCpuMap : hostMemoryMap;
-            Ternary<Long, Long, Long> destMetrics = destMetricsMap.get(destHostId);
-            if (destMetrics != null) {
-                adjustedMetrics[destIndex] = getMetricValuePostMigration(clusterId, destMetrics, vmMetric, destHostId, destHostId, vmHostId);
+        int destIndex = -1;
+        double destValue = 0.0;
+        index = hostIdToIndexMap.get(destHostId);
+        Ternary<Long, Long, Long> destMetrics = metricsMap.get(destHostId);
+        if (index != null && index < baseMetricsArray.length && destMetrics != null) {
+            Double value = getMetricValuePostMigration(metricType, useRatio, destMetrics, destHostId == vmHostId ? 0 : vmMetric);
+            if (value != null) {
+                destIndex = index;
+                destValue = value;
             }
         }
 
-        return calculateImbalance(adjustedMetrics);
+        return calculateImbalance(baseMetricsArray, sourceIndex, sourceValue, destIndex, destValue);
+    }
+
+    /**
+     * Calculates the imbalance of the metric values with at most two of them replaced, without copying the array.
+     * Mean and standard deviation follow the same corrected two-pass formulas as {@link Mean} and
+     * {@link StandardDeviation}, so the result is identical to {@link #calculateImbalance(double[])} on the
+     * adjusted copy.
+     *
+     * @param values array of metric values before migration
+     * @param sourceIndex index of the first replaced value, or -1
+     * @param sourceValue value replacing the one at sourceIndex
+     * @param destIndex index of the second replaced value, or -1
+     * @param destValue value replacing the one at destIndex
+     * @return calculated imbalance
+     */
+    static double calculateImbalance(double[] values, int sourceIndex, double sourceValue, int destIndex, double destValue) {
+        if (values == null || values.length == 0) {
+            return 0.0;
+        }
+        int n = values.length;
+
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            sum += valueAt(values, i, sourceIndex, sourceValue, destIndex, destValue);
+        }
+        double mean = sum / n;
+        double correction = 0.0;
+        for (int i = 0; i < n; i++) {
+            correction += valueAt(values, i, sourceIndex, sourceValue, destIndex, destValue) - mean;
+        }
+        mean += correction / n;
+        if (mean == 0.0) {
+            return 0.0; // Avoid division by zero
+        }
+
+        double accum = 0.0;
+        double accum2 = 0.0;
+        for (int i = 0; i < n; i++) {
+            double dev = valueAt(values, i, sourceIndex, sourceValue, destIndex, destValue) - mean;
+            accum += dev * dev;
+            accum2 += dev;
+        }
+        double variance = (accum - (accum2 * accum2 / n)) / n;
+        return Math.sqrt(variance) / mean;
+    }
+
+    private static double valueAt(double[] values, int i, int sourceIndex, double sourceValue, int destIndex, double destValue) {
+        if (i == destIndex) {
+            return destValue;
+        }
+        if (i == sourceIndex) {
+            return sourceValue;
+        }
+        return values[i];
     }
 
     /**
@@ -179,20 +260,12 @@ public interface ClusterDrsAlgorithm extends Adapter {
         return new Ternary<>(improvement, cost, benefit);
     }
 
-    private Double getMetricValuePostMigration(Long clusterId, Ternary<Long, Long, Long> metrics, long vmMetric,
-            long hostId, long destHostId, long vmHostId) {
+    private static Double getMetricValuePostMigration(String metricType, boolean useRatio,
+            Ternary<Long, Long, Long> metrics, long vmMetricDelta) {
         long used = metrics.first();
         long actualTotal = metrics.third() - metrics.second();
         long free = actualTotal - metrics.first();
-
-        if (hostId == destHostId) {
-            used += vmMetric;
-            free -= vmMetric;
-        } else if (hostId == vmHostId) {
-            used -= vmMetric;
-            free += vmMetric;
-        }
-        return getMetricValue(clusterId, used, free, actualTotal, null);
+        return getMetricValue(metricType, useRatio, used + vmMetricDelta, free - vmMetricDelta, actualTotal, null);
     }
 
     private static Double getImbalance(List<Double> metricList) {
@@ -223,8 +296,15 @@ public interface ClusterDrsAlgorithm extends Adapter {
     }
 
     static Double getMetricValue(long clusterId, long used, long free, long total, Float skipThreshold) {
-        boolean useRatio = getDrsMetricUseRatio(clusterId);
-        switch (getDrsMetricType(clusterId)) {
+        return getMetricValue(getDrsMetricType(clusterId), getDrsMetricUseRatio(clusterId), used, free, total, skipThreshold);
+    }
+
+    /**
+     * Same as {@link #getMetricValue(long, long, long, long, Float)} with the metric type and ratio setting of the
+     * cluster already resolved, for callers evaluating many hosts at once.
+     */
+    static Double getMetricValue(String metricType, boolean useRatio, long used, long free, long total, Float skipThreshold) {
+        switch (metricType) {
             case "free":
                 if (skipThreshold != null && free < skipThreshold * total) return null;
                 if (useRatio) {
@@ -51,9 +51,9 @@ public interface ClusterDrsService extends Manager, Configurable, Scheduler {
             true, ConfigKey.Scope.Cluster, null, "Maximum number of migrations for DRS", null, null, null);
 
     ConfigKey<String> ClusterDrsAlgorithm = new ConfigKey<>(String.class, "drs.algorithm",
-            ConfigKey.CATEGORY_ADVANCED, "balanced", "The DRS algorithm to be executed on the cluster. Possible values are condensed, balanced.",
+            ConfigKey.CATEGORY_ADVANCED, "balanced", "The DRS algorithm to be executed on the cluster. Possible values are condensed, balanced, multiresource.",
             true, ConfigKey.Scope.Cluster, null, "DRS algorithm", null, null,
-            null, ConfigKey.Kind.Select, "condensed,balanced");
+            null, ConfigKey.Kind.Select, "condensed,balanced,multiresource");
 
     ConfigKey<Float> ClusterDrsImbalanceThreshold = new ConfigKey<>(Float.class, "drs.imbalance",
             ConfigKey.CATEGORY_ADVANCED, "0.4",
@@ -88,6 +88,12 @@ public interface ClusterDrsService extends Manager, Configurable, Scheduler {
             true, ConfigKey.Scope.Cluster, null, "DRS imbalance skip threshold for Condensed algorithm",
             null, null, null);
 
+    ConfigKey<Integer> ClusterDrsPlanGenerationThreads = new ConfigKey<>(Integer.class, "drs.plan.generation.threads",
+            ConfigKey.CATEGORY_ADVANCED, "0",
+            "Number of threads evaluating the candidate migrations while generating a DRS plan. 0 uses the number of " +
+                    "available processors and 1 evaluates them on the thread generating the plan.",
+            false, ConfigKey.Scope.Global, null, "DRS plan generation threads", null, null, null);
+
 
     /**
      * Generate a DRS plan for a cluster and save it as per the parameters
@@ -94,4 +94,30 @@ public class ClusterDrsAlgorithmTest extends TestCase {
             }
         }
     }
+
+    @Test
+    public void testCalculateImbalanceWithReplacedValues() {
+        double[] values = {0.25, 0.5, 0.125, 0.75, 0.3};
+        double[] adjusted = values.clone();
+        adjusted[1] = 0.4;
+        adjusted[3] = 0.85;
+
+        double mean = ClusterDrsAlgorithm.MEAN_CALCULATOR.evaluate(adjusted);
+        double expected = ClusterDrsAlgorithm.STDDEV_CALCULATOR.evaluate(adjusted, mean) / mean;
+
+        assertEquals(expected, ClusterDrsAlgorithm.calculateImbalance(values, 1, 0.4, 3, 0.85), 0.0);
+        assertEquals(0.25, values[0], 0.0);
+        assertEquals(0.5, values[1], 0.0);
+    }
+
+    @Test
+    public void testCalculateImbalanceWithoutReplacedValues() {
+        double[] values = {0.25, 0.5, 0.125, 0.75, 0.3};
+
+        double mean = ClusterDrsAlgorithm.MEAN_CALCULATOR.evaluate(values);
+        double expected = ClusterDrsAlgorithm.STDDEV_CALCULATOR.evaluate(values, mean) / mean;
+
+        assertEquals(expected, ClusterDrsAlgorithm.calculateImbalance(values, -1, 0.0, -1, 0.0), 0.0);
+        assertEquals(0.0, ClusterDrsAlgorithm.calculateImbalance(new double[]{0.0, 0.0}, -1, 0.0, -1, 0.0), 0.0);
+    }
 }
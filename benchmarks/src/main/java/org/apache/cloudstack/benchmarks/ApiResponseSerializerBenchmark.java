@@ -0,0 +1,117 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cloudstack.api.response.ListResponse;
+import org.apache.cloudstack.api.response.UserVmResponse;
+import org.apache.cloudstack.context.CallContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloud.api.response.ApiResponseSerializer;
+import com.cloud.user.Account;
+import com.cloud.user.AccountVO;
+import com.cloud.user.UserVO;
+import com.cloud.utils.HttpUtils;
+
+/**
+ * Measures the JSON rendering of a list API response, as done for listVirtualMachines, for a page of
+ * {@code vms} responses, both built as a string and streamed to a writer standing in for the servlet response. The serializer checks the caller against role restricted fields, so each
+ * benchmark thread runs as a root admin call context.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiResponseSerializerBenchmark {
+
+    @Param({"1", "100", "500"})
+    public int vms;
+
+    private ListResponse<UserVmResponse> response;
+
+    @Setup
+    public void setUp() {
+        AccountVO account = new AccountVO("admin", 1L, null, Account.Type.ADMIN, "4a3c1b7e-0d2c-11ef-a1b5-0242ac120002");
+        CallContext.register(new UserVO(2L), account);
+
+        List<UserVmResponse> responses = new ArrayList<>();
+        Date created = new Date();
+        for (int i = 0; i < vms; i++) {
+            UserVmResponse vm = new UserVmResponse();
+            vm.setId("8e1c46e2-58b4-4d51-a5bc-" + String.format("%012d", i));
+            vm.setName("i-2-" + i + "-VM");
+            vm.setDisplayName("web-server-" + i);
+            vm.setAccountName("admin");
+            vm.setDomainId("5c7f4b9e-0d2c-11ef-a1b5-0242ac120002");
+            vm.setCreated(created);
+            vm.setState("Running");
+            vm.setZoneId("a7b3e4ce-0d2c-11ef-a1b5-0242ac120002");
+            vm.setZoneName("zone-1");
+            vm.setTemplateId("b5a0c1d2-0d2c-11ef-a1b5-0242ac120002");
+            vm.setTemplateName("Ubuntu 24.04 \"Noble\" <x86_64>");
+            vm.setServiceOfferingId("c2d1e0f3-0d2c-11ef-a1b5-0242ac120002");
+            vm.setServiceOfferingName("Medium Instance");
+            vm.setCpuNumber(2);
+            vm.setCpuSpeed(2000);
+            vm.setMemory(4096);
+            vm.setHypervisor("KVM");
+            vm.setObjectName("virtualmachine");
+            responses.add(vm);
+        }
+        response = new ListResponse<>();
+        response.setResponses(responses, vms);
+        response.setResponseName("listvirtualmachinesresponse");
+    }
+
+    @TearDown
+    public void tearDown() {
+        CallContext.unregister();
+    }
+
+    @Benchmark
+    public String toJson() {
+        return ApiResponseSerializer.toSerializedString(response, HttpUtils.RESPONSE_TYPE_JSON);
+    }
+
+    @Benchmark
+    public StringBuilder writeJson() throws IOException {
+        StringBuilder log = new StringBuilder();
+        ApiResponseSerializer.writeSerializedResponse(response, HttpUtils.RESPONSE_TYPE_JSON, Writer.nullWriter(), log);
+        return log;
+    }
+}
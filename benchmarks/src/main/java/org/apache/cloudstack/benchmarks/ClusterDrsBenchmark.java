@@ -0,0 +1,147 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.ConfigurationException;
+
+import org.apache.cloudstack.cluster.Balanced;
+import org.apache.cloudstack.cluster.ClusterDrsAlgorithm;
+import org.apache.cloudstack.cluster.Condensed;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloud.dc.ClusterVO;
+import com.cloud.host.Host;
+import com.cloud.host.HostVO;
+import com.cloud.hypervisor.Hypervisor.HypervisorType;
+import com.cloud.org.Cluster;
+import com.cloud.service.ServiceOfferingVO;
+import com.cloud.utils.Ternary;
+import com.cloud.vm.VMInstanceVO;
+import com.cloud.vm.VirtualMachine;
+
+/**
+ * Measures one iteration of DRS plan generation on a synthetic cluster: the evaluation of every VM and destination
+ * host combination through {@link ClusterDrsAlgorithm#getMetrics}, which is what each worker of the plan generation
+ * runs. Host usage is skewed with a fixed seed so that both algorithms find migrations. Without a configuration
+ * depot the DRS settings have their default values, the memory metric of used ratios.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClusterDrsBenchmark {
+
+    private static final long GB = 1024L * 1024L * 1024L;
+
+    @Param({"balanced", "condensed"})
+    private String algorithmName;
+
+    @Param({"16", "64"})
+    private int hosts;
+
+    @Param({"20", "50"})
+    private int vmsPerHost;
+
+    private ClusterDrsAlgorithm algorithm;
+    private final Cluster cluster = new ClusterVO(1L);
+    private final List<Host> hostList = new ArrayList<>();
+    private final List<VirtualMachine> vmList = new ArrayList<>();
+    private final Map<Long, Ternary<Long, Long, Long>> hostCpuMap = new HashMap<>();
+    private final Map<Long, Ternary<Long, Long, Long>> hostMemoryMap = new HashMap<>();
+    private final Map<Long, Integer> hostIdToIndexMap = new HashMap<>();
+    private ServiceOfferingVO serviceOffering;
+    private double[] baseMetricsArray;
+    private Double preImbalance;
+
+    @Setup
+    public void setUp() throws ConfigurationException {
+        algorithm = "balanced".equals(algorithmName) ? new Balanced() : new Condensed();
+        serviceOffering = new ServiceOfferingVO("benchmark", 2, 2048, 1000, null, null, false, "benchmark",
+                false, VirtualMachine.Type.User, false);
+
+        Random random = new Random(42);
+        long vmId = 1;
+        for (long hostId = 1; hostId <= hosts; hostId++) {
+            final long id = hostId;
+            hostList.add(new HostVO("host-" + hostId) {
+                @Override
+                public long getId() {
+                    return id;
+                }
+            });
+            int hostVms = 1 + random.nextInt(vmsPerHost * 2);
+            for (int i = 0; i < hostVms; i++) {
+                VMInstanceVO vm = new VMInstanceVO(vmId, 1L, "vm-" + vmId, "i-2-" + vmId + "-VM", VirtualMachine.Type.User,
+                        1L, HypervisorType.KVM, 1L, 1L, 2L, 2L, false);
+                vm.setHostId(hostId);
+                vmList.add(vm);
+                vmId++;
+            }
+            hostCpuMap.put(hostId, new Ternary<>(hostVms * 2000L, 0L, 256000L));
+            hostMemoryMap.put(hostId, new Ternary<>(hostVms * 2L * GB, 0L, 256L * GB));
+        }
+
+        List<Double> metrics = new ArrayList<>();
+        for (Map.Entry<Long, Ternary<Long, Long, Long>> entry : hostMemoryMap.entrySet()) {
+            Ternary<Long, Long, Long> memory = entry.getValue();
+            long total = memory.third() - memory.second();
+            hostIdToIndexMap.put(entry.getKey(), metrics.size());
+            metrics.add(ClusterDrsAlgorithm.getMetricValue(cluster.getId(), memory.first(), total - memory.first(), total, null));
+        }
+        baseMetricsArray = metrics.stream().mapToDouble(Double::doubleValue).toArray();
+        preImbalance = ClusterDrsAlgorithm.getClusterImbalance(cluster.getId(), new ArrayList<>(hostCpuMap.values()),
+                new ArrayList<>(hostMemoryMap.values()), null);
+    }
+
+    @Benchmark
+    public double evaluateIteration() throws ConfigurationException {
+        double bestImprovement = 0;
+        for (VirtualMachine vm : vmList) {
+            for (Host destHost : hostList) {
+                if (destHost.getId() == vm.getHostId()) {
+                    continue;
+                }
+                Ternary<Double, Double, Double> metrics = algorithm.getMetrics(cluster, vm, serviceOffering, destHost,
+                        hostCpuMap, hostMemoryMap, false, preImbalance, baseMetricsArray, hostIdToIndexMap);
+                if (metrics.third() > metrics.second() && metrics.first() > bestImprovement) {
+                    bestImprovement = metrics.first();
+                }
+            }
+        }
+        return bestImprovement;
+    }
+}
@@ -0,0 +1,91 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cloudstack.framework.config.ConfigKey;
+import org.apache.cloudstack.framework.config.impl.ConfigDepotImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloud.utils.Ternary;
+
+/**
+ * Measures {@link ConfigKey} lookups through the {@link ConfigDepotImpl} cache. The depot answers
+ * cache misses from memory instead of the configuration tables, so the numbers cover the cache and
+ * value parsing that every lookup pays, not the database round trip of an expired entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class ConfigKeyBenchmark {
+
+    static class InMemoryConfigDepot extends ConfigDepotImpl {
+        @Override
+        protected String getConfigStringValueInternal(Ternary<String, ConfigKey.Scope, Long> cacheKey) {
+            return ConfigKey.Scope.Global.equals(cacheKey.second()) ? "300" : "600";
+        }
+    }
+
+    private final ConfigKey<Integer> staticKey = new ConfigKey<>("Advanced", Integer.class, "benchmark.static.interval", "60",
+            "Non-dynamic setting", false, ConfigKey.Scope.Global);
+    private final ConfigKey<Integer> dynamicKey = new ConfigKey<>("Advanced", Integer.class, "benchmark.dynamic.interval", "60",
+            "Dynamic setting", true, ConfigKey.Scope.Global);
+    private final ConfigKey<Integer> zoneKey = new ConfigKey<>("Advanced", Integer.class, "benchmark.zone.interval", "60",
+            "Dynamic zone setting", true, ConfigKey.Scope.Zone);
+
+    @Setup
+    public void setUp() {
+        ConfigKey.init(new InMemoryConfigDepot());
+    }
+
+    @TearDown
+    public void tearDown() {
+        ConfigKey.init(null);
+    }
+
+    @Benchmark
+    public Integer staticValue() {
+        return staticKey.value();
+    }
+
+    @Benchmark
+    public Integer dynamicValue() {
+        return dynamicKey.value();
+    }
+
+    @Benchmark
+    public Integer zoneValue() {
+        return zoneKey.valueIn(1L);
+    }
+}
@@ -0,0 +1,87 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloud.agent.api.CheckHealthCommand;
+import com.cloud.agent.api.Command;
+import com.cloud.agent.api.GetVmStatsCommand;
+import com.cloud.serializer.GsonHelper;
+import com.google.gson.Gson;
+
+/**
+ * Measures the Gson configuration used for agent commands, independently of the request framing,
+ * on a batch of commands of the kinds the stats collector and the host health checks send.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GsonCommandBenchmark {
+
+    @Param({"1", "20"})
+    public int commands;
+
+    private final Gson gson = GsonHelper.getGson();
+    private Command[] cmds;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        cmds = new Command[commands];
+        for (int i = 0; i < commands; i++) {
+            if (i % 2 == 0) {
+                cmds[i] = new CheckHealthCommand();
+            } else {
+                List<String> vmNames = new ArrayList<>();
+                for (int j = 0; j < 20; j++) {
+                    vmNames.add("i-2-" + j + "-VM");
+                }
+                cmds[i] = new GetVmStatsCommand(vmNames, "host-guid-" + i, "host-" + i);
+            }
+        }
+        json = gson.toJson(cmds, Command[].class);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return gson.toJson(cmds, Command[].class);
+    }
+
+    @Benchmark
+    public Command[] fromJson() {
+        return gson.fromJson(json, Command[].class);
+    }
+}
@@ -0,0 +1,88 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloud.utils.net.NetUtils;
+
+/**
+ * Measures the IPv4 and CIDR helpers that IP address management and network validation call in loops.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetUtilsBenchmark {
+
+    public String ip = "10.1.34.201";
+    public String cidr = "10.1.32.0/20";
+    public String otherCidr = "10.1.40.0/22";
+
+    @Benchmark
+    public long ip2Long() {
+        return NetUtils.ip2Long(ip);
+    }
+
+    @Benchmark
+    public String long2Ip() {
+        return NetUtils.long2Ip(167846601L);
+    }
+
+    @Benchmark
+    public boolean isValidIp4() {
+        return NetUtils.isValidIp4(ip);
+    }
+
+    @Benchmark
+    public boolean isValidIp4Cidr() {
+        return NetUtils.isValidIp4Cidr(cidr);
+    }
+
+    @Benchmark
+    public Long[] cidrToLong() {
+        return NetUtils.cidrToLong(cidr);
+    }
+
+    @Benchmark
+    public boolean isIpWithInCidrRange() {
+        return NetUtils.isIpWithInCidrRange(ip, cidr);
+    }
+
+    @Benchmark
+    public boolean isNetworksOverlap() {
+        return NetUtils.isNetworksOverlap(cidr, otherCidr);
+    }
+
+    @Benchmark
+    public String getCidrSubNet() {
+        return NetUtils.getCidrSubNet(cidr);
+    }
+}
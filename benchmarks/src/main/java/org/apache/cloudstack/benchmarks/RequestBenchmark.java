@@ -0,0 +1,91 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloud.agent.api.Command;
+import com.cloud.agent.api.HostVmStateReportEntry;
+import com.cloud.agent.api.PingRoutingCommand;
+import com.cloud.agent.transport.Request;
+import com.cloud.host.Host;
+import com.cloud.vm.VirtualMachine.PowerState;
+
+/**
+ * Measures the agent wire format: building the bytes of a request and parsing them back into commands.
+ * The payload is a ping carrying the power state report of {@code vms} virtual machines, which is what
+ * every routing host sends on each ping interval; large reports cross the compression threshold.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBenchmark {
+
+    @Param({"0", "50", "500"})
+    public int vms;
+
+    private Command[] commands;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        commands = new Command[] {createPingCommand(vms)};
+        bytes = createRequest().getBytes();
+    }
+
+    static PingRoutingCommand createPingCommand(int vms) {
+        Map<String, HostVmStateReportEntry> report = new HashMap<>();
+        for (int i = 0; i < vms; i++) {
+            report.put("i-2-" + i + "-VM", new HostVmStateReportEntry(PowerState.PowerOn, "host-1"));
+        }
+        return new PingRoutingCommand(Host.Type.Routing, 1L, report);
+    }
+
+    private Request createRequest() {
+        Request request = new Request(1L, 345049223690L, commands, true, false);
+        request.setSequence(42L);
+        return request;
+    }
+
+    @Benchmark
+    public Object toBytes() {
+        return createRequest().toBytes();
+    }
+
+    @Benchmark
+    public Object parse() throws Exception {
+        return Request.parse(bytes).getCommands();
+    }
+}
@@ -0,0 +1,123 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloud.agent.api.Command;
+import com.cloud.agent.transport.Request;
+import com.cloud.serializer.GsonHelper;
+
+/**
+ * Compares the gzip helpers of {@link Request} with the ones they replaced, which copied the compressed
+ * bytes out of the output stream, sized the deflate buffer to the whole payload and inflated through a
+ * 1 KB scratch buffer. The payload is the JSON of a ping reporting {@code vms} virtual machines, all
+ * above the compression threshold. Run it with {@code -prof gc} to see the allocations saved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestCompressionBenchmark {
+
+    @Param({"200", "2000"})
+    public int vms;
+
+    private byte[] payload;
+    private byte[] compressed;
+
+    @Setup
+    public void setUp() {
+        Command[] commands = new Command[] {RequestBenchmark.createPingCommand(vms)};
+        payload = GsonHelper.getGson().toJson(commands, commands.getClass()).getBytes(StandardCharsets.UTF_8);
+        compressed = previousCompress(ByteBuffer.wrap(payload), payload.length).array();
+    }
+
+    @Benchmark
+    public Object compress() {
+        return Request.doCompress(ByteBuffer.wrap(payload), payload.length);
+    }
+
+    @Benchmark
+    public Object compressPrevious() {
+        return previousCompress(ByteBuffer.wrap(payload), payload.length);
+    }
+
+    @Benchmark
+    public Object decompress() {
+        return Request.doDecompress(ByteBuffer.wrap(compressed), payload.length);
+    }
+
+    @Benchmark
+    public Object decompressPrevious() {
+        return previousDecompress(ByteBuffer.wrap(compressed), payload.length);
+    }
+
+    private static ByteBuffer previousCompress(ByteBuffer buffer, int length) {
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream(length);
+        try {
+            GZIPOutputStream out = new GZIPOutputStream(byteOut, length);
+            out.write(buffer.array());
+            out.finish();
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ByteBuffer.wrap(byteOut.toByteArray());
+    }
+
+    private static ByteBuffer previousDecompress(ByteBuffer buffer, int length) {
+        byte[] byteArrayIn = new byte[1024];
+        ByteArrayInputStream byteIn = new ByteArrayInputStream(buffer.array(), buffer.position() + buffer.arrayOffset(), buffer.remaining());
+        ByteBuffer retBuff = ByteBuffer.allocate(length);
+        int len;
+        try {
+            GZIPInputStream in = new GZIPInputStream(byteIn);
+            while ((len = in.read(byteArrayIn)) > 0) {
+                retBuff.put(byteArrayIn, 0, len);
+            }
+            in.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        retBuff.flip();
+        return retBuff;
+    }
+}
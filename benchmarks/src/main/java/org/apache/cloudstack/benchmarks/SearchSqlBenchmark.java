@@ -0,0 +1,172 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloud.utils.db.Filter;
+import com.cloud.utils.db.GenericDao;
+import com.cloud.utils.db.GenericDaoBase;
+import com.cloud.utils.db.SearchBuilder;
+import com.cloud.utils.db.SearchCriteria;
+import com.cloud.utils.db.SearchCriteria.Op;
+
+/**
+ * Measures the SQL construction done by {@link GenericDaoBase} for every search: building a
+ * {@link SearchBuilder}, creating criteria from it and rendering the statement text, without
+ * touching a database.  The search entities are cglib proxies, which need java.lang to be open on recent JDKs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+public class SearchSqlBenchmark {
+
+    @Entity
+    @Table(name = "benchmark_instance")
+    public static class InstanceVO {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        @Column(name = "id")
+        private long id;
+
+        @Column(name = "name")
+        private String name;
+
+        @Column(name = "state")
+        private String state;
+
+        @Column(name = "host_id")
+        private Long hostId;
+
+        @Column(name = "data_center_id")
+        private long dataCenterId;
+
+        @Column(name = "account_id")
+        private long accountId;
+
+        @Column(name = GenericDao.CREATED_COLUMN)
+        private Date created;
+
+        @Column(name = GenericDao.REMOVED_COLUMN)
+        private Date removed;
+
+        public InstanceVO() {
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getState() {
+            return state;
+        }
+
+        public Long getHostId() {
+            return hostId;
+        }
+
+        public long getDataCenterId() {
+            return dataCenterId;
+        }
+
+        public long getAccountId() {
+            return accountId;
+        }
+
+        public Date getCreated() {
+            return created;
+        }
+
+        public Date getRemoved() {
+            return removed;
+        }
+    }
+
+    public static class InstanceDao extends GenericDaoBase<InstanceVO, Long> {
+        /**
+         * Renders the statement {@link GenericDaoBase#searchIncludingRemoved} would prepare.
+         */
+        public String toSql(SearchCriteria<InstanceVO> sc, Filter filter) {
+            StringBuilder sql = new StringBuilder(buildSearchSql(sc, filter, SearchSqlKind.SELECT).getSql());
+            addFilter(sql, filter);
+            return sql.toString();
+        }
+    }
+
+    private InstanceDao dao;
+    private SearchBuilder<InstanceVO> search;
+    private Filter filter;
+
+    @Setup
+    public void setUp() {
+        dao = new InstanceDao();
+        search = createSearchBuilder();
+        filter = new Filter(InstanceVO.class, "created", false, 0L, 500L);
+    }
+
+    private SearchBuilder<InstanceVO> createSearchBuilder() {
+        SearchBuilder<InstanceVO> sb = dao.createSearchBuilder();
+        sb.and("state", sb.entity().getState(), Op.IN);
+        sb.and("hostId", sb.entity().getHostId(), Op.EQ);
+        sb.and("dataCenterId", sb.entity().getDataCenterId(), Op.EQ);
+        sb.and("accountId", sb.entity().getAccountId(), Op.EQ);
+        sb.and("name", sb.entity().getName(), Op.LIKE);
+        sb.done();
+        return sb;
+    }
+
+    @Benchmark
+    public SearchBuilder<InstanceVO> createSearch() {
+        return createSearchBuilder();
+    }
+
+    @Benchmark
+    public String toSql() {
+        SearchCriteria<InstanceVO> sc = search.create();
+        sc.setParameters("state", "Running", "Stopped");
+        sc.setParameters("dataCenterId", 1L);
+        sc.setParameters("accountId", 2L);
+        return dao.toSql(sc, filter);
+    }
+}
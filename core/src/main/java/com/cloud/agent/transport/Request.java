@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -105,6 +106,10 @@ public class Request {
     protected static final short FLAG_CONTROL = 0x40;
     protected static final short FLAG_COMPRESSED = 0x80;
 
+    /** Payloads at or above this size (in bytes) are sent gzip compressed. */
+    protected static final int COMPRESSION_THRESHOLD = 8192;
+    private static final int COMPRESSION_BUFFER_SIZE = 8192;
+
     protected Version _ver;
     protected long _session;
     protected long _seq;
@@ -283,7 +288,6 @@ public class Request {
     }
 
     public static ByteBuffer doDecompress(ByteBuffer buffer, int length) {
-        byte[] byteArrayIn = new byte[1024];
         ByteArrayInputStream byteIn;
         if (buffer.hasArray()) {
             byteIn = new ByteArrayInputStream(buffer.array(), buffer.position() + buffer.arrayOffset(), buffer.remaining());
@@ -292,39 +296,35 @@ public class Request {
             buffer.get(array);
             byteIn = new ByteArrayInputStream(array);
         }
-        ByteBuffer retBuff = ByteBuffer.allocate(length);
-        int len = 0;
-        try {
-            GZIPInputStream in = new GZIPInputStream(byteIn);
-            while ((len = in.read(byteArrayIn)) > 0) {
-                retBuff.put(byteArrayIn, 0, len);
+        // The uncompressed size is known from the header, so inflate straight into the target array
+        final byte[] decompressed = new byte[length];
+        int total = 0;
+        try (GZIPInputStream in = new GZIPInputStream(byteIn, COMPRESSION_BUFFER_SIZE)) {
+            int len;
+            while (total < length && (len = in.read(decompressed, total, length - total)) > 0) {
+                total += len;
             }
-            in.close();
         } catch (IOException e) {
             LOGGER.error("Fail to decompress the request!", e);
         }
-        retBuff.flip();
-        return retBuff;
+        return ByteBuffer.wrap(decompressed, 0, total);
     }
 
     public static ByteBuffer doCompress(ByteBuffer buffer, int length) {
-        ByteArrayOutputStream byteOut = new ByteArrayOutputStream(length);
-        byte[] array;
-        if (buffer.hasArray()) {
-            array = buffer.array();
-        } else {
-            array = new byte[buffer.capacity()];
-            buffer.get(array);
-        }
-        try {
-            GZIPOutputStream out = new GZIPOutputStream(byteOut, length);
-            out.write(array);
+        final ExposedByteArrayOutputStream byteOut = new ExposedByteArrayOutputStream(Math.max(length / 4, 32));
+        try (GZIPOutputStream out = new GZIPOutputStream(byteOut, COMPRESSION_BUFFER_SIZE)) {
+            if (buffer.hasArray()) {
+                out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                byte[] array = new byte[buffer.remaining()];
+                buffer.duplicate().get(array);
+                out.write(array);
+            }
             out.finish();
-            out.close();
         } catch (IOException e) {
             LOGGER.error("Fail to compress the request!", e);
         }
-        return ByteBuffer.wrap(byteOut.toByteArray());
+        return byteOut.toByteBuffer();
     }
 
     public ByteBuffer[] toBytes() {
@@ -334,10 +334,10 @@ public class Request {
         if (_content == null) {
             _content = s_gson.toJson(_cmds, _cmds.getClass());
         }
-        tmp = ByteBuffer.wrap(_content.getBytes());
+        tmp = ByteBuffer.wrap(_content.getBytes(StandardCharsets.UTF_8));
         int capacity = tmp.capacity();
         /* Check if we need to compress the data */
-        if (capacity >= 8192) {
+        if (capacity >= COMPRESSION_THRESHOLD) {
             tmp = doCompress(tmp, capacity);
             _flags |= FLAG_COMPRESSED;
         }
@@ -516,19 +516,15 @@ public class Request {
             buff = doDecompress(buff, size);
         }
 
-        byte[] command = null;
-        int offset = 0;
+        final String content;
         if (buff.hasArray()) {
-            command = buff.array();
-            offset = buff.arrayOffset() + buff.position();
+            content = new String(buff.array(), buff.arrayOffset() + buff.position(), buff.remaining(), StandardCharsets.UTF_8);
         } else {
-            command = new byte[buff.remaining()];
+            byte[] command = new byte[buff.remaining()];
             buff.get(command);
-            offset = 0;
+            content = new String(command, StandardCharsets.UTF_8);
         }
 
-        final String content = new String(command, offset, command.length - offset);
-
         if (isRequest) {
             return new Request(version, seq, agentId, mgmtId, via, flags, content);
         } else {
@@ -584,6 +580,20 @@ public class Request {
         return (bytes[3] & FLAG_CONTROL) > 0;
     }
 
+    /**
+     * Lets the compressed payload be handed out as a ByteBuffer without
+     * the extra copy done by {@link ByteArrayOutputStream#toByteArray()}.
+     */
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream(int size) {
+            super(size);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
     public static class NwGroupsCommandTypeAdaptor implements JsonDeserializer<Pair<Long, Long>>, JsonSerializer<Pair<Long, Long>> {
 
         public NwGroupsCommandTypeAdaptor() {
@@ -186,6 +186,28 @@ public class RequestTest extends TestCase {
         }
     }
 
+    public void testCompressedSerDeser() throws Exception {
+        logger.info("Testing a payload large enough to be compressed survives the round trip");
+        StringBuilder uuids = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            if (i > 0) {
+                uuids.append(",");
+            }
+            uuids.append("\"vol-\u00e9\u00e8-").append(i).append("\"");
+        }
+        String content = "[{\"com.cloud.agent.api.GetVolumeStatsCommand\":{\"volumeUuids\":[" + uuids + "],"
+                + "\"poolType\":{\"name\":\"NetworkFilesystem\"},\"poolUuid\":\"e007c270-2b1b-3ce9-ae92-a98b94eef7eb\",\"contextMap\":{},\"wait\":5}}]";
+        Request sreq = new Request(Version.v1, 1L, 2L, 3L, 2L, (short)1, content);
+
+        byte[] bytes = sreq.getBytes();
+        assertTrue((bytes[3] & Request.FLAG_COMPRESSED) != 0);
+
+        Request creq = Request.parse(bytes);
+        GetVolumeStatsCommand cmd = (GetVolumeStatsCommand)creq.getCommand();
+        assertEquals(1000, cmd.getVolumeUuids().size());
+        assertEquals("vol-\u00e9\u00e8-999", cmd.getVolumeUuids().get(999));
+    }
+
     protected void compareRequest(Request req1, Request req2) {
         assert req1.getSequence() == req2.getSequence();
         assert req1.getAgentId() == req2.getAgentId();
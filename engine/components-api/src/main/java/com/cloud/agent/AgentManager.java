@@ -18,6 +18,8 @@ package com.cloud.agent;
 
 import java.util.Map;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.apache.cloudstack.framework.config.ConfigKey;
 
 import com.cloud.agent.api.Answer;
@@ -115,6 +117,19 @@ public interface AgentManager {
      */
     long send(Long hostId, Commands cmds, Listener listener) throws AgentUnavailableException;
 
+    /**
+     * Sends commands to the agent without blocking for the answers. Commands that do not have to be executed in sequence
+     * are in flight concurrently, up to {@code agent.pipeline.window} per agent.
+     *
+     * @param hostId
+     *            id of the agent on the host.
+     * @param cmds
+     *            Commands to send, their answers are set when the future completes.
+     * @return a future completed with the answers, or exceptionally with an {@link AgentUnavailableException} or
+     *         an {@link com.cloud.exception.OperationTimedoutException}.
+     */
+    CompletableFuture<Answer[]> sendAsync(Long hostId, Commands cmds);
+
     /**
      * Register to listen for host events. These are mostly connection and disconnection events.
      *
@@ -133,6 +133,16 @@ public interface CapacityManager {
             "capacity.calculate.workers", "1",
             "Number of worker threads to be used for capacities calculation", true);
 
+    ConfigKey<Boolean> HostCapacityIndexEnabled = new ConfigKey<>(ConfigKey.CATEGORY_ADVANCED, Boolean.class,
+            "host.capacity.index.enabled", "false",
+            "Whether the deployment planners look for pods, clusters and hosts with enough CPU and memory in an in-memory copy of the host capacities, "
+                    + "rather than querying the database for every VM deployed", true);
+
+    ConfigKey<Integer> HostCapacityIndexReloadInterval = new ConfigKey<>(ConfigKey.CATEGORY_ADVANCED, Integer.class,
+            "host.capacity.index.reload.interval", "60",
+            "Interval (in seconds) at which the in-memory copy of the host capacities is reloaded from the database, "
+                    + "picking up the changes made by the other management servers", false);
+
     public boolean releaseVmCapacity(VirtualMachine vm, boolean moveFromReserved, boolean moveToReservered, Long hostId);
 
     void allocateVmCapacity(VirtualMachine vm, boolean fromLastHost);
@@ -187,4 +197,9 @@ public interface CapacityManager {
     long getUsedIops(StoragePoolVO pool);
 
     Pair<Boolean, Boolean> checkIfHostHasCpuCapabilityAndCapacity(Host host, ServiceOffering offering, boolean considerReservedCapacity);
+
+    /**
+     * @return the in-memory copy of the host capacities, loaded when {@link #HostCapacityIndexEnabled} is true
+     */
+    HostCapacityIndex getHostCapacityIndex();
 }
@@ -0,0 +1,260 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.capacity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.cloud.utils.Pair;
+
+/**
+ * In memory copy of the CPU and memory capacity of the hosts, and of the overcommit ratios of their clusters, which
+ * the deployment planners query instead of running aggregate queries on op_host_capacity for every VM deployed.
+ * <p>
+ * It is updated by {@link CapacityManager} when it allocates or releases the capacity of a VM, or recalculates the
+ * capacity of a host, and reloaded from the database periodically, which accounts for the changes made by the other
+ * management servers.
+ */
+public class HostCapacityIndex {
+
+    /**
+     * The capacity of a host, as in its op_host_capacity row.
+     */
+    public static final class HostCapacity {
+        private final long hostId;
+        private final long dataCenterId;
+        private final Long podId;
+        private final Long clusterId;
+        private final long total;
+        private final long used;
+        private final long reserved;
+
+        public HostCapacity(long hostId, long dataCenterId, Long podId, Long clusterId, long total, long used, long reserved) {
+            this.hostId = hostId;
+            this.dataCenterId = dataCenterId;
+            this.podId = podId;
+            this.clusterId = clusterId;
+            this.total = total;
+            this.used = used;
+            this.reserved = reserved;
+        }
+
+        public long getHostId() {
+            return hostId;
+        }
+
+        public long getDataCenterId() {
+            return dataCenterId;
+        }
+
+        public Long getPodId() {
+            return podId;
+        }
+
+        public Long getClusterId() {
+            return clusterId;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getUsed() {
+            return used;
+        }
+
+        public long getReserved() {
+            return reserved;
+        }
+    }
+
+    private static final class Snapshot {
+        private final Map<Long, HostCapacity> cpu = new ConcurrentHashMap<>();
+        private final Map<Long, HostCapacity> memory = new ConcurrentHashMap<>();
+        // cpu and memory overcommit ratios by cluster id
+        private final Map<Long, Pair<Float, Float>> overcommitRatios = new ConcurrentHashMap<>();
+
+        private Map<Long, HostCapacity> of(short capacityType) {
+            return capacityType == Capacity.CAPACITY_TYPE_CPU ? cpu : memory;
+        }
+    }
+
+    private volatile Snapshot snapshot = new Snapshot();
+    private volatile boolean loaded;
+
+    /**
+     * Replaces the content of the index.
+     * @param capacities the enabled CPU and memory capacities of the hosts
+     * @param overcommitRatios the cpu and memory overcommit ratios by cluster id
+     */
+    public void reload(Collection<? extends Capacity> capacities, Map<Long, Pair<Float, Float>> overcommitRatios) {
+        Snapshot reloaded = new Snapshot();
+        reloaded.overcommitRatios.putAll(overcommitRatios);
+        for (Capacity capacity : capacities) {
+            if (isIndexed(capacity)) {
+                reloaded.of(capacity.getCapacityType()).put(capacity.getHostOrPoolId(), toHostCapacity(capacity));
+            }
+        }
+        snapshot = reloaded;
+        loaded = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Records the new used, reserved or total capacity of a host. Other capacity types are ignored.
+     */
+    public void update(Capacity capacity) {
+        if (isIndexed(capacity)) {
+            snapshot.of(capacity.getCapacityType()).put(capacity.getHostOrPoolId(), toHostCapacity(capacity));
+        }
+    }
+
+    public void removeHost(long hostId) {
+        Snapshot current = snapshot;
+        current.cpu.remove(hostId);
+        current.memory.remove(hostId);
+    }
+
+    public void setOvercommitRatios(long clusterId, float cpuOvercommitRatio, float memoryOvercommitRatio) {
+        snapshot.overcommitRatios.put(clusterId, new Pair<>(cpuOvercommitRatio, memoryOvercommitRatio));
+    }
+
+    public HostCapacity getHostCapacity(long hostId, short capacityType) {
+        return snapshot.of(capacityType).get(hostId);
+    }
+
+    public int size() {
+        Snapshot current = snapshot;
+        return current.cpu.size() + current.memory.size();
+    }
+
+    private static boolean isIndexed(Capacity capacity) {
+        return (capacity.getCapacityType() == Capacity.CAPACITY_TYPE_CPU || capacity.getCapacityType() == Capacity.CAPACITY_TYPE_MEMORY)
+                && capacity.getHostOrPoolId() != null && capacity.getDataCenterId() != null;
+    }
+
+    private static HostCapacity toHostCapacity(Capacity capacity) {
+        return new HostCapacity(capacity.getHostOrPoolId(), capacity.getDataCenterId(), capacity.getPodId(), capacity.getClusterId(),
+                capacity.getTotalCapacity(), capacity.getUsedCapacity(), capacity.getReservedCapacity());
+    }
+
+    private static Float getOvercommitRatio(Snapshot current, Long clusterId, short capacityType) {
+        Pair<Float, Float> ratios = clusterId != null ? current.overcommitRatios.get(clusterId) : null;
+        if (ratios == null) {
+            return null;
+        }
+        return capacityType == Capacity.CAPACITY_TYPE_CPU ? ratios.first() : ratios.second();
+    }
+
+    /**
+     * Whether the host has the required capacity once its total is overcommitted, counting its reserved capacity as
+     * free or not, as the queries of CapacityDao do.
+     */
+    private static boolean hasCapacity(Snapshot current, HostCapacity capacity, short capacityType, long required, boolean countReservedAsFree) {
+        Float ratio = getOvercommitRatio(current, capacity.getClusterId(), capacityType);
+        if (ratio == null) {
+            return false;
+        }
+        double free = capacity.getTotal() * (double)ratio - capacity.getUsed() + (countReservedAsFree ? capacity.getReserved() : 0);
+        return free >= required;
+    }
+
+    private static Set<Long> listWithCapacity(Snapshot current, short capacityType, Long zoneId, Long podId, long required, boolean byPod) {
+        Set<Long> ids = new TreeSet<>();
+        for (HostCapacity capacity : current.of(capacityType).values()) {
+            if ((zoneId != null && capacity.getDataCenterId() != zoneId) || (podId != null && !podId.equals(capacity.getPodId()))) {
+                continue;
+            }
+            Long id = byPod ? capacity.getPodId() : capacity.getClusterId();
+            if (id != null && !ids.contains(id) && hasCapacity(current, capacity, capacityType, required, true)) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Same as {@code CapacityDao.listClustersInZoneOrPodByHostCapacities}: the clusters of the zone, or pod, having
+     * a host with the required CPU and a host with the required memory.
+     */
+    public List<Long> listClustersInZoneOrPodByHostCapacities(long id, boolean isZone, int requiredCpu, long requiredRam) {
+        Snapshot current = snapshot;
+        Long zoneId = isZone ? id : null;
+        Long podId = isZone ? null : id;
+        Set<Long> clusterIds = listWithCapacity(current, Capacity.CAPACITY_TYPE_CPU, zoneId, podId, requiredCpu, false);
+        clusterIds.retainAll(listWithCapacity(current, Capacity.CAPACITY_TYPE_MEMORY, zoneId, podId, requiredRam, false));
+        return new ArrayList<>(clusterIds);
+    }
+
+    /**
+     * Same as {@code CapacityDao.listPodsByHostCapacities}: the pods of the zone having a host with the required CPU
+     * and a host with the required memory.
+     */
+    public List<Long> listPodsByHostCapacities(long zoneId, int requiredCpu, long requiredRam) {
+        Snapshot current = snapshot;
+        Set<Long> podIds = listWithCapacity(current, Capacity.CAPACITY_TYPE_CPU, zoneId, null, requiredCpu, true);
+        podIds.retainAll(listWithCapacity(current, Capacity.CAPACITY_TYPE_MEMORY, zoneId, null, requiredRam, true));
+        return new ArrayList<>(podIds);
+    }
+
+    /**
+     * Whether the host has the required CPU and memory, as {@code CapacityManager.checkIfHostHasCapacity} checks it
+     * when not allocating from the reserved capacity of the last host of a VM.
+     * @param considerReservedCapacity whether the reserved capacity of the host is counted as used, it is ignored
+     * otherwise
+     * @return null when the capacity of the host, or the overcommit ratios of its cluster, are not known
+     */
+    public Boolean hasEnoughCapacity(long hostId, int requiredCpu, long requiredRam, boolean considerReservedCapacity) {
+        Snapshot current = snapshot;
+        HostCapacity cpu = current.cpu.get(hostId);
+        HostCapacity memory = current.memory.get(hostId);
+        if (cpu == null || memory == null || getOvercommitRatio(current, cpu.getClusterId(), Capacity.CAPACITY_TYPE_CPU) == null) {
+            return null;
+        }
+        long reservedCpu = considerReservedCapacity ? cpu.getReserved() : 0;
+        long reservedRam = considerReservedCapacity ? memory.getReserved() : 0;
+        return hasCapacity(current, cpu, Capacity.CAPACITY_TYPE_CPU, requiredCpu + reservedCpu, false)
+                && hasCapacity(current, memory, Capacity.CAPACITY_TYPE_MEMORY, requiredRam + reservedRam, false);
+    }
+
+    /**
+     * Same as {@code CapacityDao.listHostsWithEnoughCapacity}: the hosts of the cluster having both the required CPU
+     * and memory, their reserved capacity not being counted as free.
+     */
+    public List<Long> listHostsWithEnoughCapacity(int requiredCpu, long requiredRam, long clusterId) {
+        Snapshot current = snapshot;
+        Set<Long> hostIds = new TreeSet<>();
+        for (HostCapacity cpu : current.cpu.values()) {
+            if (!Long.valueOf(clusterId).equals(cpu.getClusterId()) || !hasCapacity(current, cpu, Capacity.CAPACITY_TYPE_CPU, requiredCpu, false)) {
+                continue;
+            }
+            HostCapacity memory = current.memory.get(cpu.getHostId());
+            if (memory != null && hasCapacity(current, memory, Capacity.CAPACITY_TYPE_MEMORY, requiredRam, false)) {
+                hostIds.add(cpu.getHostId());
+            }
+        }
+        return new ArrayList<>(hostIds);
+    }
+}
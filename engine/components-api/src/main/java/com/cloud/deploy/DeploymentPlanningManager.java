@@ -55,6 +55,20 @@ public interface DeploymentPlanningManager extends Manager {
     DeployDestination planDeployment(VirtualMachineProfile vmProfile, DeploymentPlan plan,
             ExcludeList avoids, DeploymentPlanner planner) throws InsufficientServerCapacityException, AffinityConflictException;
 
+    /**
+     * Plans the deployment of a set of VMs in one pass, as for a VM group or an autoscale group. The VMs sharing
+     * their offering, template and hypervisor reuse the hosts found suitable for the first of them, the capacity
+     * planned for each VM is counted against its host when placing the next ones, and the affinity groups of the
+     * VMs see where the other VMs of the set are planned.
+     * <p>
+     * Nothing is reserved: each destination is to be passed to the deployment of its VM, which can run in parallel
+     * and still checks the capacity and affinity of the host.
+     *
+     * @return the destination of each VM, in the order of the profiles, null for the VMs which could not be placed
+     */
+    Map<VirtualMachineProfile, DeployDestination> planDeployments(List<VirtualMachineProfile> vmProfiles, DeploymentPlan plan,
+            ExcludeList avoids, DeploymentPlanner planner) throws InsufficientServerCapacityException, AffinityConflictException;
+
     String finalizeReservation(DeployDestination plannedDestination,
             VirtualMachineProfile vmProfile, DeploymentPlan plan, ExcludeList avoids, DeploymentPlanner planner)
             throws InsufficientServerCapacityException, AffinityConflictException;
@@ -0,0 +1,108 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.capacity;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cloud.utils.Pair;
+
+public class HostCapacityIndexTest {
+
+    private final HostCapacityIndex index = new HostCapacityIndex();
+
+    private static CapacityVO capacity(long hostId, long podId, long clusterId, long used, long total, long reserved, short type) {
+        CapacityVO capacity = new CapacityVO(hostId, 1L, podId, clusterId, used, total, type);
+        capacity.setReservedCapacity(reserved);
+        return capacity;
+    }
+
+    @Before
+    public void setUp() {
+        List<CapacityVO> capacities = Arrays.asList(
+                capacity(1L, 10L, 100L, 1000L, 4000L, 0L, Capacity.CAPACITY_TYPE_CPU),
+                capacity(1L, 10L, 100L, 3000L, 4096L, 1000L, Capacity.CAPACITY_TYPE_MEMORY),
+                capacity(2L, 20L, 200L, 3900L, 4000L, 0L, Capacity.CAPACITY_TYPE_CPU),
+                capacity(2L, 20L, 200L, 0L, 4096L, 0L, Capacity.CAPACITY_TYPE_MEMORY),
+                capacity(3L, 30L, 300L, 0L, 4000L, 0L, Capacity.CAPACITY_TYPE_CPU),
+                capacity(3L, 30L, 300L, 0L, 4096L, 0L, Capacity.CAPACITY_TYPE_MEMORY));
+        index.reload(capacities, Map.of(100L, new Pair<>(1f, 1f), 200L, new Pair<>(2f, 1f)));
+    }
+
+    @Test
+    public void reloadLoadsTheIndex() {
+        Assert.assertTrue(index.isLoaded());
+        Assert.assertEquals(6, index.size());
+        Assert.assertEquals(3000L, index.getHostCapacity(1L, Capacity.CAPACITY_TYPE_MEMORY).getUsed());
+    }
+
+    @Test
+    public void clustersWithoutOvercommitRatiosAreExcluded() {
+        Assert.assertEquals(Arrays.asList(100L, 200L), index.listClustersInZoneOrPodByHostCapacities(1L, true, 100, 512L));
+    }
+
+    @Test
+    public void overcommitRatioAndReservedCapacityAreCountedAsFree() {
+        // cluster 200 has 4000 * 2 - 3900 MHz free, host 1 has 4096 - 3000 + 1000 MB free
+        Assert.assertEquals(Arrays.asList(200L), index.listClustersInZoneOrPodByHostCapacities(1L, true, 3500, 1024L));
+        Assert.assertEquals(Arrays.asList(10L, 20L), index.listPodsByHostCapacities(1L, 1000, 2000L));
+        Assert.assertEquals(Arrays.asList(100L), index.listClustersInZoneOrPodByHostCapacities(10L, false, 1000, 2000L));
+    }
+
+    @Test
+    public void reservedCapacityIsNotFreeForHostsWithEnoughCapacity() {
+        Assert.assertEquals(Arrays.asList(1L), index.listHostsWithEnoughCapacity(1000, 1096L, 100L));
+        Assert.assertTrue(index.listHostsWithEnoughCapacity(1000, 2000L, 100L).isEmpty());
+    }
+
+    @Test
+    public void hasEnoughCapacityIsUnknownWithoutOvercommitRatios() {
+        Assert.assertTrue(index.hasEnoughCapacity(1L, 1000, 96L, true));
+        Assert.assertFalse(index.hasEnoughCapacity(1L, 1000, 2000L, true));
+        Assert.assertNull(index.hasEnoughCapacity(3L, 1, 1L, true));
+        Assert.assertNull(index.hasEnoughCapacity(4L, 1, 1L, true));
+    }
+
+    @Test
+    public void hasEnoughCapacityCountsReservedCapacityAsUsedOnlyWhenConsidered() {
+        // host 1 has 4096 - 3000 MB free, 1000 MB of which are reserved
+        Assert.assertFalse(index.hasEnoughCapacity(1L, 1000, 1096L, true));
+        Assert.assertTrue(index.hasEnoughCapacity(1L, 1000, 1096L, false));
+        Assert.assertFalse(index.hasEnoughCapacity(1L, 1000, 1097L, false));
+    }
+
+    @Test
+    public void updateAndRemoveHost() {
+        index.update(capacity(1L, 10L, 100L, 4000L, 4000L, 0L, Capacity.CAPACITY_TYPE_CPU));
+        Assert.assertTrue(index.listHostsWithEnoughCapacity(1, 1L, 100L).isEmpty());
+
+        index.removeHost(2L);
+        Assert.assertNull(index.getHostCapacity(2L, Capacity.CAPACITY_TYPE_CPU));
+        Assert.assertTrue(index.listPodsByHostCapacities(1L, 1, 1L).stream().noneMatch(podId -> podId == 20L));
+    }
+
+    @Test
+    public void otherCapacityTypesAreIgnored() {
+        index.update(capacity(4L, 10L, 100L, 0L, 8L, 0L, Capacity.CAPACITY_TYPE_CPU_CORE));
+        Assert.assertEquals(6, index.size());
+    }
+}
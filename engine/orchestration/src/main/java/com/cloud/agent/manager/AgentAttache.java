@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -122,6 +123,15 @@ public abstract class AgentAttache {
     protected final ConcurrentHashMap<Long, Listener> _waitForList;
     protected final LinkedList<Request> _requests;
     protected Long _currentSequence;
+    /**
+     * Sequences of the independent (not executed in sequence) requests sent to the agent and not answered yet.
+     */
+    protected final Set<Long> _inFlightRequests = new HashSet<>();
+    /**
+     * Independent requests waiting for the number of in flight requests to drop below {@code agent.pipeline.window}.
+     */
+    protected final LinkedList<Request> _pipelinedRequests = new LinkedList<>();
+    protected int _maxInFlightRequests;
     protected Status _status = Status.Connecting;
     protected boolean _maintenance;
     protected long _nextSequence;
@@ -228,6 +238,10 @@ public abstract class AgentAttache {
         if (index >= 0) {
             _requests.remove(index);
         }
+        _pipelinedRequests.removeIf(req -> req.getSequence() == seq);
+        if (_inFlightRequests.remove(seq)) {
+            sendNextPipelined();
+        }
     }
 
     protected synchronized int findRequest(final Request req) {
@@ -271,8 +285,29 @@ public abstract class AgentAttache {
         return _hypervisorType;
     }
 
-    public int getQueueSize() {
-        return _requests.size();
+    public synchronized int getQueueSize() {
+        return _requests.size() + _pipelinedRequests.size();
+    }
+
+    /**
+     * @return the number of independent requests sent to the agent and not answered yet.
+     */
+    public synchronized int getInFlightCount() {
+        return _inFlightRequests.size();
+    }
+
+    /**
+     * @return the highest number of independent requests that were in flight at the same time.
+     */
+    public synchronized int getMaxInFlightCount() {
+        return _maxInFlightRequests;
+    }
+
+    /**
+     * @return the number of independent requests waiting for a free slot in the pipeline window.
+     */
+    public synchronized int getPipelinedQueueSize() {
+        return _pipelinedRequests.size();
     }
 
     public int getNonRecurringListenersSize() {
@@ -325,6 +360,8 @@ public abstract class AgentAttache {
             // we should always trigger next command execution, even in failure cases - otherwise in exception case all the remaining will be stuck in the sync queue forever
             if (resp.executeInSequence()) {
                 sendNext(seq);
+            } else {
+                completeInFlight(seq);
             }
         }
 
@@ -347,7 +384,13 @@ public abstract class AgentAttache {
 
     public void cleanup(final Status state) {
         cancelAllCommands(state, true);
+        clearRequests();
+    }
+
+    protected synchronized void clearRequests() {
         _requests.clear();
+        _pipelinedRequests.clear();
+        _inFlightRequests.clear();
     }
 
     @Override
@@ -388,6 +431,12 @@ public abstract class AgentAttache {
                 // If we got to here either we're not suppose to set
                 // the _currentSequence or it is null already.
 
+                if (!req.executeInSequence() && !acquireInFlightSlot(seq)) {
+                    req.logD("Waiting for one of the " + _inFlightRequests.size() + " requests in flight to complete. Scheduling: ", true);
+                    _pipelinedRequests.add(req);
+                    return;
+                }
+
                 req.logD("Sending ", true);
                 send(req);
 
@@ -537,6 +586,41 @@ public abstract class AgentAttache {
         _currentSequence = req.getSequence();
     }
 
+    /**
+     * Counts an independent request as in flight, unless {@code agent.pipeline.window} requests are in flight already.
+     *
+     * @return true if the request can be sent now.
+     */
+    protected synchronized boolean acquireInFlightSlot(final long seq) {
+        final int window = _agentMgr.getPipelineWindow();
+        if (window > 0 && _inFlightRequests.size() >= window) {
+            return false;
+        }
+        _inFlightRequests.add(seq);
+        _maxInFlightRequests = Math.max(_maxInFlightRequests, _inFlightRequests.size());
+        return true;
+    }
+
+    protected synchronized void completeInFlight(final long seq) {
+        if (_inFlightRequests.remove(seq)) {
+            sendNextPipelined();
+        }
+    }
+
+    protected synchronized void sendNextPipelined() {
+        while (!_pipelinedRequests.isEmpty() && acquireInFlightSlot(_pipelinedRequests.peek().getSequence())) {
+            Request req = _pipelinedRequests.pop();
+            logger.debug(LOG_SEQ_FORMATTED_STRING, req.getSequence(), "Sending now, a slot in the pipeline window is free.");
+            try {
+                send(req);
+            } catch (AgentUnavailableException e) {
+                logger.debug(LOG_SEQ_FORMATTED_STRING, req.getSequence(), "Unable to send the pipelined request");
+                _inFlightRequests.remove(req.getSequence());
+                cancel(req.getSequence());
+            }
+        }
+    }
+
     public void process(final Answer[] answers) {
         //do nothing
     }
@@ -29,6 +29,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -238,6 +240,13 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
             false);
     protected final ConfigKey<Integer> RemoteAgentNewConnectionsMonitorInterval = new ConfigKey<>("Advanced", Integer.class, "agent.connections.monitor.interval", "1800",
             "Time in seconds to monitor the new agent connections and cleanup the expired connections.", false);
+    protected final ConfigKey<Integer> RemoteAgentIoSelectors = new ConfigKey<>("Advanced", Integer.class, "agent.io.selectors", "0",
+            "Number of additional selector threads that remote (indirect) agent connections are spread over for reads and writes. " +
+                    "If set to zero (default value) all connections are served by the single selector accepting them; " +
+                    "a negative value uses one selector per available processor.", false);
+    protected final ConfigKey<Integer> PipelineWindow = new ConfigKey<>("Advanced", Integer.class, "agent.pipeline.window", "0",
+            "Maximum number of commands that do not have to be executed in sequence that can be in flight at the same time to a single agent; " +
+                    "further commands are held until one of them is answered. If set to zero (default value) there is no limit.", true);
     protected final ConfigKey<Integer> AlertWait = new ConfigKey<>("Advanced", Integer.class, "alert.wait", "1800",
             "Seconds to wait before alerting on a disconnected agent", true);
     protected final ConfigKey<Integer> DirectAgentLoadSize = new ConfigKey<>("Advanced", Integer.class, "direct.agent.load.size", "16",
@@ -277,9 +286,13 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
 
         maxConcurrentNewAgentConnections = RemoteAgentMaxConcurrentNewConnections.value();
 
+        int ioSelectors = RemoteAgentIoSelectors.value();
+        if (ioSelectors < 0) {
+            ioSelectors = Runtime.getRuntime().availableProcessors();
+        }
         _connection = new NioServer("AgentManager", Port.value(), Workers.value() + 10,
-                this, caService, RemoteAgentSslHandshakeTimeout.value());
-        logger.info("Listening on {} with {} workers.", Port.value(), Workers.value());
+                this, caService, RemoteAgentSslHandshakeTimeout.value(), ioSelectors);
+        logger.info("Listening on {} with {} workers and {} I/O selectors.", Port.value(), Workers.value(), ioSelectors);
 
         final int directAgentPoolSize = DirectAgentPoolSize.value();
         // executes all agent commands other than cron and ping
@@ -721,6 +734,21 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
         return req.getSequence();
     }
 
+    @Override
+    public CompletableFuture<Answer[]> sendAsync(final Long hostId, final Commands commands) {
+        int wait = 0;
+        for (final Command cmd : commands) {
+            wait = Math.max(wait, cmd.getWait());
+        }
+        final AsyncCommandListener listener = new AsyncCommandListener(commands, getTimeout(commands, wait));
+        try {
+            send(hostId, commands, listener);
+        } catch (AgentUnavailableException e) {
+            listener.getFuture().completeExceptionally(e);
+        }
+        return listener.getFuture();
+    }
+
     public void removeAgent(final AgentAttache attache, final Status nextState) {
         if (attache == null) {
             return;
@@ -1927,6 +1955,10 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
         return _directAgentThreadCap;
     }
 
+    public int getPipelineWindow() {
+        return PipelineWindow.value();
+    }
+
     public Long getAgentPingTime(final long agentId) {
         return _pingMap.get(agentId);
     }
@@ -2031,6 +2063,13 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
                 logger.trace("Cleaning up new agent connection for {}", connection);
                 newAgentConnections.remove(connection);
             }
+            if (_connection != null) {
+                logger.debug("Agent connection handler has {} queued tasks and {} pending selector changes; " +
+                                "{} SSL handshakes done, average {} ms, max {} ms",
+                        _connection.getWorkerQueueSize(), _connection.getPendingChangeRequestsCount(),
+                        _connection.getSslHandshakeCount(), _connection.getSslHandshakeAverageMillis(),
+                        _connection.getSslHandshakeMaxMillis());
+            }
         }
     }
 
@@ -2111,7 +2150,7 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
         return new ConfigKey<?>[] { CheckTxnBeforeSending, Workers, Port, Wait, AlertWait, DirectAgentLoadSize,
                 DirectAgentPoolSize, DirectAgentThreadCap, EnableKVMAutoEnableDisable, ReadyCommandWait,
                 GranularWaitTimeForCommands, RemoteAgentSslHandshakeTimeout, RemoteAgentMaxConcurrentNewConnections,
-                RemoteAgentNewConnectionsMonitorInterval };
+                RemoteAgentNewConnectionsMonitorInterval, RemoteAgentIoSelectors, PipelineWindow };
     }
 
     protected class SetHostParamsListener implements Listener {
@@ -2209,13 +2248,23 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
 
     private void sendCommandToAgents(Map<Long, List<Long>> hostsPerZone, Map<String, String> params) {
         SetHostParamsCommand cmds = new SetHostParamsCommand(params);
-        for (Long zoneId : hostsPerZone.keySet()) {
-            List<Long> hostIds = hostsPerZone.get(zoneId);
+        // send to all the agents first and wait for the answers afterwards, instead of one agent round trip after the other
+        Map<Long, CompletableFuture<Answer[]>> answersPerHost = new HashMap<>();
+        for (List<Long> hostIds : hostsPerZone.values()) {
             for (Long hostId : hostIds) {
-                Answer answer = easySend(hostId, cmds);
-                if (answer == null || !answer.getResult()) {
-                    logger.error("Error sending parameters to agent {} ({})", hostId, findAttache(hostId));
-                }
+                answersPerHost.put(hostId, sendAsync(hostId, new Commands(cmds)));
+            }
+        }
+        for (Map.Entry<Long, CompletableFuture<Answer[]>> hostAnswers : answersPerHost.entrySet()) {
+            Long hostId = hostAnswers.getKey();
+            Answer answer = null;
+            try {
+                answer = hostAnswers.getValue().join()[0];
+            } catch (CompletionException e) {
+                logger.warn("Unable to send parameters to agent {}: {}", hostId, e.getCause().getMessage());
+            }
+            if (answer == null || !answer.getResult()) {
+                logger.error("Error sending parameters to agent {} ({})", hostId, findAttache(hostId));
             }
         }
     }
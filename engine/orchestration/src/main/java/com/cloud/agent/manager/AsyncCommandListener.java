@@ -0,0 +1,104 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.agent.manager;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.cloud.agent.Listener;
+import com.cloud.agent.api.AgentControlAnswer;
+import com.cloud.agent.api.AgentControlCommand;
+import com.cloud.agent.api.Answer;
+import com.cloud.agent.api.Command;
+import com.cloud.agent.api.StartupCommand;
+import com.cloud.exception.AgentUnavailableException;
+import com.cloud.exception.OperationTimedoutException;
+import com.cloud.host.Host;
+import com.cloud.host.Status;
+
+/**
+ * Completes a future with the answers of the commands sent through {@link com.cloud.agent.AgentManager#sendAsync(Long, Commands)}.
+ * The future is completed on the thread processing the answers, so heavy work should be chained with the async variants of its methods.
+ */
+public class AsyncCommandListener implements Listener {
+    private final Commands commands;
+    private final int timeout;
+    private final CompletableFuture<Answer[]> future = new CompletableFuture<>();
+
+    public AsyncCommandListener(Commands commands, int timeout) {
+        this.commands = commands;
+        this.timeout = timeout;
+    }
+
+    public CompletableFuture<Answer[]> getFuture() {
+        return future;
+    }
+
+    @Override
+    public boolean isRecurring() {
+        return false;
+    }
+
+    @Override
+    public boolean processAnswers(long agentId, long seq, Answer[] answers) {
+        commands.setAnswers(answers);
+        future.complete(answers);
+        return true;
+    }
+
+    @Override
+    public boolean processDisconnect(long agentId, Status state) {
+        future.completeExceptionally(new AgentUnavailableException("Agent disconnected before answering the commands, state is " + state, agentId));
+        return true;
+    }
+
+    @Override
+    public boolean processTimeout(long agentId, long seq) {
+        future.completeExceptionally(new OperationTimedoutException(commands.toCommands(), agentId, seq, timeout, false));
+        return true;
+    }
+
+    @Override
+    public int getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public boolean processCommands(long agentId, long seq, Command[] commands) {
+        return false;
+    }
+
+    @Override
+    public AgentControlAnswer processControlCommand(long agentId, AgentControlCommand cmd) {
+        return null;
+    }
+
+    @Override
+    public void processHostAdded(long hostId) {
+    }
+
+    @Override
+    public void processConnect(Host host, StartupCommand cmd, boolean forRebalance) {
+    }
+
+    @Override
+    public void processHostAboutToBeRemoved(long hostId) {
+    }
+
+    @Override
+    public void processHostRemoved(long hostId, long clusterId) {
+    }
+}
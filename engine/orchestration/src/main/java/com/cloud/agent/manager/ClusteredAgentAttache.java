@@ -16,16 +16,11 @@
 // under the License.
 package com.cloud.agent.manager;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
-import java.nio.channels.SocketChannel;
 import java.util.Collections;
 import java.util.LinkedList;
 
-import javax.net.ssl.SSLEngine;
-
-
 import com.cloud.agent.Listener;
 import com.cloud.agent.api.Command;
 import com.cloud.agent.transport.Request;
@@ -104,6 +99,19 @@ public class ClusteredAgentAttache extends ConnectedAgentAttache implements Rout
         super.cancel(seq);
     }
 
+    /**
+     * Cancels the request which was queued for the peer but could not be written to it, without forwarding the
+     * cancel to that peer which is not reachable.
+     */
+    public void forwardFailed(final long seq) {
+        super.cancel(seq);
+        synchronized (this) {
+            if (_currentSequence != null && _currentSequence == seq) {
+                sendNext(seq);
+            }
+        }
+    }
+
     @Override
     public void routeToAgent(final byte[] data) throws AgentUnavailableException {
         logger.debug(LOG_SEQ_FORMATTED_STRING, Request.getSequence(data), "Routing from " + Request.getManagementServerId(data));
@@ -153,48 +161,25 @@ public class ClusteredAgentAttache extends ConnectedAgentAttache implements Rout
             throw new AgentUnavailableException("ClusteredAgentAttache not properly initialized", _id);
         }
 
-        int i = 0;
-        SocketChannel ch = null;
         boolean error = true;
         try {
-            while (i++ < 5) {
-                String peerName = s_clusteredAgentMgr.findPeer(_id);
-                if (peerName == null) {
-                    throw new AgentUnavailableException("Unable to find peer", _id);
-                }
-
-                ch = s_clusteredAgentMgr.connectToPeer(peerName, ch);
-                if (ch == null) {
-                    logger.debug(LOG_SEQ_FORMATTED_STRING, seq, "Unable to forward " + req.toString());
-                    continue;
-                }
-
-                SSLEngine sslEngine = s_clusteredAgentMgr.getSSLEngine(peerName);
-                if (sslEngine == null) {
-                    throw new AgentUnavailableException("Unable to get SSLEngine of peer " + peerName, _id);
-                }
-
-                try {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug(LOG_SEQ_FORMATTED_STRING, seq, "Forwarding " + req.toString() + " to " + peerName);
-                    }
-                    if (req.executeInSequence() && listener != null && listener instanceof SynchronousListener) {
-                        SynchronousListener synchronous = (SynchronousListener)listener;
-                        synchronous.setPeer(peerName);
-                    }
-                    Link.write(ch, req.toBytes(), sslEngine);
-                    error = false;
-                    return;
-                } catch (IOException e) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug(LOG_SEQ_FORMATTED_STRING, seq, "Error on connecting to management node: " + req.toString() + " try = " + i);
-                    }
+            String peerName = s_clusteredAgentMgr.findPeer(_id);
+            if (peerName == null) {
+                throw new AgentUnavailableException("Unable to find peer", _id);
+            }
 
-                    if (logger.isInfoEnabled()) {
-                        logger.info("IOException " + e.getMessage() + " when sending data to peer " + peerName + ", close peer connection and let it re-open");
-                    }
-                }
+            if (logger.isDebugEnabled()) {
+                logger.debug(LOG_SEQ_FORMATTED_STRING, seq, "Forwarding " + req.toString() + " to " + peerName);
+            }
+            if (req.executeInSequence() && listener != null && listener instanceof SynchronousListener) {
+                SynchronousListener synchronous = (SynchronousListener)listener;
+                synchronous.setPeer(peerName);
+            }
+            if (s_clusteredAgentMgr.routeToPeer(peerName, req.toBytes())) {
+                error = false;
+                return;
             }
+            logger.debug(LOG_SEQ_FORMATTED_STRING, seq, "Unable to forward " + req.toString());
         } finally {
             if (error) {
                 unregisterListener(seq);
@@ -25,13 +25,14 @@ import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
@@ -105,6 +106,7 @@ import com.cloud.utils.db.SearchCriteria.Op;
 import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.exception.TaskExecutionException;
+import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.utils.nio.Link;
 import com.cloud.utils.nio.Task;
 import com.google.gson.Gson;
@@ -116,10 +118,11 @@ public class ClusteredAgentManagerImpl extends AgentManagerImpl implements Clust
     public final static long STARTUP_DELAY = 5000;
     public final static long SCAN_INTERVAL = 90000; // 90 seconds, it takes 60 sec for xenserver to fail login
     public final static int ACQUIRE_GLOBAL_LOCK_TIMEOUT_FOR_COOPERATION = 5; // 5 seconds
+    private final static int REQUEST_HEADER_SIZE = 40; // see Request.serializeHeader()
     protected Set<Long> _agentToTransferIds = new HashSet<>();
     Gson _gson;
-    protected HashMap<String, SocketChannel> _peers;
-    protected HashMap<String, SSLEngine> _sslEngines;
+    protected final ConcurrentHashMap<String, ClusteredAgentPeerLink> _peers = new ConcurrentHashMap<>();
+    private ExecutorService _peerForwardExecutor;
     private final Timer _timer = new Timer("ClusteredAgentManager Timer");
     boolean _agentLbHappened = false;
     private int _mshostCounter = 0;
@@ -164,8 +167,8 @@ public class ClusteredAgentManagerImpl extends AgentManagerImpl implements Clust
 
     @Override
     public boolean configure(final String name, final Map<String, Object> xmlParams) throws ConfigurationException {
-        _peers = new HashMap<>(7);
-        _sslEngines = new HashMap<>(7);
+        // at most one thread forwards to a peer at a time
+        _peerForwardExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("AgentManager-PeerForwarder"));
         _nodeId = ManagementServerNode.getManagementServerId();
 
         logger.info("Configuring ClusterAgentManagerImpl. management server node id(msid): {}", _nodeId);
@@ -428,146 +431,158 @@ public class ClusteredAgentManagerImpl extends AgentManagerImpl implements Clust
     }
 
     public boolean routeToPeer(final String peer, final byte[] bytes) {
-        int i = 0;
-        SocketChannel ch = null;
-        SSLEngine sslEngine;
-        while (i++ < 5) {
-            ch = connectToPeer(peer, ch);
-            if (ch == null) {
-                try {
-                    logD(bytes, "Unable to establish connection to route to peer: " + Request.parse(bytes));
-                } catch (ClassNotFoundException | UnsupportedVersionException e) {
-                    // Request.parse thrown exception when we try to log it, log as much as we can
-                    logD(bytes, "Unable to establish connection to route to peer, and Request.parse further caught exception" + e.getMessage());
-                }
-                return false;
-            }
-            sslEngine = getSSLEngine(peer);
-            if (sslEngine == null) {
-                logD(bytes, "Unable to get SSLEngine of peer: " + peer);
-                return false;
-            }
-            try {
-                logD(bytes, "Routing to peer");
-                Link.write(ch, new ByteBuffer[]{ByteBuffer.wrap(bytes)}, sslEngine);
-                return true;
-            } catch (final IOException e) {
-                try {
-                    logI(bytes, "Unable to route to peer: " + Request.parse(bytes) + " due to " + e.getMessage());
-                } catch (ClassNotFoundException | UnsupportedVersionException ex) {
-                    // Request.parse thrown exception when we try to log it, log as much as we can
-                    logI(bytes, "Unable to route to peer due to" + e.getMessage() + ". Also caught exception when parsing request: " + ex.getMessage());
-                }
-            }
+        if (!routeToPeer(peer, new ByteBuffer[]{ByteBuffer.wrap(bytes)})) {
+            logD(bytes, "Unable to establish connection to route to peer " + peer);
+            return false;
         }
-        return false;
+        if (logger.isDebugEnabled()) {
+            logD(bytes, "Routing to peer " + peer);
+        }
+        return true;
     }
 
-    public String findPeer(final long hostId) {
-        return getPeerName(hostId);
+    /**
+     * Queues the serialized request, or answer, to be written to the peer management server as it is.
+     * @return false when the peer cannot be connected to
+     */
+    public boolean routeToPeer(final String peer, final ByteBuffer[] buffers) {
+        return getPeerLink(peer).forward(buffers);
     }
 
-    public SSLEngine getSSLEngine(final String peerName) {
-        return _sslEngines.get(peerName);
+    public String findPeer(final long hostId) {
+        return getPeerName(hostId);
     }
 
     public void cancel(final String peerName, final long hostId, final long sequence, final String reason) {
         final CancelCommand cancel = new CancelCommand(sequence, reason);
         final Request req = new Request(hostId, _nodeId, cancel, true);
         req.setControl(true);
-        routeToPeer(peerName, req.getBytes());
+        routeToPeer(peerName, req.toBytes());
     }
 
-    public void closePeer(final String peerName) {
-        synchronized (_peers) {
-            final SocketChannel ch = _peers.get(peerName);
-            if (ch != null) {
-                try {
-                    ch.close();
-                } catch (final IOException e) {
-                    logger.warn("Unable to close peer socket connection to {}", peerName);
-                }
+    protected ClusteredAgentPeerLink getPeerLink(final String peerName) {
+        return _peers.computeIfAbsent(peerName, peer -> {
+            final ClusteredAgentPeerLink link = new ClusteredAgentPeerLink(peer, this::connectToPeer, _peerForwardExecutor, this::onForwardFailed);
+            try {
+                JmxUtil.registerMBean("AgentManager", "Peer " + peer, link);
+            } catch (final Exception e) {
+                logger.warn("Unable to register the link to peer {} into JMX monitoring due to exception {}", peer, e.toString());
+            }
+            return link;
+        });
+    }
+
+    /**
+     * Fails the request, queued for the peer, which could not be written to it, so that its sender does not wait
+     * for an answer until it times out.
+     */
+    protected void onForwardFailed(final String peerName, final ByteBuffer[] buffers) {
+        final byte[] header = new byte[REQUEST_HEADER_SIZE];
+        int offset = 0;
+        for (final ByteBuffer buffer : buffers) {
+            final ByteBuffer view = buffer.duplicate();
+            view.rewind();
+            final int length = Math.min(view.remaining(), header.length - offset);
+            view.get(header, offset, length);
+            offset += length;
+            if (offset == header.length) {
+                break;
             }
-            _peers.remove(peerName);
-            _sslEngines.remove(peerName);
+        }
+        if (offset < header.length) {
+            logger.warn("Unable to forward a request of {} bytes to peer management server {}", offset, peerName);
+            return;
+        }
+        if (!Request.isRequest(header) || Request.getManagementServerId(header) != _nodeId) {
+            // answers and the requests relayed for another management server are left to time out on their sender
+            logD(header, "Unable to forward to peer " + peerName);
+            return;
+        }
+        final AgentAttache attache = findAttache(Request.getAgentId(header));
+        if (attache instanceof ClusteredAgentAttache) {
+            logI(header, "Cancelling as it could not be forwarded to peer " + peerName);
+            ((ClusteredAgentAttache)attache).forwardFailed(Request.getSequence(header));
         }
     }
 
-    public SocketChannel connectToPeer(final String peerName, final SocketChannel prevCh) {
-        synchronized (_peers) {
-            final SocketChannel ch = _peers.get(peerName);
-            SSLEngine sslEngine;
-            if (prevCh != null) {
-                try {
-                    prevCh.close();
-                } catch (final Exception e) {
-                    logger.info("[ignored] failed to get close resource for previous channel Socket: {}", e.getLocalizedMessage());
+    public void closePeer(final String peerName) {
+        final ClusteredAgentPeerLink link = _peers.remove(peerName);
+        if (link == null) {
+            return;
+        }
+        link.close();
+        try {
+            JmxUtil.unregisterMBean("AgentManager", "Peer " + peerName);
+        } catch (final Exception e) {
+            logger.debug("Unable to unregister the link to peer {} from JMX monitoring due to exception {}", peerName, e.toString());
+        }
+    }
+
+    protected ClusteredAgentPeerLink.Connection connectToPeer(final String peerName) {
+        final ManagementServerHost ms = _clusterMgr.getPeer(peerName);
+        if (ms == null) {
+            logger.info("Unable to find peer: {}",  peerName);
+            return null;
+        }
+        final String ip = ms.getServiceIP();
+        InetAddress addr;
+        int port = Port.value();
+        try {
+            addr = InetAddress.getByName(ip);
+        } catch (final UnknownHostException e) {
+            logger.warn("Unable to resolve {} of peer management server {}", ip, peerName);
+            return null;
+        }
+        SocketChannel ch1 = null;
+        try {
+            final SSLEngine sslEngine;
+            ch1 = SocketChannel.open(new InetSocketAddress(addr, port));
+            ch1.configureBlocking(false);
+            ch1.socket().setKeepAlive(true);
+            ch1.socket().setSoTimeout(60 * 1000);
+            try {
+                SSLContext sslContext = Link.initManagementSSLContext(caService);
+                sslEngine = sslContext.createSSLEngine(ip, port);
+                sslEngine.setUseClientMode(true);
+                sslEngine.setEnabledProtocols(SSLUtils.getSupportedProtocols(sslEngine.getEnabledProtocols()));
+                sslEngine.beginHandshake();
+                if (!Link.doHandshake(ch1, sslEngine)) {
+                    ch1.close();
+                    throw new IOException(String.format("SSL: Handshake failed with peer management server '%s' on %s:%d ", peerName, ip, port));
                 }
+                logger.info("SSL: Handshake done with peer management server '{}' on {}:{} ", peerName, ip, port);
+            } catch (final Exception e) {
+                ch1.close();
+                throw new IOException("SSL: Fail to init SSL! " + e);
             }
-            if (ch == null || ch == prevCh) {
-                final ManagementServerHost ms = _clusterMgr.getPeer(peerName);
-                if (ms == null) {
-                    logger.info("Unable to find peer: {}",  peerName);
-                    return null;
+            logger.debug("Connection to peer opened: {}, IP: {}", peerName, ip);
+            final SocketChannel ch = ch1;
+            return new ClusteredAgentPeerLink.Connection() {
+                @Override
+                public void write(final ByteBuffer[] buffers) throws IOException {
+                    Link.write(ch, buffers, sslEngine);
                 }
-                final String ip = ms.getServiceIP();
-                InetAddress addr;
-                int port = Port.value();
-                try {
-                    addr = InetAddress.getByName(ip);
-                } catch (final UnknownHostException e) {
-                    throw new CloudRuntimeException("Unable to resolve " + ip);
-                }
-                SocketChannel ch1 = null;
-                try {
-                    ch1 = SocketChannel.open(new InetSocketAddress(addr, port));
-                    ch1.configureBlocking(false);
-                    ch1.socket().setKeepAlive(true);
-                    ch1.socket().setSoTimeout(60 * 1000);
+
+                @Override
+                public void close() {
                     try {
-                        SSLContext sslContext = Link.initManagementSSLContext(caService);
-                        sslEngine = sslContext.createSSLEngine(ip, port);
-                        sslEngine.setUseClientMode(true);
-                        sslEngine.setEnabledProtocols(SSLUtils.getSupportedProtocols(sslEngine.getEnabledProtocols()));
-                        sslEngine.beginHandshake();
-                        if (!Link.doHandshake(ch1, sslEngine)) {
-                            ch1.close();
-                            throw new IOException(String.format("SSL: Handshake failed with peer management server '%s' on %s:%d ", peerName, ip, port));
-                        }
-                        logger.info("SSL: Handshake done with peer management server '{}' on {}:{} ", peerName, ip, port);
-                    } catch (final Exception e) {
-                        ch1.close();
-                        throw new IOException("SSL: Fail to init SSL! " + e);
-                    }
-                    logger.debug("Connection to peer opened: {}, IP: {}", peerName, ip);
-                    _peers.put(peerName, ch1);
-                    _sslEngines.put(peerName, sslEngine);
-                    return ch1;
-                } catch (final IOException e) {
-                    if (ch1 != null) {
-                        try {
-                            ch1.close();
-                        } catch (final IOException ex) {
-                            logger.error("failed to close failed peer socket: {}",  ex);
-                        }
+                        ch.close();
+                    } catch (final IOException e) {
+                        logger.info("[ignored] failed to close the channel to peer {}: {}", peerName, e.getLocalizedMessage());
                     }
-                    logger.warn("Unable to connect to peer management server: {}, IP {} due to {}", peerName, ip, e.getMessage(), e);
-                    return null;
+                }
+            };
+        } catch (final IOException e) {
+            if (ch1 != null) {
+                try {
+                    ch1.close();
+                } catch (final IOException ex) {
+                    logger.error("failed to close failed peer socket: {}",  ex);
                 }
             }
-
-            logger.trace("Found open channel for peer: {}",  peerName);
-            return ch;
-        }
-    }
-
-    public SocketChannel connectToPeer(final long hostId, final SocketChannel prevCh) {
-        final String peerName = getPeerName(hostId);
-        if (peerName == null) {
+            logger.warn("Unable to connect to peer management server: {}, IP {} due to {}", peerName, ip, e.getMessage(), e);
             return null;
         }
-
-        return connectToPeer(peerName, prevCh);
     }
 
     @Override
@@ -596,15 +611,12 @@ public class ClusteredAgentManagerImpl extends AgentManagerImpl implements Clust
 
     @Override
     public boolean stop() {
-        if (_peers != null) {
-            for (final SocketChannel ch : _peers.values()) {
-                try {
-                    logger.info("Closing: {}",  ch.toString());
-                    ch.close();
-                } catch (final IOException e) {
-                    logger.info("[ignored] error on closing channel: {}",  ch.toString(), e);
-                }
-            }
+        for (final String peer : new ArrayList<>(_peers.keySet())) {
+            logger.info("Closing link to peer: {}",  peer);
+            closePeer(peer);
+        }
+        if (_peerForwardExecutor != null) {
+            _peerForwardExecutor.shutdown();
         }
         _timer.cancel();
 
@@ -702,7 +714,7 @@ public class ClusteredAgentManagerImpl extends AgentManagerImpl implements Clust
                             if (attache != null) {
                                 attache.sendNext(Request.getSequence(data));
                             }
-                            logD(data, "No attache to process " + Request.parse(data));
+                            logD(data, "No attache to process the forwarded answer");
                         }
                     } else {
                         if (Request.isRequest(data)) {
@@ -747,6 +759,7 @@ public class ClusteredAgentManagerImpl extends AgentManagerImpl implements Clust
             haConfigDao.expireServerOwnership(vo.getMsid());
             logger.info("Deleting entries from op_host_transfer table for Management server {}",  vo);
             cleanupTransferMap(vo.getMsid());
+            closePeer(Long.toString(vo.getMsid()));
         }
     }
 
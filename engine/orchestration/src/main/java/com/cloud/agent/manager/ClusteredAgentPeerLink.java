@@ -0,0 +1,299 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.agent.manager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.cloudstack.managed.context.ManagedContextRunnable;
+import org.apache.cloudstack.utils.stats.TimeHistogram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The connection used to forward agent requests and answers to one peer management server.
+ * <p>
+ * All the requests to a peer share its connection and are written in the order they were forwarded, each with its
+ * own framing, so that the peer can route them by their sequence. Callers only queue the already serialized buffers,
+ * which are written as they are, without being parsed or copied; a drain task is started on the executor when
+ * requests are queued on an idle link, and ends once the queue is empty. Connecting is done under a lock of the
+ * link, so that a peer being slow to connect to does not hold the requests forwarded to the other peers.
+ * <p>
+ * A request that cannot be written, and the ones dropped behind it, are handed to the {@link FailureHandler}, the
+ * caller having been told they were forwarded.
+ */
+public class ClusteredAgentPeerLink implements ClusteredAgentPeerLinkMBean {
+    protected static Logger LOGGER = LogManager.getLogger(ClusteredAgentPeerLink.class);
+
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+
+    interface Connection {
+        void write(ByteBuffer[] buffers) throws IOException;
+
+        void close();
+    }
+
+    interface Connector {
+        /**
+         * @return the connection to the peer, null when it cannot be reached
+         */
+        Connection connect(String peer);
+    }
+
+    interface FailureHandler {
+        /**
+         * Called with the buffers of a queued request which could not be written to the peer.
+         */
+        void forwardFailed(String peer, ByteBuffer[] buffers);
+    }
+
+    private final String peer;
+    private final Connector connector;
+    private final Executor executor;
+    private final FailureHandler failureHandler;
+
+    private final Queue<PendingRequest> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Object connectLock = new Object();
+    private volatile Connection connection;
+    private boolean closed;
+
+    private final LongAdder forwardedRequests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder connects = new LongAdder();
+    private final TimeHistogram forwardTimes = new TimeHistogram();
+
+    public ClusteredAgentPeerLink(String peer, Connector connector, Executor executor) {
+        this(peer, connector, executor, (failedPeer, buffers) -> { });
+    }
+
+    public ClusteredAgentPeerLink(String peer, Connector connector, Executor executor, FailureHandler failureHandler) {
+        this.peer = peer;
+        this.connector = connector;
+        this.executor = executor;
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * Queues the serialized request, or answer, to be written to the peer. The buffers must not be modified
+     * afterwards.
+     * @return false when the peer cannot be connected to
+     */
+    public boolean forward(ByteBuffer[] buffers) {
+        if (getConnection() == null) {
+            return false;
+        }
+        queued.incrementAndGet();
+        queue.offer(new PendingRequest(buffers));
+        scheduleDrain();
+        return true;
+    }
+
+    /**
+     * Closes the connection and drops the requests still queued, the peer being gone.
+     */
+    public void close() {
+        Connection current;
+        synchronized (connectLock) {
+            closed = true;
+            current = connection;
+            connection = null;
+        }
+        if (current != null) {
+            current.close();
+        }
+        int dropped = drop();
+        if (dropped > 0) {
+            LOGGER.info("Dropped {} requests queued for peer management server {}", dropped, peer);
+        }
+    }
+
+    protected Connection getConnection() {
+        Connection current = connection;
+        if (current != null) {
+            return current;
+        }
+        synchronized (connectLock) {
+            if (connection == null && !closed) {
+                connection = connector.connect(peer);
+                if (connection != null) {
+                    connects.increment();
+                }
+            }
+            return connection;
+        }
+    }
+
+    private void disconnect(Connection broken) {
+        synchronized (connectLock) {
+            if (connection == broken) {
+                connection = null;
+            }
+        }
+        broken.close();
+    }
+
+    private void scheduleDrain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(new ManagedContextRunnable() {
+                @Override
+                protected void runInContext() {
+                    drain();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+            LOGGER.warn("Unable to schedule forwarding the queued requests to peer management server {}", peer, e);
+        }
+    }
+
+    protected void drain() {
+        try {
+            while (true) {
+                PendingRequest request = queue.poll();
+                if (request == null) {
+                    draining.set(false);
+                    // a request queued after the last poll but before the flag was cleared would be left behind
+                    if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                queued.decrementAndGet();
+                if (!write(request)) {
+                    notifyFailure(request);
+                    // the peer cannot be reached, the requests queued behind would fail the same way
+                    int dropped = drop();
+                    LOGGER.warn("Unable to forward {} requests to peer management server {}", dropped + 1, peer);
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Unexpected exception while forwarding requests to peer management server {}", peer, e);
+            draining.set(false);
+            if (!queue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private boolean write(PendingRequest request) {
+        for (int attempt = 1; attempt <= MAX_WRITE_ATTEMPTS; attempt++) {
+            Connection current = getConnection();
+            if (current == null) {
+                break;
+            }
+            try {
+                current.write(request.buffers());
+                forwardTimes.record(System.nanoTime() - request.queuedAt);
+                forwardedRequests.increment();
+                return true;
+            } catch (IOException e) {
+                LOGGER.info("IOException {} when forwarding to peer management server {}, attempt {}, close the connection and let it re-open",
+                        e.getMessage(), peer, attempt);
+                disconnect(current);
+            }
+        }
+        failedRequests.increment();
+        return false;
+    }
+
+    private int drop() {
+        int dropped = 0;
+        for (PendingRequest request = queue.poll(); request != null; request = queue.poll()) {
+            queued.decrementAndGet();
+            dropped++;
+            failedRequests.increment();
+            notifyFailure(request);
+        }
+        return dropped;
+    }
+
+    private void notifyFailure(PendingRequest request) {
+        try {
+            failureHandler.forwardFailed(peer, request.buffers());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to handle the failure to forward a request to peer management server {}", peer, e);
+        }
+    }
+
+    @Override
+    public String getPeer() {
+        return peer;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connection != null;
+    }
+
+    @Override
+    public int getQueuedRequests() {
+        return queued.get();
+    }
+
+    @Override
+    public long getForwardedRequests() {
+        return forwardedRequests.sum();
+    }
+
+    @Override
+    public long getFailedRequests() {
+        return failedRequests.sum();
+    }
+
+    @Override
+    public long getConnects() {
+        return connects.sum();
+    }
+
+    @Override
+    public Map<String, Long> getForwardTimes() {
+        return forwardTimes.toMap();
+    }
+
+    private static final class PendingRequest {
+        private final ByteBuffer[] buffers;
+        private final long queuedAt = System.nanoTime();
+
+        PendingRequest(ByteBuffer[] buffers) {
+            this.buffers = buffers;
+        }
+
+        /**
+         * @return views of the buffers from their start, a failed write having possibly consumed part of them
+         */
+        ByteBuffer[] buffers() {
+            ByteBuffer[] views = new ByteBuffer[buffers.length];
+            for (int i = 0; i < buffers.length; i++) {
+                views[i] = buffers[i].duplicate();
+            }
+            return views;
+        }
+    }
+}
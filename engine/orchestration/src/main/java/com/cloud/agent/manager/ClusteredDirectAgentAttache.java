@@ -54,7 +54,7 @@ public class ClusteredDirectAgentAttache extends DirectAgentAttache implements R
     public boolean processAnswers(long seq, Response response) {
         long mgmtId = response.getManagementServerId();
         if (mgmtId != -1 && mgmtId != _nodeId) {
-            ((ClusteredAgentManagerImpl)_agentMgr).routeToPeer(Long.toString(mgmtId), response.getBytes());
+            ((ClusteredAgentManagerImpl)_agentMgr).routeToPeer(Long.toString(mgmtId), response.toBytes());
             if (response.executeInSequence()) {
                 sendNext(response.getSequence());
             }
@@ -64,7 +64,7 @@ public class ConnectedAgentAttache extends AgentAttache {
             _link = null;
         }
         cancelAllCommands(state, true);
-        _requests.clear();
+        clearRequests();
     }
 
     @Override
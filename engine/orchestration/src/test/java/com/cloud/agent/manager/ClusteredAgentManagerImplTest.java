@@ -17,12 +17,19 @@
 
 package com.cloud.agent.manager;
 
+import com.cloud.agent.api.Answer;
+import com.cloud.agent.api.CheckHealthCommand;
+import com.cloud.agent.transport.Request;
+import com.cloud.agent.transport.Response;
 import com.cloud.configuration.ManagementServiceConfiguration;
 import com.cloud.ha.HighAvailabilityManagerImpl;
 import com.cloud.host.HostVO;
 import com.cloud.host.Status;
 import com.cloud.host.dao.HostDao;
+import com.cloud.hypervisor.Hypervisor;
 import com.cloud.resource.ResourceManagerImpl;
+import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -30,12 +37,14 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -54,6 +63,11 @@ public class ClusteredAgentManagerImplTest {
         _hostDao = mock(HostDao.class);
     }
 
+    @After
+    public void tearDown() {
+        ClusteredAgentAttache.initialize(null);
+    }
+
     @Test
     public void scanDirectAgentToLoadNoHostsTest() {
         ClusteredAgentManagerImpl clusteredAgentManagerImpl = mock(ClusteredAgentManagerImpl.class);
@@ -147,4 +161,37 @@ public class ClusteredAgentManagerImplTest {
         verify(clusteredAgentManagerImpl).investigate(agentAttache);
         verify(clusteredAgentManagerImpl).loadDirectlyConnectedHost(hostVO, false);
     }
+
+    @Test
+    public void onForwardFailedTestFailsTheListenerOfTheRequest() throws Exception {
+        ClusteredAgentManagerImpl clusteredAgentManagerImpl = Mockito.spy(new ClusteredAgentManagerImpl());
+        clusteredAgentManagerImpl._nodeId = 1L;
+        ClusteredAgentAttache.initialize(clusteredAgentManagerImpl);
+        ClusteredAgentAttache attache = new ClusteredAgentAttache(null, 5L, "uuid", "host", Hypervisor.HypervisorType.KVM);
+        doReturn("2").when(clusteredAgentManagerImpl).findPeer(5L);
+        doReturn(true).when(clusteredAgentManagerImpl).routeToPeer(eq("2"), any(ByteBuffer[].class));
+        doReturn(attache).when(clusteredAgentManagerImpl).findAttache(5L);
+
+        Request request = new Request(5L, 1L, new CheckHealthCommand(), true);
+        SynchronousListener listener = new SynchronousListener(null);
+        attache.send(request, listener);
+        Assert.assertFalse(listener.isDisconnected());
+
+        clusteredAgentManagerImpl.onForwardFailed("2", request.toBytes());
+
+        Assert.assertTrue(listener.isDisconnected());
+        Assert.assertNull(attache.getListener(request.getSequence()));
+    }
+
+    @Test
+    public void onForwardFailedTestIgnoresAnswers() {
+        ClusteredAgentManagerImpl clusteredAgentManagerImpl = Mockito.spy(new ClusteredAgentManagerImpl());
+        clusteredAgentManagerImpl._nodeId = 1L;
+        Request request = new Request(5L, 1L, new CheckHealthCommand(), true);
+        Response response = new Response(request, new Answer(request.getCommand()));
+
+        clusteredAgentManagerImpl.onForwardFailed("2", response.toBytes());
+
+        verify(clusteredAgentManagerImpl, never()).findAttache(anyLong());
+    }
 }
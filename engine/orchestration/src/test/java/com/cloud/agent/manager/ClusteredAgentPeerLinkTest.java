@@ -0,0 +1,186 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.agent.manager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClusteredAgentPeerLinkTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static class RecordingConnection implements ClusteredAgentPeerLink.Connection {
+        private final List<ByteBuffer[]> written = new ArrayList<>();
+        private final AtomicInteger failures;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        RecordingConnection(int failures) {
+            this.failures = new AtomicInteger(failures);
+        }
+
+        @Override
+        public void write(ByteBuffer[] buffers) throws IOException {
+            if (failures.getAndDecrement() > 0) {
+                buffers[0].get();
+                throw new IOException("Connection reset by peer");
+            }
+            synchronized (written) {
+                written.add(buffers);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed.set(true);
+        }
+    }
+
+    private static void waitForForwarded(ClusteredAgentPeerLink link, long count) throws InterruptedException {
+        for (long deadline = System.currentTimeMillis() + 10000; link.getForwardedRequests() + link.getFailedRequests() < count
+                && System.currentTimeMillis() < deadline; ) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void forwardTestWritesTheBuffersInOrderWithoutCopyingThem() throws Exception {
+        RecordingConnection connection = new RecordingConnection(0);
+        ClusteredAgentPeerLink link = new ClusteredAgentPeerLink("2", peer -> connection, executor);
+
+        List<byte[]> forwarded = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            byte[] bytes = new byte[] {(byte)i};
+            forwarded.add(bytes);
+            Assert.assertTrue(link.forward(new ByteBuffer[] {ByteBuffer.wrap(bytes)}));
+        }
+        waitForForwarded(link, 20);
+
+        Assert.assertEquals(20, link.getForwardedRequests());
+        Assert.assertEquals(0, link.getQueuedRequests());
+        Assert.assertEquals(1, link.getConnects());
+        Assert.assertEquals(20, link.getForwardTimes().values().stream().mapToLong(Long::longValue).sum());
+        for (int i = 0; i < 20; i++) {
+            Assert.assertSame(forwarded.get(i), connection.written.get(i)[0].array());
+        }
+    }
+
+    @Test
+    public void forwardTestReconnectsAndRewritesTheWholeRequestAfterAWriteFailure() throws Exception {
+        RecordingConnection broken = new RecordingConnection(1);
+        RecordingConnection healthy = new RecordingConnection(0);
+        List<RecordingConnection> connections = new ArrayList<>(List.of(broken, healthy));
+        ClusteredAgentPeerLink link = new ClusteredAgentPeerLink("2", peer -> connections.remove(0), executor);
+
+        Assert.assertTrue(link.forward(new ByteBuffer[] {ByteBuffer.wrap(new byte[] {1, 2, 3})}));
+        waitForForwarded(link, 1);
+
+        Assert.assertEquals(1, link.getForwardedRequests());
+        Assert.assertEquals(2, link.getConnects());
+        Assert.assertTrue(broken.closed.get());
+        Assert.assertTrue(link.isConnected());
+        Assert.assertEquals(3, healthy.written.get(0)[0].remaining());
+    }
+
+    @Test
+    public void forwardTestFailsWhenThePeerCannotBeConnectedTo() {
+        ClusteredAgentPeerLink link = new ClusteredAgentPeerLink("2", peer -> null, executor);
+
+        Assert.assertFalse(link.forward(new ByteBuffer[] {ByteBuffer.wrap(new byte[] {1})}));
+        Assert.assertFalse(link.isConnected());
+        Assert.assertEquals(0, link.getQueuedRequests());
+    }
+
+    @Test
+    public void forwardTestDropsTheRequestWhenThePeerIsGone() throws Exception {
+        RecordingConnection broken = new RecordingConnection(Integer.MAX_VALUE);
+        List<RecordingConnection> connections = new ArrayList<>(List.of(broken));
+        ClusteredAgentPeerLink link = new ClusteredAgentPeerLink("2", peer -> connections.isEmpty() ? null : connections.remove(0), executor);
+
+        Assert.assertTrue(link.forward(new ByteBuffer[] {ByteBuffer.wrap(new byte[] {1})}));
+        waitForForwarded(link, 1);
+
+        Assert.assertEquals(0, link.getForwardedRequests());
+        Assert.assertEquals(1, link.getFailedRequests());
+        Assert.assertFalse(link.isConnected());
+    }
+
+    @Test
+    public void closeTestClosesTheConnection() {
+        RecordingConnection connection = new RecordingConnection(0);
+        ClusteredAgentPeerLink link = new ClusteredAgentPeerLink("2", peer -> connection, executor);
+        Assert.assertTrue(link.forward(new ByteBuffer[] {ByteBuffer.wrap(new byte[] {1})}));
+
+        link.close();
+
+        Assert.assertTrue(connection.closed.get());
+        Assert.assertFalse(link.forward(new ByteBuffer[] {ByteBuffer.wrap(new byte[] {1})}));
+    }
+
+    @Test
+    public void forwardTestReportsTheRequestsWhichCouldNotBeWrittenToADeadPeer() {
+        List<Runnable> drains = new ArrayList<>();
+        Executor deferred = drains::add;
+        List<byte[]> failed = new ArrayList<>();
+        ClusteredAgentPeerLink link = new ClusteredAgentPeerLink("2", peer -> new RecordingConnection(Integer.MAX_VALUE), deferred,
+                (peer, buffers) -> failed.add(buffers[0].array()));
+
+        List<byte[]> forwarded = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            byte[] bytes = new byte[] {(byte)i};
+            forwarded.add(bytes);
+            Assert.assertTrue(link.forward(new ByteBuffer[] {ByteBuffer.wrap(bytes)}));
+        }
+        Assert.assertEquals(1, drains.size());
+        drains.get(0).run();
+
+        Assert.assertEquals(forwarded, failed);
+        Assert.assertEquals(0, link.getForwardedRequests());
+        Assert.assertEquals(3, link.getFailedRequests());
+        Assert.assertEquals(0, link.getQueuedRequests());
+    }
+
+    @Test
+    public void closeTestReportsTheRequestsStillQueued() {
+        List<byte[]> failed = new ArrayList<>();
+        ClusteredAgentPeerLink link = new ClusteredAgentPeerLink("2", peer -> new RecordingConnection(0), task -> { },
+                (peer, buffers) -> failed.add(buffers[0].array()));
+        byte[] bytes = new byte[] {1};
+        Assert.assertTrue(link.forward(new ByteBuffer[] {ByteBuffer.wrap(bytes)}));
+
+        link.close();
+
+        Assert.assertEquals(1, failed.size());
+        Assert.assertSame(bytes, failed.get(0));
+        Assert.assertEquals(1, link.getFailedRequests());
+    }
+}
@@ -16,12 +16,24 @@
 // under the License.
 package com.cloud.agent.manager;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
 
 import org.junit.Test;
 
+import com.cloud.agent.api.Answer;
+import com.cloud.agent.api.CheckHealthCommand;
+import com.cloud.agent.api.Command;
+import com.cloud.agent.transport.Request;
+import com.cloud.agent.transport.Response;
 import com.cloud.hypervisor.Hypervisor;
 import com.cloud.utils.nio.Link;
 
@@ -80,4 +92,37 @@ public class ConnectedAgentAttacheTest {
 
         assertFalse(agentAttache1.equals("abc"));
     }
+
+    private Request createRequest(ConnectedAgentAttache agentAttache) {
+        Request req = new Request(1L, "host", 1L, new Command[] {new CheckHealthCommand()}, true, false);
+        req.setSequence(agentAttache.getNextSequence());
+        return req;
+    }
+
+    @Test
+    public void testSendHoldsRequestsBeyondThePipelineWindow() throws Exception {
+        Link link = mock(Link.class);
+        AgentManagerImpl agentMgr = mock(AgentManagerImpl.class);
+        when(agentMgr.getPipelineWindow()).thenReturn(2);
+        ConnectedAgentAttache agentAttache = new ConnectedAgentAttache(agentMgr, 1, "uuid", "host", Hypervisor.HypervisorType.KVM, link, false);
+        Request req1 = createRequest(agentAttache);
+        Request req2 = createRequest(agentAttache);
+        Request req3 = createRequest(agentAttache);
+
+        agentAttache.send(req1, null);
+        agentAttache.send(req2, null);
+        agentAttache.send(req3, null);
+
+        verify(link, times(2)).send(any(ByteBuffer[].class));
+        assertEquals(2, agentAttache.getInFlightCount());
+        assertEquals(1, agentAttache.getPipelinedQueueSize());
+        assertEquals(1, agentAttache.getQueueSize());
+
+        agentAttache.processAnswers(req1.getSequence(), new Response(req1, new Answer[] {new Answer(null)}));
+
+        verify(link, times(3)).send(any(ByteBuffer[].class));
+        assertEquals(2, agentAttache.getInFlightCount());
+        assertEquals(0, agentAttache.getPipelinedQueueSize());
+        assertEquals(2, agentAttache.getMaxInFlightCount());
+    }
 }
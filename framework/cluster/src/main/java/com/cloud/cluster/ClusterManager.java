@@ -30,9 +30,14 @@ public interface ClusterManager extends Manager {
         "Interval (in milliseconds) to check for the heart beat between management server nodes", false);
     final ConfigKey<Integer> HeartbeatThreshold = new ConfigKey<Integer>(Integer.class, "cluster.heartbeat.threshold", "management-server", "150000",
         "Threshold (in milliseconds) before self-fence the management server. The threshold should be larger than management.server.stats.interval", true);
+    final ConfigKey<Integer> PeerQueueSize = new ConfigKey<Integer>(Integer.class, "cluster.peer.queue.size", "management-server", "10000",
+        "Number of messages that can wait to be sent to another management server node; further senders wait for room", false);
+    final ConfigKey<Integer> PeerBatchSize = new ConfigKey<Integer>(Integer.class, "cluster.peer.batch.size", "management-server", "100",
+        "Maximum number of messages sent to another management server node in a single request", false);
 
     /**
-     * Adds a new packet to the incoming queue.
+     * Hands a packet received from a peer over for processing. Packets of the same peer that have to be processed in
+     * order, such as the commands forwarded for one agent, are; others are processed in parallel.
      * @param pdu protocol data unit
      */
     void OnReceiveClusterServicePdu(ClusterServicePdu pdu);
@@ -56,6 +61,19 @@ public interface ClusterManager extends Manager {
      */
     void broadcast(long agentId, String cmds);
 
+    /**
+     * Sends a notification to all the other management server nodes without waiting for them to process it. The
+     * nodes running another version, which may not support notifications, are skipped.
+     * @param subject the notification is handed to the listener registered for this subject on each peer
+     * @param payload content of the notification
+     */
+    void publishNotification(String subject, String payload);
+
+    /**
+     * Registers the listener receiving the notifications published by peers for the subject.
+     */
+    void registerNotificationListener(String subject, NotificationListener listener);
+
     void registerListener(ClusterManagerListener listener);
 
     void unregisterListener(ClusterManagerListener listener);
@@ -98,6 +116,10 @@ public interface ClusterManager extends Manager {
         String dispatch(ClusterServicePdu pdu);
     }
 
+    interface NotificationListener {
+        void onNotification(String sourcePeer, String payload);
+    }
+
     /**
      * The definition of what the client of {@see registerStatusAdministrator()} should implement.
      */
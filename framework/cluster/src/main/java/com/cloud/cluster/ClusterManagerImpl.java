@@ -30,8 +30,10 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -59,6 +61,7 @@ import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.db.ConnectionConcierge;
 import com.cloud.utils.db.DB;
 import com.cloud.utils.db.DbProperties;
+import com.cloud.utils.db.EntityCache;
 import com.cloud.utils.db.Transaction;
 import com.cloud.utils.db.TransactionCallback;
 import com.cloud.utils.db.TransactionLegacy;
@@ -72,7 +75,6 @@ import com.cloud.utils.net.NetUtils;
 public class ClusterManagerImpl extends ManagerBase implements ClusterManager, Configurable {
 
     private static final int EXECUTOR_SHUTDOWN_TIMEOUT = 1000; // 1 second
-    private static final int DEFAULT_OUTGOING_WORKERS = 5;
 
     private final List<ClusterManagerListener> _listeners = new ArrayList<>();
     private final Map<Long, ManagementServerHostVO> _activePeers = new HashMap<>();
@@ -88,6 +90,7 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
     private ConnectionConcierge _heartbeatConnection = null;
 
     private final ExecutorService _executor;
+    private final ClusterPduLanes _pduLanes;
 
     private ClusterServiceAdapter _currentServiceAdapter;
 
@@ -105,6 +108,10 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
 
     private StatusAdministrator statusAdministrator;
 
+    private final Map<String, NotificationListener> notificationListeners = new ConcurrentHashMap<>();
+    private static final String ENTITY_CACHE_SUBJECT = "entity-cache-invalidation";
+    private static final char NOTIFICATION_SEPARATOR = '\n';
+
     @Inject
     protected ReconcileCommandService reconcileCommandService;
 
@@ -122,8 +129,7 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
 
     private String _clusterNodeIP = "127.0.0.1";
 
-    private final List<ClusterServicePdu> _clusterPduOutgoingQueue = new ArrayList<>();
-    private final List<ClusterServicePdu> _clusterPduIncomingQueue = new ArrayList<>();
+    private final Map<String, ClusterPeerChannel> _peerChannels = new ConcurrentHashMap<>();
     private final Map<Long, ClusterServiceRequestPdu> _outgoingPdusWaitingForAck = new HashMap<>();
 
     public ClusterManagerImpl() {
@@ -133,6 +139,7 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
         // recursive remote calls between nodes
         //
         _executor = Executors.newCachedThreadPool(new NamedThreadFactory("Cluster-Worker"));
+        _pduLanes = new ClusterPduLanes(_executor);
         setRunLevel(ComponentLifecycle.RUN_LEVEL_COMPONENT);
     }
 
@@ -152,6 +159,11 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
         statusAdministrator = administrator;
     }
 
+    @Override
+    public void registerNotificationListener(final String subject, final NotificationListener listener) {
+        notificationListeners.put(subject, listener);
+    }
+
     private ClusterServiceRequestPdu popRequestPdu(final long ackSequenceId) {
         synchronized (_outgoingPdusWaitingForAck) {
             if (_outgoingPdusWaitingForAck.get(ackSequenceId) != null) {
@@ -179,186 +191,156 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
         }
 
         for (final ClusterServiceRequestPdu pdu : candidates) {
-            logger.warn("Cancel cluster request PDU to peer: " + strPeer + ", pdu: " + pdu.getJsonPackage());
-            synchronized (pdu) {
-                pdu.notifyAll();
-            }
+            cancelRequestPdu(pdu);
         }
     }
 
-    private void addOutgoingClusterPdu(final ClusterServicePdu pdu) {
-        synchronized (_clusterPduOutgoingQueue) {
-            _clusterPduOutgoingQueue.add(pdu);
-            _clusterPduOutgoingQueue.notifyAll();
+    private void cancelRequestPdu(final ClusterServiceRequestPdu pdu) {
+        if (pdu == null) {
+            return;
         }
-    }
-
-    private ClusterServicePdu popOutgoingClusterPdu(final long timeoutMs) {
-        synchronized (_clusterPduOutgoingQueue) {
-            try {
-                _clusterPduOutgoingQueue.wait(timeoutMs);
-            } catch (final InterruptedException ignored) {
-            }
-
-            if (_clusterPduOutgoingQueue.size() > 0) {
-                final ClusterServicePdu pdu = _clusterPduOutgoingQueue.get(0);
-                _clusterPduOutgoingQueue.remove(0);
-                return pdu;
-            }
+        logger.warn("Cancel cluster request PDU to peer: " + pdu.getDestPeer() + ", pdu: " + pdu.getJsonPackage());
+        synchronized (pdu) {
+            pdu.notifyAll();
         }
-        return null;
     }
 
-    private void addIncomingClusterPdu(final ClusterServicePdu pdu) {
-        synchronized (_clusterPduIncomingQueue) {
-            _clusterPduIncomingQueue.add(pdu);
-            _clusterPduIncomingQueue.notifyAll();
+    private void addOutgoingClusterPdu(final ClusterServicePdu pdu) {
+        if (getPeerChannel(pdu.getDestPeer()).offer(pdu, ClusterServiceAdapter.ClusterMessageTimeOut.value() * 1000L)) {
+            return;
+        }
+        logger.error("Dropping cluster PDU {} to peer {} as its queue stayed full", pdu.getSequenceId(), pdu.getDestPeer());
+        if (pdu instanceof ClusterServiceRequestPdu) {
+            cancelRequestPdu(popRequestPdu(pdu.getSequenceId()));
         }
     }
 
-    private ClusterServicePdu popIncomingClusterPdu(final long timeoutMs) {
-        synchronized (_clusterPduIncomingQueue) {
+    private ClusterPeerChannel getPeerChannel(final String strPeer) {
+        return _peerChannels.computeIfAbsent(strPeer, peer -> {
+            final ClusterPeerChannel channel = new ClusterPeerChannel(peer, PeerQueueSize.value(), PeerBatchSize.value(), this::sendClusterPdus, _executor);
             try {
-                _clusterPduIncomingQueue.wait(timeoutMs);
-            } catch (final InterruptedException ignored) {
+                JmxUtil.registerMBean("ClusterManager", "Peer " + peer, channel);
+            } catch (final Exception e) {
+                logger.warn("Unable to register the channel to peer {} into JMX monitoring due to exception {}", peer, e.toString());
             }
+            return channel;
+        });
+    }
 
-            if (_clusterPduIncomingQueue.size() > 0) {
-                final ClusterServicePdu pdu = _clusterPduIncomingQueue.get(0);
-                _clusterPduIncomingQueue.remove(0);
-                return pdu;
-            }
+    private void removePeerChannel(final String strPeer) {
+        final ClusterPeerChannel channel = _peerChannels.remove(strPeer);
+        if (channel == null) {
+            return;
+        }
+        final List<ClusterServicePdu> dropped = channel.clear();
+        if (!dropped.isEmpty()) {
+            logger.warn("Dropped {} cluster PDUs queued for peer {} that left the cluster", dropped.size(), strPeer);
+        }
+        try {
+            JmxUtil.unregisterMBean("ClusterManager", "Peer " + strPeer);
+        } catch (final Exception e) {
+            logger.debug("Unable to unregister the channel to peer {} from JMX monitoring due to exception {}", strPeer, e.toString());
         }
-        return null;
     }
 
-    private Runnable getClusterPduSendingTask() {
-        return new ManagedContextRunnable() {
-            @Override
-            protected void runInContext() {
-                onSendingClusterPdu();
+    protected boolean sendClusterPdus(final String strPeer, final List<ClusterServicePdu> pdus) {
+        for (int i = 0; i < 2; i++) {
+            ClusterService peerService = null;
+            try {
+                peerService = getPeerService(strPeer);
+            } catch (final RemoteException e) {
+                logger.error("Unable to get cluster service on peer : " + strPeer);
             }
-        };
-    }
-
-    private Runnable getClusterPduNotificationTask() {
-        return new ManagedContextRunnable() {
-            @Override
-            protected void runInContext() {
-                onNotifyingClusterPdu();
+            if (peerService == null) {
+                continue;
             }
-        };
-    }
 
-    private void onSendingClusterPdu() {
-        while (true) {
             try {
-                final ClusterServicePdu pdu = popOutgoingClusterPdu(1000);
-                if (pdu == null) {
-                    continue;
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Cluster PDUs " + getSelfPeerName() + " -> " + strPeer + ". count: " + pdus.size() + ", first pdu seq: " + pdus.get(0).getSequenceId());
                 }
 
-                ClusterService peerService = null;
-                for (int i = 0; i < 2; i++) {
-                    try {
-                        peerService = getPeerService(pdu.getDestPeer());
-                    } catch (final RemoteException e) {
-                        logger.error("Unable to get cluster service on peer : " + pdu.getDestPeer());
-                    }
-
-                    if (peerService != null) {
-                        try {
-                            if (logger.isDebugEnabled()) {
-                                logger.debug("Cluster PDU " + getSelfPeerName() + " -> " + pdu.getDestPeer() + ". agent: " + pdu.getAgentId() + ", pdu seq: " +
-                                        pdu.getSequenceId() + ", pdu ack seq: " + pdu.getAckSequenceId() + ", json: " + pdu.getJsonPackage());
-                            }
+                final Profiler profiler = new Profiler();
+                profiler.start();
 
-                            final Profiler profiler = new Profiler();
-                            profiler.start();
+                final boolean delivered = peerService.deliver(pdus);
+                profiler.stop();
 
-                            final String strResult = peerService.execute(pdu);
-                            profiler.stop();
-
-                            if (logger.isDebugEnabled()) {
-                                logger.debug("Cluster PDU " + getSelfPeerName() + " -> " + pdu.getDestPeer() + " completed. time: " +
-                                        profiler.getDurationInMillis() + "ms. agent: " + pdu.getAgentId() + ", pdu seq: " + pdu.getSequenceId() +
-                                        ", pdu ack seq: " + pdu.getAckSequenceId() + ", json: " + pdu.getJsonPackage());
-                            }
-
-                            if ("true".equals(strResult)) {
-                                break;
-                            }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Cluster PDUs " + getSelfPeerName() + " -> " + strPeer + " completed. time: " + profiler.getDurationInMillis() + "ms. count: " +
+                            pdus.size() + ", delivered: " + delivered);
+                }
 
-                        } catch (final RemoteException e) {
-                            invalidatePeerService(pdu.getDestPeer());
-                            if (logger.isInfoEnabled()) {
-                                logger.info("Exception on remote execution, peer: " + pdu.getDestPeer() + ", iteration: " + i + ", exception message :" +
-                                        e.getMessage());
-                            }
-                        }
-                    }
+                if (delivered) {
+                    return true;
+                }
+            } catch (final RemoteException e) {
+                invalidatePeerService(strPeer);
+                if (logger.isInfoEnabled()) {
+                    logger.info("Exception on remote execution, peer: " + strPeer + ", iteration: " + i + ", exception message :" + e.getMessage());
                 }
-            } catch (final Throwable e) {
-                logger.error("Unexpected exception: ", e);
             }
         }
+        return false;
     }
 
-    private void onNotifyingClusterPdu() {
-        while (true) {
-            try {
-                final ClusterServicePdu pdu = popIncomingClusterPdu(1000);
-                if (pdu == null) {
-                    continue;
+    private void onClusterPdu(final ClusterServicePdu pdu) {
+        if (pdu.getPduType() == ClusterServicePdu.PDU_TYPE_RESPONSE) {
+            final ClusterServiceRequestPdu requestPdu = popRequestPdu(pdu.getAckSequenceId());
+            if (requestPdu != null) {
+                requestPdu.setResponseResult(pdu.getJsonPackage());
+                synchronized (requestPdu) {
+                    requestPdu.notifyAll();
                 }
+            } else {
+                logger.warn("Original request has already been cancelled. pdu: " + pdu.getJsonPackage());
+            }
+        } else if (pdu.getPduType() == ClusterServicePdu.PDU_TYPE_STATUS_UPDATE) {
+            if (statusAdministrator == null) {
+                logger.warn("No status administration to report a status update too.");
+            } else {
+                statusAdministrator.newStatus(pdu);
+            }
+        } else if (pdu.getPduType() == ClusterServicePdu.PDU_TYPE_NOTIFICATION) {
+            onNotification(pdu);
+        } else {
+            String result = _dispatcher.dispatch(pdu);
+            if (result == null) {
+                result = "";
+            }
 
-                _executor.execute(new ManagedContextRunnable() {
-                    @Override
-                    protected void runInContext() {
-                        if (pdu.getPduType() == ClusterServicePdu.PDU_TYPE_RESPONSE) {
-                            final ClusterServiceRequestPdu requestPdu = popRequestPdu(pdu.getAckSequenceId());
-                            if (requestPdu != null) {
-                                requestPdu.setResponseResult(pdu.getJsonPackage());
-                                synchronized (requestPdu) {
-                                    requestPdu.notifyAll();
-                                }
-                            } else {
-                                logger.warn("Original request has already been cancelled. pdu: " + pdu.getJsonPackage());
-                            }
-                        } else if (pdu.getPduType() == ClusterServicePdu.PDU_TYPE_STATUS_UPDATE) {
-                            if (statusAdministrator == null) {
-                                logger.warn("No status administration to report a status update too.");
-                            } else {
-                                statusAdministrator.newStatus(pdu);
-                            }
-                        } else {
-                            String result = _dispatcher.dispatch(pdu);
-                            if (result == null) {
-                                result = "";
-                            }
-
-                            if (pdu.getPduType() == ClusterServicePdu.PDU_TYPE_REQUEST) {
-                                final ClusterServicePdu responsePdu = new ClusterServicePdu();
-                                responsePdu.setPduType(ClusterServicePdu.PDU_TYPE_RESPONSE);
-                                responsePdu.setSourcePeer(pdu.getDestPeer());
-                                responsePdu.setDestPeer(pdu.getSourcePeer());
-                                responsePdu.setAckSequenceId(pdu.getSequenceId());
-                                responsePdu.setJsonPackage(result);
+            if (pdu.getPduType() == ClusterServicePdu.PDU_TYPE_REQUEST) {
+                final ClusterServicePdu responsePdu = new ClusterServicePdu();
+                responsePdu.setPduType(ClusterServicePdu.PDU_TYPE_RESPONSE);
+                responsePdu.setSourcePeer(pdu.getDestPeer());
+                responsePdu.setDestPeer(pdu.getSourcePeer());
+                responsePdu.setAckSequenceId(pdu.getSequenceId());
+                responsePdu.setJsonPackage(result);
 
-                                addOutgoingClusterPdu(responsePdu);
-                            }
-                        }
-                    }
-                });
-            } catch (final Throwable e) {
-                logger.error("Unexpected exception: ", e);
+                addOutgoingClusterPdu(responsePdu);
             }
         }
     }
 
     @Override
     public void OnReceiveClusterServicePdu(final ClusterServicePdu pdu) {
-        addIncomingClusterPdu(pdu);
+        if (pdu.getPduType() == ClusterServicePdu.PDU_TYPE_RESPONSE) {
+            // only hands the result over to the thread waiting for it
+            onClusterPdu(pdu);
+            return;
+        }
+
+        final String lane = ClusterPduLanes.getLane(pdu);
+        if (lane != null) {
+            _pduLanes.execute(lane, () -> onClusterPdu(pdu));
+            return;
+        }
+        _executor.execute(new ManagedContextRunnable() {
+            @Override
+            protected void runInContext() {
+                onClusterPdu(pdu);
+            }
+        });
     }
 
     /**
@@ -424,6 +406,62 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
         }
     }
 
+    @Override
+    public void publishNotification(final String subject, final String payload) {
+        final Date cutTime = DateUtil.currentGMTTime();
+        final String notification = subject + NOTIFICATION_SEPARATOR + (payload == null ? "" : payload);
+        final String version = ClusterManagerImpl.class.getPackage().getImplementationVersion();
+
+        final List<ManagementServerHostVO> peers = _mshostDao.getActiveList(new Date(cutTime.getTime() - HeartbeatThreshold.value()));
+        for (final ManagementServerHostVO peer : peers) {
+            final String peerName = Long.toString(peer.getMsid());
+            if (getSelfPeerName().equals(peerName)) {
+                continue;
+            }
+            if (!Objects.equals(version, peer.getVersion())) {
+                // a peer of another version, during a rolling upgrade, may not know the notification PDUs and would
+                // dispatch them as agent commands
+                logger.debug("Not sending notification {} to peer {} running version {}", subject, peer, peer.getVersion());
+                continue;
+            }
+            final ClusterServicePdu pdu = new ClusterServicePdu();
+            pdu.setSourcePeer(getSelfPeerName());
+            pdu.setDestPeer(peerName);
+            pdu.setPduType(ClusterServicePdu.PDU_TYPE_NOTIFICATION);
+            pdu.setJsonPackage(notification);
+            addOutgoingClusterPdu(pdu);
+        }
+    }
+
+    private void onNotification(final ClusterServicePdu pdu) {
+        final String notification = pdu.getJsonPackage();
+        final int separator = notification == null ? -1 : notification.indexOf(NOTIFICATION_SEPARATOR);
+        if (separator < 0) {
+            logger.warn("Ignoring malformed notification from peer {}: {}", pdu.getSourcePeer(), notification);
+            return;
+        }
+        final String subject = notification.substring(0, separator);
+        final NotificationListener listener = notificationListeners.get(subject);
+        if (listener == null) {
+            logger.debug("No listener for notification {} from peer {}", subject, pdu.getSourcePeer());
+            return;
+        }
+        listener.onNotification(pdu.getSourcePeer(), notification.substring(separator + 1));
+    }
+
+    private void registerEntityCacheInvalidation() {
+        registerNotificationListener(ENTITY_CACHE_SUBJECT, (sourcePeer, payload) -> {
+            final int separator = payload.indexOf(NOTIFICATION_SEPARATOR);
+            if (separator < 0) {
+                EntityCache.onRemoteInvalidation(payload, null);
+            } else {
+                EntityCache.onRemoteInvalidation(payload.substring(0, separator), payload.substring(separator + 1));
+            }
+        });
+        EntityCache.setInvalidationPublisher((table, id) ->
+                publishNotification(ENTITY_CACHE_SUBJECT, id == null ? table : table + NOTIFICATION_SEPARATOR + id));
+    }
+
     public void sendStatus(final String strPeer, final String status) {
         final ClusterServicePdu pdu = new ClusterServicePdu();
         pdu.setSourcePeer(getSelfPeerName());
@@ -530,6 +568,7 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
             if (logger.isDebugEnabled()) {
                 logger.debug("Leaving node, IP: {}, ms: {}", mshost.getServiceIP(), mshost);
             }
+            removePeerChannel(String.valueOf(mshost.getMsid()));
             cancelClusterRequestToPeer(String.valueOf(mshost.getMsid()));
         }
 
@@ -1095,6 +1134,7 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
         // use separate thread for heartbeat updates
         _heartbeatScheduler.scheduleAtFixedRate(getHeartbeatTask(), HeartbeatInterval.value(), HeartbeatInterval.value(), TimeUnit.MILLISECONDS);
         _notificationExecutor.submit(getNotificationTask());
+        registerEntityCacheInvalidation();
 
         if (logger.isInfoEnabled()) {
             logger.info("Cluster manager was started successfully");
@@ -1174,13 +1214,6 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
             throw new ConfigurationException("cluster node IP should be valid local address where the server is running, please check your configuration");
         }
 
-        for (int i = 0; i < DEFAULT_OUTGOING_WORKERS; i++) {
-            _executor.execute(getClusterPduSendingTask());
-        }
-
-        // notification task itself in turn works as a task dispatcher
-        _executor.execute(getClusterPduNotificationTask());
-
         if (_serviceAdapters == null) {
             throw new ConfigurationException("Unable to get cluster service adapters");
         }
@@ -1244,7 +1277,7 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[] {HeartbeatInterval, HeartbeatThreshold};
+        return new ConfigKey<?>[] {HeartbeatInterval, HeartbeatThreshold, PeerQueueSize, PeerBatchSize};
     }
 
     private boolean pingManagementNode(final ManagementServerHostVO mshost) {
@@ -0,0 +1,137 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.cloudstack.managed.context.ManagedContextRunnable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs the handling of received PDUs in lanes: the tasks submitted to the same lane run one after the other, in
+ * the order they were submitted, while different lanes run in parallel on the executor.
+ * <p>
+ * A lane only exists while it has tasks to run and holds at most one thread of the executor, so that a slow
+ * handler only delays the PDUs queued behind it in its own lane.
+ */
+public class ClusterPduLanes {
+    protected static Logger LOGGER = LogManager.getLogger(ClusterPduLanes.class);
+
+    private final Executor executor;
+    // a lane is in the map for as long as it has a task running or waiting
+    private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    public ClusterPduLanes(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return the name of the lane the PDU is handled in, null when it does not have to be ordered with any other PDU
+     */
+    public static String getLane(ClusterServicePdu pdu) {
+        switch (pdu.getPduType()) {
+            case ClusterServicePdu.PDU_TYPE_MESSAGE:
+                // commands forwarded for an agent are run in the order they were sent
+                return pdu.getSourcePeer() + "/agent/" + pdu.getAgentId();
+            case ClusterServicePdu.PDU_TYPE_STATUS_UPDATE:
+                return pdu.getSourcePeer() + "/status";
+            case ClusterServicePdu.PDU_TYPE_NOTIFICATION:
+                return pdu.getSourcePeer() + "/notification";
+            default:
+                // the sender of a request waits for its response before sending the next one
+                return null;
+        }
+    }
+
+    public void execute(String lane, Runnable task) {
+        final boolean[] created = new boolean[1];
+        final Lane target = lanes.compute(lane, (name, existing) -> {
+            Lane l = existing;
+            if (l == null) {
+                l = new Lane(name);
+                created[0] = true;
+            }
+            l.tasks.add(task);
+            return l;
+        });
+        if (!created[0]) {
+            return;
+        }
+        try {
+            executor.execute(new ManagedContextRunnable() {
+                @Override
+                protected void runInContext() {
+                    target.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            lanes.remove(lane);
+            LOGGER.warn("Unable to run the PDUs of lane {}", lane, e);
+        }
+    }
+
+    public int getActiveLanes() {
+        return lanes.size();
+    }
+
+    private final class Lane {
+        private final String name;
+        // only accessed within the compute functions of the map
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        Lane(String name) {
+            this.name = name;
+        }
+
+        void run() {
+            for (Runnable task = peek(); task != null; task = next()) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Unexpected exception while handling a PDU of lane {}", name, e);
+                }
+            }
+        }
+
+        private Runnable peek() {
+            final Runnable[] head = new Runnable[1];
+            lanes.computeIfPresent(name, (n, l) -> {
+                head[0] = l.tasks.peek();
+                return l;
+            });
+            return head[0];
+        }
+
+        /**
+         * Removes the task that just ran and returns the following one, removing the lane when there is none.
+         */
+        private Runnable next() {
+            final Runnable[] head = new Runnable[1];
+            lanes.computeIfPresent(name, (n, l) -> {
+                l.tasks.poll();
+                head[0] = l.tasks.peek();
+                return head[0] == null ? null : l;
+            });
+            return head[0];
+        }
+    }
+}
@@ -0,0 +1,223 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.cloudstack.managed.context.ManagedContextRunnable;
+import org.apache.cloudstack.utils.stats.TimeHistogram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The PDUs waiting to be sent to one peer management server.
+ * <p>
+ * PDUs are sent in the order they were offered, in batches of up to {@code batchSize} PDUs, with at most one batch
+ * in flight per peer. No thread is dedicated to a peer: a drain task is started on the executor when PDUs are
+ * offered to an idle channel, and ends once the queue is empty. The queue holds at most {@code capacity} PDUs, PDUs
+ * in flight included; when it is full, {@link #offer(ClusterServicePdu, long)} waits for room, so that a slow peer
+ * slows down the threads talking to it instead of growing the heap.
+ */
+public class ClusterPeerChannel implements ClusterPeerChannelMBean {
+    protected static Logger LOGGER = LogManager.getLogger(ClusterPeerChannel.class);
+
+    interface Transport {
+        /**
+         * @return true when the peer accepted all the PDUs
+         */
+        boolean send(String peer, List<ClusterServicePdu> pdus);
+    }
+
+    private final String peer;
+    private final int capacity;
+    private final int batchSize;
+    private final Transport transport;
+    private final Executor executor;
+
+    private final Queue<ClusterServicePdu> queue = new ConcurrentLinkedQueue<>();
+    private final Semaphore room;
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private final LongAdder sentPdus = new LongAdder();
+    private final LongAdder sentBatches = new LongAdder();
+    private final LongAdder failedPdus = new LongAdder();
+    private final LongAdder droppedPdus = new LongAdder();
+    private final LongAdder throttledOffers = new LongAdder();
+    private final TimeHistogram sendTimes = new TimeHistogram();
+
+    public ClusterPeerChannel(String peer, int capacity, int batchSize, Transport transport, Executor executor) {
+        this.peer = peer;
+        this.capacity = Math.max(capacity, 1);
+        this.batchSize = Math.max(batchSize, 1);
+        this.transport = transport;
+        this.executor = executor;
+        room = new Semaphore(this.capacity);
+    }
+
+    /**
+     * Queues the PDU, waiting up to {@code timeoutMs} for room when the queue is full.
+     * @return false when the PDU was dropped because the queue stayed full
+     */
+    public boolean offer(ClusterServicePdu pdu, long timeoutMs) {
+        if (!room.tryAcquire()) {
+            throttledOffers.increment();
+            try {
+                if (!room.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                    droppedPdus.increment();
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                droppedPdus.increment();
+                return false;
+            }
+        }
+        queue.offer(pdu);
+        scheduleDrain();
+        return true;
+    }
+
+    /**
+     * Drops the PDUs still queued, the peer being gone.
+     * @return the dropped PDUs
+     */
+    public List<ClusterServicePdu> clear() {
+        List<ClusterServicePdu> dropped = new ArrayList<>();
+        for (ClusterServicePdu pdu = queue.poll(); pdu != null; pdu = queue.poll()) {
+            dropped.add(pdu);
+        }
+        room.release(dropped.size());
+        droppedPdus.add(dropped.size());
+        return dropped;
+    }
+
+    private void scheduleDrain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(new ManagedContextRunnable() {
+                @Override
+                protected void runInContext() {
+                    drain();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+            LOGGER.warn("Unable to schedule sending the queued PDUs to peer {}", peer, e);
+        }
+    }
+
+    protected void drain() {
+        try {
+            while (true) {
+                List<ClusterServicePdu> batch = new ArrayList<>();
+                for (ClusterServicePdu pdu = null; batch.size() < batchSize && (pdu = queue.poll()) != null; ) {
+                    batch.add(pdu);
+                }
+                if (batch.isEmpty()) {
+                    draining.set(false);
+                    // a PDU offered after the last poll but before the flag was cleared would be left behind
+                    if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                send(batch);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Unexpected exception while sending PDUs to peer {}", peer, e);
+            draining.set(false);
+            if (!queue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private void send(List<ClusterServicePdu> batch) {
+        final long start = System.nanoTime();
+        boolean sent = false;
+        try {
+            sent = transport.send(peer, batch);
+        } finally {
+            sendTimes.record(System.nanoTime() - start);
+            if (sent) {
+                sentPdus.add(batch.size());
+                sentBatches.increment();
+            } else {
+                failedPdus.add(batch.size());
+                LOGGER.warn("Unable to send {} PDUs to peer {}", batch.size(), peer);
+            }
+            room.release(batch.size());
+        }
+    }
+
+    @Override
+    public String getPeer() {
+        return peer;
+    }
+
+    @Override
+    public int getQueuedPdus() {
+        return capacity - room.availablePermits();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getSentPdus() {
+        return sentPdus.sum();
+    }
+
+    @Override
+    public long getSentBatches() {
+        return sentBatches.sum();
+    }
+
+    @Override
+    public long getFailedPdus() {
+        return failedPdus.sum();
+    }
+
+    @Override
+    public long getDroppedPdus() {
+        return droppedPdus.sum();
+    }
+
+    @Override
+    public long getThrottledOffers() {
+        return throttledOffers.sum();
+    }
+
+    @Override
+    public Map<String, Long> getSendTimes() {
+        return sendTimes.toMap();
+    }
+}
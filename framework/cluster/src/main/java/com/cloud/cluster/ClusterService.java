@@ -18,9 +18,16 @@ package com.cloud.cluster;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 public interface ClusterService extends Remote {
     String execute(ClusterServicePdu pdu) throws RemoteException;
 
+    /**
+     * Delivers a batch of PDUs to the peer in a single call, in order.
+     * @return true when the peer accepted all the PDUs
+     */
+    boolean deliver(List<ClusterServicePdu> pdus) throws RemoteException;
+
     boolean ping(String callingPeer) throws RemoteException;
 }
@@ -16,11 +16,14 @@
 // under the License.
 package com.cloud.cluster;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class ClusterServicePdu {
     public final static int PDU_TYPE_MESSAGE = 0;
     public final static int PDU_TYPE_REQUEST = 1;
     public final static int PDU_TYPE_RESPONSE = 2;
     public final static int PDU_TYPE_STATUS_UPDATE = 3;
+    public final static int PDU_TYPE_NOTIFICATION = 4;
 
     private long sequenceId;
     private long ackSequenceId;
@@ -34,7 +37,7 @@ public class ClusterServicePdu {
 
     private int pduType = PDU_TYPE_MESSAGE;
 
-    private static long s_nextPduSequenceId = 1;
+    private static final AtomicLong s_nextPduSequenceId = new AtomicLong(1);
 
     public ClusterServicePdu() {
         sequenceId = getNextPduSequenceId();
@@ -43,8 +46,16 @@ public class ClusterServicePdu {
         stopOnError = false;
     }
 
-    public synchronized long getNextPduSequenceId() {
-        return s_nextPduSequenceId++;
+    /**
+     * Rebuilds a PDU received from a peer, without consuming a local sequence id.
+     */
+    ClusterServicePdu(int pduType, long sequenceId) {
+        this.pduType = pduType;
+        this.sequenceId = sequenceId;
+    }
+
+    public long getNextPduSequenceId() {
+        return s_nextPduSequenceId.getAndIncrement();
     }
 
     public long getSequenceId() {
@@ -0,0 +1,123 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of a batch of {@link ClusterServicePdu}s exchanged between management servers.
+ * <p>
+ * A batch starts with a magic number, a version and the number of PDUs. Each PDU is then written as its length
+ * followed by its fields, so that a peer can skip the fields appended by a later version. Strings are written as
+ * the length of their UTF-8 encoding, -1 for null, followed by the bytes.
+ */
+public final class ClusterServicePduCodec {
+
+    public static final String CONTENT_TYPE = "application/x-cloudstack-pdu-batch";
+
+    private static final int MAGIC = 0x43535044;
+    private static final int VERSION = 1;
+
+    private ClusterServicePduCodec() {
+    }
+
+    public static byte[] encode(List<ClusterServicePdu> pdus) {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(256 * pdus.size());
+        ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        try {
+            DataOutputStream out = new DataOutputStream(batch);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(pdus.size());
+            DataOutputStream recordOut = new DataOutputStream(record);
+            for (ClusterServicePdu pdu : pdus) {
+                record.reset();
+                recordOut.writeByte(pdu.getPduType());
+                recordOut.writeLong(pdu.getSequenceId());
+                recordOut.writeLong(pdu.getAckSequenceId());
+                recordOut.writeLong(pdu.getAgentId());
+                recordOut.writeBoolean(pdu.isStopOnError());
+                writeString(recordOut, pdu.getSourcePeer());
+                writeString(recordOut, pdu.getDestPeer());
+                writeString(recordOut, pdu.getJsonPackage());
+                recordOut.flush();
+                out.writeInt(record.size());
+                record.writeTo(out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // byte array streams do not throw
+            throw new IllegalStateException(e);
+        }
+        return batch.toByteArray();
+    }
+
+    public static List<ClusterServicePdu> decode(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a cluster PDU batch");
+        }
+        int version = in.readUnsignedByte();
+        if (version < 1) {
+            throw new IOException("Unsupported cluster PDU batch version " + version);
+        }
+        int count = in.readInt();
+        List<ClusterServicePdu> pdus = new ArrayList<>(Math.min(Math.max(count, 0), 1024));
+        for (int i = 0; i < count; i++) {
+            byte[] record = new byte[in.readInt()];
+            in.readFully(record);
+            DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+            ClusterServicePdu pdu = new ClusterServicePdu(recordIn.readUnsignedByte(), recordIn.readLong());
+            pdu.setAckSequenceId(recordIn.readLong());
+            pdu.setAgentId(recordIn.readLong());
+            pdu.setStopOnError(recordIn.readBoolean());
+            pdu.setSourcePeer(readString(recordIn));
+            pdu.setDestPeer(readString(recordIn));
+            pdu.setJsonPackage(readString(recordIn));
+            pdus.add(pdu);
+        }
+        return pdus;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
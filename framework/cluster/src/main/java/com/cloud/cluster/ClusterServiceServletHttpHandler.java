@@ -18,8 +18,12 @@ package com.cloud.cluster;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLDecoder;
+import java.util.List;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
@@ -49,8 +53,12 @@ public class ClusterServiceServletHttpHandler implements HttpRequestHandler {
                 logger.trace("Start Handling cluster HTTP request");
             }
 
-            parseRequest(request);
-            handleRequest(request, response);
+            if (isPduBatch(request)) {
+                handlePduBatch((HttpEntityEnclosingRequest)request, response);
+            } else {
+                parseRequest(request);
+                handleRequest(request, response);
+            }
 
             if (logger.isTraceEnabled()) {
                 logger.trace("Handle cluster HTTP request done");
@@ -71,6 +79,29 @@ public class ClusterServiceServletHttpHandler implements HttpRequestHandler {
         }
     }
 
+    private boolean isPduBatch(HttpRequest request) {
+        if (!(request instanceof HttpEntityEnclosingRequest)) {
+            return false;
+        }
+        final HttpEntity entity = ((HttpEntityEnclosingRequest)request).getEntity();
+        final Header contentType = entity == null ? null : entity.getContentType();
+        return contentType != null && contentType.getValue().startsWith(ClusterServicePduCodec.CONTENT_TYPE);
+    }
+
+    protected void handlePduBatch(HttpEntityEnclosingRequest request, HttpResponse response) throws IOException {
+        final List<ClusterServicePdu> pdus;
+        try (InputStream in = request.getEntity().getContent()) {
+            pdus = ClusterServicePduCodec.decode(in);
+        }
+        if (logger.isTraceEnabled()) {
+            logger.trace("Received a batch of " + pdus.size() + " cluster PDUs");
+        }
+        for (final ClusterServicePdu pdu : pdus) {
+            manager.OnReceiveClusterServicePdu(pdu);
+        }
+        writeResponse(response, HttpStatus.SC_OK, "true");
+    }
+
     @SuppressWarnings("deprecation")
     private void parseRequest(HttpRequest request) throws IOException {
         if (request instanceof HttpEntityEnclosingRequest) {
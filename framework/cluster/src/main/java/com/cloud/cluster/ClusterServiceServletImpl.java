@@ -32,6 +32,8 @@ import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.message.BasicNameValuePair;
@@ -56,6 +58,9 @@ public class ClusterServiceServletImpl implements ClusterService {
 
     protected static CloseableHttpClient s_client = null;
 
+    // cleared when the peer runs a version that only takes one form encoded PDU per request
+    private volatile boolean batchSupported = true;
+
     private void logPostParametersForFailedEncoding(List<NameValuePair> parameters) {
         if (logger.isTraceEnabled()) {
             logger.trace(String.format("%s encoding failed for POST parameters: %s", HttpUtils.UTF_8,
@@ -106,6 +111,52 @@ public class ClusterServiceServletImpl implements ClusterService {
         return executePostMethod(client, method);
     }
 
+    @Override
+    public boolean deliver(final List<ClusterServicePdu> pdus) throws RemoteException {
+        if (!batchSupported) {
+            return deliverOneByOne(pdus);
+        }
+
+        final CloseableHttpClient client = getHttpClient();
+        final HttpPost method = new HttpPost(serviceUrl);
+        method.setEntity(new ByteArrayEntity(ClusterServicePduCodec.encode(pdus), ContentType.create(ClusterServicePduCodec.CONTENT_TYPE)));
+
+        final Profiler profiler = new Profiler();
+        profiler.start();
+        try (CloseableHttpResponse httpResponse = client.execute(method)) {
+            final int response = httpResponse.getStatusLine().getStatusCode();
+            final String result = EntityUtils.toString(httpResponse.getEntity());
+            profiler.stop();
+            if (response == HttpStatus.SC_OK) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("POST " + serviceUrl + " delivered " + pdus.size() + " PDUs, responding time: " + profiler.getDurationInMillis() + " ms");
+                }
+                return Boolean.TRUE.toString().equals(result);
+            }
+            if (response == HttpStatus.SC_BAD_REQUEST) {
+                logger.info("Peer at " + serviceUrl + " does not accept PDU batches, sending them one by one");
+                batchSupported = false;
+                return deliverOneByOne(pdus);
+            }
+            logger.error("Invalid response code : " + response + ", from : " + serviceUrl + " for a batch of " + pdus.size() + " PDUs, responding time: " +
+                    profiler.getDurationInMillis());
+            return false;
+        } catch (IOException e) {
+            throw new RemoteException("Unable to deliver " + pdus.size() + " PDUs to " + serviceUrl, e);
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    private boolean deliverOneByOne(final List<ClusterServicePdu> pdus) throws RemoteException {
+        for (final ClusterServicePdu pdu : pdus) {
+            if (!Boolean.TRUE.toString().equals(execute(pdu))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     protected List<NameValuePair> getPingPostParameters(final String callingPeer) {
         List<NameValuePair> postParameters = new ArrayList<>();
         postParameters.add(new BasicNameValuePair("method", Integer.toString(RemoteMethodConstants.METHOD_PING)));
@@ -17,22 +17,53 @@
 
 package com.cloud.cluster;
 
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.cloud.cluster.dao.ManagementServerHostDao;
+
 @RunWith(MockitoJUnitRunner.class)
 public class ClusterManagerImplTest {
+    @Mock
+    ManagementServerHostDao mshostDao;
+
     @InjectMocks
     ClusterManagerImpl clusterManager = new ClusterManagerImpl();
 
+    private ManagementServerHostVO createPeer(long msid, String version) {
+        ManagementServerHostVO peer = new ManagementServerHostVO();
+        peer.setMsid(msid);
+        peer.setVersion(version);
+        return peer;
+    }
+
     @Test
     public void testGetSelfNodeIP() {
         String ip = "1.2.3.4";
         ReflectionTestUtils.setField(clusterManager, "_clusterNodeIP", ip);
         Assert.assertEquals(ip, clusterManager.getSelfNodeIP());
     }
+
+    @Test
+    public void publishNotificationTestSkipsThePeersOfAnotherVersion() {
+        ClusterManagerImpl manager = Mockito.spy(clusterManager);
+        Mockito.doReturn(true).when(manager).sendClusterPdus(Mockito.anyString(), Mockito.anyList());
+        String version = ClusterManagerImpl.class.getPackage().getImplementationVersion();
+        Mockito.when(mshostDao.getActiveList(Mockito.any())).thenReturn(List.of(createPeer(manager._msId, version),
+                createPeer(manager._msId + 1, version), createPeer(manager._msId + 2, "4.0.0")));
+
+        manager.publishNotification("subject", "payload");
+
+        Map<String, ?> channels = (Map<String, ?>)ReflectionTestUtils.getField(manager, "_peerChannels");
+        Assert.assertEquals(List.of(Long.toString(manager._msId + 1)), List.copyOf(channels.keySet()));
+    }
 }
@@ -0,0 +1,102 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClusterPduLanesTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ClusterPduLanes lanes = new ClusterPduLanes(executor);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static ClusterServicePdu createPdu(int type, long agentId) {
+        ClusterServicePdu pdu = new ClusterServicePdu();
+        pdu.setPduType(type);
+        pdu.setSourcePeer("1");
+        pdu.setAgentId(agentId);
+        return pdu;
+    }
+
+    @Test
+    public void getLaneTestOrdersMessagesPerAgentAndLeavesRequestsUnordered() {
+        Assert.assertEquals(ClusterPduLanes.getLane(createPdu(ClusterServicePdu.PDU_TYPE_MESSAGE, 4)),
+                ClusterPduLanes.getLane(createPdu(ClusterServicePdu.PDU_TYPE_MESSAGE, 4)));
+        Assert.assertNotEquals(ClusterPduLanes.getLane(createPdu(ClusterServicePdu.PDU_TYPE_MESSAGE, 4)),
+                ClusterPduLanes.getLane(createPdu(ClusterServicePdu.PDU_TYPE_MESSAGE, 5)));
+        Assert.assertNotEquals(ClusterPduLanes.getLane(createPdu(ClusterServicePdu.PDU_TYPE_STATUS_UPDATE, 0)),
+                ClusterPduLanes.getLane(createPdu(ClusterServicePdu.PDU_TYPE_NOTIFICATION, 0)));
+        Assert.assertNull(ClusterPduLanes.getLane(createPdu(ClusterServicePdu.PDU_TYPE_REQUEST, 4)));
+    }
+
+    @Test
+    public void executeTestRunsTheTasksOfALaneInOrder() throws InterruptedException {
+        List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            final int task = i;
+            lanes.execute("1/agent/4", () -> {
+                ran.add(task);
+                done.countDown();
+            });
+        }
+
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(IntStream.range(0, 1000).boxed().collect(Collectors.toList()), ran);
+        for (long deadline = System.currentTimeMillis() + 10000; lanes.getActiveLanes() > 0 && System.currentTimeMillis() < deadline; ) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, lanes.getActiveLanes());
+    }
+
+    @Test
+    public void executeTestDoesNotHoldOtherLanesBehindASlowTask() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherLane = new CountDownLatch(1);
+        CountDownLatch sameLane = new CountDownLatch(1);
+        lanes.execute("1/agent/4", () -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        lanes.execute("1/agent/4", sameLane::countDown);
+        lanes.execute("1/agent/5", otherLane::countDown);
+
+        Assert.assertTrue(otherLane.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, sameLane.getCount());
+        release.countDown();
+        Assert.assertTrue(sameLane.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,138 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClusterPeerChannelTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static ClusterServicePdu createPdu() {
+        ClusterServicePdu pdu = new ClusterServicePdu();
+        pdu.setDestPeer("2");
+        return pdu;
+    }
+
+    @Test
+    public void offerTestSendsThePdusInOrderAndInBatches() throws Exception {
+        List<List<ClusterServicePdu>> batches = new ArrayList<>();
+        CountDownLatch firstBatchSending = new CountDownLatch(1);
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+        ClusterPeerChannel channel = new ClusterPeerChannel("2", 100, 3, (peer, pdus) -> {
+            synchronized (batches) {
+                batches.add(new ArrayList<>(pdus));
+            }
+            firstBatchSending.countDown();
+            try {
+                releaseFirstBatch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }, executor);
+
+        List<ClusterServicePdu> offered = new ArrayList<>();
+        offered.add(createPdu());
+        Assert.assertTrue(channel.offer(offered.get(0), 0));
+        Assert.assertTrue(firstBatchSending.await(10, TimeUnit.SECONDS));
+        // queued while the first batch is in flight
+        for (int i = 0; i < 5; i++) {
+            offered.add(createPdu());
+            Assert.assertTrue(channel.offer(offered.get(i + 1), 0));
+        }
+        releaseFirstBatch.countDown();
+
+        for (long deadline = System.currentTimeMillis() + 10000; channel.getSentPdus() < 6 && System.currentTimeMillis() < deadline; ) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertEquals(6, channel.getSentPdus());
+        Assert.assertEquals(3, channel.getSentBatches());
+        Assert.assertEquals(List.of(1, 3, 2), List.of(batches.get(0).size(), batches.get(1).size(), batches.get(2).size()));
+        List<ClusterServicePdu> sent = new ArrayList<>();
+        batches.forEach(sent::addAll);
+        Assert.assertEquals(offered, sent);
+        Assert.assertEquals(0, channel.getQueuedPdus());
+    }
+
+    @Test
+    public void offerTestDropsThePduWhenTheQueueStaysFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ClusterPeerChannel channel = new ClusterPeerChannel("2", 2, 1, (peer, pdus) -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }, executor);
+
+        Assert.assertTrue(channel.offer(createPdu(), 0));
+        Assert.assertTrue(channel.offer(createPdu(), 0));
+        Assert.assertFalse(channel.offer(createPdu(), 50));
+
+        Assert.assertEquals(2, channel.getQueuedPdus());
+        Assert.assertEquals(1, channel.getThrottledOffers());
+        Assert.assertEquals(1, channel.getDroppedPdus());
+        release.countDown();
+    }
+
+    @Test
+    public void clearTestDropsTheQueuedPdus() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ClusterPeerChannel channel = new ClusterPeerChannel("2", 10, 1, (peer, pdus) -> {
+            sending.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }, executor);
+
+        channel.offer(createPdu(), 0);
+        Assert.assertTrue(sending.await(10, TimeUnit.SECONDS));
+        channel.offer(createPdu(), 0);
+        channel.offer(createPdu(), 0);
+
+        Assert.assertEquals(2, channel.clear().size());
+        release.countDown();
+
+        for (long deadline = System.currentTimeMillis() + 10000; channel.getQueuedPdus() > 0 && System.currentTimeMillis() < deadline; ) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, channel.getQueuedPdus());
+        Assert.assertEquals(1, channel.getFailedPdus());
+        Assert.assertEquals(2, channel.getDroppedPdus());
+    }
+}
@@ -0,0 +1,62 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClusterServicePduCodecTest {
+
+    @Test
+    public void decodeTestReturnsTheEncodedPdus() throws IOException {
+        ClusterServicePdu message = new ClusterServicePdu();
+        message.setSourcePeer("1");
+        message.setDestPeer("2");
+        message.setAgentId(42);
+        message.setStopOnError(true);
+        message.setJsonPackage("[{\"com.cloud.agent.api.ReadyCommand\":{\"name\":\"hôte\"}}]");
+        ClusterServicePdu response = new ClusterServicePdu();
+        response.setPduType(ClusterServicePdu.PDU_TYPE_RESPONSE);
+        response.setAckSequenceId(7);
+
+        List<ClusterServicePdu> pdus = ClusterServicePduCodec.decode(new ByteArrayInputStream(ClusterServicePduCodec.encode(List.of(message, response))));
+
+        Assert.assertEquals(2, pdus.size());
+        ClusterServicePdu decoded = pdus.get(0);
+        Assert.assertEquals(ClusterServicePdu.PDU_TYPE_MESSAGE, decoded.getPduType());
+        Assert.assertEquals(message.getSequenceId(), decoded.getSequenceId());
+        Assert.assertEquals("1", decoded.getSourcePeer());
+        Assert.assertEquals("2", decoded.getDestPeer());
+        Assert.assertEquals(42, decoded.getAgentId());
+        Assert.assertTrue(decoded.isStopOnError());
+        Assert.assertEquals(message.getJsonPackage(), decoded.getJsonPackage());
+        decoded = pdus.get(1);
+        Assert.assertEquals(ClusterServicePdu.PDU_TYPE_RESPONSE, decoded.getPduType());
+        Assert.assertEquals(7, decoded.getAckSequenceId());
+        Assert.assertNull(decoded.getSourcePeer());
+        Assert.assertNull(decoded.getJsonPackage());
+    }
+
+    @Test(expected = IOException.class)
+    public void decodeTestRejectsAFormEncodedRequest() throws IOException {
+        ClusterServicePduCodec.decode(new ByteArrayInputStream("method=5&sourcePeer=1".getBytes()));
+    }
+}
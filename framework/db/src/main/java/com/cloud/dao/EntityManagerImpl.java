@@ -71,6 +71,18 @@ public class EntityManagerImpl extends ManagerBase implements EntityManager {
         return dao.findByUuidIncludingRemoved(uuid);
     }
 
+    @Override
+    public <T> List<T> listByUuidsIncludingRemoved(Class<T> entityType, Collection<String> uuids) {
+        GenericDao<? extends T, String> dao = (GenericDao<? extends T, String>)GenericDaoBase.getDao(entityType);
+        return (List<T>)dao.listByUuidsIncludingRemoved(uuids);
+    }
+
+    @Override
+    public <T, K extends Serializable> List<T> listAllByIds(Class<T> entityType, Collection<K> ids) {
+        GenericDao<? extends T, K> dao = (GenericDao<? extends T, K>)GenericDaoBase.getDao(entityType);
+        return (List<T>)dao.listAllByIds(ids);
+    }
+
     @Override
     public <T> T findByXId(Class<T> entityType, String xid) {
         return null;
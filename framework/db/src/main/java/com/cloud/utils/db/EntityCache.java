@@ -0,0 +1,263 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.cloud.utils.mgmt.JmxUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Bounded cache of entities looked up by id, used by GenericDaoBase for
+ * read-mostly tables.
+ *
+ * Invalidations are applied to every cache of the same table and, when a
+ * publisher has been registered (the cluster manager does so), sent to the
+ * other management servers which apply them through
+ * {@link #onRemoteInvalidation(String, String)}.
+ *
+ * An invalidation done in a transaction is applied again once the
+ * transaction is committed, as a concurrent reader may have cached the row
+ * as it was before the commit, and is only sent to the other management
+ * servers then.
+ */
+public class EntityCache<T> implements EntityCacheMBean {
+    protected static Logger LOGGER = LogManager.getLogger(EntityCache.class);
+
+    public interface InvalidationPublisher {
+        /**
+         * @param table table the invalidated entity lives in.
+         * @param id id of the invalidated entity, null if the whole table is invalidated.
+         */
+        void publish(String table, String id);
+    }
+
+    private static final Map<String, List<EntityCache<?>>> s_cachesByTable = new ConcurrentHashMap<>();
+    private static volatile InvalidationPublisher s_publisher;
+
+    private final String _table;
+    private final Class<?> _idType;
+    private final Cache<Object, T> _cache;
+    private final Cache<String, Object> _idsByUuid;
+    private final AtomicLong _invalidations = new AtomicLong();
+
+    /**
+     * @param timeToLiveSeconds seconds an entry is kept after being loaded, zero or less to keep it until evicted.
+     * @param timeToIdleSeconds seconds an entry is kept without being read, zero or less to disable.
+     */
+    public EntityCache(final String name, final String table, final Class<?> idType, final long maxSize, final long timeToLiveSeconds, final long timeToIdleSeconds) {
+        _table = table;
+        _idType = idType;
+        final Caffeine<Object, Object> builder = Caffeine.newBuilder().maximumSize(maxSize).recordStats();
+        if (timeToLiveSeconds > 0) {
+            builder.expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS);
+        }
+        if (timeToIdleSeconds > 0) {
+            builder.expireAfterAccess(timeToIdleSeconds, TimeUnit.SECONDS);
+        }
+        _cache = builder.build();
+        // uuids never change, so the mapping only has to be bounded, not expired
+        _idsByUuid = Caffeine.newBuilder().maximumSize(maxSize).build();
+
+        s_cachesByTable.computeIfAbsent(table, t -> new CopyOnWriteArrayList<>()).add(this);
+        try {
+            JmxUtil.registerMBean("EntityCache", name, this);
+        } catch (final Exception e) {
+            LOGGER.warn("Unable to register the entity cache {} with JMX: {}", name, e.getMessage());
+        }
+    }
+
+    public static void setInvalidationPublisher(final InvalidationPublisher publisher) {
+        s_publisher = publisher;
+    }
+
+    public T get(final Object id) {
+        return _cache.getIfPresent(id);
+    }
+
+    public void put(final Object id, final T entity) {
+        _cache.put(id, entity);
+    }
+
+    public Object getIdByUuid(final String uuid) {
+        return _idsByUuid.getIfPresent(uuid);
+    }
+
+    public void putIdByUuid(final String uuid, final Object id) {
+        _idsByUuid.put(uuid, id);
+    }
+
+    public void evictUuid(final String uuid) {
+        _idsByUuid.invalidate(uuid);
+    }
+
+    /**
+     * Drops the entry from this cache only, without telling other caches or servers.
+     */
+    public void evict(final Object id) {
+        _cache.invalidate(id);
+    }
+
+    /**
+     * Drops the entity from every cache of the table, here and on the other management servers.
+     */
+    public void invalidate(final Object id) {
+        invalidateLocally(_table, id, true);
+        TransactionLegacy.runAfterCommit(() -> {
+            invalidateLocally(_table, id, false);
+            publish(_table, String.valueOf(id));
+        });
+    }
+
+    /**
+     * Drops all entities of the table, here and on the other management servers.
+     */
+    public void invalidateAll() {
+        invalidateLocally(_table, null, true);
+        TransactionLegacy.runAfterCommit(() -> {
+            invalidateLocally(_table, null, false);
+            publish(_table, null);
+        });
+    }
+
+    /**
+     * Applies an invalidation published by another management server.
+     */
+    public static void onRemoteInvalidation(final String table, final String id) {
+        final List<EntityCache<?>> caches = s_cachesByTable.get(table);
+        if (caches == null) {
+            return;
+        }
+        for (final EntityCache<?> cache : caches) {
+            final Object key = id == null ? null : cache.toId(id);
+            if (id != null && key == null) {
+                cache.clearEntries();
+            } else {
+                cache.invalidateEntry(key, true);
+            }
+        }
+    }
+
+    private static void invalidateLocally(final String table, final Object id, final boolean count) {
+        final List<EntityCache<?>> caches = s_cachesByTable.get(table);
+        if (caches == null) {
+            return;
+        }
+        for (final EntityCache<?> cache : caches) {
+            cache.invalidateEntry(id, count);
+        }
+    }
+
+    private static void publish(final String table, final String id) {
+        final InvalidationPublisher publisher = s_publisher;
+        if (publisher == null) {
+            return;
+        }
+        try {
+            publisher.publish(table, id);
+        } catch (final RuntimeException e) {
+            LOGGER.warn("Unable to publish the invalidation of {} {}: {}", table, id, e.getMessage());
+        }
+    }
+
+    private void invalidateEntry(final Object id, final boolean count) {
+        if (count) {
+            _invalidations.incrementAndGet();
+        }
+        if (id == null) {
+            _cache.invalidateAll();
+        } else {
+            _cache.invalidate(id);
+        }
+    }
+
+    private void clearEntries() {
+        invalidateEntry(null, true);
+    }
+
+    /**
+     * Converts an id received as string back to the key type, null if that is not possible.
+     */
+    protected Object toId(final String id) {
+        try {
+            if (_idType == Long.class || _idType == long.class) {
+                return Long.valueOf(id);
+            } else if (_idType == Integer.class || _idType == int.class) {
+                return Integer.valueOf(id);
+            } else if (_idType == String.class) {
+                return id;
+            }
+        } catch (final NumberFormatException e) {
+            LOGGER.debug("Unable to convert {} to an id of {}", id, _table);
+        }
+        return null;
+    }
+
+    @Override
+    public String getTable() {
+        return _table;
+    }
+
+    @Override
+    public long getSize() {
+        return _cache.estimatedSize();
+    }
+
+    @Override
+    public long getHitCount() {
+        return _cache.stats().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return _cache.stats().missCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return _cache.stats().hitRate();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return _cache.stats().evictionCount();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return _invalidations.get();
+    }
+
+    @Override
+    public void clear() {
+        clearEntries();
+    }
+
+    @Override
+    public String toString() {
+        return "EntityCache[" + _table + ", size=" + getSize() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]";
+    }
+}
@@ -38,6 +38,9 @@ public class Filter {
     Long _offset;
     Long _limit;
     String _orderBy;
+    String _seekColumn;
+    boolean _seekAscending;
+    Object _seekAfter;
 
     /**
      * @param clazz the VO object type
@@ -65,6 +68,26 @@ public class Filter {
         _limit = limit;
     }
 
+    /**
+     * Creates a keyset (seek) pagination filter.  Instead of skipping the first
+     * rows with an offset, the rows are ordered by the given field and only the
+     * ones after the last value of the previous page are selected, so fetching
+     * any page costs the same as fetching the first one.  The field must be
+     * unique, the id of the entity usually.
+     * @param clazz the VO object type
+     * @param field name of the unique field to order and seek by
+     * @param ascending order of the field
+     * @param seekAfter value of the field on the last row of the previous page, null for the first page
+     * @param limit page size
+     */
+    public static Filter seek(Class<?> clazz, String field, boolean ascending, Object seekAfter, Long limit) {
+        Filter filter = new Filter(clazz, field, ascending, null, limit);
+        filter._seekColumn = getColumnName(clazz, field, null);
+        filter._seekAscending = ascending;
+        filter._seekAfter = seekAfter;
+        return filter;
+    }
+
     /**
      * Note that this copy constructor does not copy offset and limit.
      * @param that filter
@@ -83,6 +106,17 @@ public class Filter {
         if (field == null) {
             return;
         }
+        StringBuilder order = new StringBuilder(getColumnName(clazz, field, tableAlias));
+        order.append(ascending ? " ASC " : " DESC ");
+
+        if (_orderBy == null) {
+            _orderBy = order.insert(0, " ORDER BY ").toString();
+        } else {
+            _orderBy = order.insert(0, _orderBy + ", ").toString();
+        }
+    }
+
+    private static String getColumnName(Class<?> clazz, String field, String tableAlias) {
         Field f;
         Pair<Class<?>, Field> pair = ReflectUtil.getAnyField(clazz, field);
         assert (pair != null) : "Can't find field " + field + " in " + clazz.getName();
@@ -92,21 +126,15 @@ public class Filter {
         Column column = f.getAnnotation(Column.class);
         String name = column != null ? column.name() : field;
 
-        StringBuilder order = new StringBuilder();
+        StringBuilder columnName = new StringBuilder();
         if (StringUtils.isNotBlank(tableAlias)) {
-            order.append(tableAlias);
+            columnName.append(tableAlias);
         } else if (column == null || column.table() == null || column.table().length() == 0) {
-            order.append(DbUtil.getTableName(clazz));
-        } else {
-            order.append(column.table());
-        }
-        order.append(".").append(name).append(ascending ? " ASC " : " DESC ");
-
-        if (_orderBy == null) {
-            _orderBy = order.insert(0, " ORDER BY ").toString();
+            columnName.append(DbUtil.getTableName(clazz));
         } else {
-            _orderBy = order.insert(0, _orderBy + ", ").toString();
+            columnName.append(column.table());
         }
+        return columnName.append(".").append(name).toString();
     }
 
     public String getOrderBy() {
@@ -128,4 +156,22 @@ public class Filter {
     public void setLimit(Long limit) {
         _limit = limit;
     }
+
+    public boolean isSeek() {
+        return _seekColumn != null;
+    }
+
+    public Object getSeekAfter() {
+        return _seekAfter;
+    }
+
+    /**
+     * @return the condition selecting the rows after the seek value, null if there's none.
+     */
+    public String getSeekClause() {
+        if (_seekColumn == null || _seekAfter == null) {
+            return null;
+        }
+        return _seekColumn + (_seekAscending ? " > ?" : " < ?");
+    }
 }
@@ -19,6 +19,7 @@ package com.cloud.utils.db;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -65,6 +66,16 @@ public interface GenericDao<T, ID extends Serializable> {
     // Finds one unique VO using uuid including removed entities
     T findByUuidIncludingRemoved(String uuid);
 
+    // Lists the VOs of the uuids, including removed entities, in a single query
+    default List<T> listByUuidsIncludingRemoved(Collection<String> uuids) {
+        return new ArrayList<>();
+    }
+
+    // Lists the VOs of the ids in a single query
+    default List<T> listAllByIds(Collection<ID> ids) {
+        return new ArrayList<>();
+    }
+
     /**
      * @return VO object ready to be used for update.  It won't have any fields filled in.
      */
@@ -178,6 +189,17 @@ public interface GenericDao<T, ID extends Serializable> {
 
     List<T> searchIncludingRemoved(SearchCriteria<T> sc, final Filter filter, final Boolean lock, final boolean cache);
 
+    /**
+     * Iterates over the entities matching the search criteria in the order of their ids.
+     * The entities are fetched in pages of fetchSize rows using keyset pagination, so the
+     * memory used does not depend on the number of rows and the caller is free to use the
+     * database while iterating.
+     * @param sc search criteria, the removed entities are skipped.
+     * @param fetchSize number of entities fetched from the database at a time.
+     * @return iterator over the matching entities.
+     */
+    Iterator<T> searchIterator(SearchCriteria<T> sc, int fetchSize);
+
     List<T> searchIncludingRemoved(SearchCriteria<T> sc, final Filter filter, final Boolean lock, final boolean cache, final boolean enableQueryCache);
 
     /**
@@ -210,6 +232,23 @@ public interface GenericDao<T, ID extends Serializable> {
      **/
     T persist(T entity);
 
+    /**
+     * Persists the entity beans using JDBC batches, which saves a round trip to the
+     * database per entity.  The id field of each entity is updated with the new id.
+     * Unlike {@link #persist(Object)}, the entities are not reloaded from the database.
+     * @param entities new beans to persist.
+     * @return the given entities.
+     **/
+    List<T> persistBatch(List<T> entities);
+
+    /**
+     * Updates the changes made to the entity beans, grouping the entities that
+     * changed the same columns in the same JDBC batch.
+     * @param entities beans retrieved from this dao.
+     * @return rows updated.
+     **/
+    int updateBatch(List<T> entities);
+
     /**
      * remove the entity bean.  This will call delete automatically if
      * the entity bean does not have a removed field.
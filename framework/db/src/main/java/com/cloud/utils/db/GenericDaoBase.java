@@ -22,6 +22,7 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.math.BigInteger;
@@ -42,8 +43,11 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.TimeZone;
 import java.util.UUID;
@@ -86,9 +90,6 @@ import net.sf.cglib.proxy.Enhancer;
 import net.sf.cglib.proxy.Factory;
 import net.sf.cglib.proxy.MethodInterceptor;
 import net.sf.cglib.proxy.NoOp;
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Element;
 
 /**
  *  GenericDaoBase is a simple way to implement DAOs.  It DOES NOT
@@ -161,6 +162,11 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     protected Enhancer _enhancer;
     protected Factory _factory;
     protected Enhancer _searchEnhancer;
+    /**
+     * Search without conditions shared by the criteria of {@link #createSearchCriteria()}, so they share its
+     * statement cache.
+     */
+    private volatile SearchBuilder<T> _emptySearch;
     protected int _timeoutSeconds;
 
     protected final static CallbackFilter s_callbackFilter = new UpdateFilter();
@@ -175,6 +181,11 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
 
     protected static final SequenceFetcher s_seqFetcher = SequenceFetcher.getInstance();
 
+    /**
+     * Maximum number of rows sent in a single JDBC batch by persistBatch and updateBatch.
+     */
+    protected static final int BATCH_SIZE = 500;
+
     public static <J> GenericDao<? extends J, ? extends Serializable> getDao(Class<J> entityType) {
         @SuppressWarnings("unchecked")
         GenericDao<? extends J, ? extends Serializable> dao = (GenericDao<? extends J, ? extends Serializable>)s_daoMaps.get(entityType);
@@ -370,26 +381,13 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
 
     @Override
     public List<T> searchIncludingRemoved(SearchCriteria<T> sc, final Filter filter, final Boolean lock, final boolean cache, final boolean enableQueryCache) {
-        String clause = sc != null ? sc.getWhereClause() : null;
-        if (clause != null && clause.length() == 0) {
-            clause = null;
-        }
+        final SearchSqlCache.Entry searchSql = buildSearchSql(sc, filter, enableQueryCache ? SearchSqlKind.QUERY_CACHE_SELECT : SearchSqlKind.SELECT);
+        final boolean hasCriteria = searchSql.hasCriteria();
+        final List<Attribute> joinAttrList = searchSql.getJoinAttributes();
+        final Collection<JoinBuilder<SearchCriteria<?>>> joins = sc != null ? sc.getJoins() : null;
+        final List<Object> groupByValues = getGroupByValues(sc);
 
-        final StringBuilder str = createPartialSelectSql(sc, clause != null, enableQueryCache);
-        if (clause != null) {
-            str.append(clause);
-        }
-
-        Collection<JoinBuilder<SearchCriteria<?>>> joins = null;
-        List<Attribute> joinAttrList = null;
-        if (sc != null) {
-            joins = sc.getJoins();
-            if (joins != null) {
-                joinAttrList = addJoins(str, joins);
-            }
-        }
-
-        List<Object> groupByValues = addGroupBy(str, sc);
+        final StringBuilder str = new StringBuilder(searchSql.getSql());
         addFilter(str, filter);
 
         final TransactionLegacy txn = TransactionLegacy.currentTxn();
@@ -412,11 +410,12 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
                 }
             }
 
-            if (clause != null) {
+            if (hasCriteria) {
                 for (final Pair<Attribute, Object> value : sc.getValues()) {
                     prepareAttribute(i++, pstmt, value.first(), value.second());
                 }
             }
+            i = prepareSeekValue(i, pstmt, filter);
 
             if (joins != null) {
                 i = addJoinAttributes(i, pstmt, joins);
@@ -454,24 +453,13 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         if (sc.isSelectAll()) {
             return (List<M>)searchIncludingRemoved((SearchCriteria<T>)sc, filter, null, false);
         }
-        String clause = sc.getWhereClause();
-        if (clause != null && clause.length() == 0) {
-            clause = null;
-        }
+        final SearchSqlCache.Entry searchSql = buildSearchSql(sc, filter, SearchSqlKind.SELECT);
+        final boolean hasCriteria = searchSql.hasCriteria();
+        final List<Attribute> joinAttrList = searchSql.getJoinAttributes();
+        final Collection<JoinBuilder<SearchCriteria<?>>> joins = sc.getJoins();
+        final List<Object> groupByValues = getGroupByValues(sc);
 
-        final StringBuilder str = createPartialSelectSql(sc, clause != null);
-        if (clause != null) {
-            str.append(clause);
-        }
-
-        Collection<JoinBuilder<SearchCriteria<?>>> joins = null;
-        joins = sc.getJoins();
-        List<Attribute> joinAttrList = null;
-        if (joins != null) {
-            joinAttrList = addJoins(str, joins);
-        }
-
-        List<Object> groupByValues = addGroupBy(str, sc);
+        final StringBuilder str = new StringBuilder(searchSql.getSql());
         addFilter(str, filter);
 
         final String sql = str.toString();
@@ -488,11 +476,12 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
                 }
             }
 
-            if (clause != null) {
+            if (hasCriteria) {
                 for (final Pair<Attribute, Object> value : sc.getValues()) {
                     prepareAttribute(i++, pstmt, value.first(), value.second());
                 }
             }
+            i = prepareSeekValue(i, pstmt, filter);
 
             if (joins != null) {
                 i = addJoinAttributes(i, pstmt, joins);
@@ -814,13 +803,13 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     }
 
     protected int update(ID id, UpdateBuilder ub, T entity) {
-        if (_cache != null) {
-            _cache.remove(id);
-        }
         SearchCriteria<T> sc = createSearchCriteria();
         sc.addAnd(_idAttributes.get(_table)[0], SearchCriteria.Op.EQ, id);
         TransactionLegacy txn = TransactionLegacy.currentTxn();
         txn.start();
+        if (_cache != null) {
+            _cache.invalidate(id);
+        }
 
         try {
             if (ub.getCollectionChanges() != null) {
@@ -830,7 +819,7 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             throw new CloudRuntimeException("Unable to persist element collection", e);
         }
 
-        int rowsUpdated = update(ub, sc, null);
+        int rowsUpdated = doUpdate(ub, sc, null);
 
         txn.commit();
 
@@ -838,6 +827,14 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     }
 
     public int update(UpdateBuilder ub, final SearchCriteria<?> sc, Integer rows) {
+        final int rowsUpdated = doUpdate(ub, sc, rows);
+        if (_cache != null && rowsUpdated > 0) {
+            _cache.invalidateAll();
+        }
+        return rowsUpdated;
+    }
+
+    private int doUpdate(UpdateBuilder ub, final SearchCriteria<?> sc, Integer rows) {
         StringBuilder sql = null;
         PreparedStatement pstmt = null;
         final TransactionLegacy txn = TransactionLegacy.currentTxn();
@@ -984,26 +981,49 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     @DB()
     @SuppressWarnings("unchecked")
     public T findById(final ID id) {
-        T result = null;
-        if (_cache != null) {
-            final Element element = _cache.get(id);
-            if (element == null) {
-                result = lockRow(id, null);
-            } else {
-                result = (T)element.getObjectValue();
+        if (_cache != null && id != null) {
+            final T cached = _cache.get(id);
+            if (cached != null) {
+                return copyOf(cached);
             }
-        } else {
-            result = lockRow(id, null);
         }
-        return result;
+        return lockRow(id, null);
     }
 
     @Override
     @DB()
+    @SuppressWarnings("unchecked")
     public T findByUuid(final String uuid) {
+        final Attribute uuidAttr = _cache != null && uuid != null ? findAttributeByFieldName("uuid") : null;
+        if (uuidAttr != null) {
+            final ID id = (ID)_cache.getIdByUuid(uuid);
+            if (id != null) {
+                final T entity = findById(id);
+                if (entity != null && uuid.equals(getFieldValue(uuidAttr, entity))) {
+                    return entity;
+                }
+                _cache.evictUuid(uuid);
+            }
+        }
+
         SearchCriteria<T> sc = createSearchCriteria();
         sc.addAnd("uuid", SearchCriteria.Op.EQ, uuid);
-        return findOneBy(sc);
+        final T result = findOneBy(sc);
+        if (uuidAttr != null && result != null) {
+            final Object id = getFieldValue(_idAttributes.get(_table)[0], result);
+            if (id != null) {
+                _cache.putIdByUuid(uuid, id);
+            }
+        }
+        return result;
+    }
+
+    private Object getFieldValue(final Attribute attr, final T entity) {
+        try {
+            return attr.field.get(entity);
+        } catch (final IllegalAccessException e) {
+            return null;
+        }
     }
 
     @Override
@@ -1017,6 +1037,28 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         return listBy(sc);
     }
 
+    @Override
+    @DB()
+    public List<T> listByUuidsIncludingRemoved(final Collection<String> uuids) {
+        if (org.apache.commons.collections.CollectionUtils.isEmpty(uuids)) {
+            return Collections.emptyList();
+        }
+        SearchCriteria<T> sc = createSearchCriteria();
+        sc.addAnd("uuid", SearchCriteria.Op.IN, uuids.toArray());
+        return listIncludingRemovedBy(sc);
+    }
+
+    @Override
+    @DB()
+    public List<T> listAllByIds(final Collection<ID> ids) {
+        if (org.apache.commons.collections.CollectionUtils.isEmpty(ids)) {
+            return Collections.emptyList();
+        }
+        SearchCriteria<T> sc = createSearchCriteria();
+        sc.addAnd(_idAttributes.get(_table)[0], SearchCriteria.Op.IN, ids.toArray());
+        return listBy(sc);
+    }
+
     @Override
     @DB()
     public T findByUuidIncludingRemoved(final String uuid) {
@@ -1028,18 +1070,13 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     @Override
     @DB()
     public T findByIdIncludingRemoved(final ID id) {
-        T result = null;
-        if (_cache != null) {
-            final Element element = _cache.get(id);
-            if (element == null) {
-                result = findById(id, true, null);
-            } else {
-                result = (T)element.getObjectValue();
+        if (_cache != null && id != null) {
+            final T cached = _cache.get(id);
+            if (cached != null) {
+                return copyOf(cached);
             }
-        } else {
-            result = findById(id, true, null);
         }
-        return result;
+        return findById(id, true, null);
     }
 
     @Override
@@ -1049,9 +1086,6 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             return findById(id);
         }
 
-        if (_cache != null) {
-            _cache.remove(id);
-        }
         return lockRow(id, null);
     }
 
@@ -1171,10 +1205,139 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
                 if (filter.getLimit() != null) {
                     sql.append(", ").append(filter.getLimit());
                 }
+            } else if (filter.isSeek() && filter.getLimit() != null) {
+                sql.append(" LIMIT ").append(filter.getLimit());
             }
         }
     }
 
+    /**
+     * Appends the keyset pagination condition of the filter, if any, to the where clause of the search criteria.
+     */
+    protected String addSeekClause(final String clause, final Filter filter) {
+        final String seekClause = filter != null ? filter.getSeekClause() : null;
+        if (seekClause == null) {
+            return clause;
+        }
+        return clause == null ? seekClause : "(" + clause + ") AND " + seekClause;
+    }
+
+    /**
+     * Kinds of statements rendered by {@link #buildSearchSql}.
+     */
+    protected enum SearchSqlKind {
+        SELECT, QUERY_CACHE_SELECT, COUNT
+    }
+
+    /**
+     * Renders the statement of a search, up to the ORDER BY and LIMIT of the filter which are appended by
+     * {@link #addFilter}.  The text only depends on the shape of the search criteria, so it is kept in the cache of
+     * the search builder the criteria was created by and reused by the next searches of the same shape.
+     */
+    protected SearchSqlCache.Entry buildSearchSql(final SearchCriteria<?> sc, final Filter filter, final SearchSqlKind kind) {
+        final String seekClause = kind != SearchSqlKind.COUNT && filter != null ? filter.getSeekClause() : null;
+        List<Object> key = null;
+        if (sc != null) {
+            key = sc.getSqlCacheKey(this, kind, seekClause);
+            if (key != null) {
+                final SearchSqlCache.Entry entry = sc.getSqlCache().get(key);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+        }
+
+        String clause = sc != null ? sc.getWhereClause() : null;
+        if (clause != null && clause.length() == 0) {
+            clause = null;
+        }
+        final boolean hasCriteria = clause != null;
+
+        final StringBuilder str;
+        if (kind == SearchSqlKind.COUNT) {
+            str = createCountSelect(sc, clause != null);
+        } else {
+            clause = addSeekClause(clause, filter);
+            str = createPartialSelectSql(sc, clause != null, kind == SearchSqlKind.QUERY_CACHE_SELECT);
+        }
+        if (clause != null) {
+            str.append(clause);
+        }
+
+        List<Attribute> joinAttrList = null;
+        if (sc != null && sc.getJoins() != null) {
+            joinAttrList = addJoins(str, sc.getJoins());
+        }
+        if (kind != SearchSqlKind.COUNT) {
+            addGroupBy(str, sc);
+        }
+
+        final SearchSqlCache.Entry entry = new SearchSqlCache.Entry(str.toString(), joinAttrList, hasCriteria);
+        if (key != null) {
+            sc.getSqlCache().put(key, entry);
+        }
+        return entry;
+    }
+
+    protected List<Object> getGroupByValues(SearchCriteria<?> sc) {
+        final Pair<GroupBy<?, ?, ?>, List<Object>> groupBys = sc != null ? sc.getGroupBy() : null;
+        return groupBys != null ? groupBys.second() : null;
+    }
+
+    protected int prepareSeekValue(int index, final PreparedStatement pstmt, final Filter filter) throws SQLException {
+        if (filter != null && filter.getSeekClause() != null) {
+            pstmt.setObject(index++, filter.getSeekAfter());
+        }
+        return index;
+    }
+
+    @Override
+    public Iterator<T> searchIterator(final SearchCriteria<T> sc, final int fetchSize) {
+        if (_idField == null || _idField.getAnnotation(EmbeddedId.class) != null) {
+            throw new CloudRuntimeException("Unable to iterate over " + _table + " without a single id column");
+        }
+        if (fetchSize <= 0) {
+            throw new CloudRuntimeException("The fetch size must be positive: " + fetchSize);
+        }
+        final SearchCriteria<T> criteria = checkAndSetRemovedIsNull(sc);
+        return new Iterator<T>() {
+            private List<T> page = Collections.emptyList();
+            private int position;
+            private Object lastId;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (position < page.size()) {
+                    return true;
+                }
+                if (exhausted) {
+                    return false;
+                }
+                page = searchIncludingRemoved(criteria, Filter.seek(_entityBeanType, _idField.getName(), true, lastId, (long)fetchSize), null, false);
+                position = 0;
+                exhausted = page.size() < fetchSize;
+                if (page.isEmpty()) {
+                    return false;
+                }
+                try {
+                    lastId = _idField.get(page.get(page.size() - 1));
+                } catch (final IllegalAccessException e) {
+                    throw new CloudRuntimeException("Unable to read the id of " + _table, e);
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(position++);
+            }
+        };
+    }
+
     @Override
     @DB()
     public List<T> listAllIncludingRemoved(final Filter filter) {
@@ -1276,11 +1439,11 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
                 }
                 pstmt.executeUpdate();
             }
-
-            txn.commit();
             if (_cache != null) {
-                _cache.remove(id);
+                _cache.invalidate(id);
             }
+
+            txn.commit();
             return true;
         } catch (final SQLException e) {
             logger.error("DB Exception on: " + pstmt, e);
@@ -1313,7 +1476,11 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             for (final Pair<Attribute, Object> value : sc.getValues()) {
                 prepareAttribute(++i, pstmt, value.first(), value.second());
             }
-            return pstmt.executeUpdate();
+            final int result = pstmt.executeUpdate();
+            if (_cache != null && result > 0) {
+                _cache.invalidateAll();
+            }
+            return result;
         } catch (final SQLException e) {
             logger.error("DB Exception on: " + pstmt, e);
             throw new CloudRuntimeException("Unable to expunge on DB, due to: " + e.getLocalizedMessage());
@@ -1683,6 +1850,149 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         return _idField != null ? findByIdIncludingRemoved(id) : null;
     }
 
+    @Override
+    @DB()
+    public List<T> persistBatch(final List<T> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return entities;
+        }
+
+        final TransactionLegacy txn = TransactionLegacy.currentTxn();
+        if (_insertSqls.size() != 1 || !CollectionUtils.isNullOrEmpty(_ecAttributes)) {
+            // rows of secondary tables and element collections need the id generated for the primary row first
+            txn.start();
+            for (final T entity : entities) {
+                persist(entity);
+            }
+            txn.commit();
+            return entities;
+        }
+
+        final String sql = _insertSqls.get(0).first();
+        final Attribute[] attrs = _insertSqls.get(0).second();
+        PreparedStatement pstmt = null;
+        try {
+            txn.start();
+            pstmt = txn.prepareAutoCloseStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            for (int from = 0; from < entities.size(); from += BATCH_SIZE) {
+                final List<T> chunk = entities.subList(from, Math.min(from + BATCH_SIZE, entities.size()));
+                for (final T entity : chunk) {
+                    assert !Enhancer.isEnhanced(entity.getClass()) : "Entity is already persisted, use updateBatch";
+                    prepareAttributes(pstmt, entity, attrs, 1);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                setGeneratedIds(pstmt, chunk);
+            }
+            txn.commit();
+        } catch (final SQLException e) {
+            logger.error("DB Exception on batch insert: " + pstmt, e);
+            handleEntityExistsException(e);
+            throw new CloudRuntimeException("Unable to persist on DB, due to: " + e.getLocalizedMessage());
+        }
+        return entities;
+    }
+
+    private void setGeneratedIds(final PreparedStatement pstmt, final List<T> entities) throws SQLException {
+        if (_idField == null) {
+            return;
+        }
+        try (ResultSet rs = pstmt.getGeneratedKeys()) {
+            for (final T entity : entities) {
+                if (rs == null || !rs.next()) {
+                    return;
+                }
+                final Object id = rs.getObject(1);
+                if (id instanceof BigInteger) {
+                    _idField.set(entity, ((BigInteger) id).longValue());
+                } else if (id != null) {
+                    _idField.set(entity, id);
+                }
+            }
+        } catch (final IllegalAccessException e) {
+            throw new CloudRuntimeException("Yikes! ", e);
+        }
+    }
+
+    @Override
+    @DB()
+    @SuppressWarnings("unchecked")
+    public int updateBatch(final List<T> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return 0;
+        }
+
+        // entities changing the same columns share the statement and go in the same batch
+        final Map<String, List<Pair<ID, UpdateBuilder>>> batches = new LinkedHashMap<>();
+        int rowsUpdated = 0;
+        final TransactionLegacy txn = TransactionLegacy.currentTxn();
+        txn.start();
+        for (final T entity : entities) {
+            assert Enhancer.isEnhanced(entity.getClass()) : "Entity is not generated by this dao";
+            final ID id;
+            try {
+                id = (ID)_idField.get(entity);
+            } catch (final IllegalAccessException e) {
+                throw new CloudRuntimeException("How can it be illegal access...come on", e);
+            }
+            final UpdateBuilder ub = getUpdateBuilder(entity);
+            if (ub.getCollectionChanges() != null) {
+                rowsUpdated += update(id, ub, entity);
+                continue;
+            }
+            final StringBuilder sql = ub.toSql(_tables);
+            if (sql != null) {
+                batches.computeIfAbsent(sql.toString(), k -> new ArrayList<>()).add(new Pair<>(id, ub));
+            }
+        }
+
+        for (final Map.Entry<String, List<Pair<ID, UpdateBuilder>>> batch : batches.entrySet()) {
+            rowsUpdated += executeUpdateBatch(batch.getKey(), batch.getValue());
+        }
+        txn.commit();
+        return rowsUpdated;
+    }
+
+    private int executeUpdateBatch(final String updateSql, final List<Pair<ID, UpdateBuilder>> rows) {
+        final TransactionLegacy txn = TransactionLegacy.currentTxn();
+        PreparedStatement pstmt = null;
+        int rowsUpdated = 0;
+        try {
+            String sql = null;
+            for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+                for (final Pair<ID, UpdateBuilder> row : rows.subList(from, Math.min(from + BATCH_SIZE, rows.size()))) {
+                    if (_cache != null) {
+                        _cache.invalidate(row.first());
+                    }
+                    final SearchCriteria<T> sc = createSearchCriteria();
+                    sc.addAnd(_idAttributes.get(_table)[0], SearchCriteria.Op.EQ, row.first());
+                    if (pstmt == null) {
+                        sql = updateSql + sc.getWhereClause();
+                        pstmt = txn.prepareAutoCloseStatement(sql);
+                    }
+
+                    int i = 1;
+                    for (final Ternary<Attribute, Boolean, Object> value : row.second().getChanges()) {
+                        prepareAttribute(i++, pstmt, value.first(), value.third());
+                    }
+                    for (final Pair<Attribute, Object> value : sc.getValues()) {
+                        prepareAttribute(i++, pstmt, value.first(), value.second());
+                    }
+                    pstmt.addBatch();
+                    row.second().clear();
+                }
+                for (final int count : pstmt.executeBatch()) {
+                    rowsUpdated += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+                }
+            }
+        } catch (final SQLException e) {
+            logger.error("DB Exception on batch update: " + pstmt, e);
+            handleEntityExistsException(e);
+            throw new CloudRuntimeException("Unable to update on DB, due to: " + e.getLocalizedMessage());
+        }
+        return rowsUpdated;
+    }
+
     protected void insertElementCollection(T entity, Attribute idAttribute, ID id, Map<Attribute, Object> ecAttributes) throws SQLException {
         TransactionLegacy txn = TransactionLegacy.currentTxn();
         txn.start();
@@ -1890,12 +2200,8 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
 
         toEntityBean(result, entity);
 
-        if (cache && _cache != null) {
-            try {
-                _cache.put(new Element(_idField.get(entity), entity));
-            } catch (final Exception e) {
-                logger.debug("Can't put it in the cache", e);
-            }
+        if (cache) {
+            cacheEntity(entity);
         }
 
         return entity;
@@ -1912,12 +2218,8 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             throw new CloudRuntimeException("Illegal Access", e1);
         }
         toEntityBean(result, entity);
-        if (cache && _cache != null) {
-            try {
-                _cache.put(new Element(_idField.get(entity), entity));
-            } catch (final Exception e) {
-                logger.debug("Can't put it in the cache", e);
-            }
+        if (cache) {
+            cacheEntity(entity);
         }
 
         return entity;
@@ -2045,10 +2347,10 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             }
 
             final int result = pstmt.executeUpdate();
-            txn.commit();
             if (_cache != null) {
-                _cache.remove(id);
+                _cache.invalidate(id);
             }
+            txn.commit();
             return result > 0;
         } catch (final SQLException e) {
             logger.error("DB Exception on: " + pstmt, e);
@@ -2089,10 +2391,10 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             }
 
             final int result = pstmt.executeUpdate();
-            txn.commit();
             if (_cache != null) {
-                _cache.remove(id);
+                _cache.invalidate(id);
             }
+            txn.commit();
             return result > 0;
         } catch (final SQLException e) {
             logger.error("DB Exception on: " + pstmt, e);
@@ -2113,25 +2415,85 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         return update(ub, sc, null);
     }
 
-    protected Cache _cache;
+    protected EntityCache<T> _cache;
+    private int _defaultCacheSize = 0;
+    private int _defaultCacheTimeToLive = 300;
+    private Field[] _cachedEntityFields;
+
+    /**
+     * Turns on the findById cache for this DAO unless the configuration says otherwise.
+     * Only meant for read-mostly tables that are exclusively changed through this DAO,
+     * as rows updated with hand written SQL are not invalidated.
+     *
+     * @param size maximum number of entities kept.
+     * @param timeToLive seconds an entity is kept, -1 to keep it until evicted.
+     */
+    protected void enableCache(final int size, final int timeToLive) {
+        _defaultCacheSize = size;
+        _defaultCacheTimeToLive = timeToLive;
+    }
 
     @DB()
     protected void createCache(final Map<String, ? extends Object> params) {
         final String value = (String)params.get("cache.size");
-
-        if (value != null) {
-            final CacheManager cm = CacheManager.create();
-            final int maxElements = NumbersUtil.parseInt(value, 0);
-            final int live = NumbersUtil.parseInt((String)params.get("cache.time.to.live"), 300);
-            final int idle = NumbersUtil.parseInt((String)params.get("cache.time.to.idle"), 300);
-            _cache = new Cache(getName(), maxElements, false, live == -1, live == -1 ? Integer.MAX_VALUE : live, idle);
-            cm.addCache(_cache);
+        final int maxElements = value != null ? NumbersUtil.parseInt(value, 0) : _defaultCacheSize;
+
+        if (maxElements > 0 && _idField != null && _idField.getAnnotation(EmbeddedId.class) == null) {
+            final int live = NumbersUtil.parseInt((String)params.get("cache.time.to.live"), _defaultCacheTimeToLive);
+            final int idle = NumbersUtil.parseInt((String)params.get("cache.time.to.idle"), 0);
+            final String cacheName = getName() != null ? getName() : getClass().getSimpleName();
+            _cachedEntityFields = getCachedEntityFields();
+            _cache = new EntityCache<T>(cacheName, _table, _idField.getType(), maxElements, live, idle);
             logger.info("Cache created: " + _cache.toString());
         } else {
             _cache = null;
         }
     }
 
+    private Field[] getCachedEntityFields() {
+        final List<Field> fields = new ArrayList<Field>();
+        for (Class<?> clazz = _entityBeanType; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (final Field field : clazz.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+        }
+        return fields.toArray(new Field[fields.size()]);
+    }
+
+    /**
+     * Callers are free to modify what they get from the DAO, so the cache only
+     * ever hands out copies of the entities it holds.
+     */
+    @SuppressWarnings("unchecked")
+    protected T copyOf(final T entity) {
+        final T copy = (T)_factory.newInstance(new Callback[] {NoOp.INSTANCE, new UpdateBuilder(this)});
+        try {
+            for (final Field field : _cachedEntityFields) {
+                field.set(copy, field.get(entity));
+            }
+        } catch (final IllegalAccessException e) {
+            throw new CloudRuntimeException("Unable to copy " + _entityBeanType.getSimpleName() + " from the cache", e);
+        }
+        return copy;
+    }
+
+    protected void cacheEntity(final T entity) {
+        if (_cache == null) {
+            return;
+        }
+        try {
+            if (_removed != null && _removed.second().field.get(entity) != null) {
+                return;
+            }
+            _cache.put(_idField.get(entity), copyOf(entity));
+        } catch (final Exception e) {
+            logger.debug("Can't put it in the cache", e);
+        }
+    }
+
     @Override
     @DB()
     public boolean configure(final String name, final Map<String, Object> params) throws ConfigurationException {
@@ -2165,7 +2527,12 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     @Override
     @DB()
     public SearchCriteria<T> createSearchCriteria() {
-        SearchBuilder<T> builder = createSearchBuilder();
+        SearchBuilder<T> builder = _emptySearch;
+        if (builder == null) {
+            builder = createSearchBuilder();
+            builder.done();
+            _emptySearch = builder;
+        }
         return builder.create();
     }
 
@@ -2333,27 +2700,12 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     }
 
     public Integer getCountIncludingRemoved(SearchCriteria<T> sc) {
-        String clause = sc != null ? sc.getWhereClause() : null;
-        if (clause != null && clause.length() == 0) {
-            clause = null;
-        }
-
-        final StringBuilder str = createCountSelect(sc, clause != null);
-        if (clause != null) {
-            str.append(clause);
-        }
-
-        Collection<JoinBuilder<SearchCriteria<?>>> joins = null;
-        List<Attribute> joinAttrList = null;
-        if (sc != null) {
-            joins = sc.getJoins();
-            if (joins != null) {
-                joinAttrList = addJoins(str, joins);
-            }
-        }
+        final SearchSqlCache.Entry searchSql = buildSearchSql(sc, null, SearchSqlKind.COUNT);
+        final List<Attribute> joinAttrList = searchSql.getJoinAttributes();
+        final Collection<JoinBuilder<SearchCriteria<?>>> joins = sc != null ? sc.getJoins() : null;
 
         final TransactionLegacy txn = TransactionLegacy.currentTxn();
-        final String sql = str.toString();
+        final String sql = searchSql.getSql();
 
         PreparedStatement pstmt = null;
         try {
@@ -2366,7 +2718,7 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
                 }
             }
 
-            if (clause != null) {
+            if (searchSql.hasCriteria()) {
                 for (final Pair<Attribute, Object> value : sc.getValues()) {
                     prepareAttribute(i++, pstmt, value.first(), value.second());
                 }
@@ -26,13 +26,18 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.management.StandardMBean;
 
+import org.apache.cloudstack.utils.stats.TimeHistogram;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import com.cloud.utils.DateUtil;
+import com.cloud.utils.NumbersUtil;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.utils.time.InaccurateClock;
@@ -53,28 +58,49 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
     private static final String SELECT_THREAD_LOCKS_SQL = SELECT_SQL + " WHERE mac=? AND ip=?";
     private static final String CLEANUP_THREAD_LOCKS_SQL = "DELETE FROM op_lock WHERE mac=? AND ip=? AND thread=?";
 
+    private static final String LOCK_CONNECTIONS_PROPERTY = "db.cloud.lockConnections";
+    private static final int DEFAULT_LOCK_CONNECTIONS = 4;
+    private static final long MIN_RETRY_INTERVAL = 100;
+    private static final long MAX_RETRY_INTERVAL = 5000;
+
     TimeZone _gmtTimeZone = TimeZone.getTimeZone("GMT");
 
     private final long _msId;
 
     private static Merovingian2 s_instance = null;
-    private ConnectionConcierge _concierge = null;
+    // lock keys are hashed over the connections so that unrelated locks do not queue up behind each other
+    private final ConnectionConcierge[] _concierges;
     private static ThreadLocal<Count> s_tls = new ThreadLocal<Count>();
 
+    // locks held by the threads of this server, contenders within the server wait on these instead of polling the database
+    private final Map<String, LocalLock> _localLocks = new ConcurrentHashMap<String, LocalLock>();
+    private final TimeHistogram _waitTimes = new TimeHistogram();
+    private final TimeHistogram _holdTimes = new TimeHistogram();
+
     private Merovingian2(long msId) {
         super(MerovingianMBean.class, false);
         _msId = msId;
+        int connections = Math.max(1, NumbersUtil.parseInt(DbProperties.getDbProperties().getProperty(LOCK_CONNECTIONS_PROPERTY), DEFAULT_LOCK_CONNECTIONS));
+        _concierges = new ConnectionConcierge[connections];
+        for (int i = 0; i < connections; i++) {
+            _concierges[i] = createConcierge();
+        }
+    }
+
+    private static ConnectionConcierge createConcierge() {
         Connection conn = null;
+        ConnectionConcierge concierge = null;
         try {
             conn = TransactionLegacy.getStandaloneConnectionWithException();
             conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
             conn.setAutoCommit(true);
-            _concierge = new ConnectionConcierge("LockController", conn, true);
+            concierge = new ConnectionConcierge("LockController", conn, true);
+            return concierge;
         } catch (SQLException e) {
             LOGGER.error("Unable to get a new db connection", e);
             throw new CloudRuntimeException("Unable to initialize a connection to the database for locking purposes", e);
         } finally {
-            if (_concierge == null && conn != null) {
+            if (concierge == null && conn != null) {
                 try {
                     conn.close();
                 } catch (SQLException e) {
@@ -84,6 +110,14 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
         }
     }
 
+    protected Connection conn(String key) {
+        return _concierges[Math.floorMod(key.hashCode(), _concierges.length)].conn();
+    }
+
+    protected Connection conn() {
+        return _concierges[0].conn();
+    }
+
     public static synchronized Merovingian2 createLockController(long msId) {
         assert s_instance == null : "No lock can serve two controllers.  Either we will hate the one and love the other, or we will be devoted to the one and despise the other.";
         s_instance = new Merovingian2(msId);
@@ -128,26 +162,92 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
             LOGGER.trace("Acquiring lck-" + key + " with wait time of " + timeInSeconds);
         }
         long startTime = InaccurateClock.getTime();
+        long waitStart = System.nanoTime();
 
+        LocalLock lock = _localLocks.get(key);
+        if (lock != null && lock.isHeldByCurrentThread()) {
+            // the database already records this thread as the owner, there is nothing to ask it
+            lock.lock();
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("lck-" + key + " acquired again");
+            }
+            return true;
+        }
+
+        lock = lockLocally(key, startTime + timeInSeconds * 1000l);
+        if (lock == null) {
+            return timedOut(key, startTime);
+        }
+
+        boolean acquired = false;
+        try {
+            acquired = acquireInDatabase(key, threadName, threadId, startTime, timeInSeconds);
+        } finally {
+            if (acquired) {
+                lock._acquiredOn = System.nanoTime();
+                _waitTimes.record(lock._acquiredOn - waitStart);
+            } else {
+                unlockLocally(key, lock);
+            }
+        }
+        return acquired || timedOut(key, startTime);
+    }
+
+    protected LocalLock lockLocally(String key, long deadline) {
+        while (true) {
+            LocalLock lock = _localLocks.computeIfAbsent(key, k -> new LocalLock());
+            try {
+                if (!lock.tryLock(Math.max(0, deadline - InaccurateClock.getTime()), TimeUnit.MILLISECONDS)) {
+                    return null;
+                }
+            } catch (InterruptedException e) {
+                LOGGER.debug("[ignored] interrupted while aquiring " + key);
+                continue;
+            }
+            if (_localLocks.get(key) == lock) {
+                return lock;
+            }
+            // the previous holder dropped the lock from the map while we were queued on it
+            lock.unlock();
+        }
+    }
+
+    protected void unlockLocally(String key, LocalLock lock) {
+        lock.unlock();
+        if (!lock.isLocked() && !lock.hasQueuedThreads()) {
+            _localLocks.remove(key, lock);
+        }
+    }
+
+    protected boolean acquireInDatabase(String key, String threadName, int threadId, long startTime, int timeInSeconds) {
+        long retryInterval = MIN_RETRY_INTERVAL;
         while ((InaccurateClock.getTime() - startTime) < (timeInSeconds * 1000l)) {
-            int count = owns(key);
+            if (doAcquire(key, threadName, threadId)) {
+                return true;
+            }
 
+            int count = ownsInDatabase(key);
             if (count >= 1) {
                 return increment(key, threadName, threadId);
             } else if (count == 0) {
-                if (doAcquire(key, threadName, threadId)) {
-                    return true;
-                }
+                // released in the meantime
+                continue;
             }
             try {
                 if (LOGGER.isTraceEnabled()) {
                     LOGGER.trace("Sleeping more time while waiting for lck-" + key);
                 }
-                Thread.sleep(5000);
+                // the lock is held by another management server, back off as its holder is unlikely to let go soon
+                Thread.sleep(retryInterval);
+                retryInterval = Math.min(retryInterval * 2, MAX_RETRY_INTERVAL);
             } catch (InterruptedException e) {
                 LOGGER.debug("[ignored] interrupted while aquiring " + key);
             }
         }
+        return false;
+    }
+
+    private boolean timedOut(String key, long startTime) {
         String msg = "Timed out on acquiring lock " + key + " .  Waited for " + ((InaccurateClock.getTime() - startTime)/1000) +  "seconds";
         Exception e = new CloudRuntimeException(msg);
         LOGGER.warn(msg, e);
@@ -155,7 +255,7 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
     }
 
     protected boolean increment(String key, String threadName, int threadId) {
-      try (PreparedStatement pstmt = _concierge.conn().prepareStatement(INCREMENT_SQL);){
+      try (PreparedStatement pstmt = conn(key).prepareStatement(INCREMENT_SQL);){
             pstmt.setString(1, key);
             pstmt.setLong(2, _msId);
             pstmt.setString(3, threadName);
@@ -178,7 +278,7 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
 
     protected boolean doAcquire(String key, String threadName, int threadId) {
         long startTime = InaccurateClock.getTime();
-        try(PreparedStatement pstmt = _concierge.conn().prepareStatement(ACQUIRE_SQL);) {
+        try(PreparedStatement pstmt = conn(key).prepareStatement(ACQUIRE_SQL);) {
             pstmt.setString(1, key);
             pstmt.setLong(2, _msId);
             pstmt.setString(3, threadName);
@@ -208,7 +308,7 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
     }
 
     protected Map<String, String> isLocked(String key) {
-        try (PreparedStatement pstmt = _concierge.conn().prepareStatement(INQUIRE_SQL);){
+        try (PreparedStatement pstmt = conn(key).prepareStatement(INQUIRE_SQL);){
             pstmt.setString(1, key);
             try(ResultSet rs = pstmt.executeQuery();)
             {
@@ -234,8 +334,8 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
     public void cleanupForServer(long msId) {
         LOGGER.info("Cleaning up locks for " + msId);
         try {
-            synchronized (_concierge.conn()) {
-                try(PreparedStatement pstmt = _concierge.conn().prepareStatement(CLEANUP_MGMT_LOCKS_SQL);) {
+            synchronized (conn()) {
+                try(PreparedStatement pstmt = conn().prepareStatement(CLEANUP_MGMT_LOCKS_SQL);) {
                     pstmt.setLong(1, msId);
                     int rows = pstmt.executeUpdate();
                     LOGGER.info("Released " + rows + " locks for " + msId);
@@ -251,10 +351,32 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
     }
 
     public boolean release(String key) {
+        LocalLock lock = _localLocks.get(key);
+        if (lock == null || !lock.isHeldByCurrentThread()) {
+            return releaseInDatabase(key);
+        }
+
+        if (lock.getHoldCount() > 1) {
+            lock.unlock();
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("lck-" + key + " released");
+            }
+            return true;
+        }
+
+        try {
+            return releaseInDatabase(key);
+        } finally {
+            _holdTimes.record(System.nanoTime() - lock._acquiredOn);
+            unlockLocally(key, lock);
+        }
+    }
+
+    protected boolean releaseInDatabase(String key) {
         Thread th = Thread.currentThread();
         String threadName = th.getName();
         int threadId = System.identityHashCode(th);
-        try (PreparedStatement pstmt = _concierge.conn().prepareStatement(DECREMENT_SQL);)
+        try (PreparedStatement pstmt = conn(key).prepareStatement(DECREMENT_SQL);)
         {
             pstmt.setString(1, key);
             pstmt.setLong(2, _msId);
@@ -267,7 +389,7 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
                 LOGGER.trace("lck-" + key + " released");
             }
             if (rows == 1) {
-                try (PreparedStatement rel_sql_pstmt = _concierge.conn().prepareStatement(RELEASE_SQL);) {
+                try (PreparedStatement rel_sql_pstmt = conn(key).prepareStatement(RELEASE_SQL);) {
                     rel_sql_pstmt.setString(1, key);
                     rel_sql_pstmt.setLong(2, _msId);
                     int result = rel_sql_pstmt.executeUpdate();
@@ -312,7 +434,7 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
     }
 
     protected List<Map<String, String>> getLocks(String sql, Long msId) {
-        try (PreparedStatement pstmt = _concierge.conn().prepareStatement(sql);)
+        try (PreparedStatement pstmt = conn().prepareStatement(sql);)
         {
             if (msId != null) {
                 pstmt.setLong(1, msId);
@@ -340,7 +462,25 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
         return getLocks(SELECT_MGMT_LOCKS_SQL, _msId);
     }
 
+    @Override
+    public Map<String, Long> getLockWaitTimes() {
+        return _waitTimes.toMap();
+    }
+
+    @Override
+    public Map<String, Long> getLockHoldTimes() {
+        return _holdTimes.toMap();
+    }
+
     public int owns(String key) {
+        LocalLock lock = _localLocks.get(key);
+        if (lock != null && lock.isHeldByCurrentThread()) {
+            return lock.getHoldCount();
+        }
+        return ownsInDatabase(key);
+    }
+
+    protected int ownsInDatabase(String key) {
         Thread th = Thread.currentThread();
         int threadId = System.identityHashCode(th);
         Map<String, String> owner = isLocked(key);
@@ -354,7 +494,7 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
     }
 
     public List<Map<String, String>> getLocksAcquiredBy(long msId, String threadName) {
-        try (PreparedStatement pstmt = _concierge.conn().prepareStatement(SELECT_THREAD_LOCKS_SQL);){
+        try (PreparedStatement pstmt = conn().prepareStatement(SELECT_THREAD_LOCKS_SQL);){
             pstmt.setLong(1, msId);
             pstmt.setString(2, threadName);
             try (ResultSet rs =pstmt.executeQuery();) {
@@ -379,10 +519,17 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
         int c = count.count;
         count.count = 0;
 
+        for (Map.Entry<String, LocalLock> entry : _localLocks.entrySet()) {
+            LocalLock lock = entry.getValue();
+            while (lock.isHeldByCurrentThread()) {
+                unlockLocally(entry.getKey(), lock);
+            }
+        }
+
         Thread th = Thread.currentThread();
         String threadName = th.getName();
         int threadId = System.identityHashCode(th);
-        try (PreparedStatement pstmt = _concierge.conn().prepareStatement(CLEANUP_THREAD_LOCKS_SQL);)
+        try (PreparedStatement pstmt = conn().prepareStatement(CLEANUP_THREAD_LOCKS_SQL);)
         {
             pstmt.setLong(1, _msId);
             pstmt.setString(2, threadName);
@@ -399,7 +546,7 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
     @Override
     public boolean releaseLockAsLastResortAndIReallyKnowWhatIAmDoing(String key) {
         LOGGER.info("Releasing a lock from JMX lck-" + key);
-        try (PreparedStatement pstmt = _concierge.conn().prepareStatement(RELEASE_LOCK_SQL);)
+        try (PreparedStatement pstmt = conn(key).prepareStatement(RELEASE_LOCK_SQL);)
         {
             pstmt.setString(1, key);
             int rows = pstmt.executeUpdate();
@@ -413,4 +560,13 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
     protected static class Count {
         public int count = 0;
     }
+
+    protected static class LocalLock extends ReentrantLock {
+        // only read and written by the holder
+        long _acquiredOn;
+
+        LocalLock() {
+            super(true);
+        }
+    }
 }
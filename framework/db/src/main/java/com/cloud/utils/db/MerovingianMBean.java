@@ -28,4 +28,8 @@ public interface MerovingianMBean {
     boolean releaseLockAsLastResortAndIReallyKnowWhatIAmDoing(String key);
 
     void cleanupForServer(long msId);
+
+    Map<String, Long> getLockWaitTimes();
+
+    Map<String, Long> getLockHoldTimes();
 }
@@ -68,6 +68,7 @@ public abstract class SearchBase<J extends SearchBase<?, T, K>, T, K> {
     protected GroupBy<J, T, K> _groupBy = null;
     protected SelectType _selectType;
     T _entity;
+    final SearchSqlCache _sqlCache = new SearchSqlCache();
 
     SearchBase(final Class<T> entityType, final Class<K> resultType) {
         init(entityType, resultType);
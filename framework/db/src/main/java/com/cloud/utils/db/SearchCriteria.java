@@ -97,6 +97,7 @@ public class SearchCriteria<K> {
     private final List<Object> _groupByValues;
     private final Class<K> _resultType;
     private final SelectType _selectType;
+    private final SearchSqlCache _sqlCache;
 
     protected SearchCriteria(SearchBase<?, ?, K> sb) {
         this._attrs = sb._attrs;
@@ -121,6 +122,7 @@ public class SearchCriteria<K> {
         }
         _resultType = sb._resultType;
         _selectType = sb._selectType;
+        _sqlCache = sb._sqlCache;
     }
 
     protected void setParameters(HashMap<String, Object[]> parameters) {
@@ -285,6 +287,93 @@ public class SearchCriteria<K> {
         return getWhereClause(null);
     }
 
+    /**
+     * @return the statements rendered for the criteria of the search builder this criteria was created by.
+     */
+    public SearchSqlCache getSqlCache() {
+        return _sqlCache;
+    }
+
+    /**
+     * Builds the key of the statement rendered for this criteria in {@link #getSqlCache()}.  Besides the prefix,
+     * the key holds the shape of the criteria and of its joins: for each condition whether it is bound, how many
+     * values it got when that changes the text, and the condition itself for the ones added after creation.
+     * Presets are put in the parameters as {@link #getWhereClause()} does.
+     *
+     * @param prefix what else the statement depends on, such as the DAO and the kind of statement.
+     * @return the key, or null if the text depends on the values, as for nested search criteria.
+     */
+    public List<Object> getSqlCacheKey(Object... prefix) {
+        List<Object> key = new ArrayList<Object>(prefix.length + _conditions.size() + _additionals.size() * 4);
+        for (Object element : prefix) {
+            key.add(element);
+        }
+        return addSqlShape(key) ? key : null;
+    }
+
+    protected boolean addSqlShape(List<Object> key) {
+        for (Condition condition : _conditions) {
+            if (condition.isPreset()) {
+                _params.put(condition.name, condition.presets);
+            }
+            Object[] params = _params.get(condition.name);
+            int shape = (condition.op == null || condition.op.params == 0) || (params != null) ? getSqlShape(condition.op, params) : 0;
+            if (shape < 0) {
+                return false;
+            }
+            key.add(shape);
+        }
+
+        for (Condition condition : _additionals) {
+            if (condition.isPreset()) {
+                _params.put(condition.name, condition.presets);
+            }
+            Object[] params = _params.get(condition.name);
+            int shape = (condition.op.params == 0) || (params != null) ? getSqlShape(condition.op, params) : 0;
+            if (shape < 0) {
+                return false;
+            }
+            key.add(condition.cond);
+            key.add(condition.attr);
+            key.add(condition.op);
+            key.add(shape);
+        }
+
+        if (_joins != null) {
+            for (JoinBuilder<SearchCriteria<?>> join : _joins.values()) {
+                key.add(join.getName());
+                if (!join.getT().addSqlShape(key)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Mirrors {@link Condition#toSql}: 0 for a condition left out, 1 for the plain text of the operator, 2 for
+     * the IS NULL and IS NOT NULL forms of EQ and NEQ, 3 plus the number of values for the IN operators and -1
+     * when the text can not be cached.
+     */
+    private static int getSqlShape(Op op, Object[] params) {
+        if (op == null) {
+            return 1;
+        }
+        if (op == Op.SC) {
+            return -1;
+        }
+        if (op.getParams() == -1) {
+            return 3 + params.length;
+        }
+        if ((op == Op.EQ || op == Op.NEQ) && (params == null || params.length == 0 || params[0] == null)) {
+            return 2;
+        }
+        if (params == null) {
+            return op.getParams() == 0 ? 1 : -1;
+        }
+        return params.length == op.getParams() ? 1 : -1;
+    }
+
     public List<Pair<Attribute, Object>> getValues() {
         ArrayList<Pair<Attribute, Object>> params = new ArrayList<Pair<Attribute, Object>>(_params.size());
         for (Condition condition : _conditions) {
@@ -0,0 +1,82 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Statements rendered for the criteria created by one search builder.  The text of a search only depends on
+ * the shape of its criteria (which conditions are bound, how many values the IN conditions got, the conditions
+ * added after creation and the same for the joins), so it is rendered once per shape and reused.
+ *
+ * @see SearchCriteria#getSqlCacheKey(Object...)
+ */
+public class SearchSqlCache {
+    /**
+     * Upper bound of the shapes kept per search builder.  Searches with IN conditions get a shape per number of
+     * values; past the bound they are rendered on every call as before.
+     */
+    static final int MAX_SHAPES = 128;
+
+    private final ConcurrentHashMap<List<Object>, Entry> _entries = new ConcurrentHashMap<>();
+
+    public Entry get(List<Object> key) {
+        return _entries.get(key);
+    }
+
+    public void put(List<Object> key, Entry entry) {
+        if (_entries.size() < MAX_SHAPES) {
+            _entries.putIfAbsent(key, entry);
+        }
+    }
+
+    public int size() {
+        return _entries.size();
+    }
+
+    /**
+     * Statement text, without the ORDER BY and LIMIT of the filter, and what is needed to bind its parameters.
+     */
+    public static class Entry {
+        private final String _sql;
+        private final List<Attribute> _joinAttributes;
+        private final boolean _hasCriteria;
+
+        public Entry(String sql, List<Attribute> joinAttributes, boolean hasCriteria) {
+            _sql = sql;
+            _joinAttributes = joinAttributes;
+            _hasCriteria = hasCriteria;
+        }
+
+        public String getSql() {
+            return _sql;
+        }
+
+        public List<Attribute> getJoinAttributes() {
+            return _joinAttributes;
+        }
+
+        /**
+         * @return whether the criteria rendered a where clause, and so has values to bind.
+         */
+        public boolean hasCriteria() {
+            return _hasCriteria;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Savepoint;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -103,6 +104,7 @@ public class TransactionLegacy implements Closeable {
     private long _id;
 
     private final LinkedList<Pair<String, Long>> _lockTimes = new LinkedList<>();
+    private final List<Runnable> _afterCommitTasks = new ArrayList<>();
 
     private String _name;
     private Connection _conn;
@@ -124,6 +126,19 @@ public class TransactionLegacy implements Closeable {
         return txn;
     }
 
+    /**
+     * Runs the task once the changes of the current transaction are committed, right away if no transaction has been
+     * started. The task is dropped if the transaction is rolled back.
+     */
+    public static void runAfterCommit(final Runnable task) {
+        TransactionLegacy txn = tls.get();
+        if (txn == null || !txn._txn) {
+            task.run();
+            return;
+        }
+        txn._afterCommitTasks.add(task);
+    }
+
     public static TransactionLegacy open(final short databaseId) {
         String name = buildName();
         if (name == null) {
@@ -654,6 +669,7 @@ public class TransactionLegacy implements Closeable {
         }
         _txn = false;
         _name = null;
+        _afterCommitTasks.clear();
 
         closeConnection();
 
@@ -747,11 +763,28 @@ public class TransactionLegacy implements Closeable {
                 clearLockTimes();
                 closeConnection();
             }
-            return true;
         } catch (final SQLException e) {
+            _afterCommitTasks.clear();
             rollbackTransaction();
             throw new CloudRuntimeException("Unable to commit or close the connection. ", e);
         }
+        runAfterCommitTasks();
+        return true;
+    }
+
+    private void runAfterCommitTasks() {
+        if (_afterCommitTasks.isEmpty()) {
+            return;
+        }
+        List<Runnable> tasks = new ArrayList<>(_afterCommitTasks);
+        _afterCommitTasks.clear();
+        for (Runnable task : tasks) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to run a task after the commit of {}", _name, e);
+            }
+        }
     }
 
     protected void closeConnection() {
@@ -856,6 +889,7 @@ public class TransactionLegacy implements Closeable {
         }
         assert (!hasTxnInStack()) : "Who's rolling back transaction when there's still txn in stack?";
         _txn = false;
+        _afterCommitTasks.clear();
         try {
             if (_conn != null) {
                 if (LOGGER.isDebugEnabled()) {
@@ -1309,7 +1343,8 @@ public class TransactionLegacy implements Closeable {
         // Standard datasource config for MySQL
         config.addDataSourceProperty("cachePrepStmts", "true");
         config.addDataSourceProperty("prepStmtCacheSize", "250");
-        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        // Search statements list every column of the entity and its joins, the driver does not cache longer ones
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "8192");
         // Additional config for MySQL
         config.addDataSourceProperty("useServerPrepStmts", "true");
         config.addDataSourceProperty("useLocalSessionState", "true");
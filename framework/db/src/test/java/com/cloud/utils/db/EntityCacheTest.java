@@ -0,0 +1,137 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EntityCacheTest {
+
+    private final List<String> published = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        EntityCache.setInvalidationPublisher((table, id) -> published.add(table + ":" + id));
+    }
+
+    @After
+    public void tearDown() {
+        EntityCache.setInvalidationPublisher(null);
+    }
+
+    private static EntityCache<String> createCache(String table) {
+        return new EntityCache<>(table, table, Long.class, 10, 0, 0);
+    }
+
+    @Test
+    public void invalidateTestDropsTheEntityFromEveryCacheOfTheTable() {
+        EntityCache<String> cache = createCache("invalidate_test");
+        EntityCache<String> other = createCache("invalidate_test");
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        other.put(1L, "one");
+
+        cache.invalidate(1L);
+
+        Assert.assertNull(cache.get(1L));
+        Assert.assertNull(other.get(1L));
+        Assert.assertEquals("two", cache.get(2L));
+        Assert.assertEquals(List.of("invalidate_test:1"), published);
+        Assert.assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void invalidateTestEvictsAgainAndPublishesOnceCommitted() {
+        EntityCache<String> cache = createCache("invalidate_commit_test");
+        cache.put(1L, "old");
+        TransactionLegacy txn = TransactionLegacy.open("invalidateTestEvictsAgainAndPublishesOnceCommitted");
+        try {
+            txn.start();
+            cache.invalidate(1L);
+            Assert.assertNull(cache.get(1L));
+
+            // a concurrent reader caching the row as it is before the commit
+            cache.put(1L, "old");
+            Assert.assertTrue(published.isEmpty());
+
+            txn.commit();
+
+            Assert.assertNull(cache.get(1L));
+            Assert.assertEquals(List.of("invalidate_commit_test:1"), published);
+        } finally {
+            txn.close();
+        }
+    }
+
+    @Test
+    public void invalidateTestDoesNotPublishARolledBackChange() {
+        EntityCache<String> cache = createCache("invalidate_rollback_test");
+        TransactionLegacy txn = TransactionLegacy.open("invalidateTestDoesNotPublishARolledBackChange");
+        try {
+            txn.start();
+            cache.invalidate(1L);
+            txn.rollback();
+            txn.start();
+            txn.commit();
+
+            Assert.assertTrue(published.isEmpty());
+        } finally {
+            txn.close();
+        }
+    }
+
+    @Test
+    public void invalidateAllTestClearsTheTable() {
+        EntityCache<String> cache = createCache("invalidate_all_test");
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+
+        cache.invalidateAll();
+
+        Assert.assertNull(cache.get(1L));
+        Assert.assertNull(cache.get(2L));
+        Assert.assertEquals(List.of("invalidate_all_test:null"), published);
+    }
+
+    @Test
+    public void onRemoteInvalidationTestConvertsTheId() {
+        EntityCache<String> cache = createCache("remote_test");
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+
+        EntityCache.onRemoteInvalidation("remote_test", "1");
+
+        Assert.assertNull(cache.get(1L));
+        Assert.assertEquals("two", cache.get(2L));
+        Assert.assertTrue(published.isEmpty());
+    }
+
+    @Test
+    public void onRemoteInvalidationTestClearsTheTableForAnUnknownId() {
+        EntityCache<String> cache = createCache("remote_unknown_test");
+        cache.put(1L, "one");
+
+        EntityCache.onRemoteInvalidation("remote_unknown_test", "not-a-number");
+
+        Assert.assertNull(cache.get(1L));
+    }
+}
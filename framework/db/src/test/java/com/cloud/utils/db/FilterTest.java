@@ -41,4 +41,29 @@ public class FilterTest {
         Assert.assertTrue(filter.getOrderBy().split(",").length == 3);
         Assert.assertTrue(filter.getOrderBy().split(",")[2].trim().toLowerCase().equals("test.fld_int asc"));
     }
+
+    @Test
+    public void testSeek() {
+        Filter filter = Filter.seek(DbTestVO.class, "id", true, 10L, 20L);
+
+        Assert.assertEquals("order by test.id asc", filter.getOrderBy().trim().toLowerCase());
+        Assert.assertTrue(filter.isSeek());
+        Assert.assertNull(filter.getOffset());
+        Assert.assertEquals(Long.valueOf(20L), filter.getLimit());
+        Assert.assertEquals("test.id > ?", filter.getSeekClause());
+        Assert.assertEquals(10L, filter.getSeekAfter());
+    }
+
+    @Test
+    public void testSeekDescending() {
+        Assert.assertEquals("test.id < ?", Filter.seek(DbTestVO.class, "id", false, 10L, 20L).getSeekClause());
+    }
+
+    @Test
+    public void testSeekFirstPage() {
+        Filter filter = Filter.seek(DbTestVO.class, "id", true, null, 20L);
+
+        Assert.assertTrue(filter.isSeek());
+        Assert.assertNull(filter.getSeekClause());
+    }
 }
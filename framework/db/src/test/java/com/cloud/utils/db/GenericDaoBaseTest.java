@@ -16,16 +16,29 @@
 // under the License.
 package com.cloud.utils.db;
 
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -263,4 +276,279 @@ public class GenericDaoBaseTest {
                 " INNER JOIN tableA tableA2Alias ON tableC.column3=tableA2Alias.column2 " +
                 " INNER JOIN tableA tableA3Alias ON tableD.column4=tableA3Alias.column3 AND tableD.column5=? ", joinString.toString());
     }
+
+    @Test
+    public void persistBatchTestEmptyList() {
+        List<DbTestVO> entities = new ArrayList<>();
+
+        Assert.assertSame(entities, dbTestDao.persistBatch(entities));
+    }
+
+    @Test
+    public void updateBatchTestEmptyList() {
+        Assert.assertEquals(0, dbTestDao.updateBatch(new ArrayList<>()));
+    }
+
+    private PreparedStatement prepareBatchStatement(TransactionLegacy txn) throws SQLException {
+        PreparedStatement pstmt = Mockito.mock(PreparedStatement.class);
+        Mockito.when(txn.prepareAutoCloseStatement(Mockito.anyString(), Mockito.eq(Statement.RETURN_GENERATED_KEYS))).thenReturn(pstmt);
+        return pstmt;
+    }
+
+    @Test
+    public void persistBatchTestSendsTheRowsInOneBatchAndAssignsTheGeneratedIds() throws SQLException {
+        TransactionLegacy txn = Mockito.mock(TransactionLegacy.class);
+        PreparedStatement pstmt = prepareBatchStatement(txn);
+        ResultSet generatedKeys = Mockito.mock(ResultSet.class);
+        Mockito.when(pstmt.getGeneratedKeys()).thenReturn(generatedKeys);
+        Mockito.when(generatedKeys.next()).thenReturn(true, true, true, false);
+        Mockito.when(generatedKeys.getObject(1)).thenReturn(BigInteger.valueOf(11), BigInteger.valueOf(12), BigInteger.valueOf(13));
+        List<DbTestVO> entities = List.of(new DbTestVO(), new DbTestVO(), new DbTestVO());
+
+        try (MockedStatic<TransactionLegacy> transactionLegacyMocked = Mockito.mockStatic(TransactionLegacy.class)) {
+            transactionLegacyMocked.when(TransactionLegacy::currentTxn).thenReturn(txn);
+            Assert.assertSame(entities, dbTestDao.persistBatch(entities));
+        }
+
+        Mockito.verify(txn, Mockito.times(1)).prepareAutoCloseStatement(Mockito.anyString(), Mockito.eq(Statement.RETURN_GENERATED_KEYS));
+        Mockito.verify(pstmt, Mockito.times(3)).addBatch();
+        Mockito.verify(pstmt, Mockito.times(1)).executeBatch();
+        Mockito.verify(txn).commit();
+        Assert.assertEquals(11L, entities.get(0).id);
+        Assert.assertEquals(12L, entities.get(1).id);
+        Assert.assertEquals(13L, entities.get(2).id);
+    }
+
+    @Test
+    public void persistBatchTestSplitsTheRowsInBatchesOfBatchSize() throws SQLException {
+        TransactionLegacy txn = Mockito.mock(TransactionLegacy.class);
+        PreparedStatement pstmt = prepareBatchStatement(txn);
+        List<DbTestVO> entities = new ArrayList<>();
+        for (int i = 0; i <= GenericDaoBase.BATCH_SIZE; i++) {
+            entities.add(new DbTestVO());
+        }
+
+        try (MockedStatic<TransactionLegacy> transactionLegacyMocked = Mockito.mockStatic(TransactionLegacy.class)) {
+            transactionLegacyMocked.when(TransactionLegacy::currentTxn).thenReturn(txn);
+            dbTestDao.persistBatch(entities);
+        }
+
+        Mockito.verify(pstmt, Mockito.times(GenericDaoBase.BATCH_SIZE + 1)).addBatch();
+        Mockito.verify(pstmt, Mockito.times(2)).executeBatch();
+        Mockito.verify(pstmt, Mockito.times(2)).getGeneratedKeys();
+    }
+
+    @Test
+    public void updateBatchTestGroupsTheEntitiesByTheColumnsTheyChange() throws SQLException {
+        TransactionLegacy txn = Mockito.mock(TransactionLegacy.class);
+        PreparedStatement stringPstmt = Mockito.mock(PreparedStatement.class);
+        PreparedStatement intPstmt = Mockito.mock(PreparedStatement.class);
+        Mockito.when(txn.prepareAutoCloseStatement(Mockito.contains("fld_string"))).thenReturn(stringPstmt);
+        Mockito.when(txn.prepareAutoCloseStatement(Mockito.contains("fld_int"))).thenReturn(intPstmt);
+        Mockito.when(stringPstmt.executeBatch()).thenReturn(new int[] {1, Statement.SUCCESS_NO_INFO});
+        Mockito.when(intPstmt.executeBatch()).thenReturn(new int[] {0});
+
+        List<DbTestVO> entities = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            DbTestVO entity = dbTestDao.createForUpdate(id);
+            if (id == 2) {
+                GenericDaoBase.getUpdateBuilder(entity).set(entity, "fieldInt", 2);
+            } else {
+                GenericDaoBase.getUpdateBuilder(entity).set(entity, "fieldString", "value" + id);
+            }
+            entities.add(entity);
+        }
+
+        int rowsUpdated;
+        try (MockedStatic<TransactionLegacy> transactionLegacyMocked = Mockito.mockStatic(TransactionLegacy.class)) {
+            transactionLegacyMocked.when(TransactionLegacy::currentTxn).thenReturn(txn);
+            rowsUpdated = dbTestDao.updateBatch(entities);
+        }
+
+        Assert.assertEquals(2, rowsUpdated);
+        Mockito.verify(txn, Mockito.times(2)).prepareAutoCloseStatement(Mockito.anyString());
+        Mockito.verify(stringPstmt, Mockito.times(2)).addBatch();
+        Mockito.verify(stringPstmt, Mockito.times(1)).executeBatch();
+        Mockito.verify(intPstmt, Mockito.times(1)).addBatch();
+        Mockito.verify(intPstmt, Mockito.times(1)).executeBatch();
+        Mockito.verify(txn).commit();
+    }
+
+    @Test
+    public void addFilterTestSeekLimitsWithoutOffset() {
+        StringBuilder sql = new StringBuilder();
+
+        dbTestDao.addFilter(sql, Filter.seek(DbTestVO.class, "id", true, 10L, 20L));
+
+        Assert.assertEquals(" ORDER BY test.id ASC  LIMIT 20", sql.toString());
+    }
+
+    @Test
+    public void addSeekClauseTestWrapsSearchCriteria() {
+        Filter filter = Filter.seek(DbTestVO.class, "id", false, 10L, 20L);
+
+        Assert.assertEquals("(a = ? OR b = ?) AND test.id < ?", dbTestDao.addSeekClause("a = ? OR b = ?", filter));
+        Assert.assertEquals("test.id < ?", dbTestDao.addSeekClause(null, filter));
+        Assert.assertEquals("a = ?", dbTestDao.addSeekClause("a = ?", null));
+    }
+
+    private SearchBuilder<DbTestVO> createFieldSearch() {
+        SearchBuilder<DbTestVO> sb = dbTestDao.createSearchBuilder();
+        sb.and("fieldInt", sb.entity().getFieldInt(), SearchCriteria.Op.EQ);
+        sb.and("fieldString", sb.entity().getFieldString(), SearchCriteria.Op.IN);
+        sb.done();
+        return sb;
+    }
+
+    @Test
+    public void buildSearchSqlTestReusesTheStatementOfTheSameShape() {
+        SearchBuilder<DbTestVO> sb = createFieldSearch();
+        SearchCriteria<DbTestVO> sc1 = sb.create();
+        sc1.setParameters("fieldInt", 1);
+        SearchCriteria<DbTestVO> sc2 = sb.create();
+        sc2.setParameters("fieldInt", 2);
+
+        SearchSqlCache.Entry entry = dbTestDao.buildSearchSql(sc1, null, GenericDaoBase.SearchSqlKind.SELECT);
+
+        Assert.assertTrue(entry.hasCriteria());
+        Assert.assertTrue(entry.getSql().endsWith("WHERE test.fld_int = ? "));
+        Assert.assertSame(entry, dbTestDao.buildSearchSql(sc2, null, GenericDaoBase.SearchSqlKind.SELECT));
+        Assert.assertEquals(1, sb.create().getSqlCache().size());
+    }
+
+    @Test
+    public void buildSearchSqlTestRendersEachShapeSeparately() {
+        SearchBuilder<DbTestVO> sb = createFieldSearch();
+        SearchCriteria<DbTestVO> none = sb.create();
+        SearchCriteria<DbTestVO> one = sb.create();
+        one.setParameters("fieldString", "a");
+        SearchCriteria<DbTestVO> two = sb.create();
+        two.setParameters("fieldString", "a", "b");
+        SearchCriteria<DbTestVO> nullInt = sb.create();
+        nullInt.setParameters("fieldInt", (Object)null);
+
+        Assert.assertFalse(dbTestDao.buildSearchSql(none, null, GenericDaoBase.SearchSqlKind.SELECT).hasCriteria());
+        Assert.assertTrue(dbTestDao.buildSearchSql(one, null, GenericDaoBase.SearchSqlKind.SELECT).getSql().endsWith("WHERE test.fld_string=?"));
+        Assert.assertTrue(dbTestDao.buildSearchSql(two, null, GenericDaoBase.SearchSqlKind.SELECT).getSql().endsWith("WHERE test.fld_string IN (?,?) "));
+        Assert.assertTrue(dbTestDao.buildSearchSql(nullInt, null, GenericDaoBase.SearchSqlKind.SELECT).getSql().endsWith("WHERE test.fld_int  IS NULL "));
+        Assert.assertTrue(dbTestDao.buildSearchSql(one, null, GenericDaoBase.SearchSqlKind.COUNT).getSql().startsWith("SELECT COUNT(*)"));
+        Assert.assertEquals(5, sb.create().getSqlCache().size());
+    }
+
+    @Test
+    public void buildSearchSqlTestKeysConditionsAddedAfterCreation() {
+        SearchBuilder<DbTestVO> sb = createFieldSearch();
+        SearchCriteria<DbTestVO> plain = sb.create();
+        SearchCriteria<DbTestVO> added = sb.create();
+        added.addAnd("fieldLong", SearchCriteria.Op.NULL);
+
+        String plainSql = dbTestDao.buildSearchSql(plain, null, GenericDaoBase.SearchSqlKind.SELECT).getSql();
+        String addedSql = dbTestDao.buildSearchSql(added, null, GenericDaoBase.SearchSqlKind.SELECT).getSql();
+
+        Assert.assertFalse(plainSql.contains("WHERE"));
+        Assert.assertTrue(addedSql.endsWith("WHERE test.fld_long IS NULL "));
+    }
+
+    @Test
+    public void buildSearchSqlTestKeysTheSeekClause() {
+        SearchBuilder<DbTestVO> sb = createFieldSearch();
+        SearchCriteria<DbTestVO> sc = sb.create();
+        sc.setParameters("fieldInt", 1);
+
+        String sql = dbTestDao.buildSearchSql(sc, null, GenericDaoBase.SearchSqlKind.SELECT).getSql();
+        String seekSql = dbTestDao.buildSearchSql(sc, Filter.seek(DbTestVO.class, "id", true, 10L, 20L), GenericDaoBase.SearchSqlKind.SELECT).getSql();
+
+        Assert.assertFalse(sql.contains("test.id > ?"));
+        Assert.assertTrue(seekSql.endsWith("(test.fld_int = ? ) AND test.id > ?"));
+    }
+
+    @Test
+    public void createSearchCriteriaTestSharesTheStatementCache() {
+        Assert.assertSame(dbTestDao.createSearchCriteria().getSqlCache(), dbTestDao.createSearchCriteria().getSqlCache());
+    }
+
+    @Entity
+    @Table(name = "test_uuid")
+    public static class DbUuidTestVO {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        @Column(name = "id")
+        Long id;
+
+        @Column(name = "uuid")
+        String uuid;
+
+        @Column(name = "fld_string")
+        String fieldString;
+
+        public DbUuidTestVO() {
+        }
+
+        DbUuidTestVO(Long id, String uuid, String fieldString) {
+            this.id = id;
+            this.uuid = uuid;
+            this.fieldString = fieldString;
+        }
+    }
+
+    private GenericDaoBase<DbUuidTestVO, Long> createCachedDao() {
+        GenericDaoBase<DbUuidTestVO, Long> dao = Mockito.spy(new GenericDaoBase<DbUuidTestVO, Long>() { });
+        dao.createCache(Map.of("cache.size", "10"));
+        return dao;
+    }
+
+    @Test
+    public void findByIdTestHandsOutCopiesOfTheCachedEntity() {
+        GenericDaoBase<DbUuidTestVO, Long> dao = createCachedDao();
+        DbUuidTestVO entity = new DbUuidTestVO(1L, "uuid-1", "one");
+        dao.cacheEntity(entity);
+        entity.fieldString = "changed by the caller";
+
+        DbUuidTestVO first = dao.findById(1L);
+        first.fieldString = "changed again";
+        DbUuidTestVO second = dao.findById(1L);
+
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals("one", second.fieldString);
+        Mockito.verify(dao, Mockito.never()).lockRow(Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    public void findByIdTestLoadsTheRowOnceInvalidated() {
+        GenericDaoBase<DbUuidTestVO, Long> dao = createCachedDao();
+        dao.cacheEntity(new DbUuidTestVO(1L, "uuid-1", "one"));
+        DbUuidTestVO updated = new DbUuidTestVO(1L, "uuid-1", "updated");
+        Mockito.doReturn(updated).when(dao).lockRow(1L, null);
+
+        dao._cache.invalidate(1L);
+
+        Assert.assertSame(updated, dao.findById(1L));
+    }
+
+    @Test
+    public void findByUuidTestServesTheIdOfTheUuidFromTheCache() {
+        GenericDaoBase<DbUuidTestVO, Long> dao = createCachedDao();
+        DbUuidTestVO entity = new DbUuidTestVO(1L, "uuid-1", "one");
+        Mockito.doReturn(entity).when(dao).findOneBy(Mockito.any());
+        dao.cacheEntity(entity);
+
+        Assert.assertSame(entity, dao.findByUuid("uuid-1"));
+        DbUuidTestVO cached = dao.findByUuid("uuid-1");
+
+        Assert.assertEquals("one", cached.fieldString);
+        Assert.assertNotSame(entity, cached);
+        Mockito.verify(dao, Mockito.times(1)).findOneBy(Mockito.any());
+    }
+
+    @Test
+    public void findByUuidTestSearchesAgainWhenTheCachedIdHoldsAnotherUuid() {
+        GenericDaoBase<DbUuidTestVO, Long> dao = createCachedDao();
+        DbUuidTestVO other = new DbUuidTestVO(2L, "uuid-2", "two");
+        dao.cacheEntity(other);
+        dao._cache.putIdByUuid("uuid-1", 2L);
+        Mockito.doReturn(null).when(dao).findOneBy(Mockito.any());
+
+        Assert.assertNull(dao.findByUuid("uuid-1"));
+        Assert.assertNull(dao._cache.getIdByUuid("uuid-1"));
+    }
 }
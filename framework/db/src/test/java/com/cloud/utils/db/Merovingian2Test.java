@@ -77,4 +77,24 @@ public class Merovingian2Test extends TestCase {
         Assert.assertTrue(result);
     }
 
+    @Test
+    public void testLockIsHandedOverToAWaitingThread() throws Exception {
+        Assert.assertTrue(_lockController.acquire("third" + 1234, 5));
+
+        final boolean[] acquired = new boolean[1];
+        Thread waiter = new Thread(() -> {
+            acquired[0] = _lockController.acquire("third" + 1234, 10);
+            if (acquired[0]) {
+                _lockController.release("third" + 1234);
+            }
+        });
+        waiter.start();
+        Thread.sleep(500);
+
+        Assert.assertTrue(_lockController.release("third" + 1234));
+        waiter.join(5000);
+        Assert.assertTrue(acquired[0]);
+        Assert.assertEquals(0, _lockController.owns("third" + 1234));
+    }
+
 }
@@ -31,6 +31,8 @@ public interface AsyncJob extends JobInfo {
         public static final String JOB_HEARTBEAT = "job.heartbeat";
         public static final String JOB_STATE = "job.state";
         public static final String JOB_EVENT_PUBLISH = "job.eventpublish";
+        // published with the sync queue id whenever an item is added to or released from a sync queue
+        public static final String SYNC_QUEUE_UPDATED = "job.syncqueue.updated";
     }
 
     public static interface Constants {
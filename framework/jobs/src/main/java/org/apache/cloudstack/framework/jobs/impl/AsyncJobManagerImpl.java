@@ -26,6 +26,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
@@ -64,6 +66,7 @@ import org.apache.cloudstack.framework.jobs.dao.SyncQueueItemDao;
 import org.apache.cloudstack.framework.jobs.dao.VmWorkJobDao;
 import org.apache.cloudstack.framework.messagebus.MessageBus;
 import org.apache.cloudstack.framework.messagebus.MessageDetector;
+import org.apache.cloudstack.framework.messagebus.MessageSubscriber;
 import org.apache.cloudstack.framework.messagebus.PublishScope;
 import org.apache.cloudstack.jobs.JobInfo;
 import org.apache.cloudstack.jobs.JobInfo.Status;
@@ -71,6 +74,7 @@ import org.apache.cloudstack.managed.context.ManagedContextRunnable;
 import org.apache.cloudstack.management.ManagementServerHost;
 import org.apache.cloudstack.utils.identity.ManagementServerNode;
 
+import com.cloud.cluster.ClusterManager;
 import com.cloud.cluster.ClusterManagerListener;
 import com.cloud.network.Network;
 import com.cloud.network.dao.NetworkDao;
@@ -125,14 +129,18 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
             Integer.class, "vm.job.lock.timeout", "1800",
             "Time in seconds to wait in acquiring lock to submit a vm worker job", false);
     private static final ConfigKey<Boolean> HidePassword = new ConfigKey<Boolean>("Advanced", Boolean.class, "log.hide.password", "true", "If set to true, the password is hidden", true, ConfigKey.Scope.Global);
+    static final ConfigKey<Integer> QueueScanInterval = new ConfigKey<Integer>("Advanced", Integer.class, "job.queue.scan.interval", "2000",
+            "Interval (in milliseconds) at which the sync queues are scanned for items to dispatch. Queue releases are only signaled on the management server they happen on, "
+            + "so the items released by a peer wait for this scan", false);
 
 
     private static final int ACQUIRE_GLOBAL_LOCK_TIMEOUT_FOR_COOPERATION = 3;     // 3 seconds
 
     private static final int MAX_ONETIME_SCHEDULE_SIZE = 50;
-    private static final int HEARTBEAT_INTERVAL = 2000;
     private static final int GC_INTERVAL = 10000;                // 10 seconds
 
+    static final String JOB_STATE_NOTIFICATION_SUBJECT = "AsyncJobState";
+
     @Inject
     private SyncQueueItemDao _queueItemDao;
     @Inject
@@ -148,6 +156,8 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
     @Inject
     private MessageBus _messageBus;
     @Inject
+    private ClusterManager _clusterMgr;
+    @Inject
     private AsyncJobMonitor _jobMonitor;
     @Inject
     private VMInstanceDao _vmInstanceDao;
@@ -184,6 +194,8 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
     private volatile long _executionRunNumber = 1;
 
     private final ScheduledExecutorService _heartbeatScheduler = Executors.newScheduledThreadPool(1, new NamedThreadFactory("AsyncJobMgr-Heartbeat"));
+    private final ExecutorService _queueDispatcher = Executors.newSingleThreadExecutor(new NamedThreadFactory("AsyncJobMgr-Dispatcher"));
+    private final Set<Long> _pendingQueueDispatches = ConcurrentHashMap.newKeySet();
     private ExecutorService _apiJobExecutor;
     private ExecutorService _workerJobExecutor;
 
@@ -197,7 +209,7 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[] {JobExpireMinutes, JobCancelThresholdMinutes, VmJobLockTimeout, HidePassword};
+        return new ConfigKey<?>[] {JobExpireMinutes, JobCancelThresholdMinutes, VmJobLockTimeout, HidePassword, QueueScanInterval};
     }
 
     @Override
@@ -312,16 +324,18 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
 
             try {
                 // lock is acquired
-                return Transaction.execute(new TransactionCallback<Long>() {
+                final SyncQueueVO queue = Transaction.execute(new TransactionCallback<SyncQueueVO>() {
                     @Override
-                    public Long doInTransaction(TransactionStatus status) {
+                    public SyncQueueVO doInTransaction(TransactionStatus status) {
                         job.setInitMsid(getMsid());
                         dao.persist(job);
 
-                        syncAsyncJobExecution(job, syncObjType, syncObjId, 1);
-                        return job.getId();
+                        return queueAsyncJob(job, syncObjType, syncObjId, 1);
                     }
                 });
+                // the queue item is only visible to the dispatcher once the transaction has been committed
+                dispatchQueue(queue.getId());
+                return job.getId();
             } finally {
                 _vmInstanceDao.unlockFromLockTable(String.valueOf(syncObjId));
             }
@@ -422,6 +436,10 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
                 }
         */
         _messageBus.publish(null, AsyncJob.Topics.JOB_STATE, PublishScope.GLOBAL, jobId);
+        if (job.getInitMsid() != null && job.getInitMsid() != getMsid()) {
+            // the job has been submitted by a peer, which is likely to be waiting on its outcome
+            _clusterMgr.publishNotification(JOB_STATE_NOTIFICATION_SUBJECT, String.valueOf(jobId));
+        }
     }
 
     private String convertHumanReadableJson(String resultObj) {
@@ -532,6 +550,10 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
 
     @Override
     public void syncAsyncJobExecution(AsyncJob job, String syncObjType, long syncObjId, long queueSizeLimit) {
+        queueAsyncJob(job, syncObjType, syncObjId, queueSizeLimit);
+    }
+
+    private SyncQueueVO queueAsyncJob(AsyncJob job, String syncObjType, long syncObjId, long queueSizeLimit) {
         if (logger.isDebugEnabled()) {
             logger.debug("Sync job-" + job.getId() + " execution on object " + syncObjType + "." + syncObjId);
         }
@@ -540,6 +562,7 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
         queue = _queueMgr.queue(syncObjType, syncObjId, SyncQueueItem.AsyncJobContentType, job.getId(), queueSizeLimit);
         if (queue == null)
             throw new CloudRuntimeException("Unable to insert queue item into database, DB is full?");
+        return queue;
     }
 
     @Override
@@ -715,6 +738,9 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
                         if (job.getSyncSource() != null) {
                             // here check queue item one more time to double make sure that queue item is removed in case of any uncaught exception
                             _queueMgr.purgeItem(job.getSyncSource().getId());
+                            // the item may have been purged by completeAsyncJob() before its transaction committed, hand
+                            // the queue over to its next item now that the release is visible
+                            dispatchQueue(job.getSyncSource().getQueueId());
                         }
 
                         try {
@@ -884,6 +910,31 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
         }
     }
 
+    /**
+     * Dispatches the next items of the sync queue on the dispatcher thread. Requests for a queue which is already
+     * waiting to be dispatched are coalesced, the periodic scan picks up whatever a lost request would have missed.
+     */
+    void dispatchQueue(final long queueId) {
+        if (!_pendingQueueDispatches.add(queueId)) {
+            return;
+        }
+
+        try {
+            _queueDispatcher.execute(new ManagedContextRunnable() {
+                @Override
+                protected void runInContext() {
+                    _pendingQueueDispatches.remove(queueId);
+                    if (isAsyncJobsEnabled()) {
+                        checkQueue(queueId);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            _pendingQueueDispatches.remove(queueId);
+            logger.debug("Unable to dispatch sync queue-{} as the dispatcher is shut down", queueId);
+        }
+    }
+
     private Runnable getHeartbeatTask() {
         return new ManagedContextRunnable() {
 
@@ -1369,7 +1420,17 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
     public boolean start() {
         cleanupLeftOverJobs(getMsid());
 
-        _heartbeatScheduler.scheduleAtFixedRate(getHeartbeatTask(), HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+        _messageBus.subscribe(AsyncJob.Topics.SYNC_QUEUE_UPDATED, new MessageSubscriber() {
+            @Override
+            public void onPublishMessage(String senderAddress, String subject, Object args) {
+                dispatchQueue((Long)args);
+            }
+        });
+        _clusterMgr.registerNotificationListener(JOB_STATE_NOTIFICATION_SUBJECT, (sourcePeer, payload) ->
+                _messageBus.publish(null, AsyncJob.Topics.JOB_STATE, PublishScope.LOCAL, Long.parseLong(payload)));
+
+        int queueScanInterval = QueueScanInterval.value();
+        _heartbeatScheduler.scheduleAtFixedRate(getHeartbeatTask(), queueScanInterval, queueScanInterval, TimeUnit.MILLISECONDS);
         _heartbeatScheduler.scheduleAtFixedRate(getGCTask(), GC_INTERVAL, GC_INTERVAL, TimeUnit.MILLISECONDS);
 
         return true;
@@ -1378,6 +1439,7 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
     @Override
     public boolean stop() {
         _heartbeatScheduler.shutdown();
+        _queueDispatcher.shutdown();
         _apiJobExecutor.shutdown();
         _workerJobExecutor.shutdown();
         return true;
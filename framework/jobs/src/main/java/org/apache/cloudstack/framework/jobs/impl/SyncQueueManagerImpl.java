@@ -17,14 +17,19 @@
 package org.apache.cloudstack.framework.jobs.impl;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
 import javax.inject.Inject;
 
 
+import org.apache.cloudstack.framework.jobs.AsyncJob;
 import org.apache.cloudstack.framework.jobs.dao.SyncQueueDao;
 import org.apache.cloudstack.framework.jobs.dao.SyncQueueItemDao;
+import org.apache.cloudstack.framework.messagebus.MessageBus;
+import org.apache.cloudstack.framework.messagebus.PublishScope;
+
 import com.cloud.utils.DateUtil;
 import com.cloud.utils.component.ManagerBase;
 import com.cloud.utils.db.DB;
@@ -40,12 +45,14 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
     private SyncQueueDao _syncQueueDao;
     @Inject
     private SyncQueueItemDao _syncQueueItemDao;
+    @Inject
+    private MessageBus _messageBus;
 
     @Override
     @DB
     public SyncQueueVO queue(final String syncObjType, final long syncObjId, final String itemType, final long itemId, final long queueSizeLimit) {
         try {
-            return Transaction.execute(new TransactionCallback<SyncQueueVO>() {
+            SyncQueueVO queue = Transaction.execute(new TransactionCallback<SyncQueueVO>() {
                 @Override
                 public SyncQueueVO doInTransaction(TransactionStatus status) {
                     _syncQueueDao.ensureQueue(syncObjType, syncObjId);
@@ -67,6 +74,8 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
                     return queueVO;
                 }
             });
+            publishQueueUpdate(queue.getId());
+            return queue;
         } catch (Exception e) {
             logger.error("Unexpected exception: ", e);
         }
@@ -80,7 +89,8 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
             return Transaction.execute(new TransactionCallback<SyncQueueItemVO>() {
                 @Override
                 public SyncQueueItemVO doInTransaction(TransactionStatus status) {
-                    SyncQueueVO queueVO = _syncQueueDao.findById(queueId);
+                    // lock the queue so that concurrent dispatchers cannot both pass the concurrency limit check
+                    SyncQueueVO queueVO = _syncQueueDao.lockRow(queueId, true);
                     if(queueVO == null) {
                         logger.error("Sync queue(id: " + queueId + ") does not exist");
                         return null;
@@ -137,8 +147,10 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
                 public void doInTransactionWithoutResult(TransactionStatus status) {
                     List<SyncQueueItemVO> l = _syncQueueItemDao.getNextQueueItems(maxItems);
                     if(l != null && l.size() > 0) {
+                        // lock the queues in the same order on every management server so that concurrent scans cannot deadlock
+                        l.sort(Comparator.comparing(SyncQueueItemVO::getQueueId));
                         for(SyncQueueItemVO item : l) {
-                            SyncQueueVO queueVO = _syncQueueDao.findById(item.getQueueId());
+                            SyncQueueVO queueVO = _syncQueueDao.lockRow(item.getQueueId(), true);
                             SyncQueueItemVO itemVO = _syncQueueItemDao.findById(item.getId());
                             if(queueReadyToProcess(queueVO) && itemVO != null && itemVO.getLastProcessNumber() == null) {
                                 Long processNumber = queueVO.getLastProcessNumber();
@@ -177,9 +189,9 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
     @DB
     public void purgeItem(final long queueItemId) {
         try {
-            Transaction.execute(new TransactionCallbackNoReturn() {
+            Long releasedQueueId = Transaction.execute(new TransactionCallback<Long>() {
                 @Override
-                public void doInTransactionWithoutResult(TransactionStatus status) {
+                public Long doInTransaction(TransactionStatus status) {
                     SyncQueueItemVO itemVO = _syncQueueItemDao.findById(queueItemId);
                     if(itemVO != null) {
                         SyncQueueVO queueVO = _syncQueueDao.findById(itemVO.getQueueId());
@@ -193,10 +205,13 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
                             assert (queueVO.getQueueSize() > 0) : "Count reduce happens when it's already <= 0!";
                             queueVO.setQueueSize(queueVO.getQueueSize() - 1);
                             _syncQueueDao.update(queueVO.getId(), queueVO);
+                            return queueVO.getId();
                         }
                     }
+                    return null;
                 }
             });
+            publishQueueUpdate(releasedQueueId);
         } catch (Exception e) {
             logger.error("Unexpected exception: ", e);
         }
@@ -207,9 +222,9 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
     public void returnItem(final long queueItemId) {
         logger.info("Returning queue item " + queueItemId + " back to queue for second try in case of DB deadlock");
         try {
-            Transaction.execute(new TransactionCallbackNoReturn() {
+            Long releasedQueueId = Transaction.execute(new TransactionCallback<Long>() {
                 @Override
-                public void doInTransactionWithoutResult(TransactionStatus status) {
+                public Long doInTransaction(TransactionStatus status) {
                     SyncQueueItemVO itemVO = _syncQueueItemDao.findById(queueItemId);
                     if(itemVO != null) {
                         SyncQueueVO queueVO = _syncQueueDao.findById(itemVO.getQueueId());
@@ -222,9 +237,12 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
                         queueVO.setQueueSize(queueVO.getQueueSize() - 1);
                         queueVO.setLastUpdated(DateUtil.currentGMTTime());
                         _syncQueueDao.update(queueVO.getId(), queueVO);
+                        return queueVO.getId();
                     }
+                    return null;
                 }
             });
+            publishQueueUpdate(releasedQueueId);
         } catch (Exception e) {
             logger.error("Unexpected exception: ", e);
         }
@@ -240,6 +258,17 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
         return _syncQueueItemDao.getBlockedQueueItems(thresholdMs, exclusive);
     }
 
+    /**
+     * Lets the job manager dispatch the next item of the queue right away instead of waiting for its periodic scan.
+     * When called inside an enclosing transaction the update may not be visible yet, the caller is then expected to
+     * signal the queue again once it has committed.
+     */
+    private void publishQueueUpdate(Long queueId) {
+        if (queueId != null) {
+            _messageBus.publish(null, AsyncJob.Topics.SYNC_QUEUE_UPDATED, PublishScope.LOCAL, queueId);
+        }
+    }
+
     private boolean queueReadyToProcess(SyncQueueVO queueVO) {
         int nActiveItems = _syncQueueItemDao.getActiveQueueItemCount(queueVO.getId());
         if (nActiveItems < queueVO.getQueueSizeLimit())
@@ -55,6 +55,8 @@ public class AsyncJobManagerImplTest {
     NetworkDao networkDao;
     @Mock
     NetworkOrchestrationService networkOrchestrationService;
+    @Mock
+    SyncQueueManager queueMgr;
 
     @Test
     public void testCleanupVolumeResource() {
@@ -93,4 +95,13 @@ public class AsyncJobManagerImplTest {
         Mockito.verify(networkOrchestrationService, Mockito.times(1)).stateTransitTo(networkVO,
                 Network.Event.OperationFailed);
     }
+
+    @Test
+    public void dispatchQueueTestChecksTheQueueOnTheDispatcherThread() {
+        when(queueMgr.dequeueFromOne(Mockito.eq(1L), Mockito.anyLong())).thenReturn(null);
+
+        asyncJobManager.dispatchQueue(1L);
+
+        Mockito.verify(queueMgr, Mockito.timeout(5000)).dequeueFromOne(Mockito.eq(1L), Mockito.anyLong());
+    }
 }
@@ -0,0 +1,68 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.framework.jobs.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cloudstack.framework.jobs.dao.SyncQueueDao;
+import org.apache.cloudstack.framework.jobs.dao.SyncQueueItemDao;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.cloud.utils.db.Transaction;
+import com.cloud.utils.db.TransactionCallback;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SyncQueueManagerImplTest {
+    @InjectMocks
+    SyncQueueManagerImpl syncQueueManager;
+    @Mock
+    SyncQueueDao syncQueueDao;
+    @Mock
+    SyncQueueItemDao syncQueueItemDao;
+
+    @Test
+    public void dequeueFromAnyTestLocksTheQueuesInTheOrderOfTheirIds() {
+        List<SyncQueueItemVO> items = new ArrayList<>();
+        for (long queueId : new long[] {3L, 1L, 2L}) {
+            SyncQueueItemVO item = new SyncQueueItemVO();
+            item.setId(10L + queueId);
+            item.setQueueId(queueId);
+            items.add(item);
+        }
+        Mockito.when(syncQueueItemDao.getNextQueueItems(3)).thenReturn(items);
+        Mockito.when(syncQueueDao.lockRow(Mockito.anyLong(), Mockito.eq(true))).thenReturn(Mockito.mock(SyncQueueVO.class));
+
+        try (MockedStatic<Transaction> transaction = Mockito.mockStatic(Transaction.class)) {
+            transaction.when(() -> Transaction.execute(Mockito.any(TransactionCallback.class)))
+                    .thenAnswer(invocation -> ((TransactionCallback<?>)invocation.getArgument(0)).doInTransaction(null));
+            syncQueueManager.dequeueFromAny(1L, 3);
+        }
+
+        InOrder inOrder = Mockito.inOrder(syncQueueDao);
+        inOrder.verify(syncQueueDao).lockRow(1L, true);
+        inOrder.verify(syncQueueDao).lockRow(2L, true);
+        inOrder.verify(syncQueueDao).lockRow(3L, true);
+    }
+}
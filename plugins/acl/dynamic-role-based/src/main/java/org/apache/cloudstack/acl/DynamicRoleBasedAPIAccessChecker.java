@@ -17,17 +17,22 @@
 package org.apache.cloudstack.acl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.inject.Inject;
 import javax.naming.ConfigurationException;
 
 import org.apache.cloudstack.acl.RolePermissionEntity.Permission;
 import org.apache.cloudstack.api.APICommand;
+import org.apache.cloudstack.framework.messagebus.MessageBus;
+import org.apache.cloudstack.framework.messagebus.MessageSubscriber;
 import org.apache.cloudstack.utils.cache.LazyCache;
 import org.apache.commons.lang3.StringUtils;
 
@@ -39,18 +44,27 @@ import com.cloud.user.User;
 import com.cloud.utils.Pair;
 import com.cloud.utils.component.AdapterBase;
 import com.cloud.utils.component.PluggableService;
+import com.cloud.utils.mgmt.JmxUtil;
 
-public class DynamicRoleBasedAPIAccessChecker extends AdapterBase implements APIAclChecker {
+public class DynamicRoleBasedAPIAccessChecker extends AdapterBase implements APIAclChecker, DynamicRoleBasedAPIAccessCheckerMBean {
     @Inject
     private AccountService accountService;
     @Inject
     private RoleService roleService;
+    @Inject
+    private MessageBus messageBus;
 
     private List<PluggableService> services;
     private Map<RoleType, Set<String>> annotationRoleBasedApisMap = new HashMap<RoleType, Set<String>>();
+    // names of the registered APIs, the decisions on the other names checked are not cached
+    private volatile Set<String> apiNames = Collections.emptySet();
 
     private LazyCache<Long, Account> accountCache;
-    private LazyCache<Long, Pair<Role, List<RolePermission>>> rolePermissionsCache;
+    // compiled permissions by role id, dropped when the role or its permissions change on any management server
+    private final Map<Long, RolePermissionIndex> rolePermissionIndexes = new ConcurrentHashMap<>();
+    private final LongAdder roleCacheHits = new LongAdder();
+    private final LongAdder roleCacheMisses = new LongAdder();
+    private final LongAdder roleCacheInvalidations = new LongAdder();
     private int cachePeriod;
 
     protected DynamicRoleBasedAPIAccessChecker() {
@@ -66,10 +80,10 @@ public class DynamicRoleBasedAPIAccessChecker extends AdapterBase implements API
             return apiNames;
         }
 
-        List<RolePermission> allPermissions = roleService.findAllPermissionsBy(role.getId());
+        RolePermissionIndex index = getRolePermissionIndex(role.getId());
         List<String> allowedApis = new ArrayList<>();
         for (String api : apiNames) {
-            if (checkApiPermissionByRole(role, api, allPermissions)) {
+            if (checkApiPermissionByRole(role, api, index)) {
                 allowedApis.add(api);
             }
         }
@@ -103,6 +117,25 @@ public class DynamicRoleBasedAPIAccessChecker extends AdapterBase implements API
                 annotationRoleBasedApisMap.get(role.getRoleType()).contains(apiName);
     }
 
+    /**
+     * Checks if the given Role of an Account has the allowed permission for the given API, looking the rule up in
+     * the compiled permissions of the role.
+     */
+    protected boolean checkApiPermissionByRole(Role role, String apiName, RolePermissionIndex index) {
+        final RolePermission permission = index.findPermission(apiName);
+        if (permission != null) {
+            if (!Permission.ALLOW.equals(permission.getPermission())) {
+                return false;
+            }
+            if (logger.isTraceEnabled()) {
+                logger.trace(String.format("The API [%s] is allowed for the role %s by the permission [%s].", apiName, role, permission.getRule().toString()));
+            }
+            return true;
+        }
+        return annotationRoleBasedApisMap.get(role.getRoleType()) != null &&
+                annotationRoleBasedApisMap.get(role.getRoleType()).contains(apiName);
+    }
+
     protected Account getAccountFromId(long accountId) {
         return accountService.getAccount(accountId);
     }
@@ -120,11 +153,35 @@ public class DynamicRoleBasedAPIAccessChecker extends AdapterBase implements API
         return new Pair<>(accountRole, roleService.findAllPermissionsBy(accountRole.getId()));
     }
 
-    protected Pair<Role, List<RolePermission>> getRolePermissionsUsingCache(long roleId) {
-        if (cachePeriod > 0) {
-            return rolePermissionsCache.get(roleId);
+    /**
+     * Returns the compiled permissions of the role, compiling them on first use, or when they are older than the
+     * cache period when one is set.
+     */
+    protected RolePermissionIndex getRolePermissionIndex(long roleId) {
+        RolePermissionIndex index = rolePermissionIndexes.get(roleId);
+        if (index != null && !index.isOlderThan(cachePeriod)) {
+            roleCacheHits.increment();
+            return index;
+        }
+        // an invalidation of the role waits for the compilation to complete before removing it
+        return rolePermissionIndexes.compute(roleId, (id, cached) -> {
+            if (cached != null && !cached.isOlderThan(cachePeriod)) {
+                roleCacheHits.increment();
+                return cached;
+            }
+            roleCacheMisses.increment();
+            Pair<Role, List<RolePermission>> roleAndPermissions = getRolePermissions(id);
+            return new RolePermissionIndex(roleAndPermissions.first(), roleAndPermissions.second(), apiNames);
+        });
+    }
+
+    protected void invalidateRolePermissions(Long roleId) {
+        roleCacheInvalidations.increment();
+        if (roleId == null) {
+            rolePermissionIndexes.clear();
+        } else {
+            rolePermissionIndexes.remove(roleId);
         }
-        return getRolePermissions(roleId);
     }
 
     protected Account getAccountFromIdUsingCache(long accountId) {
@@ -143,8 +200,8 @@ public class DynamicRoleBasedAPIAccessChecker extends AdapterBase implements API
         if (account == null) {
             throw new PermissionDeniedException(String.format("Account for user id [%s] cannot be found", user.getUuid()));
         }
-        Pair<Role, List<RolePermission>> roleAndPermissions = getRolePermissionsUsingCache(account.getRoleId());
-        final Role accountRole = roleAndPermissions.first();
+        RolePermissionIndex index = getRolePermissionIndex(account.getRoleId());
+        final Role accountRole = index.getRole();
         if (accountRole == null) {
             throw new PermissionDeniedException(String.format("Account role for user id [%s] cannot be found.", user.getUuid()));
         }
@@ -152,16 +209,15 @@ public class DynamicRoleBasedAPIAccessChecker extends AdapterBase implements API
             logger.info("Account for user id {} is Root Admin or Domain Admin, all APIs are allowed.", user.getUuid());
             return true;
         }
-        List<RolePermission> allPermissions = roleAndPermissions.second();
-        if (checkApiPermissionByRole(accountRole, commandName, allPermissions)) {
+        if (checkApiPermissionByRole(accountRole, commandName, index)) {
             return true;
         }
         throw new UnavailableCommandException(String.format("The API [%s] does not exist or is not available for the account for user id [%s].", commandName, user.getUuid()));
     }
 
     public boolean checkAccess(Account account, String commandName) {
-        Pair<Role, List<RolePermission>> roleAndPermissions = getRolePermissionsUsingCache(account.getRoleId());
-        final Role accountRole = roleAndPermissions.first();
+        RolePermissionIndex index = getRolePermissionIndex(account.getRoleId());
+        final Role accountRole = index.getRole();
         if (accountRole == null) {
             throw new PermissionDeniedException(String.format("The account [%s] has role null or unknown.", account));
         }
@@ -173,8 +229,7 @@ public class DynamicRoleBasedAPIAccessChecker extends AdapterBase implements API
             return true;
         }
 
-        List<RolePermission> allPermissions = roleService.findAllPermissionsBy(accountRole.getId());
-        if (checkApiPermissionByRole(accountRole, commandName, allPermissions)) {
+        if (checkApiPermissionByRole(accountRole, commandName, index)) {
             return true;
         }
         throw new UnavailableCommandException(String.format("The API [%s] does not exist or is not available for the account %s.", commandName, account));
@@ -209,23 +264,65 @@ public class DynamicRoleBasedAPIAccessChecker extends AdapterBase implements API
         super.configure(name, params);
         cachePeriod = Math.max(0, RoleService.DynamicApiCheckerCachePeriod.value());
         accountCache = new LazyCache<>(32, cachePeriod, this::getAccountFromId);
-        rolePermissionsCache = new LazyCache<>(32, cachePeriod, this::getRolePermissions);
         return true;
     }
 
     @Override
     public boolean start() {
+        Set<String> registeredApiNames = new HashSet<>();
         for (PluggableService service : services) {
             for (Class<?> clz : service.getCommands()) {
                 APICommand command = clz.getAnnotation(APICommand.class);
+                registeredApiNames.add(command.name());
                 for (RoleType role : command.authorized()) {
                     addApiToRoleBasedAnnotationsMap(role, command.name());
                 }
             }
         }
+        apiNames = Collections.unmodifiableSet(registeredApiNames);
+        messageBus.subscribe(RoleService.MESSAGE_ROLE_PERMISSIONS_CHANGED_EVENT, new MessageSubscriber() {
+            @Override
+            public void onPublishMessage(String senderAddress, String subject, Object args) {
+                invalidateRolePermissions((Long)args);
+            }
+        });
+        try {
+            JmxUtil.registerMBean("APIChecker", "DynamicRoleBasedAPIAccessChecker", this);
+        } catch (Exception e) {
+            logger.warn("Unable to register the dynamic role based API checker into JMX monitoring due to exception {}", e.toString());
+        }
         return super.start();
     }
 
+    @Override
+    public int getCachedRoles() {
+        return rolePermissionIndexes.size();
+    }
+
+    @Override
+    public int getCachedApiDecisions() {
+        int decisions = 0;
+        for (RolePermissionIndex index : rolePermissionIndexes.values()) {
+            decisions += index.getDecisionCount();
+        }
+        return decisions;
+    }
+
+    @Override
+    public long getRoleCacheHits() {
+        return roleCacheHits.sum();
+    }
+
+    @Override
+    public long getRoleCacheMisses() {
+        return roleCacheMisses.sum();
+    }
+
+    @Override
+    public long getRoleCacheInvalidations() {
+        return roleCacheInvalidations.sum();
+    }
+
     public List<PluggableService> getServices() {
         return services;
     }
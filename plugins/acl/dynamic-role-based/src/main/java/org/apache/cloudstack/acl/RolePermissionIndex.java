@@ -0,0 +1,120 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.acl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The permissions of a role, compiled for looking up the rule that decides on an API.
+ * <p>
+ * As when walking the sorted permissions, the first rule matching the API name decides. The rules without wildcard
+ * are hashed by API name, and the wildcard rules are compiled into a single pattern in which each rule is a capturing
+ * group, the first group that matches being the first matching wildcard rule. The rule found for an API name is
+ * memoized for the registered APIs only, as the names checked come from the clients.
+ */
+public class RolePermissionIndex {
+
+    private final Role role;
+    private final List<RolePermission> permissions;
+    private final long createdAt = System.currentTimeMillis();
+
+    // position of the first rule of each API name without wildcard, by lower case API name
+    private final Map<String, Integer> exactRules = new HashMap<>();
+    // position of the rule of each group of the wildcard pattern
+    private final List<Integer> wildcardRules = new ArrayList<>();
+    private final Pattern wildcardPattern;
+
+    // names of the registered APIs, the only ones whose decision is memoized
+    private final Set<String> apiNames;
+    private final Map<String, Optional<RolePermission>> decisions = new ConcurrentHashMap<>();
+
+    public RolePermissionIndex(Role role, List<RolePermission> permissions, Set<String> apiNames) {
+        this.role = role;
+        this.permissions = permissions != null ? permissions : Collections.emptyList();
+        this.apiNames = apiNames != null ? apiNames : Collections.emptySet();
+
+        StringBuilder pattern = new StringBuilder();
+        for (int i = 0; i < this.permissions.size(); i++) {
+            String rule = this.permissions.get(i).getRule().getRuleString().toLowerCase();
+            if (!rule.contains("*")) {
+                exactRules.putIfAbsent(rule, i);
+                continue;
+            }
+            if (pattern.length() > 0) {
+                pattern.append('|');
+            }
+            // rules only contain letters, digits and wildcards, see Rule
+            pattern.append('(').append(rule.replace("*", "\\w*")).append(')');
+            wildcardRules.add(i);
+        }
+        wildcardPattern = pattern.length() > 0 ? Pattern.compile(pattern.toString()) : null;
+    }
+
+    public Role getRole() {
+        return role;
+    }
+
+    /**
+     * @return the first permission whose rule matches the API name, null when there is none
+     */
+    public RolePermission findPermission(String apiName) {
+        if (StringUtils.isEmpty(apiName)) {
+            return null;
+        }
+        if (!apiNames.contains(apiName)) {
+            return lookup(apiName);
+        }
+        return decisions.computeIfAbsent(apiName, name -> Optional.ofNullable(lookup(name))).orElse(null);
+    }
+
+    private RolePermission lookup(String apiName) {
+        String name = apiName.toLowerCase();
+        Integer exact = exactRules.get(name);
+        int first = exact != null ? exact : Integer.MAX_VALUE;
+        if (wildcardPattern != null) {
+            Matcher matcher = wildcardPattern.matcher(name);
+            if (matcher.matches()) {
+                for (int group = 1; group <= matcher.groupCount(); group++) {
+                    if (matcher.group(group) != null) {
+                        first = Math.min(first, wildcardRules.get(group - 1));
+                        break;
+                    }
+                }
+            }
+        }
+        return first == Integer.MAX_VALUE ? null : permissions.get(first);
+    }
+
+    public boolean isOlderThan(long seconds) {
+        return seconds > 0 && System.currentTimeMillis() - createdAt > seconds * 1000;
+    }
+
+    public int getDecisionCount() {
+        return decisions.size();
+    }
+}
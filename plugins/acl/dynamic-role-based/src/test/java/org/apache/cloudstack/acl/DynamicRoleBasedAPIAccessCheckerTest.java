@@ -163,6 +163,27 @@ public class DynamicRoleBasedAPIAccessCheckerTest extends TestCase {
         }
     }
 
+    @Test
+    public void testRolePermissionsAreCachedUntilInvalidated() {
+        final String allowedApiName = "someAllowedApi";
+        final RolePermission permission = new RolePermissionVO(1L, allowedApiName, Permission.ALLOW, null);
+        Mockito.when(roleServiceMock.findAllPermissionsBy(Mockito.anyLong())).thenReturn(Collections.singletonList(permission));
+
+        assertTrue(apiAccessCheckerSpy.checkAccess(getTestUser(), allowedApiName));
+        assertTrue(apiAccessCheckerSpy.checkAccess(getTestUser(), allowedApiName));
+        Mockito.verify(roleServiceMock, Mockito.times(1)).findAllPermissionsBy(Mockito.anyLong());
+        assertEquals(1, apiAccessCheckerSpy.getRoleCacheHits());
+
+        Mockito.when(roleServiceMock.findAllPermissionsBy(Mockito.anyLong())).thenReturn(Collections.<RolePermission>emptyList());
+        apiAccessCheckerSpy.invalidateRolePermissions(getTestRole().getId());
+        try {
+            apiAccessCheckerSpy.checkAccess(getTestUser(), allowedApiName);
+            fail("Exception was expected");
+        } catch (PermissionDeniedException ignored) {
+        }
+        assertEquals(2, apiAccessCheckerSpy.getRoleCacheMisses());
+    }
+
     @Test
     public void testAnnotationFallbackCheckAccess() {
         final String allowedApiName = "someApiWithAnnotations";
@@ -0,0 +1,102 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.acl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.cloudstack.acl.RolePermissionEntity.Permission;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RolePermissionIndexTest {
+
+    private static final Role ROLE = new RoleVO(4L, "SomeRole", RoleType.User, "some description");
+    private static final Set<String> API_NAMES = Set.of("listUsers", "deleteUser", "createUser", "deployVirtualMachine", "updateUser", "startVm",
+            "listHosts", "stopVirtualMachine");
+
+    private static RolePermission permission(String rule, Permission permission) {
+        return new RolePermissionVO(ROLE.getId(), rule, permission, null);
+    }
+
+    @Test
+    public void findPermissionTestTheFirstMatchingRuleDecides() {
+        List<RolePermission> permissions = Arrays.asList(
+                permission("list*", Permission.ALLOW),
+                permission("listUsers", Permission.DENY),
+                permission("deleteUser", Permission.DENY),
+                permission("*User", Permission.ALLOW),
+                permission("*", Permission.DENY));
+        RolePermissionIndex index = new RolePermissionIndex(ROLE, permissions, API_NAMES);
+
+        Assert.assertSame(permissions.get(0), index.findPermission("listUsers"));
+        Assert.assertSame(permissions.get(2), index.findPermission("deleteUser"));
+        Assert.assertSame(permissions.get(3), index.findPermission("createUser"));
+        Assert.assertSame(permissions.get(4), index.findPermission("deployVirtualMachine"));
+    }
+
+    @Test
+    public void findPermissionTestMatchesAsTheRulesDo() {
+        List<RolePermission> permissions = Arrays.asList(
+                permission("updateUser", Permission.DENY),
+                permission("*Vm*", Permission.ALLOW),
+                permission("list*s", Permission.ALLOW));
+        RolePermissionIndex index = new RolePermissionIndex(ROLE, permissions, API_NAMES);
+
+        for (String apiName : Arrays.asList("UPDATEUSER", "updateUser", "startVm", "listVmSnapshot", "listHosts", "listHost", "stopVirtualMachine", "", null)) {
+            RolePermission expected = null;
+            for (RolePermission permission : permissions) {
+                if (permission.getRule().matches(apiName)) {
+                    expected = permission;
+                    break;
+                }
+            }
+            Assert.assertSame(apiName, expected, index.findPermission(apiName));
+        }
+    }
+
+    @Test
+    public void findPermissionTestMemoizesTheDecisions() {
+        RolePermissionIndex index = new RolePermissionIndex(ROLE, Arrays.asList(permission("list*", Permission.ALLOW)), API_NAMES);
+
+        index.findPermission("listUsers");
+        index.findPermission("listUsers");
+        index.findPermission("deleteUser");
+
+        Assert.assertEquals(2, index.getDecisionCount());
+    }
+
+    @Test
+    public void findPermissionTestDoesNotMemoizeTheDecisionsOnUnknownApis() {
+        RolePermission permission = permission("list*", Permission.ALLOW);
+        RolePermissionIndex index = new RolePermissionIndex(ROLE, Arrays.asList(permission), API_NAMES);
+
+        Assert.assertSame(permission, index.findPermission("listSomethingUnknown"));
+        Assert.assertNull(index.findPermission("notAnApi"));
+
+        Assert.assertEquals(0, index.getDecisionCount());
+    }
+
+    @Test
+    public void findPermissionTestWithoutPermissions() {
+        RolePermissionIndex index = new RolePermissionIndex(ROLE, null, API_NAMES);
+
+        Assert.assertNull(index.findPermission("listUsers"));
+        Assert.assertSame(ROLE, index.getRole());
+    }
+}
@@ -17,8 +17,10 @@
 package org.apache.cloudstack.affinity;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -82,7 +84,7 @@ public class HostAntiAffinityProcessor extends AffinityProcessorBase implements
                     _affinityGroupDao.listByIds(affinityGroupIds, true);
                 }
                 for (AffinityGroupVMMapVO vmGroupMapping : vmGroupMappings) {
-                    processAffinityGroup(vmGroupMapping, avoid, vm);
+                    processAffinityGroup(vmGroupMapping, avoid, vm, vmList);
                 }
             }
         });
@@ -90,6 +92,13 @@ public class HostAntiAffinityProcessor extends AffinityProcessorBase implements
     }
 
     protected void processAffinityGroup(AffinityGroupVMMapVO vmGroupMapping, ExcludeList avoid, VirtualMachine vm) {
+        processAffinityGroup(vmGroupMapping, avoid, vm, Collections.emptyList());
+    }
+
+    /**
+     * @param vmList VMs to consider on their host rather than on the one in the database, as the VMs planned with this one
+     */
+    protected void processAffinityGroup(AffinityGroupVMMapVO vmGroupMapping, ExcludeList avoid, VirtualMachine vm, List<VirtualMachine> vmList) {
         if (vmGroupMapping != null) {
             AffinityGroupVO group = _affinityGroupDao.findById(vmGroupMapping.getAffinityGroupId());
 
@@ -100,7 +109,14 @@ public class HostAntiAffinityProcessor extends AffinityProcessorBase implements
             List<Long> groupVMIds = _affinityGroupVMMapDao.listVmIdsByAffinityGroup(group.getId());
             groupVMIds.remove(vm.getId());
 
+            Map<Long, VirtualMachine> vmIdVmMap = vmList.stream().collect(Collectors.toMap(VirtualMachine::getId, Function.identity(), (first, second) -> second));
             for (Long groupVMId : groupVMIds) {
+                VirtualMachine listedVM = vmIdVmMap.get(groupVMId);
+                if (listedVM != null && listedVM.getHostId() != null) {
+                    avoid.addHost(listedVM.getHostId());
+                    logger.debug("Added host {} to avoid set, since VM {} is planned on the host", listedVM.getHostId(), listedVM);
+                    continue;
+                }
                 VMInstanceVO groupVM = _vmInstanceDao.findById(groupVMId);
                 if (groupVM != null && !groupVM.isRemoved()) {
                     if (groupVM.getHostId() != null) {
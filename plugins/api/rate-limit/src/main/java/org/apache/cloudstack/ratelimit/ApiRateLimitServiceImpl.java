@@ -17,17 +17,23 @@
 package org.apache.cloudstack.ratelimit;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.inject.Inject;
 import javax.naming.ConfigurationException;
 
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.CacheManager;
-
 import org.apache.cloudstack.acl.Role;
+import org.apache.cloudstack.framework.config.ConfigKey;
+import org.apache.cloudstack.framework.config.Configurable;
+import org.apache.cloudstack.managed.context.ManagedContextRunnable;
 import org.apache.cloudstack.utils.reflectiontostringbuilderutils.ReflectionToStringBuilderUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 
 import org.apache.cloudstack.acl.APIChecker;
@@ -36,6 +42,7 @@ import org.apache.cloudstack.api.command.user.ratelimit.GetApiLimitCmd;
 import org.apache.cloudstack.api.response.ApiLimitResponse;
 import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
 
+import com.cloud.cluster.ClusterManager;
 import com.cloud.configuration.Config;
 import com.cloud.exception.PermissionDeniedException;
 import com.cloud.exception.RequestLimitException;
@@ -43,9 +50,22 @@ import com.cloud.user.Account;
 import com.cloud.user.AccountService;
 import com.cloud.user.User;
 import com.cloud.utils.component.AdapterBase;
+import com.cloud.utils.concurrency.NamedThreadFactory;
+import com.cloud.utils.mgmt.JmxUtil;
 
 @Component
-public class ApiRateLimitServiceImpl extends AdapterBase implements APIChecker, ApiRateLimitService {
+public class ApiRateLimitServiceImpl extends AdapterBase implements APIChecker, ApiRateLimitService, Configurable, ApiRateLimitServiceMBean {
+
+    static final ConfigKey<String> ApiLimitMaxPerApi = new ConfigKey<>("Advanced", String.class, "api.throttling.api.max", "",
+            "Comma separated list of apiName=max pairs, limiting the number of calls of each of these APIs by an account within the api.throttling.interval, "
+                    + "on top of the api.throttling.max limit of the account", false);
+
+    static final ConfigKey<Integer> ApiLimitClusterSyncInterval = new ConfigKey<>("Advanced", Integer.class, "api.throttling.cluster.sync.interval", "0",
+            "Interval (in milliseconds) at which the API calls counted by a management server are reported to the other management servers, "
+                    + "so that the API limits apply to the whole cloud rather than to each management server. 0 to disable", false);
+
+    static final String API_LIMIT_TOKENS_NOTIFICATION_SUBJECT = "ApiRateLimitTokens";
+    static final String API_LIMIT_RESET_NOTIFICATION_SUBJECT = "ApiRateLimitReset";
 
     /**
      * True if api rate limiting is enabled
@@ -62,7 +82,19 @@ public class ApiRateLimitServiceImpl extends AdapterBase implements APIChecker,
      */
     private int maxAllowed = 30;
 
-    private LimitStore _store = null;
+    /**
+     * Max number of requests of an api during timeToLive duration, by lower-case api name.
+     */
+    private Map<String, Integer> maxAllowedPerApi = new HashMap<>();
+
+    private TokenBucketStore _store = null;
+
+    private ScheduledExecutorService _syncExecutor;
+
+    private final LongAdder allowedCalls = new LongAdder();
+    private final LongAdder throttledCalls = new LongAdder();
+    private final LongAdder throttledApiCalls = new LongAdder();
+    private final LongAdder remoteTokens = new LongAdder();
 
     @Inject
     AccountService _accountService;
@@ -70,6 +102,9 @@ public class ApiRateLimitServiceImpl extends AdapterBase implements APIChecker,
     @Inject
     ConfigurationDao _configDao;
 
+    @Inject
+    ClusterManager _clusterMgr;
+
     @Override
     public boolean configure(String name, Map<String, Object> params) throws ConfigurationException {
         super.configure(name, params);
@@ -88,42 +123,129 @@ public class ApiRateLimitServiceImpl extends AdapterBase implements APIChecker,
             if (maxReqs != null) {
                 maxAllowed = Integer.parseInt(maxReqs);
             }
+            maxAllowedPerApi = parseMaxAllowedPerApi(ApiLimitMaxPerApi.value());
             // create limit store
-            EhcacheLimitStore cacheStore = new EhcacheLimitStore();
             int maxElements = 10000;
             String cachesize = _configDao.getValue(Config.ApiLimitCacheSize.key());
             if (cachesize != null) {
                 maxElements = Integer.parseInt(cachesize);
             }
-            CacheManager cm = CacheManager.create();
-            Cache cache = new Cache("api-limit-cache", maxElements, false, false, timeToLive, timeToLive);
-            cm.addCache(cache);
-            logger.info("Limit Cache created with timeToLive=" + timeToLive + ", maxAllowed=" + maxAllowed + ", maxElements=" + maxElements);
-            cacheStore.setCache(cache);
-            _store = cacheStore;
-
+            _store = new TokenBucketStore(timeToLive * 1000L, maxElements);
+            logger.info("Limit store created with timeToLive=" + timeToLive + ", maxAllowed=" + maxAllowed + ", maxAllowedPerApi=" + maxAllowedPerApi
+                    + ", maxElements=" + maxElements);
         }
 
         return true;
     }
 
+    @Override
+    public boolean start() {
+        _clusterMgr.registerNotificationListener(API_LIMIT_TOKENS_NOTIFICATION_SUBJECT, (sourcePeer, payload) -> takeRemoteTokens(payload));
+        _clusterMgr.registerNotificationListener(API_LIMIT_RESET_NOTIFICATION_SUBJECT, (sourcePeer, payload) ->
+                resetLocalApiLimit(StringUtils.isEmpty(payload) ? null : Long.parseLong(payload)));
+
+        int syncInterval = ApiLimitClusterSyncInterval.value();
+        if (syncInterval > 0) {
+            _syncExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ApiRateLimitSync"));
+            _syncExecutor.scheduleWithFixedDelay(new ManagedContextRunnable() {
+                @Override
+                protected void runInContext() {
+                    try {
+                        reportTokens();
+                    } catch (Exception e) {
+                        logger.warn("Unable to report the API calls counted by this management server to its peers due to {}", e.toString());
+                    }
+                }
+            }, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        }
+
+        try {
+            JmxUtil.registerMBean("APIChecker", "ApiRateLimitService", this);
+        } catch (Exception e) {
+            logger.warn("Unable to register the API rate limit service into JMX monitoring due to exception {}", e.toString());
+        }
+        return super.start();
+    }
+
+    @Override
+    public boolean stop() {
+        if (_syncExecutor != null) {
+            _syncExecutor.shutdownNow();
+        }
+        return super.stop();
+    }
+
+    /**
+     * Parses the apiName=max pairs of {@code api.throttling.api.max}, skipping the malformed ones.
+     */
+    protected Map<String, Integer> parseMaxAllowedPerApi(String value) {
+        Map<String, Integer> limits = new HashMap<>();
+        if (StringUtils.isBlank(value)) {
+            return limits;
+        }
+        for (String pair : value.split(",")) {
+            String[] apiAndMax = pair.split("=");
+            if (apiAndMax.length != 2 || StringUtils.isBlank(apiAndMax[0]) || !StringUtils.isNumeric(apiAndMax[1].trim())) {
+                logger.warn(String.format("Ignoring the malformed API limit [%s] of %s.", pair, ApiLimitMaxPerApi.key()));
+                continue;
+            }
+            limits.put(apiAndMax[0].trim().toLowerCase(), Integer.parseInt(apiAndMax[1].trim()));
+        }
+        return limits;
+    }
+
+    /**
+     * Sends the number of API calls counted locally since the previous report to the other management servers, as
+     * bucketKey=tokens pairs separated by commas.
+     */
+    protected void reportTokens() {
+        Map<String, Long> unreported = _store.takeUnreported();
+        if (unreported.isEmpty()) {
+            return;
+        }
+        StringBuilder payload = new StringBuilder();
+        for (Map.Entry<String, Long> entry : unreported.entrySet()) {
+            if (payload.length() > 0) {
+                payload.append(',');
+            }
+            payload.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        _clusterMgr.publishNotification(API_LIMIT_TOKENS_NOTIFICATION_SUBJECT, payload.toString());
+    }
+
+    /**
+     * Counts the API calls reported by another management server in the buckets of this one.
+     */
+    protected void takeRemoteTokens(String payload) {
+        if (StringUtils.isEmpty(payload)) {
+            return;
+        }
+        for (String pair : payload.split(",")) {
+            int separator = pair.lastIndexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            long tokens = Long.parseLong(pair.substring(separator + 1));
+            _store.getOrCreate(pair.substring(0, separator)).takeRemote(tokens);
+            remoteTokens.add(tokens);
+        }
+    }
+
     @Override
     public ApiLimitResponse searchApiLimit(Account caller) {
         ApiLimitResponse response = new ApiLimitResponse();
         response.setAccountId(caller.getUuid());
         response.setAccountName(caller.getAccountName());
-        StoreEntry entry = _store.get(caller.getId());
-        if (entry == null) {
-
-            /* Populate the entry, thus unlocking any underlying mutex */
-            entry = _store.create(caller.getId(), timeToLive);
+        TokenBucket bucket = _store.get(TokenBucketStore.getKey(caller.getId()));
+        if (bucket == null || bucket.isFull()) {
             response.setApiIssued(0);
             response.setApiAllowed(maxAllowed);
             response.setExpireAfter(timeToLive);
         } else {
-            response.setApiIssued(entry.getCounter());
-            response.setApiAllowed(maxAllowed - entry.getCounter());
-            response.setExpireAfter(entry.getExpireDuration());
+            int taken = bucket.getTaken();
+            response.setApiIssued(taken);
+            response.setApiAllowed(maxAllowed - taken);
+            response.setExpireAfter(bucket.getRefillDelay());
         }
 
         return response;
@@ -131,12 +253,19 @@ public class ApiRateLimitServiceImpl extends AdapterBase implements APIChecker,
 
     @Override
     public boolean resetApiLimit(Long accountId) {
+        resetLocalApiLimit(accountId);
+        if (_clusterMgr != null) {
+            _clusterMgr.publishNotification(API_LIMIT_RESET_NOTIFICATION_SUBJECT, accountId != null ? String.valueOf(accountId) : "");
+        }
+        return true;
+    }
+
+    protected void resetLocalApiLimit(Long accountId) {
         if (accountId != null) {
-            _store.create(accountId, timeToLive);
+            _store.reset(accountId);
         } else {
-            _store.resetCounters();
+            _store.resetAll(timeToLive * 1000L);
         }
-        return true;
     }
 
     @Override
@@ -154,12 +283,24 @@ public class ApiRateLimitServiceImpl extends AdapterBase implements APIChecker,
     }
 
     public void throwExceptionDueToApiRateLimitReached(Long accountId) throws RequestLimitException {
-        long expireAfter = _store.get(accountId).getExpireDuration();
+        throwExceptionDueToApiRateLimitReached(accountId, null);
+    }
+
+    public void throwExceptionDueToApiRateLimitReached(Long accountId, String apiName) throws RequestLimitException {
+        long expireAfter = getRefillDelay(TokenBucketStore.getKey(accountId));
+        if (apiName != null) {
+            expireAfter = Math.max(expireAfter, getRefillDelay(TokenBucketStore.getKey(accountId, apiName.toLowerCase())));
+        }
         String msg = String.format("The given user has reached his/her account api limit, please retry after [%s] ms.", expireAfter);
         logger.warn(msg);
         throw new RequestLimitException(msg);
     }
 
+    private long getRefillDelay(String key) {
+        TokenBucket bucket = _store.get(key);
+        return bucket != null ? bucket.getRefillDelay() : 0;
+    }
+
     @Override
     public boolean checkAccess(User user, String apiCommandName) throws PermissionDeniedException {
         if (!isEnabled()) {
@@ -178,8 +319,8 @@ public class ApiRateLimitServiceImpl extends AdapterBase implements APIChecker,
                     ReflectionToStringBuilderUtils.reflectOnlySelectedFields(account, "accountName", "uuid")));
             return true;
         }
-        if (hasApiRateLimitBeenExceeded(accountId)) {
-            throwExceptionDueToApiRateLimitReached(accountId);
+        if (hasApiRateLimitBeenExceeded(accountId, commandName)) {
+            throwExceptionDueToApiRateLimitReached(accountId, commandName);
         }
         return true;
     }
@@ -191,19 +332,36 @@ public class ApiRateLimitServiceImpl extends AdapterBase implements APIChecker,
      * @return if the API limit was exceeded by the account
      */
     public boolean hasApiRateLimitBeenExceeded(Long accountId) {
-        Account account = _accountService.getAccount(accountId);
-        StoreEntry entry = _store.get(accountId);
+        return hasApiRateLimitBeenExceeded(accountId, null);
+    }
 
-        if (entry == null) {
-            entry = _store.create(account.getId(), timeToLive);
+    /**
+     * Verifies if the API limit, or the limit of the given API, was exceeded by the account. The limit of the API is
+     * checked first, so that a call refused by it does not count against the limit of the account.
+     *
+     * @param accountId the id of the account to be verified
+     * @param apiName the name of the API called, null when not known
+     * @return if the API limit was exceeded by the account
+     */
+    public boolean hasApiRateLimitBeenExceeded(Long accountId, String apiName) {
+        if (apiName != null && !maxAllowedPerApi.isEmpty()) {
+            String api = apiName.toLowerCase();
+            Integer maxAllowedForApi = maxAllowedPerApi.get(api);
+            if (maxAllowedForApi != null && !_store.getOrCreate(TokenBucketStore.getKey(accountId, api)).tryTake(maxAllowedForApi)) {
+                throttledApiCalls.increment();
+                return true;
+            }
         }
 
-        int current = entry.incrementAndGet();
-
-        if (current <= maxAllowed) {
-            logger.trace(String.format("Account %s has current count [%s].", ReflectionToStringBuilderUtils.reflectOnlySelectedFields(account, "uuid", "accountName"), current));
+        TokenBucket bucket = _store.getOrCreate(TokenBucketStore.getKey(accountId));
+        if (bucket.tryTake(maxAllowed)) {
+            allowedCalls.increment();
+            if (logger.isTraceEnabled()) {
+                logger.trace(String.format("Account [%s] has current count [%s].", accountId, bucket.getTaken()));
+            }
             return false;
         }
+        throttledCalls.increment();
         return true;
     }
 
@@ -226,6 +384,7 @@ public class ApiRateLimitServiceImpl extends AdapterBase implements APIChecker,
     @Override
     public void setTimeToLive(int timeToLive) {
         this.timeToLive = timeToLive;
+        _store.resetAll(timeToLive * 1000L);
     }
 
     protected int getTimeToLive() {
@@ -237,12 +396,8 @@ public class ApiRateLimitServiceImpl extends AdapterBase implements APIChecker,
     }
 
     protected int getIssued(Long accountId) {
-        int ammount = 0;
-        StoreEntry entry = _store.get(accountId);
-        if (entry != null) {
-            ammount = entry.getCounter();
-        }
-        return ammount;
+        TokenBucket bucket = _store.get(TokenBucketStore.getKey(accountId));
+        return bucket != null ? bucket.getTaken() : 0;
     }
 
     @Override
@@ -251,9 +406,48 @@ public class ApiRateLimitServiceImpl extends AdapterBase implements APIChecker,
 
     }
 
+    protected void setMaxAllowedPerApi(Map<String, Integer> maxAllowedPerApi) {
+        this.maxAllowedPerApi = maxAllowedPerApi;
+    }
+
     @Override
     public void setEnabled(boolean enabled) {
         this.enabled = enabled;
 
     }
+
+    @Override
+    public int getBucketCount() {
+        return _store.size();
+    }
+
+    @Override
+    public long getAllowedCalls() {
+        return allowedCalls.sum();
+    }
+
+    @Override
+    public long getThrottledCalls() {
+        return throttledCalls.sum();
+    }
+
+    @Override
+    public long getThrottledApiCalls() {
+        return throttledApiCalls.sum();
+    }
+
+    @Override
+    public long getRemoteTokens() {
+        return remoteTokens.sum();
+    }
+
+    @Override
+    public String getConfigComponentName() {
+        return ApiRateLimitService.class.getSimpleName();
+    }
+
+    @Override
+    public ConfigKey<?>[] getConfigKeys() {
+        return new ConfigKey<?>[] {ApiLimitMaxPerApi, ApiLimitClusterSyncInterval};
+    }
 }
@@ -16,17 +16,15 @@
 // under the License.
 package org.apache.cloudstack.ratelimit;
 
-/**
- * Interface for each entry in LimitStore.
- *
- */
-public interface StoreEntry {
+public interface ApiRateLimitServiceMBean {
 
-    int getCounter();
+    int getBucketCount();
 
-    int incrementAndGet();
+    long getAllowedCalls();
 
-    boolean isExpired();
+    long getThrottledCalls();
 
-    long getExpireDuration(); /* seconds to reset counter */
+    long getThrottledApiCalls();
+
+    long getRemoteTokens();
 }
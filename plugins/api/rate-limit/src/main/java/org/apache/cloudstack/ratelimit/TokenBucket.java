@@ -0,0 +1,133 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bucket of API call tokens, refilled in full once its period has elapsed since the first token was taken.
+ * <p>
+ * The start of the current period and the number of tokens taken within it are packed into a single long, so that
+ * taking a token is a compare-and-set, without any lock. Tokens taken on other management servers are added to the
+ * tokens taken locally, the ones taken locally being counted apart so that they can be reported to the peers.
+ */
+public class TokenBucket {
+
+    private static final int TAKEN_BITS = 24;
+    private static final long MAX_TAKEN = (1L << TAKEN_BITS) - 1;
+    // period starts are stored relative to this instant, in milliseconds, on the 40 remaining bits
+    private static final long ORIGIN = System.currentTimeMillis();
+
+    private final long periodMs;
+    private final AtomicLong state = new AtomicLong(pack(0, 0));
+    private final LongAdder takenLocally = new LongAdder();
+    private long reported;
+
+    public TokenBucket(long periodMs) {
+        this.periodMs = Math.max(periodMs, 1);
+    }
+
+    private static long pack(long periodStart, long taken) {
+        return (periodStart << TAKEN_BITS) | Math.min(taken, MAX_TAKEN);
+    }
+
+    private static long periodStart(long state) {
+        return state >>> TAKEN_BITS;
+    }
+
+    private static long taken(long state) {
+        return state & MAX_TAKEN;
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() - ORIGIN + 1;
+    }
+
+    private boolean isCurrent(long state, long now) {
+        return periodStart(state) != 0 && now - periodStart(state) < periodMs;
+    }
+
+    /**
+     * Takes a token when less than {@code capacity} tokens were taken in the current period.
+     * @return false when the bucket is empty
+     */
+    public boolean tryTake(int capacity) {
+        while (true) {
+            long current = state.get();
+            long now = now();
+            boolean inPeriod = isCurrent(current, now);
+            long taken = inPeriod ? taken(current) : 0;
+            if (taken >= capacity) {
+                return false;
+            }
+            if (state.compareAndSet(current, pack(inPeriod ? periodStart(current) : now, taken + 1))) {
+                takenLocally.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Counts tokens taken on another management server.
+     */
+    public void takeRemote(long tokens) {
+        if (tokens <= 0) {
+            return;
+        }
+        while (true) {
+            long current = state.get();
+            long now = now();
+            boolean inPeriod = isCurrent(current, now);
+            long taken = inPeriod ? taken(current) : 0;
+            if (state.compareAndSet(current, pack(inPeriod ? periodStart(current) : now, taken + tokens))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of tokens taken in the current period
+     */
+    public int getTaken() {
+        long current = state.get();
+        return isCurrent(current, now()) ? (int)taken(current) : 0;
+    }
+
+    /**
+     * @return the number of milliseconds before the bucket is refilled, 0 when it is full
+     */
+    public long getRefillDelay() {
+        long current = state.get();
+        long now = now();
+        return isCurrent(current, now) ? periodStart(current) + periodMs - now : 0;
+    }
+
+    public boolean isFull() {
+        return getRefillDelay() == 0;
+    }
+
+    /**
+     * @return the number of tokens taken locally since the previous call
+     */
+    public synchronized long takeUnreported() {
+        long total = takenLocally.sum();
+        long unreported = total - reported;
+        reported = total;
+        return unreported;
+    }
+}
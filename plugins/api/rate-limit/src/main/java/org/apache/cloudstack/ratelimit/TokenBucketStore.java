@@ -0,0 +1,104 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.ratelimit;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The token buckets of the accounts, and of the APIs of each account, keyed by account id, or by account id and API
+ * name separated by a slash.
+ * <p>
+ * Buckets are created on first use and dropped once full again, when the store grows past its maximum size or when
+ * {@link #evictFull()} is called.
+ */
+public class TokenBucketStore {
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private volatile long periodMs;
+
+    public TokenBucketStore(long periodMs, int maxSize) {
+        this.periodMs = periodMs;
+        this.maxSize = maxSize;
+    }
+
+    public static String getKey(long accountId) {
+        return String.valueOf(accountId);
+    }
+
+    public static String getKey(long accountId, String apiName) {
+        return accountId + "/" + apiName;
+    }
+
+    /**
+     * @return the bucket, null when none was used recently
+     */
+    public TokenBucket get(String key) {
+        return buckets.get(key);
+    }
+
+    public TokenBucket getOrCreate(String key) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxSize) {
+            evictFull();
+        }
+        return buckets.computeIfAbsent(key, k -> new TokenBucket(periodMs));
+    }
+
+    /**
+     * Drops the bucket of the account and the ones of its APIs.
+     */
+    public void reset(long accountId) {
+        String key = getKey(accountId);
+        buckets.keySet().removeIf(k -> k.equals(key) || k.startsWith(key + "/"));
+    }
+
+    /**
+     * Drops all the buckets, the ones created afterwards being refilled every {@code periodMs}.
+     */
+    public void resetAll(long periodMs) {
+        this.periodMs = periodMs;
+        buckets.clear();
+    }
+
+    public void evictFull() {
+        buckets.values().removeIf(TokenBucket::isFull);
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * @return the number of tokens taken locally from each bucket since the previous call, for the peers
+     */
+    public Map<String, Long> takeUnreported() {
+        Map<String, Long> unreported = new HashMap<>();
+        for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            long tokens = entry.getValue().takeUnreported();
+            if (tokens > 0) {
+                unreported.put(entry.getKey(), tokens);
+            }
+        }
+        return unreported;
+    }
+}
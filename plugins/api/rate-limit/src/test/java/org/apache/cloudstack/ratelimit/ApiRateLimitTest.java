@@ -23,6 +23,8 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -88,8 +90,12 @@ public static void setUp() throws ConfigurationException {
     }
 
     private boolean isUnderLimit(User key) {
+        return isUnderLimit(key, null);
+    }
+
+    private boolean isUnderLimit(User key, String apiName) {
         try {
-            s_limitService.checkAccess(key, null);
+            s_limitService.checkAccess(key, apiName);
             return true;
         } catch (RequestLimitException ex) {
             return false;
@@ -240,6 +246,47 @@ public static void setUp() throws ConfigurationException {
 
     }
 
+    @Test
+    public void apiLimitIsCheckedOnTopOfAccountLimit() throws Exception {
+        s_limitService.setMaxAllowed(3);
+        s_limitService.setTimeToLive(1);
+        s_limitService.setMaxAllowedPerApi(Collections.singletonMap("deployvirtualmachine", 1));
+        try {
+            User key = createFakeUser();
+
+            assertTrue("The first call of the API should be allowed", isUnderLimit(key, "deployVirtualMachine"));
+            assertFalse("The second call of the API should be blocked", isUnderLimit(key, "deployVirtualMachine"));
+            assertTrue("Calls of other APIs should be allowed", isUnderLimit(key, "listVirtualMachines"));
+            assertEquals("The blocked call should not count against the account limit", 2, s_limitService.getIssued(key.getAccountId()));
+        } finally {
+            s_limitService.setMaxAllowedPerApi(Collections.emptyMap());
+        }
+    }
+
+    @Test
+    public void callsOfOtherManagementServersAreCounted() throws Exception {
+        s_limitService.setMaxAllowed(10);
+        s_limitService.setTimeToLive(1);
+
+        User key = createFakeUser();
+        assertTrue("The first call should be allowed", isUnderLimit(key));
+
+        s_limitService.takeRemoteTokens(TokenBucketStore.getKey(key.getAccountId()) + "=9");
+
+        assertEquals(10, s_limitService.getIssued(key.getAccountId()));
+        assertFalse("The calls made on the other management servers should exhaust the limit", isUnderLimit(key));
+    }
+
+    @Test
+    public void parseMaxAllowedPerApiSkipsMalformedPairs() {
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("listvirtualmachines", 5);
+        expected.put("deployvirtualmachine", 1);
+
+        assertEquals(expected, s_limitService.parseMaxAllowedPerApi("listVirtualMachines=5, deployVirtualMachine = 1,startVirtualMachine=x,stopVirtualMachine"));
+        assertTrue(s_limitService.parseMaxAllowedPerApi("").isEmpty());
+    }
+
     @Test
     public void disableApiLimit() throws Exception {
         try {
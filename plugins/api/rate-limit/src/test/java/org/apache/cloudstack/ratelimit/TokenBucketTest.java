@@ -0,0 +1,78 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.ratelimit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    @Test
+    public void tryTakeStopsAtCapacity() {
+        TokenBucket bucket = new TokenBucket(60000);
+
+        assertTrue(bucket.tryTake(2));
+        assertTrue(bucket.tryTake(2));
+        assertFalse(bucket.tryTake(2));
+        assertEquals(2, bucket.getTaken());
+        assertFalse(bucket.isFull());
+    }
+
+    @Test
+    public void bucketIsRefilledAfterPeriod() throws Exception {
+        TokenBucket bucket = new TokenBucket(50);
+
+        assertTrue(bucket.tryTake(1));
+        assertFalse(bucket.tryTake(1));
+        Thread.sleep(60);
+
+        assertTrue(bucket.isFull());
+        assertTrue(bucket.tryTake(1));
+    }
+
+    @Test
+    public void remoteTokensAreNotReported() {
+        TokenBucket bucket = new TokenBucket(60000);
+
+        bucket.tryTake(10);
+        bucket.takeRemote(5);
+
+        assertEquals(6, bucket.getTaken());
+        assertEquals(1, bucket.takeUnreported());
+        assertEquals(0, bucket.takeUnreported());
+    }
+
+    @Test
+    public void resetDropsBucketsOfAccountOnly() {
+        TokenBucketStore store = new TokenBucketStore(60000, 100);
+        store.getOrCreate(TokenBucketStore.getKey(1)).tryTake(1);
+        store.getOrCreate(TokenBucketStore.getKey(1, "listvirtualmachines")).tryTake(1);
+        store.getOrCreate(TokenBucketStore.getKey(11)).tryTake(1);
+
+        store.reset(1);
+
+        assertEquals(1, store.size());
+        Map<String, Long> unreported = store.takeUnreported();
+        assertEquals(1, unreported.size());
+        assertEquals(Long.valueOf(1), unreported.get(TokenBucketStore.getKey(11)));
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cloudstack.cluster;
+
+import com.cloud.host.Host;
+import com.cloud.offering.ServiceOffering;
+import com.cloud.org.Cluster;
+import com.cloud.server.StatsCollector;
+import com.cloud.storage.VolumeVO;
+import com.cloud.storage.dao.VolumeDao;
+import com.cloud.utils.Ternary;
+import com.cloud.utils.component.AdapterBase;
+import com.cloud.vm.VirtualMachine;
+import com.cloud.vm.VmStats;
+import org.apache.cloudstack.framework.config.ConfigKey;
+import org.apache.cloudstack.framework.config.Configurable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.inject.Inject;
+import javax.naming.ConfigurationException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.cloudstack.cluster.ClusterDrsService.ClusterDrsImbalanceThreshold;
+
+/**
+ * Balances CPU, memory, network and disk IO of the hosts of a cluster together. The imbalance of the cluster is the
+ * weighted mean of the imbalance of each resource, CPU and memory come from the capacity maps of the plan and the
+ * network and disk throughput of the hosts is the sum of the throughput of their VMs in the latest stats collected by
+ * {@link StatsCollector}. The reduction of the imbalance achieved by a migration is divided by its transfer cost, the
+ * memory of the VM and the size of its volumes when they have to be moved as well, so that the plan prefers the
+ * migrations moving the least data.
+ */
+public class MultiResource extends AdapterBase implements ClusterDrsAlgorithm, Configurable {
+
+    private static final Logger logger = LogManager.getLogger(MultiResource.class);
+
+    static final int CPU = 0;
+    static final int MEMORY = 1;
+    static final int NETWORK = 2;
+    static final int DISK = 3;
+
+    private static final double[] NO_IO = new double[2];
+
+    static final ConfigKey<Float> CpuWeight = new ConfigKey<>(Float.class, "drs.multiresource.cpu.weight",
+            ConfigKey.CATEGORY_ADVANCED, "1.0",
+            "Weight of the CPU imbalance in the imbalance of a cluster for the multiresource DRS algorithm. 0 ignores it.",
+            true, ConfigKey.Scope.Cluster, null, "DRS multiresource CPU weight", null, null, null);
+
+    static final ConfigKey<Float> MemoryWeight = new ConfigKey<>(Float.class, "drs.multiresource.memory.weight",
+            ConfigKey.CATEGORY_ADVANCED, "1.0",
+            "Weight of the memory imbalance in the imbalance of a cluster for the multiresource DRS algorithm. 0 ignores it.",
+            true, ConfigKey.Scope.Cluster, null, "DRS multiresource memory weight", null, null, null);
+
+    static final ConfigKey<Float> NetworkWeight = new ConfigKey<>(Float.class, "drs.multiresource.network.weight",
+            ConfigKey.CATEGORY_ADVANCED, "0.5",
+            "Weight of the network throughput imbalance in the imbalance of a cluster for the multiresource DRS algorithm. 0 ignores it.",
+            true, ConfigKey.Scope.Cluster, null, "DRS multiresource network weight", null, null, null);
+
+    static final ConfigKey<Float> DiskWeight = new ConfigKey<>(Float.class, "drs.multiresource.disk.weight",
+            ConfigKey.CATEGORY_ADVANCED, "0.5",
+            "Weight of the disk throughput imbalance in the imbalance of a cluster for the multiresource DRS algorithm. 0 ignores it.",
+            true, ConfigKey.Scope.Cluster, null, "DRS multiresource disk weight", null, null, null);
+
+    static final ConfigKey<Float> MigrationCostWeight = new ConfigKey<>(Float.class, "drs.multiresource.migration.cost.weight",
+            ConfigKey.CATEGORY_ADVANCED, "1.0",
+            "Weight of the data transferred by a migration, relative to the average memory of the hosts, for the multiresource " +
+                    "DRS algorithm. The imbalance reduction of a migration is divided by 1 + weight * transferred data / average host memory. " +
+                    "0 ignores the transfer cost.",
+            true, ConfigKey.Scope.Cluster, null, "DRS multiresource migration cost weight", null, null, null);
+
+    @Inject
+    VolumeDao volumeDao;
+
+    // state of the plan being generated for each cluster, the DRS service generates the plans of a cluster under its lock
+    private final Map<Long, PlanState> planStates = new ConcurrentHashMap<>();
+
+    @Override
+    public String getName() {
+        return "multiresource";
+    }
+
+    @Override
+    public void preparePlan(Cluster cluster, Map<Long, List<VirtualMachine>> hostVmMap) {
+        Map<Long, double[]> vmIoMap = new HashMap<>();
+        for (List<VirtualMachine> vms : hostVmMap.values()) {
+            for (VirtualMachine vm : vms) {
+                vmIoMap.put(vm.getId(), getVmIo(vm));
+            }
+        }
+        planStates.put(cluster.getId(), new PlanState(hostVmMap, vmIoMap));
+    }
+
+    @Override
+    public void finishPlan(Cluster cluster) {
+        planStates.remove(cluster.getId());
+    }
+
+    @Override
+    public boolean needsDrs(Cluster cluster, List<Ternary<Long, Long, Long>> cpuList,
+                            List<Ternary<Long, Long, Long>> memoryList) throws ConfigurationException {
+        long clusterId = cluster.getId();
+        double threshold = getThreshold(clusterId);
+
+        double[][] values = new double[4][];
+        values[CPU] = toArray(ClusterDrsAlgorithm.getMetricList(clusterId, cpuList, null));
+        values[MEMORY] = toArray(ClusterDrsAlgorithm.getMetricList(clusterId, memoryList, null));
+        PlanState state = planStates.get(clusterId);
+        if (state != null) {
+            double[][] hostIo = state.getHostIo(new ArrayList<>(state.getHostIds()));
+            values[NETWORK] = hostIo[0];
+            values[DISK] = hostIo[1];
+        }
+        double imbalance = getImbalance(values, getWeights(clusterId), -1, null, -1, null);
+        if (imbalance > threshold) {
+            logger.debug("Cluster {} needs DRS. Imbalance: {} Threshold: {} Algorithm: {}", cluster, imbalance, threshold, getName());
+            return true;
+        } else {
+            logger.debug("Cluster {} does not need DRS. Imbalance: {} Threshold: {} Algorithm: {}", cluster, imbalance, threshold, getName());
+            return false;
+        }
+    }
+
+    private double getThreshold(long clusterId) {
+        return 1.0 - ClusterDrsImbalanceThreshold.valueIn(clusterId);
+    }
+
+    /**
+     * The pre-imbalance and base metrics passed by the DRS service only cover the configured metric, the imbalance
+     * of all resources is calculated once per iteration of the plan instead.
+     */
+    @Override
+    public Ternary<Double, Double, Double> getMetrics(Cluster cluster, VirtualMachine vm,
+            ServiceOffering serviceOffering, Host destHost,
+            Map<Long, Ternary<Long, Long, Long>> hostCpuMap, Map<Long, Ternary<Long, Long, Long>> hostMemoryMap,
+            Boolean requiresStorageMotion, Double preImbalance,
+            double[] baseMetricsArray, Map<Long, Integer> hostIdToIndexMap) throws ConfigurationException {
+        PlanState state = planStates.get(cluster.getId());
+        if (state == null) {
+            // not part of a plan, nothing is kept for later calls
+            state = new PlanState(null, Collections.emptyMap());
+        }
+        Snapshot snapshot = state.getSnapshot(this, cluster.getId(), hostCpuMap, hostMemoryMap, baseMetricsArray);
+
+        Integer sourceIndex = snapshot.hostIndexMap.get(vm.getHostId());
+        Integer destIndex = snapshot.hostIndexMap.get(destHost.getId());
+        if (sourceIndex == null || destIndex == null || sourceIndex.equals(destIndex)) {
+            return new Ternary<>(0.0, 0.0, 1.0);
+        }
+
+        long vmCpu = (long) serviceOffering.getCpu() * serviceOffering.getSpeed();
+        long vmMemory = serviceOffering.getRamSize() * 1024L * 1024L;
+        double[] vmIo = state.getVmIo(vm.getId());
+
+        double[] sourceValues = new double[4];
+        double[] destValues = new double[4];
+        sourceValues[CPU] = getHostMetricValue(snapshot, hostCpuMap.get(vm.getHostId()), -vmCpu);
+        destValues[CPU] = getHostMetricValue(snapshot, hostCpuMap.get(destHost.getId()), vmCpu);
+        sourceValues[MEMORY] = getHostMetricValue(snapshot, hostMemoryMap.get(vm.getHostId()), -vmMemory);
+        destValues[MEMORY] = getHostMetricValue(snapshot, hostMemoryMap.get(destHost.getId()), vmMemory);
+        for (int resource = NETWORK; resource <= DISK; resource++) {
+            if (snapshot.values[resource] != null) {
+                sourceValues[resource] = snapshot.values[resource][sourceIndex] - vmIo[resource - NETWORK];
+                destValues[resource] = snapshot.values[resource][destIndex] + vmIo[resource - NETWORK];
+            }
+        }
+        double postImbalance = getImbalance(snapshot.values, snapshot.weights, sourceIndex, sourceValues, destIndex, destValues);
+
+        long transferredData = vmMemory;
+        if (Boolean.TRUE.equals(requiresStorageMotion)) {
+            transferredData += state.getVolumeSize(vm.getId(), volumeDao);
+        }
+        double cost = snapshot.averageHostMemory > 0 ? snapshot.costWeight * transferredData / snapshot.averageHostMemory : 0.0;
+        double improvement = (snapshot.imbalance - postImbalance) / (1.0 + cost);
+
+        logger.trace("Cluster {} pre-imbalance: {} post-imbalance: {} transfer cost: {} Algorithm: {} VM: {} srcHost ID: {} destHost: {}",
+                cluster, snapshot.imbalance, postImbalance, cost, getName(), vm, vm.getHostId(), destHost);
+
+        // The transfer cost is part of the improvement, the DRS service picks the migration with the best one
+        return new Ternary<>(improvement, 0.0, 1.0);
+    }
+
+    /**
+     * Returns the network and disk throughput, read and write in KBs, of the VM in the latest stats collected by
+     * {@link StatsCollector}, or zeros when there are none.
+     */
+    protected double[] getVmIo(VirtualMachine vm) {
+        VmStats stats = StatsCollector.getInstance().getVmStats(vm.getId(), false);
+        if (stats == null) {
+            return NO_IO;
+        }
+        return new double[]{stats.getNetworkReadKBs() + stats.getNetworkWriteKBs(), stats.getDiskReadKBs() + stats.getDiskWriteKBs()};
+    }
+
+    double[] getWeights(long clusterId) {
+        double[] weights = new double[4];
+        weights[CPU] = CpuWeight.valueIn(clusterId);
+        weights[MEMORY] = MemoryWeight.valueIn(clusterId);
+        weights[NETWORK] = NetworkWeight.valueIn(clusterId);
+        weights[DISK] = DiskWeight.valueIn(clusterId);
+        return weights;
+    }
+
+    /**
+     * Weighted mean of the imbalance of the resources, with the values of at most two hosts replaced. Resources
+     * without values or without weight are left out.
+     */
+    static double getImbalance(double[][] values, double[] weights, int sourceIndex, double[] sourceValues,
+            int destIndex, double[] destValues) {
+        double imbalance = 0.0;
+        double totalWeight = 0.0;
+        for (int resource = 0; resource < values.length; resource++) {
+            if (values[resource] == null || values[resource].length == 0 || weights[resource] <= 0) {
+                continue;
+            }
+            imbalance += weights[resource] * ClusterDrsAlgorithm.calculateImbalance(values[resource],
+                    sourceValues == null ? -1 : sourceIndex, sourceValues == null ? 0.0 : sourceValues[resource],
+                    destValues == null ? -1 : destIndex, destValues == null ? 0.0 : destValues[resource]);
+            totalWeight += weights[resource];
+        }
+        return totalWeight > 0 ? imbalance / totalWeight : 0.0;
+    }
+
+    private static double getHostMetricValue(Snapshot snapshot, Ternary<Long, Long, Long> metrics, long delta) {
+        return getHostMetricValue(snapshot.metricType, snapshot.useRatio, metrics, delta);
+    }
+
+    private static double getHostMetricValue(String metricType, boolean useRatio, Ternary<Long, Long, Long> metrics, long delta) {
+        long total = metrics.third() - metrics.second();
+        long used = metrics.first() + delta;
+        Double value = ClusterDrsAlgorithm.getMetricValue(metricType, useRatio, used, total - used, total, null);
+        return value == null ? 0.0 : value;
+    }
+
+    private static double[] toArray(List<Double> list) {
+        return list.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    /**
+     * Returns the values or null when they are all zero, e.g. when no stats have been collected yet, so that the
+     * resource does not count as perfectly balanced.
+     */
+    private static double[] nullIfZero(double[] values) {
+        for (double value : values) {
+            if (value != 0.0) {
+                return values;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getConfigComponentName() {
+        return MultiResource.class.getSimpleName();
+    }
+
+    @Override
+    public ConfigKey<?>[] getConfigKeys() {
+        return new ConfigKey<?>[]{CpuWeight, MemoryWeight, NetworkWeight, DiskWeight, MigrationCostWeight};
+    }
+
+    /**
+     * State of the plan being generated for a cluster: the simulated placement of the VMs, their IO and the
+     * resource values of the current iteration.
+     */
+    static final class PlanState {
+        private final Map<Long, List<VirtualMachine>> hostVmMap;
+        private final Map<Long, double[]> vmIoMap;
+        private final Map<Long, Long> vmVolumeSizeMap = new ConcurrentHashMap<>();
+        private volatile Snapshot snapshot;
+
+        PlanState(Map<Long, List<VirtualMachine>> hostVmMap, Map<Long, double[]> vmIoMap) {
+            this.hostVmMap = hostVmMap;
+            this.vmIoMap = vmIoMap;
+        }
+
+        Set<Long> getHostIds() {
+            return hostVmMap == null ? Collections.emptySet() : hostVmMap.keySet();
+        }
+
+        double[] getVmIo(long vmId) {
+            return vmIoMap.getOrDefault(vmId, NO_IO);
+        }
+
+        /**
+         * Sums the network and disk throughput of the VMs currently placed on each of the hosts.
+         */
+        double[][] getHostIo(List<Long> hostIds) {
+            if (hostVmMap == null) {
+                return new double[2][];
+            }
+            double[][] hostIo = new double[2][hostIds.size()];
+            for (int index = 0; index < hostIds.size(); index++) {
+                List<VirtualMachine> vms = hostVmMap.get(hostIds.get(index));
+                if (vms == null) {
+                    continue;
+                }
+                for (VirtualMachine vm : vms) {
+                    double[] vmIo = getVmIo(vm.getId());
+                    hostIo[0][index] += vmIo[0];
+                    hostIo[1][index] += vmIo[1];
+                }
+            }
+            hostIo[0] = nullIfZero(hostIo[0]);
+            hostIo[1] = nullIfZero(hostIo[1]);
+            return hostIo;
+        }
+
+        long getVolumeSize(long vmId, VolumeDao volumeDao) {
+            return vmVolumeSizeMap.computeIfAbsent(vmId, id -> {
+                long size = 0;
+                for (VolumeVO volume : volumeDao.findByInstance(id)) {
+                    if (volume.getSize() != null) {
+                        size += volume.getSize();
+                    }
+                }
+                return size;
+            });
+        }
+
+        /**
+         * Returns the resource values of the hosts for the iteration. The DRS service builds a new base metrics
+         * array for every iteration, it identifies the iteration the cached values belong to.
+         */
+        Snapshot getSnapshot(MultiResource algorithm, long clusterId, Map<Long, Ternary<Long, Long, Long>> hostCpuMap,
+                Map<Long, Ternary<Long, Long, Long>> hostMemoryMap, double[] baseMetricsArray) {
+            Snapshot current = snapshot;
+            if (current != null && baseMetricsArray != null && current.baseMetricsArray == baseMetricsArray) {
+                return current;
+            }
+            synchronized (this) {
+                current = snapshot;
+                if (current == null || baseMetricsArray == null || current.baseMetricsArray != baseMetricsArray) {
+                    current = new Snapshot(algorithm, clusterId, this, hostCpuMap, hostMemoryMap, baseMetricsArray);
+                    snapshot = current;
+                }
+                return current;
+            }
+        }
+    }
+
+    static final class Snapshot {
+        private final double[] baseMetricsArray;
+        private final String metricType;
+        private final boolean useRatio;
+        private final Map<Long, Integer> hostIndexMap = new HashMap<>();
+        private final double[][] values = new double[4][];
+        private final double[] weights;
+        private final double imbalance;
+        private final double averageHostMemory;
+        private final double costWeight;
+
+        Snapshot(MultiResource algorithm, long clusterId, PlanState state, Map<Long, Ternary<Long, Long, Long>> hostCpuMap,
+                Map<Long, Ternary<Long, Long, Long>> hostMemoryMap, double[] baseMetricsArray) {
+            this.baseMetricsArray = baseMetricsArray;
+            metricType = ClusterDrsAlgorithm.getDrsMetricType(clusterId);
+            useRatio = ClusterDrsAlgorithm.getDrsMetricUseRatio(clusterId);
+
+            List<Long> hostIds = new ArrayList<>();
+            for (Long hostId : hostCpuMap.keySet()) {
+                if (hostMemoryMap.containsKey(hostId)) {
+                    hostIndexMap.put(hostId, hostIds.size());
+                    hostIds.add(hostId);
+                }
+            }
+
+            values[CPU] = new double[hostIds.size()];
+            values[MEMORY] = new double[hostIds.size()];
+            long totalMemory = 0;
+            for (int index = 0; index < hostIds.size(); index++) {
+                Ternary<Long, Long, Long> memory = hostMemoryMap.get(hostIds.get(index));
+                values[CPU][index] = getHostMetricValue(metricType, useRatio, hostCpuMap.get(hostIds.get(index)), 0);
+                values[MEMORY][index] = getHostMetricValue(metricType, useRatio, memory, 0);
+                totalMemory += memory.third() - memory.second();
+            }
+            double[][] hostIo = state.getHostIo(hostIds);
+            values[NETWORK] = hostIo[0];
+            values[DISK] = hostIo[1];
+
+            weights = algorithm.getWeights(clusterId);
+            imbalance = getImbalance(values, weights, -1, null, -1, null);
+            averageHostMemory = hostIds.isEmpty() ? 0.0 : (double) totalMemory / hostIds.size();
+            costWeight = MigrationCostWeight.valueIn(clusterId);
+        }
+    }
+}
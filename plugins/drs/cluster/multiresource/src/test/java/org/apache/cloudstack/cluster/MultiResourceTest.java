@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cloudstack.cluster;
+
+import com.cloud.dc.ClusterVO;
+import com.cloud.host.Host;
+import com.cloud.service.ServiceOfferingVO;
+import com.cloud.storage.VolumeVO;
+import com.cloud.storage.dao.VolumeDao;
+import com.cloud.utils.Ternary;
+import com.cloud.vm.VirtualMachine;
+import org.apache.cloudstack.framework.config.ConfigKey;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.naming.ConfigurationException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.cloudstack.cluster.ClusterDrsService.ClusterDrsImbalanceThreshold;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MultiResourceTest {
+
+    private static final long GB = 1024L * 1024L * 1024L;
+
+    @Mock
+    VolumeDao volumeDao;
+
+    MultiResource multiResource;
+
+    VirtualMachine vm1, vm2, vm3;
+
+    Host destHost;
+
+    ServiceOfferingVO serviceOffering;
+
+    ClusterVO cluster;
+
+    Map<Long, List<VirtualMachine>> hostVmMap;
+
+    Map<Long, Ternary<Long, Long, Long>> hostCpuMap, hostMemoryMap;
+
+    @Before
+    public void setUp() throws NoSuchFieldException, IllegalAccessException {
+        multiResource = Mockito.spy(new MultiResource());
+        multiResource.volumeDao = volumeDao;
+
+        cluster = Mockito.mock(ClusterVO.class);
+        Mockito.when(cluster.getId()).thenReturn(1L);
+
+        vm1 = Mockito.mock(VirtualMachine.class);
+        vm2 = Mockito.mock(VirtualMachine.class);
+        vm3 = Mockito.mock(VirtualMachine.class); // vm to migrate
+        Mockito.when(vm3.getId()).thenReturn(3L);
+        Mockito.when(vm3.getHostId()).thenReturn(2L);
+
+        destHost = Mockito.mock(Host.class);
+        Mockito.when(destHost.getId()).thenReturn(1L);
+
+        hostVmMap = new HashMap<>();
+        hostVmMap.put(1L, new ArrayList<>(Collections.singletonList(vm1)));
+        hostVmMap.put(2L, new ArrayList<>(Arrays.asList(vm2, vm3)));
+
+        serviceOffering = Mockito.mock(ServiceOfferingVO.class);
+        Mockito.when(serviceOffering.getCpu()).thenReturn(1);
+        Mockito.when(serviceOffering.getSpeed()).thenReturn(1000);
+        Mockito.when(serviceOffering.getRamSize()).thenReturn(1024);
+
+        overrideDefaultConfigValue(ClusterDrsImbalanceThreshold, "_defaultValue", "0.5");
+
+        hostCpuMap = new HashMap<>();
+        hostCpuMap.put(1L, new Ternary<>(1000L, 0L, 10000L));
+        hostCpuMap.put(2L, new Ternary<>(2000L, 0L, 10000L));
+
+        hostMemoryMap = new HashMap<>();
+        hostMemoryMap.put(1L, new Ternary<>(512L * 1024L * 1024L, 0L, 8L * GB));
+        hostMemoryMap.put(2L, new Ternary<>(2L * GB, 0L, 8L * GB));
+    }
+
+    private void overrideDefaultConfigValue(final ConfigKey configKey, final String name,
+            final Object o) throws IllegalAccessException, NoSuchFieldException {
+        Field f = ConfigKey.class.getDeclaredField(name);
+        f.setAccessible(true);
+        f.set(configKey, o);
+    }
+
+    /**
+     * vm1 and vm3 have 100 KBs of network and disk throughput, vm2 1000 KBs. Host 1 has 100 KBs of each,
+     * host 2 1100 KBs, an imbalance of 0.8333 for both.
+     */
+    private void preparePlanWithIo() {
+        Mockito.when(vm1.getId()).thenReturn(1L);
+        Mockito.when(vm2.getId()).thenReturn(2L);
+        Mockito.doReturn(new double[]{100, 100}).when(multiResource).getVmIo(vm1);
+        Mockito.doReturn(new double[]{1000, 1000}).when(multiResource).getVmIo(vm2);
+        Mockito.doReturn(new double[]{100, 100}).when(multiResource).getVmIo(vm3);
+        multiResource.preparePlan(cluster, hostVmMap);
+    }
+
+    /*
+     CPU imbalance = 0.3333, memory imbalance = 0.6
+     (0.3333 + 0.6) / 2 = 0.4667 < 0.5 -> False
+    */
+    @Test
+    public void needsDrsWithoutIo() throws ConfigurationException {
+        assertFalse(multiResource.needsDrs(cluster, new ArrayList<>(hostCpuMap.values()), new ArrayList<>(hostMemoryMap.values())));
+    }
+
+    /*
+     (0.3333 + 0.6 + 0.5 * 0.8333 + 0.5 * 0.8333) / 3 = 0.5889 > 0.5 -> True
+    */
+    @Test
+    public void needsDrsWithIo() throws ConfigurationException {
+        preparePlanWithIo();
+        assertTrue(multiResource.needsDrs(cluster, new ArrayList<>(hostCpuMap.values()), new ArrayList<>(hostMemoryMap.values())));
+    }
+
+    /*
+     Post CPU imbalance = 0.3333, post memory imbalance = 0.2
+     reduction = 0.4667 - 0.2667 = 0.2, 1 GB of the 8 GB average host memory is transferred
+     improvement = 0.2 / 1.125 = 0.1778
+    */
+    @Test
+    public void getMetricsWithoutIo() throws ConfigurationException {
+        Ternary<Double, Double, Double> result = multiResource.getMetrics(cluster, vm3, serviceOffering, destHost,
+                hostCpuMap, hostMemoryMap, false, null, new double[0], Collections.emptyMap());
+        assertEquals(0.1778, result.first(), 0.0001);
+        assertEquals(0.0, result.second(), 0.0);
+        assertEquals(1.0, result.third(), 0.0);
+    }
+
+    /*
+     1 GB of memory and 7 GB of volumes are transferred
+     improvement = 0.2 / 2 = 0.1
+    */
+    @Test
+    public void getMetricsWithStorageMotion() throws ConfigurationException {
+        VolumeVO volume = Mockito.mock(VolumeVO.class);
+        Mockito.when(volume.getSize()).thenReturn(7L * GB);
+        Mockito.when(volumeDao.findByInstance(3L)).thenReturn(List.of(volume));
+
+        Ternary<Double, Double, Double> result = multiResource.getMetrics(cluster, vm3, serviceOffering, destHost,
+                hostCpuMap, hostMemoryMap, true, null, new double[0], Collections.emptyMap());
+        assertEquals(0.1, result.first(), 0.0001);
+    }
+
+    /*
+     Post network and disk imbalance = 400 / 600 = 0.6667
+     reduction = 0.5889 - (0.3333 + 0.2 + 0.5 * 0.6667 + 0.5 * 0.6667) / 3 = 0.1889
+     improvement = 0.1889 / 1.125 = 0.1679
+    */
+    @Test
+    public void getMetricsWithIo() throws ConfigurationException {
+        preparePlanWithIo();
+        Ternary<Double, Double, Double> result = multiResource.getMetrics(cluster, vm3, serviceOffering, destHost,
+                hostCpuMap, hostMemoryMap, false, null, new double[0], Collections.emptyMap());
+        assertEquals(0.1679, result.first(), 0.0001);
+    }
+
+    @Test
+    public void finishPlanDropsTheIoOfThePlan() throws ConfigurationException {
+        preparePlanWithIo();
+        multiResource.finishPlan(cluster);
+        assertFalse(multiResource.needsDrs(cluster, new ArrayList<>(hostCpuMap.values()), new ArrayList<>(hostMemoryMap.values())));
+    }
+
+    @Test
+    public void getMetricsOutsideOfAPlanDoesNotKeepTheVolumeSizes() throws ConfigurationException {
+        VolumeVO volume = Mockito.mock(VolumeVO.class);
+        Mockito.when(volume.getSize()).thenReturn(7L * GB);
+        Mockito.when(volumeDao.findByInstance(3L)).thenReturn(List.of(volume), Collections.emptyList());
+
+        multiResource.getMetrics(cluster, vm3, serviceOffering, destHost,
+                hostCpuMap, hostMemoryMap, true, null, new double[0], Collections.emptyMap());
+        Ternary<Double, Double, Double> result = multiResource.getMetrics(cluster, vm3, serviceOffering, destHost,
+                hostCpuMap, hostMemoryMap, true, null, new double[0], Collections.emptyMap());
+        assertEquals(0.1778, result.first(), 0.0001);
+    }
+
+    @Test
+    public void getMetricsSameHost() throws ConfigurationException {
+        Host sourceHost = Mockito.mock(Host.class);
+        Mockito.when(sourceHost.getId()).thenReturn(2L);
+
+        Ternary<Double, Double, Double> result = multiResource.getMetrics(cluster, vm3, serviceOffering, sourceHost,
+                hostCpuMap, hostMemoryMap, false, null, new double[0], Collections.emptyMap());
+        assertEquals(0.0, result.first(), 0.0);
+    }
+}
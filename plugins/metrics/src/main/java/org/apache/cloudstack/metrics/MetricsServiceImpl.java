@@ -179,6 +179,8 @@ public class MetricsServiceImpl extends MutualExclusiveIdsManagerBase implements
     @Inject
     protected VmStatsDao vmStatsDao;
     @Inject
+    protected StatsCollector statsCollector;
+    @Inject
     private UsageJobDao usageJobDao;
     @Inject
     private VolumeDao volumeDao;
@@ -498,6 +500,9 @@ public class MetricsServiceImpl extends MutualExclusiveIdsManagerBase implements
      * @return the list of stats for the specified VM.
      */
     protected List<VmStatsVO> findVmStatsAccordingToDateParams(Long vmId, Date startDate, Date endDate){
+        if (statsCollector.isVmStatsHistoryInMemory()) {
+            return statsCollector.getVmStatsHistory(vmId, startDate, endDate);
+        }
         if (startDate != null && endDate != null) {
             return vmStatsDao.findByVmIdAndTimestampBetween(vmId, startDate, endDate);
         }
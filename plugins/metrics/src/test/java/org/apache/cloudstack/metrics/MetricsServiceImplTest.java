@@ -44,6 +44,7 @@ import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import com.cloud.exception.InvalidParameterValueException;
+import com.cloud.server.StatsCollector;
 import com.cloud.storage.VolumeVO;
 import com.cloud.storage.dao.VolumeDao;
 import com.cloud.user.Account;
@@ -84,6 +85,9 @@ public class MetricsServiceImplTest {
     @Mock
     VmStatsDao vmStatsDaoMock;
 
+    @Mock
+    StatsCollector statsCollectorMock;
+
     @Mock
     AccountManager accountManager;
 
@@ -330,6 +334,19 @@ public class MetricsServiceImplTest {
         Mockito.verify(vmStatsDaoMock).findByVmId(Mockito.anyLong());
     }
 
+    @Test
+    public void findVmStatsAccordingToDateParamsTestWithInMemoryHistory() {
+        Date startDate = new Date();
+        Date endDate = DateUtils.addSeconds(startDate, 1);
+        Mockito.doReturn(true).when(statsCollectorMock).isVmStatsHistoryInMemory();
+        Mockito.doReturn(new ArrayList<VmStatsVO>()).when(statsCollectorMock).getVmStatsHistory(fakeVmId1, startDate, endDate);
+
+        spy.findVmStatsAccordingToDateParams(fakeVmId1, startDate, endDate);
+
+        Mockito.verify(statsCollectorMock).getVmStatsHistory(fakeVmId1, startDate, endDate);
+        Mockito.verifyNoInteractions(vmStatsDaoMock);
+    }
+
     @Test
     public void createVmMetricsStatsResponseTestWithValidInput() {
         Mockito.doReturn("").when(userVmVOMock).getUuid();
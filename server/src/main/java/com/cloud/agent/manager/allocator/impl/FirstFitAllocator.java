@@ -21,14 +21,18 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.naming.ConfigurationException;
 
+import com.cloud.gpu.dao.HostGpuGroupsDao;
 import com.cloud.gpu.dao.VgpuProfileDao;
 
 import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
@@ -39,6 +43,7 @@ import com.cloud.agent.manager.allocator.HostAllocator;
 import com.cloud.capacity.Capacity;
 import com.cloud.capacity.CapacityManager;
 import com.cloud.capacity.CapacityVO;
+import com.cloud.capacity.HostCapacityIndex;
 import com.cloud.capacity.dao.CapacityDao;
 import com.cloud.configuration.Config;
 import com.cloud.configuration.ConfigurationManager;
@@ -57,7 +62,6 @@ import com.cloud.host.dao.HostDao;
 import com.cloud.host.dao.HostDetailsDao;
 import com.cloud.offering.ServiceOffering;
 import com.cloud.resource.ResourceManager;
-import com.cloud.service.ServiceOfferingDetailsVO;
 import com.cloud.service.dao.ServiceOfferingDetailsDao;
 import com.cloud.storage.GuestOSCategoryVO;
 import com.cloud.storage.GuestOSVO;
@@ -108,6 +112,8 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
     VMInstanceDetailsDao _vmInstanceDetailsDao;
     @Inject
     private VgpuProfileDao vgpuProfileDao;
+    @Inject
+    HostGpuGroupsDao _hostGpuGroupsDao;
 
     boolean _checkHvm = true;
     static DecimalFormat decimalFormat = new DecimalFormat("#.##");
@@ -143,6 +149,7 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
         }
         String paramAsStringToLog = String.format("zone [%s], pod [%s], cluster [%s]", dcId, podId, clusterId);
         logger.debug("Looking for hosts in {}", paramAsStringToLog);
+        long listingStart = System.nanoTime();
 
         String hostTagOnOffering = offering.getHostTag();
         String hostTagOnTemplate = template.getTemplateTag();
@@ -227,6 +234,8 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
         for (HostVO host : allhostsInCluster) {
             avoid.addHost(host.getId());
         }
+        logger.debug("FirstFitAllocator took {} ms to list the {} hosts matching the tags in {}", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - listingStart),
+                clusterHosts.size(), paramAsStringToLog);
 
         return allocateTo(vmProfile, plan, offering, template, avoid, clusterHosts, returnUpTo, considerReservedCapacity, account);
     }
@@ -297,6 +306,7 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
 
     protected List<Host> allocateTo(VirtualMachineProfile vmProfile, DeploymentPlan plan, ServiceOffering offering, VMTemplateVO template, ExcludeList avoid, List<? extends Host> hosts, int returnUpTo,
         boolean considerReservedCapacity, Account account) {
+        long orderingStart = System.nanoTime();
         String vmAllocationAlgorithm = DeploymentClusterPlanner.VmAllocationAlgorithm.value();
         if (vmAllocationAlgorithm.equals("random")) {
             // Shuffle this so that we don't check the hosts in the same order.
@@ -313,7 +323,9 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
 
         // We will try to reorder the host lists such that we give priority to hosts that have
         // the minimums to support a VM's requirements
+        long prioritizingStart = System.nanoTime();
         hosts = prioritizeHosts(template, offering, hosts);
+        long checkingStart = System.nanoTime();
 
         if (logger.isDebugEnabled()) {
             logger.debug("Found " + hosts.size() + " hosts for allocation after prioritization: " + hosts);
@@ -323,9 +335,16 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
             logger.debug("Looking for speed=" + (offering.getCpu() * offering.getSpeed()) + "Mhz, Ram=" + offering.getRamSize() + " MB");
         }
 
-        long serviceOfferingId = offering.getId();
         List<Host> suitableHosts = new ArrayList<>();
-        ServiceOfferingDetailsVO offeringDetails = null;
+        // the offering is checked once, rather than for each host, to only look for GPU devices when it needs some
+        boolean offeringRequiresGpu = offering.getVgpuProfileId() != null
+                || _serviceOfferingDetailsDao.findDetail(offering.getId(), GPU.Keys.vgpuType.toString()) != null;
+        HostCapacityIndex hostCapacityIndex = getLoadedHostCapacityIndex();
+        if (hostCapacityIndex != null) {
+            hosts = checkHostsWithoutIndexedCapacityLast(hostCapacityIndex, hosts, offering.getCpu() * offering.getSpeed(),
+                    offering.getRamSize() * 1024L * 1024L, considerReservedCapacity);
+        }
+        int hostsChecked = 0;
 
         for (Host host : hosts) {
             if (suitableHosts.size() == returnUpTo) {
@@ -337,6 +356,7 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
                 }
                 continue;
             }
+            hostsChecked++;
 
             //find number of guest VMs occupying capacity on this host.
             if (_capacityMgr.checkIfHostReachMaxGuestLimit(host)) {
@@ -346,13 +366,15 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
             }
 
             // Check if GPU device is required by offering and host has the availability
-            if (_resourceMgr.isGPUDeviceAvailable(offering, host, vmProfile.getId())) {
-                logger.debug("Host [{}] has required GPU devices available.", host);
-            } else {
-                // If GPU is not available, skip this host
-                logger.debug("Adding host [{}] to avoid set, because this host does not have required GPU devices available.", host);
-                avoid.addHost(host.getId());
-                continue;
+            if (offeringRequiresGpu) {
+                if (_resourceMgr.isGPUDeviceAvailable(offering, host, vmProfile.getId())) {
+                    logger.debug("Host [{}] has required GPU devices available.", host);
+                } else {
+                    // If GPU is not available, skip this host
+                    logger.debug("Adding host [{}] to avoid set, because this host does not have required GPU devices available.", host);
+                    avoid.addHost(host.getId());
+                    continue;
+                }
             }
 
             Pair<Boolean, Boolean> cpuCapabilityAndCapacity = _capacityMgr.checkIfHostHasCpuCapabilityAndCapacity(host, offering, considerReservedCapacity);
@@ -372,11 +394,48 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
 
         if (logger.isDebugEnabled()) {
             logger.debug("Host Allocator returning " + suitableHosts.size() + " suitable hosts");
+            logger.debug("FirstFitAllocator took {} ms to order the hosts, {} ms to prioritize them and {} ms to check {} of them",
+                    TimeUnit.NANOSECONDS.toMillis(prioritizingStart - orderingStart), TimeUnit.NANOSECONDS.toMillis(checkingStart - prioritizingStart),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - checkingStart), hostsChecked);
         }
 
         return suitableHosts;
     }
 
+    /**
+     * Moves the hosts which do not have the capacity according to the host capacity index after the others, keeping
+     * their order otherwise. They are still checked against the database, as the index may not have the capacity
+     * released on another management server since its last reload.
+     */
+    protected List<? extends Host> checkHostsWithoutIndexedCapacityLast(HostCapacityIndex hostCapacityIndex, List<? extends Host> hosts,
+            int cpuRequested, long ramRequested, boolean considerReservedCapacity) {
+        List<Host> hostsWithCapacity = new ArrayList<>(hosts.size());
+        List<Host> hostsWithoutCapacity = new ArrayList<>();
+        for (Host host : hosts) {
+            if (Boolean.FALSE.equals(hostCapacityIndex.hasEnoughCapacity(host.getId(), cpuRequested, ramRequested, considerReservedCapacity))) {
+                hostsWithoutCapacity.add(host);
+            } else {
+                hostsWithCapacity.add(host);
+            }
+        }
+        if (!hostsWithoutCapacity.isEmpty()) {
+            logger.debug("Checking {} hosts last as they do not have enough capacity according to the host capacity index", hostsWithoutCapacity.size());
+            hostsWithCapacity.addAll(hostsWithoutCapacity);
+        }
+        return hostsWithCapacity;
+    }
+
+    /**
+     * @return the in-memory copy of the host capacities when it is enabled and loaded, null otherwise
+     */
+    protected HostCapacityIndex getLoadedHostCapacityIndex() {
+        if (!CapacityManager.HostCapacityIndexEnabled.value()) {
+            return null;
+        }
+        HostCapacityIndex hostCapacityIndex = _capacityMgr.getHostCapacityIndex();
+        return hostCapacityIndex != null && hostCapacityIndex.isLoaded() ? hostCapacityIndex : null;
+    }
+
     // Reorder hosts in the decreasing order of free capacity.
     private List<? extends Host> reorderHostsByCapacity(DeploymentPlan plan, List<? extends Host> hosts) {
         Long zoneId = plan.getDataCenterId();
@@ -512,8 +571,9 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
         // If a host is tagged with a different guest OS category than the template, move it to a low priority list
         List<Host> highPriorityHosts = new ArrayList<>();
         List<Host> lowPriorityHosts = new ArrayList<>();
+        Map<Long, String> hostGuestOSCategories = getHostGuestOSCategories(hostsToCheck);
         for (Host host : hostsToCheck) {
-            String hostGuestOSCategory = getHostGuestOSCategory(host);
+            String hostGuestOSCategory = hostGuestOSCategories.get(host.getId());
             if (hostGuestOSCategory == null) {
                 continue;
             } else if (templateGuestOSCategory != null && templateGuestOSCategory.equals(hostGuestOSCategory)) {
@@ -545,9 +605,10 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
         if (_serviceOfferingDetailsDao.findDetail(offering.getId(), GPU.Keys.vgpuType.toString()) == null && offering.getVgpuProfileId() == null) {
 
             List<Host> gpuEnabledHosts = new ArrayList<>();
-            // Check for GPU enabled hosts.
+            // Check for GPU enabled hosts, only the hosts having GPU groups can be.
+            Set<Long> hostIdsWithGpuGroups = new HashSet<>(_hostGpuGroupsDao.listHostIds());
             for (Host host : prioritizedHosts) {
-                if (_resourceMgr.isHostGpuEnabled(host.getId())) {
+                if (hostIdsWithGpuGroups.contains(host.getId()) && _resourceMgr.isHostGpuEnabled(host.getId())) {
                     gpuEnabledHosts.add(host);
                 }
             }
@@ -579,6 +640,37 @@ public class FirstFitAllocator extends AdapterBase implements HostAllocator {
         return false;
     }
 
+    /**
+     * Looks the guest OS category of the hosts up with one query, rather than one for each host.
+     * @return the name of the guest OS category by host id, for the hosts having one
+     */
+    protected Map<Long, String> getHostGuestOSCategories(List<? extends Host> hosts) {
+        Map<Long, String> hostGuestOSCategories = new HashMap<>();
+        if (hosts.isEmpty()) {
+            return hostGuestOSCategories;
+        }
+        Set<Long> hostIds = hosts.stream().map(Host::getId).collect(Collectors.toSet());
+        Map<Long, GuestOSCategoryVO> guestOSCategories = new HashMap<>();
+        for (DetailVO hostDetail : _hostDetailsDao.findByName("guest.os.category.id")) {
+            if (!hostIds.contains(hostDetail.getHostId())) {
+                continue;
+            }
+            long guestOSCategoryId;
+            try {
+                guestOSCategoryId = Long.parseLong(hostDetail.getValue());
+            } catch (Exception e) {
+                continue;
+            }
+            GuestOSCategoryVO guestOSCategory = guestOSCategories.containsKey(guestOSCategoryId) ? guestOSCategories.get(guestOSCategoryId) :
+                    _guestOSCategoryDao.findById(guestOSCategoryId);
+            guestOSCategories.put(guestOSCategoryId, guestOSCategory);
+            if (guestOSCategory != null) {
+                hostGuestOSCategories.put(hostDetail.getHostId(), guestOSCategory.getName());
+            }
+        }
+        return hostGuestOSCategories;
+    }
+
     protected String getHostGuestOSCategory(Host host) {
         DetailVO hostDetail = _hostDetailsDao.findDetail(host.getId(), "guest.os.category.id");
         if (hostDetail != null) {
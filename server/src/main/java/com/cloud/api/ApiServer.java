@@ -16,14 +16,12 @@
 // under the License.
 package com.cloud.api;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
@@ -43,10 +41,6 @@ import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -115,38 +109,20 @@ import org.apache.cloudstack.framework.jobs.impl.AsyncJobVO;
 import org.apache.cloudstack.framework.messagebus.MessageBus;
 import org.apache.cloudstack.framework.messagebus.MessageDispatcher;
 import org.apache.cloudstack.framework.messagebus.MessageHandler;
-import org.apache.cloudstack.managed.context.ManagedContextRunnable;
 import org.apache.cloudstack.user.UserPasswordResetManager;
 import org.apache.cloudstack.utils.identity.ManagementServerNode;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.EnumUtils;
-import org.apache.http.ConnectionClosedException;
 import org.apache.http.HttpException;
+import org.apache.http.HttpInetConnection;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
-import org.apache.http.HttpServerConnection;
 import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URLEncodedUtils;
-import org.apache.http.entity.BasicHttpEntity;
-import org.apache.http.impl.DefaultHttpResponseFactory;
-import org.apache.http.impl.DefaultHttpServerConnection;
-import org.apache.http.impl.NoConnectionReuseStrategy;
-import org.apache.http.impl.SocketHttpServerConnection;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.CoreConnectionPNames;
-import org.apache.http.params.CoreProtocolPNames;
-import org.apache.http.params.HttpParams;
-import org.apache.http.protocol.BasicHttpContext;
-import org.apache.http.protocol.BasicHttpProcessor;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpRequestHandler;
-import org.apache.http.protocol.HttpRequestHandlerRegistry;
-import org.apache.http.protocol.HttpService;
-import org.apache.http.protocol.ResponseConnControl;
-import org.apache.http.protocol.ResponseContent;
-import org.apache.http.protocol.ResponseDate;
-import org.apache.http.protocol.ResponseServer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -184,7 +160,6 @@ import com.cloud.utils.StringUtils;
 import com.cloud.utils.component.ComponentContext;
 import com.cloud.utils.component.ManagerBase;
 import com.cloud.utils.component.PluggableService;
-import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.db.EntityManager;
 import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.db.UUIDManager;
@@ -243,11 +218,9 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
     private ApiAsyncJobDispatcher asyncDispatcher;
 
     private EventDistributor eventDistributor = null;
-    private static int s_workerCount = 0;
     private static Map<String, List<Class<?>>> s_apiNameCmdClassMap = new HashMap<>();
 
-    private static ExecutorService s_executor = new ThreadPoolExecutor(10, 150, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new NamedThreadFactory(
-            "ApiServer"));
+    private IntegrationApiServer integrationApiServer;
 
     @Inject
     private MessageBus messageBus;
@@ -265,6 +238,20 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
             , "Integration (unauthenticated) API port. To disable set it to 0 or negative."
             , false
             , ConfigKey.Scope.Global);
+    private static final ConfigKey<Integer> IntegrationAPIWorkers = new ConfigKey<>(ConfigKey.CATEGORY_ADVANCED
+            , Integer.class
+            , "integration.api.workers"
+            , "150"
+            , "Number of threads running the requests received on the integration API port."
+            , false
+            , ConfigKey.Scope.Global);
+    private static final ConfigKey<Integer> IntegrationAPIQueueSize = new ConfigKey<>(ConfigKey.CATEGORY_ADVANCED
+            , Integer.class
+            , "integration.api.queue.size"
+            , "1000"
+            , "Number of requests received on the integration API port that can wait for a worker; further requests are answered with a 503."
+            , false
+            , ConfigKey.Scope.Global);
     private static final ConfigKey<Long> ConcurrentSnapshotsThresholdPerHost = new ConfigKey<>(ConfigKey.CATEGORY_ADVANCED
             , Long.class
             , "concurrent.snapshots.threshold.perhost"
@@ -449,8 +436,12 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
             return;
         }
         logger.debug("Setting up integration API service listener on port: {}", apiPort);
-        final ListenerThread listenerThread = new ListenerThread(this, apiPort);
-        listenerThread.start();
+        integrationApiServer = new IntegrationApiServer(this, apiPort, IntegrationAPIWorkers.value(), IntegrationAPIQueueSize.value());
+        try {
+            integrationApiServer.start();
+        } catch (final IOException e) {
+            logger.error("Error initializing the integration API service listener on port: {}", apiPort, e);
+        }
     }
 
     @Override
@@ -503,6 +494,14 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
         return true;
     }
 
+    @Override
+    public boolean stop() {
+        if (integrationApiServer != null) {
+            integrationApiServer.stop();
+        }
+        return true;
+    }
+
     // NOTE: handle() only handles over the wire (OTW) requests from integration.api.port 8096
     // If integration api port is not configured, actual OTW requests will be received by ApiServlet
     @SuppressWarnings({"unchecked", "rawtypes"})
@@ -511,9 +510,9 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
 
         // Create StringBuffer to log information in access log
         final StringBuilder sb = new StringBuilder();
-        final HttpServerConnection connObj = (HttpServerConnection)context.getAttribute("http.connection");
-        if (connObj instanceof SocketHttpServerConnection) {
-            final InetAddress remoteAddr = ((SocketHttpServerConnection)connObj).getRemoteAddress();
+        final Object connObj = context.getAttribute("http.connection");
+        if (connObj instanceof HttpInetConnection) {
+            final InetAddress remoteAddr = ((HttpInetConnection)connObj).getRemoteAddress();
             sb.append(remoteAddr.toString() + " -- ");
         }
         sb.append(StringUtils.cleanString(request.getRequestLine().toString()));
@@ -560,6 +559,8 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
                 if (command != null) {
                     Class<?> cmdClass = getCmdClass(command[0]);
                     if (cmdClass != null) {
+                        // only the registered commands get their own latency histogram, the others are recorded together
+                        context.setAttribute(IntegrationApiServer.COMMAND_ATTRIBUTE, command[0]);
                         List<Field> fields = ReflectUtil.getAllFieldsForClass(cmdClass, BaseCmd.class);
                         for (Field field : fields) {
                             Parameter parameterAnnotation = field.getAnnotation(Parameter.class);
@@ -620,9 +621,15 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
     @Override
     @SuppressWarnings("rawtypes")
     public String handleRequest(final Map params, final String responseType, final StringBuilder auditTrailSb) throws ServerApiException {
+        final StringWriter out = new StringWriter();
+        return handleRequest(params, responseType, auditTrailSb, out) ? out.toString() : null;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean handleRequest(final Map params, final String responseType, final StringBuilder auditTrailSb, final Writer out) throws ServerApiException {
         checkCharacterInkParams(params);
 
-        String response;
         String[] command = null;
 
         try {
@@ -654,7 +661,7 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
             } else {
                 // Don't allow Login/Logout APIs to go past this point
                 if (authManager.getAPIAuthenticator(command[0]) != null) {
-                    return null;
+                    return false;
                 }
                 final Map<String, String> paramMap = new HashMap<>();
                 final Set keys = params.keySet();
@@ -685,7 +692,7 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
 
                     // This is where the command is either serialized, or directly dispatched
                     StringBuilder log = new StringBuilder();
-                    response = queueCommand(cmdObj, paramMap, log);
+                    queueCommand(cmdObj, paramMap, log, out);
                     buildAuditTrail(auditTrailSb, command[0], log.toString());
                 } else {
                     final String errorString = "Unknown API command: " + command[0];
@@ -747,7 +754,7 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
             throw new ServerApiException(ApiErrorCode.INTERNAL_ERROR, errorMsg, ex);
         }
 
-        return response;
+        return true;
     }
 
     @Override
@@ -773,7 +780,7 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
         return ApiResponseSerializer.toSerializedString(response, cmd.getResponseType());
     }
 
-    private String queueCommand(final BaseCmd cmdObj, final Map<String, String> params, StringBuilder log) throws Exception {
+    private void queueCommand(final BaseCmd cmdObj, final Map<String, String> params, StringBuilder log, Writer out) throws Exception {
         final CallContext ctx = CallContext.current();
         final Long callerUserId = ctx.getCallingUserId();
         final Account caller = ctx.getCallingAccount();
@@ -868,7 +875,7 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
             // ApiResponseSerializer.toSerializedStringWithSecureLogs works. For now, this gets jobid's
             // in the api logs.
             log.append(response);
-            return response;
+            out.write(response);
 
         } else {
             dispatcher.dispatch(cmdObj, params, false);
@@ -887,7 +894,7 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
             }
 
             SerializationContext.current().setUuidTranslation(true);
-            return ApiResponseSerializer.toSerializedStringWithSecureLogs((ResponseObject)cmdObj.getResponseObject(), cmdObj.getResponseType(), log);
+            ApiResponseSerializer.writeSerializedResponse((ResponseObject)cmdObj.getResponseObject(), cmdObj.getResponseType(), out, log);
         }
     }
 
@@ -1459,22 +1466,15 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
             resp.setStatusCode(statusCode);
             resp.setReasonPhrase(reasonPhrase);
 
-            final BasicHttpEntity body = new BasicHttpEntity();
+            // a response of known length lets the client keep the connection open for its next requests
+            final ByteArrayEntity body;
             if (HttpUtils.RESPONSE_TYPE_JSON.equalsIgnoreCase(responseType)) {
                 // JSON response
+                body = new ByteArrayEntity((responseText != null ? responseText : "{ \"error\" : { \"description\" : \"Internal Server Error\" } }").getBytes(HttpUtils.UTF_8));
                 body.setContentType(JSONcontentType.value());
-                if (responseText == null) {
-                    body.setContent(new ByteArrayInputStream("{ \"error\" : { \"description\" : \"Internal Server Error\" } }".getBytes(HttpUtils.UTF_8)));
-                }
             } else {
+                body = new ByteArrayEntity((responseText != null ? responseText : "<error>Internal Server Error</error>").getBytes(HttpUtils.UTF_8));
                 body.setContentType("text/xml");
-                if (responseText == null) {
-                    body.setContent(new ByteArrayInputStream("<error>Internal Server Error</error>".getBytes(HttpUtils.UTF_8)));
-                }
-            }
-
-            if (responseText != null) {
-                body.setContent(new ByteArrayInputStream(responseText.getBytes(HttpUtils.UTF_8)));
             }
             resp.setEntity(body);
         } catch (final Exception ex) {
@@ -1482,108 +1482,6 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
         }
     }
 
-    // FIXME: the following two threads are copied from
-    // http://svn.apache.org/repos/asf/httpcomponents/httpcore/trunk/httpcore/src/examples/org/apache/http/examples/ElementalHttpServer.java
-    // we have to cite a license if we are using this code directly, so we need to add the appropriate citation or
-    // modify the
-    // code to be very specific to our needs
-    static class ListenerThread extends Thread {
-
-        private static final Logger LOGGER = LogManager.getLogger(ListenerThread.class);
-        private HttpService _httpService = null;
-        private ServerSocket _serverSocket = null;
-        private HttpParams _params = null;
-
-        public ListenerThread(final ApiServer requestHandler, final int port) {
-            try {
-                _serverSocket = new ServerSocket(port);
-            } catch (final IOException ioex) {
-                LOGGER.error("error initializing api server", ioex);
-                return;
-            }
-
-            _params = new BasicHttpParams();
-            _params.setIntParameter(CoreConnectionPNames.SO_TIMEOUT, 30000)
-            .setIntParameter(CoreConnectionPNames.SOCKET_BUFFER_SIZE, 8 * 1024)
-            .setBooleanParameter(CoreConnectionPNames.STALE_CONNECTION_CHECK, false)
-            .setBooleanParameter(CoreConnectionPNames.TCP_NODELAY, true)
-            .setParameter(CoreProtocolPNames.ORIGIN_SERVER, "HttpComponents/1.1");
-
-            // Set up the HTTP protocol processor
-            final BasicHttpProcessor httpproc = new BasicHttpProcessor();
-            httpproc.addInterceptor(new ResponseDate());
-            httpproc.addInterceptor(new ResponseServer());
-            httpproc.addInterceptor(new ResponseContent());
-            httpproc.addInterceptor(new ResponseConnControl());
-
-            // Set up request handlers
-            final HttpRequestHandlerRegistry reqistry = new HttpRequestHandlerRegistry();
-            reqistry.register("*", requestHandler);
-
-            // Set up the HTTP service
-            _httpService = new HttpService(httpproc, new NoConnectionReuseStrategy(), new DefaultHttpResponseFactory());
-            _httpService.setParams(_params);
-            _httpService.setHandlerResolver(reqistry);
-        }
-
-        @Override
-        public void run() {
-            LOGGER.info("ApiServer listening on port {}", _serverSocket.getLocalPort());
-            while (!Thread.interrupted()) {
-                try {
-                    // Set up HTTP connection
-                    final Socket socket = _serverSocket.accept();
-                    final DefaultHttpServerConnection conn = new DefaultHttpServerConnection();
-                    conn.bind(socket, _params);
-
-                    // Execute a new worker task to handle the request
-                    s_executor.execute(new WorkerTask(_httpService, conn, s_workerCount++));
-                } catch (final InterruptedIOException ex) {
-                    break;
-                } catch (final IOException e) {
-                    LOGGER.error("I/O error initializing connection thread", e);
-                    break;
-                }
-            }
-        }
-    }
-
-    static class WorkerTask extends ManagedContextRunnable {
-        private final HttpService _httpService;
-        private final HttpServerConnection _conn;
-
-        public WorkerTask(final HttpService httpService, final HttpServerConnection conn, final int count) {
-            _httpService = httpService;
-            _conn = conn;
-        }
-
-        @Override
-        protected void runInContext() {
-            final HttpContext context = new BasicHttpContext(null);
-            try {
-                while (!Thread.interrupted() && _conn.isOpen()) {
-                    _httpService.handleRequest(_conn, context);
-                    _conn.close();
-                }
-            } catch (final ConnectionClosedException ex) {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("ApiServer:  Client closed connection");
-                }
-            } catch (final IOException ex) {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("ApiServer:  IOException - {}", ex.toString());
-                }
-            } catch (final HttpException ex) {
-                logger.warn("ApiServer:  Unrecoverable HTTP protocol violation {}", ex.toString());
-            } finally {
-                try {
-                    _conn.shutdown();
-                } catch (final IOException ignore) {
-                }
-            }
-        }
-    }
-
     @Override
     public String getSerializedApiError(final int errorCode, final String errorText, final Map<String, Object[]> apiCommandParams, final String responseType) {
         String responseName = null;
@@ -1697,6 +1595,8 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
         return new ConfigKey<?>[] {
                 EnforcePostRequestsAndTimestamps,
                 IntegrationAPIPort,
+                IntegrationAPIWorkers,
+                IntegrationAPIQueueSize,
                 ConcurrentSnapshotsThresholdPerHost,
                 EncodeApiResponse,
                 EnableSecureSessionCookie,
@@ -413,8 +413,9 @@ public class ApiServlet extends HttpServlet {
                 params.put("httpmethod", new String[]{req.getMethod()});
                 setProjectContext(params);
                 setClientAddressForConsoleEndpointAccess(command, params, req);
-                final String response = apiServer.handleRequest(params, responseType, auditTrailSb);
-                HttpUtils.writeHttpResponse(resp, response != null ? response : "", HttpServletResponse.SC_OK, responseType, ApiServer.JSONcontentType.value());
+                HttpUtils.prepareHttpResponse(resp, HttpServletResponse.SC_OK, responseType, ApiServer.JSONcontentType.value());
+                // the response is written as it is serialized, large list responses are never held as a whole in memory
+                apiServer.handleRequest(params, responseType, auditTrailSb, resp.getWriter());
             } else {
                 if (session != null) {
                     invalidateHttpSession(session, String.format("request verification failed for %s from %s", userId, remoteAddress.getHostAddress()));
@@ -428,9 +429,15 @@ public class ApiServlet extends HttpServlet {
 
             }
         } catch (final ServerApiException se) {
-            final String serializedResponseText = apiServer.getSerializedApiError(se, params, responseType);
-            resp.setHeader("X-Description", se.getDescription());
-            HttpUtils.writeHttpResponse(resp, serializedResponseText, se.getErrorCode().getHttpCode(), responseType, ApiServer.JSONcontentType.value());
+            if (resp.isCommitted()) {
+                LOGGER.warn("Unable to send the error response as part of the response has already been sent: " + se.getDescription());
+            } else {
+                // drop what has been written of the response before the failure
+                resp.resetBuffer();
+                final String serializedResponseText = apiServer.getSerializedApiError(se, params, responseType);
+                resp.setHeader("X-Description", se.getDescription());
+                HttpUtils.writeHttpResponse(resp, serializedResponseText, se.getErrorCode().getHttpCode(), responseType, ApiServer.JSONcontentType.value());
+            }
             auditTrailSb.append(" " + se.getErrorCode() + " " + se.getDescription());
         } catch (final Exception ex) {
             LOGGER.error("unknown exception writing api response", ex);
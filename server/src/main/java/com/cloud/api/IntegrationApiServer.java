@@ -0,0 +1,251 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.cloudstack.managed.context.ManagedContextRunnable;
+import org.apache.cloudstack.utils.stats.TimeHistogram;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.impl.DefaultHttpResponseFactory;
+import org.apache.http.impl.nio.DefaultHttpServerIODispatch;
+import org.apache.http.impl.nio.reactor.DefaultListeningIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.protocol.BasicAsyncRequestConsumer;
+import org.apache.http.nio.protocol.BasicAsyncResponseProducer;
+import org.apache.http.nio.protocol.HttpAsyncExchange;
+import org.apache.http.nio.protocol.HttpAsyncRequestConsumer;
+import org.apache.http.nio.protocol.HttpAsyncRequestHandler;
+import org.apache.http.nio.protocol.HttpAsyncService;
+import org.apache.http.nio.protocol.UriHttpAsyncRequestHandlerMapper;
+import org.apache.http.nio.reactor.ListenerEndpoint;
+import org.apache.http.nio.reactor.ListeningIOReactor;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.HttpProcessorBuilder;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.protocol.ResponseConnControl;
+import org.apache.http.protocol.ResponseContent;
+import org.apache.http.protocol.ResponseDate;
+import org.apache.http.protocol.ResponseServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.cloud.utils.concurrency.NamedThreadFactory;
+import com.cloud.utils.mgmt.JmxUtil;
+
+/**
+ * Serves the integration API port. Connections are multiplexed over a few non-blocking I/O threads, which read
+ * whole requests and write whole responses, so that slow clients never hold a worker. Keep-alive connections
+ * and pipelined requests are supported; the responses are sent back in the order of the requests.
+ *
+ * Complete requests are handed to a bounded pool of workers, which run them through the {@link HttpRequestHandler}.
+ * When all the workers are busy and the queue in front of them is full, the request is answered with a 503 rather
+ * than being queued without bound.
+ */
+public class IntegrationApiServer implements HttpAsyncRequestHandler<HttpRequest>, IntegrationApiServerMBean {
+    protected static Logger LOGGER = LogManager.getLogger(IntegrationApiServer.class);
+
+    /**
+     * Attribute the request handler sets on the request context to the name of the command it ran, under which the
+     * latency of the request is recorded.
+     */
+    public static final String COMMAND_ATTRIBUTE = "cloudstack.api.command";
+
+    private static final String UNKNOWN_COMMAND = "unknown";
+    private static final int SOCKET_TIMEOUT = 30000;
+
+    private final HttpRequestHandler _requestHandler;
+    private final int _port;
+    private final ThreadPoolExecutor _workers;
+    private final LongAdder _rejectedRequests = new LongAdder();
+    private final Map<String, TimeHistogram> _commandLatencies = new ConcurrentHashMap<>();
+
+    private ListeningIOReactor _ioReactor;
+    private ListenerEndpoint _endpoint;
+
+    public IntegrationApiServer(final HttpRequestHandler requestHandler, final int port, final int workers, final int queueSize) {
+        _requestHandler = requestHandler;
+        _port = port;
+        _workers = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(queueSize, 1)), new NamedThreadFactory("ApiServer"));
+        _workers.allowCoreThreadTimeOut(true);
+    }
+
+    public synchronized void start() throws IOException {
+        final IOReactorConfig config = IOReactorConfig.custom()
+                .setSoTimeout(SOCKET_TIMEOUT)
+                .setTcpNoDelay(true)
+                .setSoReuseAddress(true)
+                .setIoThreadCount(Math.min(Runtime.getRuntime().availableProcessors(), 4))
+                .build();
+        final HttpProcessor httpproc = HttpProcessorBuilder.create()
+                .add(new ResponseDate())
+                .add(new ResponseServer("HttpComponents/1.1"))
+                .add(new ResponseContent())
+                .add(new ResponseConnControl())
+                .build();
+        final UriHttpAsyncRequestHandlerMapper registry = new UriHttpAsyncRequestHandlerMapper();
+        registry.register("*", this);
+        final HttpAsyncService httpService = new HttpAsyncService(httpproc, DefaultConnectionReuseStrategy.INSTANCE, DefaultHttpResponseFactory.INSTANCE, registry, null);
+        final DefaultHttpServerIODispatch ioEventDispatch = new DefaultHttpServerIODispatch(httpService, ConnectionConfig.DEFAULT);
+
+        _ioReactor = new DefaultListeningIOReactor(config, new NamedThreadFactory("ApiServer-IO"));
+        _endpoint = _ioReactor.listen(new InetSocketAddress(_port));
+
+        final Thread reactorThread = new Thread(() -> {
+            try {
+                _ioReactor.execute(ioEventDispatch);
+            } catch (final InterruptedIOException e) {
+                LOGGER.debug("Integration API listener interrupted");
+            } catch (final IOException e) {
+                LOGGER.error("I/O error in the integration API listener", e);
+            }
+        }, "ApiServer-Listener");
+        reactorThread.setDaemon(true);
+        reactorThread.start();
+
+        try {
+            _endpoint.waitFor();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while binding the integration API port " + _port);
+        }
+        if (_endpoint.getException() != null) {
+            throw new IOException("Unable to listen on the integration API port " + _port, _endpoint.getException());
+        }
+        LOGGER.info("ApiServer listening on port {}", getLocalPort());
+
+        try {
+            JmxUtil.registerMBean("ApiServer", "IntegrationApiServer", this);
+        } catch (final Exception e) {
+            LOGGER.warn("Unable to register the integration API server for JMX", e);
+        }
+    }
+
+    public synchronized void stop() {
+        if (_ioReactor == null) {
+            return;
+        }
+        try {
+            JmxUtil.unregisterMBean("ApiServer", "IntegrationApiServer");
+        } catch (final Exception e) {
+            LOGGER.debug("Unable to unregister the integration API server from JMX", e);
+        }
+        try {
+            _ioReactor.shutdown(SOCKET_TIMEOUT);
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to shut down the integration API listener", e);
+        }
+        _workers.shutdown();
+        _ioReactor = null;
+    }
+
+    public int getLocalPort() {
+        return ((InetSocketAddress)_endpoint.getAddress()).getPort();
+    }
+
+    @Override
+    public HttpAsyncRequestConsumer<HttpRequest> processRequest(final HttpRequest request, final HttpContext context) {
+        return new BasicAsyncRequestConsumer();
+    }
+
+    @Override
+    public void handle(final HttpRequest request, final HttpAsyncExchange exchange, final HttpContext context) throws HttpException, IOException {
+        final long queuedAt = System.nanoTime();
+        try {
+            _workers.execute(new ManagedContextRunnable() {
+                @Override
+                protected void runInContext() {
+                    process(request, exchange, context, queuedAt);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            _rejectedRequests.increment();
+            LOGGER.warn("Rejecting integration API request {} as all {} workers are busy and {} requests are queued",
+                    request.getRequestLine(), _workers.getMaximumPoolSize(), _workers.getQueue().size());
+            final HttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.SC_SERVICE_UNAVAILABLE);
+            response.setReasonPhrase("Too many concurrent integration API requests");
+            exchange.submitResponse();
+        }
+    }
+
+    protected void process(final HttpRequest request, final HttpAsyncExchange exchange, final HttpContext context, final long queuedAt) {
+        // pipelined requests share the connection context, each of them gets its own on top of it
+        final HttpContext requestContext = new BasicHttpContext(context);
+        final HttpResponse response = exchange.getResponse();
+        try {
+            _requestHandler.handle(request, response, requestContext);
+        } catch (final HttpException | IOException | RuntimeException e) {
+            LOGGER.warn("Unable to handle integration API request {}", request.getRequestLine(), e);
+            response.setStatusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+            response.setEntity(null);
+        } finally {
+            final Object command = requestContext.getAttribute(COMMAND_ATTRIBUTE);
+            recordLatency(command != null ? command.toString() : UNKNOWN_COMMAND, System.nanoTime() - queuedAt);
+        }
+        if (exchange.isCompleted()) {
+            LOGGER.trace("Client closed the connection before the response to {} was ready", request.getRequestLine());
+            return;
+        }
+        exchange.submitResponse(new BasicAsyncResponseProducer(response));
+    }
+
+    protected void recordLatency(final String command, final long nanos) {
+        _commandLatencies.computeIfAbsent(command, c -> new TimeHistogram()).record(nanos);
+    }
+
+    @Override
+    public int getActiveWorkers() {
+        return _workers.getActiveCount();
+    }
+
+    @Override
+    public int getQueuedRequests() {
+        return _workers.getQueue().size();
+    }
+
+    @Override
+    public long getRejectedRequests() {
+        return _rejectedRequests.sum();
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getCommandLatencies() {
+        final Map<String, Map<String, Long>> latencies = new LinkedHashMap<>();
+        for (final Map.Entry<String, TimeHistogram> entry : _commandLatencies.entrySet()) {
+            latencies.put(entry.getKey(), entry.getValue().toMap());
+        }
+        return latencies;
+    }
+}
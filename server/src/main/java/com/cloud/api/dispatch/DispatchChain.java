@@ -20,9 +20,13 @@ package com.cloud.api.dispatch;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.cloudstack.api.ServerApiException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 public class DispatchChain {
 
+    protected Logger logger = LogManager.getLogger(getClass());
+
     protected List<DispatchWorker> workers = new ArrayList<DispatchWorker>();
 
     public DispatchChain add(final DispatchWorker worker) {
@@ -33,8 +37,25 @@ public class DispatchChain {
     public void dispatch(final DispatchTask task)
             throws ServerApiException {
 
+        if (!logger.isDebugEnabled()) {
+            for (final DispatchWorker worker : workers) {
+                worker.handle(task);
+            }
+            return;
+        }
+
+        // time each phase of the dispatch, so that slow parameter processing or validation shows up per command
+        final StringBuilder phases = new StringBuilder();
+        final long start = System.nanoTime();
+        long phaseStart = start;
         for (final DispatchWorker worker : workers) {
             worker.handle(task);
+            final long phaseEnd = System.nanoTime();
+            phases.append(phases.length() > 0 ? ", " : "").append(worker.getClass().getSimpleName()).append(": ")
+                    .append((phaseEnd - phaseStart) / 1000).append(" us");
+            phaseStart = phaseEnd;
         }
+        logger.debug("Dispatched command {} in {} us ({}).", task.getCmd() != null ? task.getCmd().getCommandName() : null,
+                (phaseStart - start) / 1000, phases);
     }
 }
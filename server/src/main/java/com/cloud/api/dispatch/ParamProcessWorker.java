@@ -23,11 +23,15 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 
 import javax.inject.Inject;
@@ -43,6 +47,7 @@ import org.apache.cloudstack.api.BaseAsyncCreateCmd;
 import org.apache.cloudstack.api.BaseCmd;
 import org.apache.cloudstack.api.BaseCmd.CommandType;
 import org.apache.cloudstack.api.EntityReference;
+import org.apache.cloudstack.api.Identity;
 import org.apache.cloudstack.api.InternalIdentity;
 import org.apache.cloudstack.api.Parameter;
 import org.apache.cloudstack.api.ServerApiException;
@@ -68,6 +73,9 @@ public class ParamProcessWorker implements DispatchWorker {
     public static final DateFormat inputFormat = new SimpleDateFormat(inputFormatString);
     public static final DateFormat newInputFormat = new SimpleDateFormat(newInputFormatString);
 
+    // the annotations and entity types of the parameters, by command class
+    private static final Map<Class<?>, Map<Field, ParameterAccessor>> parameterAccessors = new ConcurrentHashMap<>();
+
     @Inject
     protected AccountManager _accountMgr;
 
@@ -85,6 +93,48 @@ public class ParamProcessWorker implements DispatchWorker {
         _secChecker = secChecker;
     }
 
+    /**
+     * The annotations of a parameter field of a command class and the entity types it references, looked up once.
+     */
+    protected static class ParameterAccessor {
+        private final Field field;
+        private final Parameter parameter;
+        private final ACL acl;
+        private final Class<?>[] entityTypes;
+
+        ParameterAccessor(Field field) {
+            field.setAccessible(true);
+            this.field = field;
+            this.parameter = field.getAnnotation(Parameter.class);
+            this.acl = field.getAnnotation(ACL.class);
+            final EntityReference reference = parameter.entityType().length > 0 ? parameter.entityType()[0].getAnnotation(EntityReference.class) : null;
+            this.entityTypes = reference != null ? reference.value() : null;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public Parameter getParameter() {
+            return parameter;
+        }
+
+        public ACL getAcl() {
+            return acl;
+        }
+
+        /**
+         * @return the entity types of the first entity referenced by the parameter, null when it references none
+         */
+        public Class<?>[] getEntityTypes() {
+            return entityTypes;
+        }
+    }
+
+    protected ParameterAccessor getParameterAccessor(final BaseCmd cmd, final Field field) {
+        return parameterAccessors.computeIfAbsent(cmd.getClass(), c -> new ConcurrentHashMap<>()).computeIfAbsent(field, ParameterAccessor::new);
+    }
+
     @Override
     public void handle(final DispatchTask task) {
         processParameters(task.getCmd(), task.getParams());
@@ -188,8 +238,10 @@ public class ParamProcessWorker implements DispatchWorker {
             commandName = cmd.getCommandName().substring(0, cmd.getCommandName().length() - 8);
         }
 
-        for (final Field field : cmdFields) {
-            final Parameter parameterAnnotation = field.getAnnotation(Parameter.class);
+        for (final Field cmdField : cmdFields) {
+            final ParameterAccessor accessor = getParameterAccessor(cmd, cmdField);
+            final Field field = accessor.getField();
+            final Parameter parameterAnnotation = accessor.getParameter();
             final Object paramObj = params.get(parameterAnnotation.name());
             if (paramObj == null) {
                 if (parameterAnnotation.required()) {
@@ -234,7 +286,7 @@ public class ParamProcessWorker implements DispatchWorker {
 
             //check access on the resource this field points to
             try {
-                final ACL checkAccess = field.getAnnotation(ACL.class);
+                final ACL checkAccess = accessor.getAcl();
                 final CommandType fieldType = parameterAnnotation.type();
 
                 if (checkAccess != null) {
@@ -246,9 +298,8 @@ public class ParamProcessWorker implements DispatchWorker {
                     // for maps, specify access to be checkd on key or value.
                     // Find the controlled entity DBid by uuid
 
-                    if (parameterAnnotation.entityType() != null && parameterAnnotation.entityType().length > 0
-                            && parameterAnnotation.entityType()[0].getAnnotation(EntityReference.class) != null) {
-                        final Class<?>[] entityList = parameterAnnotation.entityType()[0].getAnnotation(EntityReference.class).value();
+                    if (accessor.getEntityTypes() != null) {
+                        final Class<?>[] entityList = accessor.getEntityTypes();
 
                         // Check if the parameter type is a single
                         // Id or list of id's/name's
@@ -259,14 +310,8 @@ public class ParamProcessWorker implements DispatchWorker {
                             case LONG:
                             case UUID:
                                 final List<Long> listParam = (List<Long>) field.get(cmd);
-                                for (final Long entityId : listParam) {
-                                    for (final Class entity : entityList) {
-                                        final Object entityObj = _entityMgr.findById(entity, entityId);
-                                        if(entityObj != null){
-                                            entitiesToAccess.put(entityObj, checkAccess.accessType());
-                                            break;
-                                        }
-                                    }
+                                for (final Object entityObj : findEntitiesByIds(entityList, listParam)) {
+                                    entitiesToAccess.put(entityObj, checkAccess.accessType());
                                 }
                                 break;
                                 /*
@@ -310,6 +355,37 @@ public class ParamProcessWorker implements DispatchWorker {
         doAccessChecks(cmd, entitiesToAccess);
     }
 
+    /**
+     * Finds the entity of each id, looking it up in the entity types in order, with a single query per entity type.
+     * Ids not found that way, when the DAO of the type does not list entities by ids, are looked up one by one.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected List<Object> findEntitiesByIds(final Class<?>[] entityTypes, final Collection<Long> ids) {
+        final List<Object> entities = new ArrayList<>();
+        final Set<Long> remainingIds = new LinkedHashSet<>(ids);
+        remainingIds.remove(null);
+        for (final Class entity : entityTypes) {
+            if (remainingIds.isEmpty()) {
+                return entities;
+            }
+            for (final Object entityObj : _entityMgr.listAllByIds(entity, remainingIds)) {
+                if (entityObj instanceof InternalIdentity && remainingIds.remove(((InternalIdentity)entityObj).getId())) {
+                    entities.add(entityObj);
+                }
+            }
+        }
+        for (final Long entityId : remainingIds) {
+            for (final Class entity : entityTypes) {
+                final Object entityObj = _entityMgr.findById(entity, entityId);
+                if (entityObj != null) {
+                    entities.add(entityObj);
+                    break;
+                }
+            }
+        }
+        return entities;
+    }
+
     protected void doAccessChecks(BaseCmd cmd, Map<Object, AccessType> entitiesToAccess) {
         Account caller = CallContext.current().getCallingAccount();
         List<Long> entityOwners = cmd.getEntityOwnerIds();
@@ -366,7 +442,6 @@ public class ParamProcessWorker implements DispatchWorker {
     @SuppressWarnings({"unchecked", "rawtypes"})
     private void setFieldValue(final Field field, final BaseCmd cmdObj, final Object paramObj, final Parameter annotation) throws IllegalArgumentException, ParseException {
         try {
-            field.setAccessible(true);
             final CommandType fieldType = annotation.type();
             switch (fieldType) {
             case BOOLEAN:
@@ -402,19 +477,21 @@ public class ParamProcessWorker implements DispatchWorker {
             case LIST:
                 final List listParam = new ArrayList();
                 final StringTokenizer st = new StringTokenizer(paramObj.toString(), ",");
+                final CommandType listType = annotation.collectionType();
+                if (listType == CommandType.UUID) {
+                    final List<String> uuids = new ArrayList<>();
+                    while (st.hasMoreTokens()) {
+                        uuids.add(st.nextToken());
+                    }
+                    field.set(cmdObj, translateUuidsToInternalIds(uuids, annotation));
+                    break;
+                }
                 while (st.hasMoreTokens()) {
                     final String token = st.nextToken();
-                    final CommandType listType = annotation.collectionType();
                     switch (listType) {
                     case INTEGER:
                         listParam.add(Integer.valueOf(token));
                         break;
-                    case UUID:
-                        if (token.isEmpty())
-                            break;
-                        final Long internalId = translateUuidToInternalId(token, annotation);
-                        listParam.add(internalId);
-                        break;
                     case LONG: {
                         listParam.add(Long.valueOf(token));
                     }
@@ -502,6 +579,61 @@ public class ParamProcessWorker implements DispatchWorker {
         return cal.getTime();
     }
 
+    /**
+     * Translates the uuids of a list parameter to internal ids, looking them up with a single query per entity type
+     * rather than one query per uuid. Values which are not uuids, or not found that way, are translated one by one.
+     */
+    protected List<Long> translateUuidsToInternalIds(final List<String> uuids, final Parameter annotation) {
+        final Map<String, Long> internalIdsByUuid = findInternalIdsByUuids(uuids, annotation);
+        final List<Long> internalIds = new ArrayList<>(uuids.size());
+        for (final String uuid : uuids) {
+            if (uuid.isEmpty()) {
+                continue;
+            }
+            final Long internalId = internalIdsByUuid.get(uuid);
+            if (internalId != null) {
+                validateNaturalNumber(internalId, annotation.name());
+                internalIds.add(internalId);
+            } else {
+                internalIds.add(translateUuidToInternalId(uuid, annotation));
+            }
+        }
+        return internalIds;
+    }
+
+    private Map<String, Long> findInternalIdsByUuids(final List<String> uuids, final Parameter annotation) {
+        final Map<String, Long> internalIdsByUuid = new HashMap<>();
+        final Set<String> remainingUuids = new LinkedHashSet<>();
+        for (final String uuid : uuids) {
+            if (UuidUtils.isUuid(uuid)) {
+                remainingUuids.add(uuid);
+            }
+        }
+        // a single uuid is looked up as before
+        if (remainingUuids.size() < 2) {
+            return internalIdsByUuid;
+        }
+
+        final Class<?>[] entities = annotation.entityType()[0].getAnnotation(EntityReference.class).value();
+        for (final Class<?> entity : entities) {
+            if (remainingUuids.isEmpty()) {
+                break;
+            }
+            // For backward compatibility, we search within removed entities as translateUuidToInternalId does
+            for (final Object objVO : _entityMgr.listByUuidsIncludingRemoved(entity, remainingUuids)) {
+                if (!(objVO instanceof Identity) || !(objVO instanceof InternalIdentity)) {
+                    continue;
+                }
+                final String uuid = ((Identity)objVO).getUuid();
+                if (remainingUuids.remove(uuid)) {
+                    internalIdsByUuid.put(uuid, ((InternalIdentity)objVO).getId());
+                    CallContext.current().putContextParameter(entity, uuid);
+                }
+            }
+        }
+        return internalIdsByUuid;
+    }
+
     private Long translateUuidToInternalId(final String uuid, final Parameter annotation) {
         if (uuid.equals("-1")) {
             // FIXME: This is to handle a lot of hardcoded special cases where -1 is sent
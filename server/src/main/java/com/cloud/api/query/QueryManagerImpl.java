@@ -20,9 +20,12 @@ import static com.cloud.vm.VmDetailConstants.SSH_PUBLIC_KEY;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -213,6 +216,7 @@ import com.cloud.api.query.dao.VolumeJoinDao;
 import com.cloud.api.query.vo.AccountJoinVO;
 import com.cloud.api.query.vo.AffinityGroupJoinVO;
 import com.cloud.api.query.vo.AsyncJobJoinVO;
+import com.cloud.api.query.vo.BaseViewVO;
 import com.cloud.api.query.vo.BaseViewWithTagInformationVO;
 import com.cloud.api.query.vo.DataCenterJoinVO;
 import com.cloud.api.query.vo.DiskOfferingJoinVO;
@@ -831,6 +835,7 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
         ListResponse<EventResponse> response = new ListResponse<>();
         List<EventResponse> eventResponses = ViewResponseHelper.createEventResponse(result.first().toArray(new EventJoinVO[0]));
         response.setResponses(eventResponses, result.second());
+        response.setNextAfterId(getNextAfterId(result.first(), cmd.getPageSizeVal()));
         return response;
     }
 
@@ -850,10 +855,48 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
             count = 0;
         }
 
-        List<EventJoinVO> events = _eventJoinDao.searchByIds(idArray);
+        List<EventJoinVO> events = orderByIds(_eventJoinDao.searchByIds(idArray), idArray);
         return new Pair<>(events, count);
     }
 
+    /**
+     * Sorts the view rows in the order of the ids page they were searched by, as searchByIds queries them with an
+     * IN clause which does not keep that order. The rows of a same id are kept in the order they were returned.
+     */
+    protected static <T extends BaseViewVO> List<T> orderByIds(List<T> rows, Long[] ids) {
+        Map<Long, Integer> positions = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            positions.putIfAbsent(ids[i], i);
+        }
+        List<T> ordered = new ArrayList<>(rows);
+        ordered.sort(Comparator.comparingInt(row -> positions.getOrDefault(row.getId(), Integer.MAX_VALUE)));
+        return ordered;
+    }
+
+    /**
+     * Returns the opaque cursor of the page after the given one, the id of its last row, or null when the page is the
+     * last one. The cursor does not refer to the row, which may be removed before the next page is listed.
+     */
+    protected static String getNextAfterId(List<? extends BaseViewVO> rows, Long pageSize) {
+        if (rows.isEmpty() || pageSize == null || pageSize <= 0 || rows.stream().map(BaseViewVO::getId).distinct().count() < pageSize) {
+            return null;
+        }
+        String id = String.valueOf(rows.get(rows.size() - 1).getId());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @return the id of the last row of the previous page encoded in the cursor
+     */
+    protected static Long decodeAfterId(String afterId) {
+        try {
+            return Long.valueOf(new String(Base64.getUrlDecoder().decode(afterId), StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidParameterValueException(String.format("Invalid %s [%s], it must be the %s returned with the previous page",
+                    ApiConstants.AFTER_ID, afterId, ApiConstants.NEXT_AFTER_ID));
+        }
+    }
+
     private Pair<List<Long>, Integer> searchForEventIdsAndCount(ListEventsCmd cmd) {
         Account caller = CallContext.current().getCallingAccount();
         boolean isRootAdmin = accountMgr.isRootAdmin(caller.getId());
@@ -914,10 +957,16 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
         Boolean isRecursive = domainIdRecursiveListProject.second();
         ListProjectResourcesCriteria listProjectResourcesCriteria = domainIdRecursiveListProject.third();
 
-        Filter searchFilter = new Filter(EventVO.class, "createDate", false, cmd.getStartIndex(), cmd.getPageSizeVal());
-        // additional order by since createdDate does not have milliseconds
-        // and two events, created within one second can be incorrectly ordered (for example VM.CREATE Completed before Scheduled)
-        searchFilter.addOrderBy(EventVO.class, "id", false);
+        Filter searchFilter;
+        if (cmd.getAfterId() != null) {
+            // events ids grow with their creation, so the id alone keeps the newest first order
+            searchFilter = Filter.seek(EventVO.class, "id", false, decodeAfterId(cmd.getAfterId()), cmd.getPageSizeVal());
+        } else {
+            searchFilter = new Filter(EventVO.class, "createDate", false, cmd.getStartIndex(), cmd.getPageSizeVal());
+            // additional order by since createdDate does not have milliseconds
+            // and two events, created within one second can be incorrectly ordered (for example VM.CREATE Completed before Scheduled)
+            searchFilter.addOrderBy(EventVO.class, "id", false);
+        }
 
         SearchBuilder<EventVO> eventSearchBuilder = eventDao.createSearchBuilder();
         eventSearchBuilder.select(null, Func.DISTINCT, eventSearchBuilder.entity().getId());
@@ -1193,6 +1242,7 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
                 result.first().toArray(new UserVmJoinVO[0]));
 
         response.setResponses(vmResponses, result.second());
+        response.setNextAfterId(getNextAfterId(result.first(), cmd.getPageSizeVal()));
         return response;
     }
 
@@ -1270,7 +1320,7 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
         }
 
         // search vm details by ids
-        List<UserVmJoinVO> vms = _userVmJoinDao.searchByIds(idArray);
+        List<UserVmJoinVO> vms = orderByIds(_userVmJoinDao.searchByIds(idArray), idArray);
         return new Pair<>(vms, count);
     }
 
@@ -1340,7 +1390,12 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
         Boolean isRecursive = domainIdRecursiveListProject.second();
         ListProjectResourcesCriteria listProjectResourcesCriteria = domainIdRecursiveListProject.third();
 
-        Filter searchFilter = new Filter(UserVmVO.class, "id", true, cmd.getStartIndex(), cmd.getPageSizeVal());
+        Filter searchFilter;
+        if (cmd.getAfterId() != null) {
+            searchFilter = Filter.seek(UserVmVO.class, "id", true, decodeAfterId(cmd.getAfterId()), cmd.getPageSizeVal());
+        } else {
+            searchFilter = new Filter(UserVmVO.class, "id", true, cmd.getStartIndex(), cmd.getPageSizeVal());
+        }
 
         List<Long> ids;
         if (cmd.getId() != null) {
@@ -2597,6 +2652,7 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
             }
         }
         response.setResponses(volumeResponses, result.second());
+        response.setNextAfterId(getNextAfterId(result.first(), cmd.getPageSizeVal()));
         return response;
     }
 
@@ -2610,7 +2666,7 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
             return new Pair<>(new ArrayList<>(), count);
         }
 
-        List<VolumeJoinVO> vms = _volumeJoinDao.searchByIds(idArray);
+        List<VolumeJoinVO> vms = orderByIds(_volumeJoinDao.searchByIds(idArray), idArray);
         return new Pair<>(vms, count);
     }
     private Pair<List<Long>, Integer> searchForVolumeIdsAndCount(ListVolumesCmd cmd) {
@@ -2649,7 +2705,12 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
         Long domainId = domainIdRecursiveListProject.first();
         Boolean isRecursive = domainIdRecursiveListProject.second();
         ListProjectResourcesCriteria listProjectResourcesCriteria = domainIdRecursiveListProject.third();
-        Filter searchFilter = new Filter(VolumeVO.class, "created", false, cmd.getStartIndex(), cmd.getPageSizeVal());
+        Filter searchFilter;
+        if (cmd.getAfterId() != null) {
+            searchFilter = Filter.seek(VolumeVO.class, "id", false, decodeAfterId(cmd.getAfterId()), cmd.getPageSizeVal());
+        } else {
+            searchFilter = new Filter(VolumeVO.class, "created", false, cmd.getStartIndex(), cmd.getPageSizeVal());
+        }
 
         SearchBuilder<VolumeVO> volumeSearchBuilder = volumeDao.createSearchBuilder();
         volumeSearchBuilder.select(null, Func.DISTINCT, volumeSearchBuilder.entity().getId()); // select distinct
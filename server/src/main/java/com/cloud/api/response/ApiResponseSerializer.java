@@ -27,7 +27,11 @@ import com.cloud.utils.encoding.URLEncoder;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.exception.ExceptionProxyObject;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 
 import org.apache.cloudstack.acl.RoleType;
 import org.apache.cloudstack.api.ApiConstants;
@@ -40,9 +44,13 @@ import org.apache.cloudstack.api.response.ExceptionResponse;
 import org.apache.cloudstack.api.response.ListResponse;
 import org.apache.cloudstack.api.response.SuccessResponse;
 import org.apache.cloudstack.context.CallContext;
+import org.apache.commons.io.output.StringBuilderWriter;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
@@ -50,12 +58,15 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ApiResponseSerializer {
     protected static Logger LOGGER = LogManager.getLogger(ApiResponseSerializer.class);
 
+    private static final Map<Account.Type, Gson> s_responseGsons = new ConcurrentHashMap<>();
+    private static final Map<Account.Type, Gson> s_logGsons = new ConcurrentHashMap<>();
+
     public static String toSerializedString(ResponseObject result, String responseType) {
         LOGGER.trace("===Serializing Response===");
         if (HttpUtils.RESPONSE_TYPE_JSON.equalsIgnoreCase(responseType)) {
@@ -74,103 +85,123 @@ public class ApiResponseSerializer {
         }
     }
 
-    private static final Pattern s_unicodeEscapePattern = Pattern.compile("\\\\u([0-9A-Fa-f]{4})");
-
-    public static String unescape(String escaped) {
-        String str = escaped;
-        Matcher matcher = s_unicodeEscapePattern.matcher(str);
-        while (matcher.find()) {
-            str = str.replaceAll("\\" + matcher.group(0), Character.toString((char)Integer.parseInt(matcher.group(1), 16)));
+    /**
+     * Writes the serialized response straight to the writer rather than building it as a string first, the secure
+     * version for the logs is still appended to {@code log}.
+     */
+    public static void writeSerializedResponse(ResponseObject result, String responseType, Writer out, StringBuilder log) throws IOException {
+        LOGGER.trace("===Serializing Response===");
+        if (HttpUtils.RESPONSE_TYPE_JSON.equalsIgnoreCase(responseType)) {
+            writeJSON(result, out, log);
+        } else {
+            writeXML(result, out, log);
         }
-        return str;
     }
 
     public static String toJSONSerializedString(ResponseObject result, StringBuilder log) {
         if (result != null && log != null) {
-            Gson responseBuilder = ApiResponseGsonHelper.getBuilder().excludeFieldsWithModifiers(Modifier.TRANSIENT, Modifier.STATIC).create();
-            Gson logBuilder = ApiResponseGsonHelper.getLogBuilder().excludeFieldsWithModifiers(Modifier.TRANSIENT, Modifier.STATIC).create();
-
-            StringBuilder sb = new StringBuilder();
+            StringWriter out = new StringWriter();
+            try {
+                writeJSON(result, out, log);
+            } catch (IOException e) {
+                throw new CloudRuntimeException("Unable to serialize the response " + result.getResponseName(), e);
+            }
+            return out.toString();
+        }
+        return null;
+    }
 
-            sb.append("{\"").append(result.getResponseName()).append("\":");
-            log.append("{\"").append(result.getResponseName()).append("\":");
-            if (result instanceof ListResponse) {
-                List<? extends ResponseObject> responses = ((ListResponse)result).getResponses();
-                Integer count = ((ListResponse)result).getCount();
-                boolean nonZeroCount = (count != null && count.longValue() != 0);
-                if (nonZeroCount) {
-                    sb.append("{\"").append(ApiConstants.COUNT).append("\":").append(count);
-                    log.append("{\"").append(ApiConstants.COUNT).append("\":").append(count);
-                }
+    private static void writeJSON(ResponseObject result, Writer out, StringBuilder log) throws IOException {
+        if (result != null && log != null) {
+            writeJSON(result, getGson(s_responseGsons, ApiResponseGsonHelper.getBuilder()), createJsonWriter(out));
+            writeJSON(result, getGson(s_logGsons, ApiResponseGsonHelper.getLogBuilder()), createJsonWriter(new StringBuilderWriter(log)));
+        }
+    }
 
+    private static void writeJSON(ResponseObject result, Gson gson, JsonWriter writer) throws IOException {
+        writer.beginObject().name(result.getResponseName());
+        if (result instanceof ListResponse) {
+            List<? extends ResponseObject> responses = ((ListResponse<?>)result).getResponses();
+            Integer count = ((ListResponse<?>)result).getCount();
+            writer.beginObject();
+            if (count != null && count.longValue() != 0) {
+                writer.name(ApiConstants.COUNT).value(count);
                 if ((responses != null) && !responses.isEmpty()) {
-                    String jsonStr = responseBuilder.toJson(responses.get(0));
-                    jsonStr = unescape(jsonStr);
-                    String logStr = logBuilder.toJson(responses.get(0));
-                    logStr = unescape(logStr);
-
-                    if (nonZeroCount) {
-                        sb.append(",\"").append(responses.get(0).getObjectName()).append("\":[").append(jsonStr);
-                        log.append(",\"").append(responses.get(0).getObjectName()).append("\":[").append(logStr);
-                    }
-
-                    for (int i = 1; i < ((ListResponse)result).getResponses().size(); i++) {
-                        jsonStr = responseBuilder.toJson(responses.get(i));
-                        jsonStr = unescape(jsonStr);
-                        logStr = logBuilder.toJson(responses.get(i));
-                        logStr = unescape(logStr);
-                        sb.append(",").append(jsonStr);
-                        log.append(",").append(logStr);
-                    }
-                    sb.append("]}");
-                    log.append("]}");
-                } else  {
-                    if (!nonZeroCount) {
-                        sb.append("{");
-                        log.append("{");
+                    writer.name(responses.get(0).getObjectName()).beginArray();
+                    for (ResponseObject response : responses) {
+                        writeJSONValue(response, gson, writer);
                     }
-
-                    sb.append("}");
-                    log.append("}");
+                    writer.endArray();
                 }
-            } else if (result instanceof SuccessResponse || result instanceof ExceptionResponse) {
-                final String jsonErrorText = unescape(responseBuilder.toJson(result));
-                sb.append(jsonErrorText);
-                log.append(jsonErrorText);
-            } else {
-                String jsonStr = responseBuilder.toJson(result);
-                if (jsonStr != null && !jsonStr.isEmpty()) {
-                    jsonStr = unescape(jsonStr);
-                    if (result instanceof AsyncJobResponse || result instanceof CreateCmdResponse || result instanceof AuthenticationCmdResponse) {
-                        sb.append(jsonStr);
-                    } else {
-                        sb.append("{\"").append(result.getObjectName()).append("\":").append(jsonStr).append("}");
-                    }
-                } else {
-                    sb.append("{}");
-                }
-                String logStr = logBuilder.toJson(result);
-                if (logStr != null && !logStr.isEmpty()) {
-                    logStr = unescape(logStr);
-                    if (result instanceof AsyncJobResponse || result instanceof CreateCmdResponse || result instanceof AuthenticationCmdResponse) {
-                        log.append(logStr);
-                    } else {
-                        log.append("{\"").append(result.getObjectName()).append("\":").append(logStr).append("}");
-                    }
-                } else {
-                    log.append("{}");
+                String nextAfterId = ((ListResponse<?>)result).getNextAfterId();
+                if (nextAfterId != null) {
+                    writer.name(ApiConstants.NEXT_AFTER_ID).value(nextAfterId);
                 }
             }
-            sb.append("}");
-            log.append("}");
-            return sb.toString();
+            writer.endObject();
+        } else if (result instanceof SuccessResponse || result instanceof ExceptionResponse || result instanceof AsyncJobResponse
+                || result instanceof CreateCmdResponse || result instanceof AuthenticationCmdResponse) {
+            writeJSONValue(result, gson, writer);
+        } else {
+            writer.beginObject().name(result.getObjectName());
+            writeJSONValue(result, gson, writer);
+            writer.endObject();
+        }
+        writer.endObject();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeJSONValue(ResponseObject value, Gson gson, JsonWriter writer) throws IOException {
+        TypeAdapter<ResponseObject> adapter = (TypeAdapter<ResponseObject>)gson.getAdapter(TypeToken.get(value.getClass()));
+        adapter.write(writer, value);
+    }
+
+    /**
+     * Creates a writer set up the way {@link Gson#toJson(Object)} sets up its own, except that HTML characters are not
+     * escaped: the API has always returned them as they are.
+     */
+    private static JsonWriter createJsonWriter(Writer out) {
+        JsonWriter writer = new JsonWriter(out);
+        writer.setLenient(true);
+        writer.setHtmlSafe(false);
+        writer.setSerializeNulls(false);
+        return writer;
+    }
+
+    /**
+     * Gson resolves the fields to serialize once per class, so an instance may only be shared by callers who are
+     * authorized to see the same fields, that is by callers of the same account type.
+     */
+    private static Gson getGson(Map<Account.Type, Gson> gsons, GsonBuilder builder) {
+        CallContext context = CallContext.current();
+        Account caller = context != null ? context.getCallingAccount() : null;
+        if (caller == null || caller.getType() == null) {
+            return createGson(builder);
+        }
+        return gsons.computeIfAbsent(caller.getType(), type -> createGson(builder));
+    }
+
+    private static Gson createGson(GsonBuilder builder) {
+        synchronized (builder) {
+            return builder.excludeFieldsWithModifiers(Modifier.TRANSIENT, Modifier.STATIC).create();
         }
-        return null;
     }
 
     private static String toXMLSerializedString(ResponseObject result, StringBuilder log) {
         if (result != null && log != null) {
-            StringBuilder sb = new StringBuilder();
+            StringWriter out = new StringWriter();
+            try {
+                writeXML(result, out, log);
+            } catch (IOException e) {
+                throw new CloudRuntimeException("Unable to serialize the response " + result.getResponseName(), e);
+            }
+            return out.toString();
+        }
+        return null;
+    }
+
+    private static void writeXML(ResponseObject result, Writer sb, StringBuilder log) throws IOException {
+        if (result != null && log != null) {
             sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
             log.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
 
@@ -189,7 +220,7 @@ public class ApiResponseSerializer {
                 Integer count = ((ListResponse)result).getCount();
 
                 if (count != null && count != 0) {
-                    sb.append("<").append(ApiConstants.COUNT).append(">").append(((ListResponse)result).getCount()).append("</").append(ApiConstants.COUNT).append(">");
+                    sb.append("<").append(ApiConstants.COUNT).append(">").append(String.valueOf(count)).append("</").append(ApiConstants.COUNT).append(">");
                     log.append("<").append(ApiConstants.COUNT).append(">").append(((ListResponse)result).getCount()).append("</").append(ApiConstants.COUNT).append(">");
                 }
                 List<? extends ResponseObject> responses = ((ListResponse)result).getResponses();
@@ -198,6 +229,12 @@ public class ApiResponseSerializer {
                         serializeResponseObjXML(sb, log, obj);
                     }
                 }
+                String nextAfterId = ((ListResponse)result).getNextAfterId();
+                if (nextAfterId != null) {
+                    String nextAfterIdXml = "<" + ApiConstants.NEXT_AFTER_ID + ">" + nextAfterId + "</" + ApiConstants.NEXT_AFTER_ID + ">";
+                    sb.append(nextAfterIdXml);
+                    log.append(nextAfterIdXml);
+                }
             } else {
                 if (result instanceof CreateCmdResponse || result instanceof AsyncJobResponse || result instanceof AuthenticationCmdResponse) {
                     serializeResponseObjFieldsXML(sb, log, result);
@@ -208,12 +245,10 @@ public class ApiResponseSerializer {
 
             sb.append("</").append(result.getResponseName()).append(">");
             log.append("</").append(result.getResponseName()).append(">");
-            return sb.toString();
         }
-        return null;
     }
 
-    private static void serializeResponseObjXML(StringBuilder sb, StringBuilder log, ResponseObject obj) {
+    private static void serializeResponseObjXML(Writer sb, StringBuilder log, ResponseObject obj) throws IOException {
         if (!(obj instanceof SuccessResponse) && !(obj instanceof ExceptionResponse)) {
             sb.append("<").append(obj.getObjectName()).append(">");
             log.append("<").append(obj.getObjectName()).append(">");
@@ -234,7 +269,7 @@ public class ApiResponseSerializer {
         return fields.toArray(new Field[] {});
     }
 
-    private static void serializeResponseObjFieldsXML(StringBuilder sb, StringBuilder log, ResponseObject obj) {
+    private static void serializeResponseObjFieldsXML(Writer sb, StringBuilder log, ResponseObject obj) throws IOException {
         boolean isAsync = false;
         if (obj instanceof AsyncJobResponse)
             isAsync = true;
@@ -324,7 +359,7 @@ public class ApiResponseSerializer {
                                 log.append("<" + "uuidProperty" + ">" + idFieldName + "</" + "uuidProperty" + ">");
                             }
                         } else if (value instanceof String) {
-                            sb.append("<").append(serializedName.value()).append(">").append(value).append("</").append(serializedName.value()).append(">");
+                            sb.append("<").append(serializedName.value()).append(">").append((String)value).append("</").append(serializedName.value()).append(">");
                             if (logField) {
                                 log.append("<").append(serializedName.value()).append(">").append(value).append("</").append(serializedName.value()).append(">");
                             }
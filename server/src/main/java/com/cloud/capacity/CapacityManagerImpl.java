@@ -23,6 +23,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -37,6 +40,7 @@ import org.apache.cloudstack.framework.config.Configurable;
 import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
 import org.apache.cloudstack.framework.messagebus.MessageBus;
 import org.apache.cloudstack.framework.messagebus.PublishScope;
+import org.apache.cloudstack.managed.context.ManagedContextRunnable;
 import org.apache.cloudstack.storage.datastore.db.StoragePoolVO;
 import org.apache.cloudstack.utils.cache.LazyCache;
 import org.apache.cloudstack.utils.cache.SingleCache;
@@ -55,6 +59,7 @@ import com.cloud.capacity.dao.CapacityDao;
 import com.cloud.configuration.Config;
 import com.cloud.dc.ClusterDetailsDao;
 import com.cloud.dc.ClusterDetailsVO;
+import com.cloud.dc.ClusterVO;
 import com.cloud.dc.dao.ClusterDao;
 import com.cloud.deploy.DeploymentClusterPlanner;
 import com.cloud.event.UsageEventVO;
@@ -81,10 +86,12 @@ import com.cloud.utils.DateUtil;
 import com.cloud.utils.NumbersUtil;
 import com.cloud.utils.Pair;
 import com.cloud.utils.component.ManagerBase;
+import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.db.DB;
 import com.cloud.utils.db.SearchCriteria;
 import com.cloud.utils.db.Transaction;
 import com.cloud.utils.db.TransactionCallbackNoReturn;
+import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.db.TransactionStatus;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.fsm.StateListener;
@@ -146,6 +153,8 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
 
     private LazyCache<Long, Pair<String, String>> clusterValuesCache;
     private SingleCache<Map<Long, ServiceOfferingVO>> serviceOfferingsCache;
+    private final HostCapacityIndex hostCapacityIndex = new HostCapacityIndex();
+    private ScheduledExecutorService hostCapacityIndexReloader;
 
     @Override
     public boolean configure(String name, Map<String, Object> params) throws ConfigurationException {
@@ -164,14 +173,73 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
         _resourceMgr.registerResourceEvent(ResourceListener.EVENT_CANCEL_MAINTENANCE_AFTER, this);
         clusterValuesCache = new LazyCache<>(128, 60, this::getClusterValues);
         serviceOfferingsCache = new SingleCache<>(60, this::getServiceOfferingsMap);
+        int interval = HostCapacityIndexReloadInterval.value();
+        if (interval <= 0) {
+            int defaultInterval = Integer.parseInt(HostCapacityIndexReloadInterval.defaultValue());
+            logger.warn("Invalid value {} of {}, reloading the host capacity index every {} seconds instead", interval,
+                    HostCapacityIndexReloadInterval.key(), defaultInterval);
+            interval = defaultInterval;
+        }
+        hostCapacityIndexReloader = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("HostCapacityIndexReloader"));
+        hostCapacityIndexReloader.scheduleWithFixedDelay(new ManagedContextRunnable() {
+            @Override
+            protected void runInContext() {
+                if (!HostCapacityIndexEnabled.value()) {
+                    return;
+                }
+                try {
+                    reloadHostCapacityIndex();
+                } catch (Exception e) {
+                    logger.warn("Failed to reload the host capacity index", e);
+                }
+            }
+        }, 0, interval, TimeUnit.SECONDS);
         return true;
     }
 
     @Override
     public boolean stop() {
+        if (hostCapacityIndexReloader != null) {
+            hostCapacityIndexReloader.shutdownNow();
+        }
         return true;
     }
 
+    @Override
+    public HostCapacityIndex getHostCapacityIndex() {
+        return hostCapacityIndex;
+    }
+
+    protected void reloadHostCapacityIndex() {
+        List<CapacityVO> capacities = _capacityDao.listHostCapacityByCapacityTypes(null, null,
+                List.of(Capacity.CAPACITY_TYPE_CPU, Capacity.CAPACITY_TYPE_MEMORY));
+        Map<Long, Pair<Float, Float>> overcommitRatios = new HashMap<>();
+        for (ClusterVO cluster : _clusterDao.listAll()) {
+            Pair<String, String> clusterValues = getClusterValues(cluster.getId());
+            if (clusterValues.first() != null && clusterValues.second() != null) {
+                overcommitRatios.put(cluster.getId(), new Pair<>(Float.parseFloat(clusterValues.first()), Float.parseFloat(clusterValues.second())));
+            }
+        }
+        hostCapacityIndex.reload(capacities, overcommitRatios);
+        logger.debug("Reloaded the capacity of {} hosts in the host capacity index", hostCapacityIndex.size());
+    }
+
+    /**
+     * Updates the host capacity index once the capacities are committed, so that it never holds a change which is
+     * rolled back or not yet visible to the other management servers.
+     */
+    private void updateHostCapacityIndex(CapacityVO... capacities) {
+        TransactionLegacy.runAfterCommit(() -> {
+            for (CapacityVO capacity : capacities) {
+                if (capacity.getCapacityState() == CapacityState.Enabled) {
+                    hostCapacityIndex.update(capacity);
+                } else if (capacity.getHostOrPoolId() != null) {
+                    hostCapacityIndex.removeHost(capacity.getHostOrPoolId());
+                }
+            }
+        });
+    }
+
     @DB
     @Override
     public boolean releaseVmCapacity(VirtualMachine vm, final boolean moveFromReserved, final boolean moveToReservered, final Long hostId) {
@@ -280,6 +348,7 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
                     _capacityDao.update(capacityCpu.getId(), capacityCpu);
                     _capacityDao.update(capacityMemory.getId(), capacityMemory);
                     _capacityDao.update(capacityCpuCore.getId(), capacityCpuCore);
+                    updateHostCapacityIndex(capacityCpu, capacityMemory);
                 }
             });
 
@@ -417,6 +486,7 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
                     _capacityDao.update(capacityCpu.getId(), capacityCpu);
                     _capacityDao.update(capacityMem.getId(), capacityMem);
                     _capacityDao.update(capacityCpuCore.getId(), capacityCpuCore);
+                    updateHostCapacityIndex(capacityCpu, capacityMem);
                 }
             });
         } catch (Exception e) {
@@ -918,6 +988,7 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
             try {
                 _capacityDao.update(cpuCap.getId(), cpuCap);
                 _capacityDao.update(memCap.getId(), memCap);
+                updateHostCapacityIndex(cpuCap, memCap);
             } catch (Exception e) {
                 logger.error("Caught exception while updating cpu/memory capacity for the host {}", host, e);
             }
@@ -1258,6 +1329,7 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
         _capacityDao.removeBy(Capacity.CAPACITY_TYPE_MEMORY, null, null, null, hostId);
         _capacityDao.removeBy(Capacity.CAPACITY_TYPE_CPU, null, null, null, hostId);
         _capacityDao.removeBy(Capacity.CAPACITY_TYPE_CPU_CORE, null, null, null, hostId);
+        hostCapacityIndex.removeHost(hostId);
     }
 
     @Override
@@ -1293,6 +1365,7 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
     public ConfigKey<?>[] getConfigKeys() {
         return new ConfigKey<?>[] {CpuOverprovisioningFactor, MemOverprovisioningFactor, StorageCapacityDisableThreshold, StorageOverprovisioningFactor,
                 StorageAllocatedCapacityDisableThreshold, StorageOperationsExcludeCluster, ImageStoreNFSVersion, SecondaryStorageCapacityThreshold,
-                StorageAllocatedCapacityDisableThresholdForVolumeSize, CapacityCalculateWorkers };
+                StorageAllocatedCapacityDisableThresholdForVolumeSize, CapacityCalculateWorkers, HostCapacityIndexEnabled,
+                HostCapacityIndexReloadInterval };
     }
 }
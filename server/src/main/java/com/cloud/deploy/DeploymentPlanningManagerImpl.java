@@ -24,6 +24,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -31,6 +32,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TreeSet;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -72,7 +74,9 @@ import com.cloud.agent.api.Command;
 import com.cloud.agent.api.StartupCommand;
 import com.cloud.agent.api.StartupRoutingCommand;
 import com.cloud.agent.manager.allocator.HostAllocator;
+import com.cloud.capacity.Capacity;
 import com.cloud.capacity.CapacityManager;
+import com.cloud.capacity.CapacityVO;
 import com.cloud.capacity.dao.CapacityDao;
 import com.cloud.configuration.Config;
 import com.cloud.configuration.ConfigurationManagerImpl;
@@ -308,6 +312,14 @@ StateListener<State, VirtualMachine.Event, VirtualMachine>, Configurable {
     @Override
     public DeployDestination planDeployment(VirtualMachineProfile vmProfile, DeploymentPlan plan, ExcludeList avoids, DeploymentPlanner planner)
             throws InsufficientServerCapacityException, AffinityConflictException {
+        return planDeployment(vmProfile, plan, avoids, planner, Collections.emptyList());
+    }
+
+    /**
+     * @param plannedVms VMs planned on a host but not deployed yet, which the affinity groups consider to be on it
+     */
+    protected DeployDestination planDeployment(VirtualMachineProfile vmProfile, DeploymentPlan plan, ExcludeList avoids, DeploymentPlanner planner,
+            List<VirtualMachine> plannedVms) throws InsufficientServerCapacityException, AffinityConflictException {
         logger.debug(logDeploymentWithoutException(vmProfile.getVirtualMachine(), plan, avoids, planner));
 
         ServiceOffering offering = vmProfile.getServiceOffering();
@@ -346,7 +358,7 @@ StateListener<State, VirtualMachine.Event, VirtualMachine>, Configurable {
 
         if (vmGroupCount > 0) {
             for (AffinityGroupProcessor processor : _affinityProcessors) {
-                processor.process(vmProfile, plan, avoids);
+                processor.process(vmProfile, plan, avoids, plannedVms);
             }
         }
         logger.debug("DeploymentPlan [{}] has not specified host. Trying to find another destination to deploy VM [{}], avoiding pods [{}], clusters [{}] and hosts [{}].",
@@ -370,17 +382,7 @@ StateListener<State, VirtualMachine.Event, VirtualMachine>, Configurable {
         }
 
         if (planner == null) {
-            String plannerName = offering.getDeploymentPlanner();
-            if (plannerName == null) {
-                if (vm.getHypervisorType() == HypervisorType.BareMetal) {
-                    plannerName = "BareMetalPlanner";
-                } else if (vm.getHypervisorType() == HypervisorType.External) {
-                    plannerName = "ExternalServerPlanner";
-                } else {
-                    plannerName = _configDao.getValue(Config.VmDeploymentPlanner.key());
-                }
-            }
-            planner = getDeploymentPlannerByName(plannerName);
+            planner = getDeploymentPlanner(vm, offering);
         }
 
         Host lastHost = null;
@@ -461,6 +463,174 @@ StateListener<State, VirtualMachine.Event, VirtualMachine>, Configurable {
         return dest;
     }
 
+    private DeploymentPlanner getDeploymentPlanner(VirtualMachine vm, ServiceOffering offering) {
+        String plannerName = offering.getDeploymentPlanner();
+        if (plannerName == null) {
+            if (vm.getHypervisorType() == HypervisorType.BareMetal) {
+                plannerName = "BareMetalPlanner";
+            } else if (vm.getHypervisorType() == HypervisorType.External) {
+                plannerName = "ExternalServerPlanner";
+            } else {
+                plannerName = _configDao.getValue(Config.VmDeploymentPlanner.key());
+            }
+        }
+        return getDeploymentPlannerByName(plannerName);
+    }
+
+    /**
+     * What a batch of VMs being planned shares: the hosts found suitable for the VMs of the same kind, and the
+     * capacity left on the hosts once the VMs planned so far are counted.
+     */
+    protected static class BatchPlan {
+        // free cpu and memory of the hosts, less what is planned on them
+        private final Map<Long, long[]> freeCapacities = new HashMap<>();
+        private final Map<String, List<Host>> suitableHosts = new HashMap<>();
+        private final List<VirtualMachine> plannedVms = new ArrayList<>();
+        private int placedOnSuitableHosts;
+
+        protected boolean hasCapacity(Host host, int cpu, long ram, Function<Host, long[]> freeCapacityLoader) {
+            long[] free = freeCapacities.computeIfAbsent(host.getId(), id -> freeCapacityLoader.apply(host));
+            return free[0] >= cpu && free[1] >= ram;
+        }
+
+        protected void plan(Host host, int cpu, long ram, Function<Host, long[]> freeCapacityLoader) {
+            long[] free = freeCapacities.computeIfAbsent(host.getId(), id -> freeCapacityLoader.apply(host));
+            free[0] -= cpu;
+            free[1] -= ram;
+        }
+
+        protected List<Long> listHostsWithoutCapacity(int cpu, long ram) {
+            return freeCapacities.entrySet().stream()
+                    .filter(entry -> entry.getValue()[0] < cpu || entry.getValue()[1] < ram)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        }
+
+        protected List<Host> getSuitableHosts(String key) {
+            return suitableHosts.get(key);
+        }
+
+        protected void setSuitableHosts(String key, List<Host> hosts) {
+            suitableHosts.put(key, hosts);
+        }
+
+        protected List<VirtualMachine> getPlannedVms() {
+            return plannedVms;
+        }
+    }
+
+    @Override
+    public Map<VirtualMachineProfile, DeployDestination> planDeployments(List<VirtualMachineProfile> vmProfiles, DeploymentPlan plan, ExcludeList avoids,
+            DeploymentPlanner planner) throws InsufficientServerCapacityException, AffinityConflictException {
+        long startTime = System.currentTimeMillis();
+        Map<VirtualMachineProfile, DeployDestination> destinations = new LinkedHashMap<>();
+        BatchPlan batch = new BatchPlan();
+        for (VirtualMachineProfile vmProfile : vmProfiles) {
+            ExcludeList vmAvoids = new ExcludeList(avoids.getDataCentersToAvoid(), avoids.getPodsToAvoid(), avoids.getClustersToAvoid(),
+                    avoids.getHostsToAvoid(), avoids.getPoolsToAvoid());
+            DeploymentPlanner vmPlanner = planner != null ? planner : getDeploymentPlanner(vmProfile.getVirtualMachine(), vmProfile.getServiceOffering());
+            destinations.put(vmProfile, planDeploymentInBatch(vmProfile, plan, vmAvoids, vmPlanner, batch));
+        }
+        logger.debug("Planned the deployment of {} out of {} VMs in {} ms, {} of them on the hosts found suitable for a previous VM of the batch",
+                destinations.values().stream().filter(Objects::nonNull).count(), vmProfiles.size(), System.currentTimeMillis() - startTime,
+                batch.placedOnSuitableHosts);
+        return destinations;
+    }
+
+    protected DeployDestination planDeploymentInBatch(VirtualMachineProfile vmProfile, DeploymentPlan plan, ExcludeList avoids, DeploymentPlanner planner,
+            BatchPlan batch) throws InsufficientServerCapacityException, AffinityConflictException {
+        VirtualMachine vm = vmProfile.getVirtualMachine();
+        ServiceOffering offering = vmProfile.getServiceOffering();
+        int cpuRequested = offering.getCpu() * offering.getSpeed();
+        long ramRequested = offering.getRamSize() * 1024L * 1024L;
+        avoids.addHostList(batch.listHostsWithoutCapacity(cpuRequested, ramRequested));
+
+        // the suitable hosts depend on the offering, template and owner of the VM, affinity groups and last hosts are per VM
+        boolean inAffinityGroup = _affinityGroupVMMapDao.countAffinityGroupsForVm(vm.getId()) > 0;
+        boolean canShareSuitableHosts = !inAffinityGroup && plan.getHostId() == null && vm.getLastHostId() == null
+                && !DEPLOYMENT_PLANNING_SKIP_HYPERVISORS.contains(vm.getHypervisorType());
+        String suitableHostsKey = String.format("%s-%s-%s-%s-%s", offering.getId(), vmProfile.getTemplateId(), vm.getHypervisorType(),
+                vm.getDataCenterId(), vm.getAccountId());
+
+        DeployDestination dest = null;
+        if (canShareSuitableHosts) {
+            dest = deployInSuitableHostOfBatch(vmProfile, plan, avoids, planner, batch, batch.getSuitableHosts(suitableHostsKey), cpuRequested, ramRequested);
+        }
+        if (dest != null) {
+            batch.placedOnSuitableHosts++;
+        } else {
+            dest = planDeployment(vmProfile, plan, avoids, planner, batch.getPlannedVms());
+            if (dest != null && canShareSuitableHosts && dest.getCluster() != null) {
+                DataCenterDeployment clusterPlan = new DataCenterDeployment(plan.getDataCenterId(), dest.getCluster().getPodId(), dest.getCluster().getId(),
+                        null, plan.getPoolId(), null, plan.getReservationContext());
+                clusterPlan.setHostPriorities(plan.getHostPriorities());
+                batch.setSuitableHosts(suitableHostsKey, findSuitableHosts(vmProfile, clusterPlan, avoids, HostAllocator.RETURN_UPTO_ALL));
+            }
+        }
+
+        if (dest != null && dest.getHost() != null) {
+            batch.plan(dest.getHost(), cpuRequested, ramRequested, this::getFreeCapacity);
+            if (inAffinityGroup) {
+                VMInstanceVO plannedVm = _vmInstanceDao.findById(vm.getId());
+                if (plannedVm != null) {
+                    plannedVm.setHostId(dest.getHost().getId());
+                    batch.getPlannedVms().add(plannedVm);
+                }
+            }
+        }
+        return dest;
+    }
+
+    private DeployDestination deployInSuitableHostOfBatch(VirtualMachineProfile vmProfile, DeploymentPlan plan, ExcludeList avoids, DeploymentPlanner planner,
+            BatchPlan batch, List<Host> suitableHosts, int cpuRequested, long ramRequested) throws InsufficientServerCapacityException {
+        if (CollectionUtils.isEmpty(suitableHosts)) {
+            return null;
+        }
+        VirtualMachine vm = vmProfile.getVirtualMachine();
+        for (Host host : suitableHosts) {
+            if (avoids.shouldAvoid(host) || !batch.hasCapacity(host, cpuRequested, ramRequested, this::getFreeCapacity)) {
+                continue;
+            }
+            DataCenterDeployment hostPlan = new DataCenterDeployment(host.getDataCenterId(), host.getPodId(), host.getClusterId(), host.getId(),
+                    plan.getPoolId(), null, plan.getReservationContext());
+            Pair<Map<Volume, List<StoragePool>>, List<Volume>> result = findSuitablePoolsForVolumes(vmProfile, hostPlan, avoids, StoragePoolAllocator.RETURN_UPTO_ALL);
+            if (result.first().isEmpty()) {
+                logger.debug("No suitable storage pools found for VM [{}] on host [{}] of the batch.", vm, host);
+                continue;
+            }
+            Pair<Host, Map<Volume, StoragePool>> potentialResources = findPotentialDeploymentResources(Collections.singletonList(host), result.first(), avoids,
+                    getPlannerUsage(planner, vmProfile, hostPlan, avoids), result.second(), plan.getPreferredHosts(), vm);
+            if (potentialResources == null) {
+                continue;
+            }
+            Map<Volume, StoragePool> storageVolMap = potentialResources.second();
+            for (Volume vol : result.second()) {
+                storageVolMap.remove(vol);
+            }
+            DeployDestination dest = new DeployDestination(_dcDao.findById(host.getDataCenterId()), _podDao.findById(host.getPodId()),
+                    _clusterDao.findById(host.getClusterId()), host, storageVolMap, getDisplayStorageFromVmProfile(vmProfile));
+            logger.debug("Returning Deployment Destination: {}", dest);
+            return dest;
+        }
+        return null;
+    }
+
+    /**
+     * @return the cpu and memory of the host not used or reserved, its total being overcommitted
+     */
+    protected long[] getFreeCapacity(Host host) {
+        CapacityVO cpu = _capacityDao.findByHostIdType(host.getId(), Capacity.CAPACITY_TYPE_CPU);
+        CapacityVO memory = _capacityDao.findByHostIdType(host.getId(), Capacity.CAPACITY_TYPE_MEMORY);
+        if (cpu == null || memory == null || host.getClusterId() == null) {
+            return new long[] {0, 0};
+        }
+        float cpuOvercommitRatio = Float.parseFloat(_clusterDetailsDao.findDetail(host.getClusterId(), "cpuOvercommitRatio").getValue());
+        float memoryOvercommitRatio = Float.parseFloat(_clusterDetailsDao.findDetail(host.getClusterId(), "memoryOvercommitRatio").getValue());
+        return new long[] {
+                (long)(cpu.getTotalCapacity() * cpuOvercommitRatio) - cpu.getUsedCapacity() - cpu.getReservedCapacity(),
+                (long)(memory.getTotalCapacity() * memoryOvercommitRatio) - memory.getUsedCapacity() - memory.getReservedCapacity()};
+    }
+
     private void avoidDifferentArchResources(VirtualMachineProfile vmProfile, DataCenter dc, ExcludeList avoids) {
         VirtualMachineTemplate template = vmProfile.getTemplate();
         for (CPU.CPUArch arch : clusterArchTypes) {
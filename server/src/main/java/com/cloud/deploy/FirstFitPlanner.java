@@ -30,7 +30,6 @@ import javax.naming.ConfigurationException;
 
 import com.cloud.capacity.CapacityVO;
 import com.cloud.configuration.ConfigurationManager;
-import com.cloud.dc.ClusterDetailsVO;
 import com.cloud.utils.exception.CloudRuntimeException;
 import org.apache.cloudstack.api.ApiConstants;
 import org.apache.cloudstack.engine.subsystem.api.storage.DataStoreManager;
@@ -41,6 +40,7 @@ import org.apache.cloudstack.storage.datastore.db.PrimaryDataStoreDao;
 
 import com.cloud.capacity.Capacity;
 import com.cloud.capacity.CapacityManager;
+import com.cloud.capacity.HostCapacityIndex;
 import com.cloud.capacity.dao.CapacityDao;
 import com.cloud.configuration.Config;
 import com.cloud.dc.ClusterDetailsDao;
@@ -53,6 +53,7 @@ import com.cloud.dc.dao.HostPodDao;
 import com.cloud.exception.InsufficientServerCapacityException;
 import com.cloud.gpu.GPU;
 import com.cloud.gpu.dao.HostGpuGroupsDao;
+import com.cloud.host.DetailVO;
 import com.cloud.host.Host;
 import com.cloud.host.dao.HostDao;
 import com.cloud.host.dao.HostTagsDao;
@@ -223,7 +224,7 @@ public class FirstFitPlanner extends AdapterBase implements DeploymentClusterPla
             Long uniqueTags;
             for (Long clusterId : clusterList) {
                 uniqueTags = (long) 0;
-                List<Long> hostList = capacityDao.listHostsWithEnoughCapacity(requiredCpu, requiredRam, clusterId, Host.Type.Routing.toString());
+                List<Long> hostList = listHostsWithEnoughCapacity(requiredCpu, requiredRam, clusterId);
                 if (!hostList.isEmpty() && implicitHostTags.length > 0) {
                     uniqueTags = new Long(hostTagsDao.getDistinctImplicitHostTags(hostList, implicitHostTags).size());
                     uniqueTags = uniqueTags + getHostsByCapability(hostList, Host.HOST_UEFI_ENABLE);
@@ -241,18 +242,38 @@ public class FirstFitPlanner extends AdapterBase implements DeploymentClusterPla
     }
 
     private Long getHostsByCapability(List<Long> hostList, String hostCapability) {
-        for (Long host : hostList) { //TODO: Fix this in single query instead of polling request for each Host
-            Map<String, String> details = hostDetailsDao.findDetails(host);
-            if (details.containsKey(Host.HOST_UEFI_ENABLE)) {
-                if (details.get(Host.HOST_UEFI_ENABLE).equalsIgnoreCase("Yes")) {
-                    return new Long(1);
-                }
-
+        // a single query for the hosts having the capability, rather than one for the details of each host
+        for (DetailVO detail : hostDetailsDao.findByName(hostCapability)) {
+            if (hostList.contains(detail.getHostId()) && "Yes".equalsIgnoreCase(detail.getValue())) {
+                return new Long(1);
             }
         }
         return new Long(0);
     }
 
+    /**
+     * @return the in-memory host capacities when enabled and loaded, null when the database is to be queried
+     */
+    protected HostCapacityIndex getHostCapacityIndex() {
+        if (!CapacityManager.HostCapacityIndexEnabled.value()) {
+            return null;
+        }
+        HostCapacityIndex index = capacityMgr.getHostCapacityIndex();
+        return index != null && index.isLoaded() ? index : null;
+    }
+
+    private List<Long> listHostsWithEnoughCapacity(int requiredCpu, long requiredRam, long clusterId) {
+        HostCapacityIndex index = getHostCapacityIndex();
+        if (index != null) {
+            List<Long> hostIds = index.listHostsWithEnoughCapacity(requiredCpu, requiredRam, clusterId);
+            if (!hostIds.isEmpty()) {
+                return hostIds;
+            }
+            logger.debug("No host with enough capacity in cluster {} according to the host capacity index, checking the database", clusterId);
+        }
+        return capacityDao.listHostsWithEnoughCapacity(requiredCpu, requiredRam, clusterId, Host.Type.Routing.toString());
+    }
+
     private List<Long> scanPodsForDestination(VirtualMachineProfile vmProfile, DeploymentPlan plan, ExcludeList avoid) {
 
         ServiceOffering offering = vmProfile.getServiceOffering();
@@ -468,7 +489,13 @@ public class FirstFitPlanner extends AdapterBase implements DeploymentClusterPla
                 (isZone ? "Zone: " : "Pod: ") + id);
         }
 
-        List<Long> clusterIdswithEnoughCapacity = capacityDao.listClustersInZoneOrPodByHostCapacities(id, vmId, requiredCpu, requiredRam, isZone);
+        HostCapacityIndex index = getHostCapacityIndex();
+        List<Long> clusterIdswithEnoughCapacity = index != null ? index.listClustersInZoneOrPodByHostCapacities(id, isZone, requiredCpu, requiredRam) :
+                Collections.emptyList();
+        if (clusterIdswithEnoughCapacity.isEmpty()) {
+            // the index may miss a host whose capacity was changed by another management server since the last reload
+            clusterIdswithEnoughCapacity = capacityDao.listClustersInZoneOrPodByHostCapacities(id, vmId, requiredCpu, requiredRam, isZone);
+        }
         if (logger.isTraceEnabled()) {
             logger.trace("ClusterId List having enough CPU and RAM capacity: " + clusterIdswithEnoughCapacity);
         }
@@ -498,7 +525,13 @@ public class FirstFitPlanner extends AdapterBase implements DeploymentClusterPla
         if (logger.isDebugEnabled()) {
             logger.debug("Listing pods in order of aggregate capacity, that have (at least one host with) enough CPU and RAM capacity under this Zone: " + zoneId);
         }
-        List<Long> podIdswithEnoughCapacity = capacityDao.listPodsByHostCapacities(zoneId, requiredCpu, requiredRam);
+        HostCapacityIndex index = getHostCapacityIndex();
+        List<Long> podIdswithEnoughCapacity = index != null ? index.listPodsByHostCapacities(zoneId, requiredCpu, requiredRam) :
+                Collections.emptyList();
+        if (podIdswithEnoughCapacity.isEmpty()) {
+            // the index may miss a host whose capacity was changed by another management server since the last reload
+            podIdswithEnoughCapacity = capacityDao.listPodsByHostCapacities(zoneId, requiredCpu, requiredRam);
+        }
         if (logger.isTraceEnabled()) {
             logger.trace("PodId List having enough CPU and RAM capacity: " + podIdswithEnoughCapacity);
         }
@@ -536,13 +569,13 @@ public class FirstFitPlanner extends AdapterBase implements DeploymentClusterPla
     // order pods by combining cpu and memory capacity considering cpuToMemoeryWeight
     public Map<Long, Double> getPodByCombinedCapacities(List<CapacityVO> capacities, double cpuToMemoryWeight) {
         Map<Long, Double> podByCombinedCapacity = new HashMap<>();
+        Map<Pair<Long, String>, Float> overCommitRatios = new HashMap<>();
         for (CapacityVO capacityVO : capacities) {
             boolean isCPUCapacity = capacityVO.getCapacityType() == Capacity.CAPACITY_TYPE_CPU;
             long podId = capacityVO.getPodId();
             double applicableWeight = isCPUCapacity ? cpuToMemoryWeight : 1 - cpuToMemoryWeight;
             String overCommitRatioParam = isCPUCapacity ? ApiConstants.CPU_OVERCOMMIT_RATIO : ApiConstants.MEMORY_OVERCOMMIT_RATIO;
-            ClusterDetailsVO overCommitRatioVO = clusterDetailsDao.findDetail(capacityVO.getClusterId(), overCommitRatioParam);
-            float overCommitRatio = Float.parseFloat(overCommitRatioVO.getValue());
+            float overCommitRatio = getOverCommitRatio(overCommitRatios, capacityVO.getClusterId(), overCommitRatioParam);
             double capacityMetric = applicableWeight *
                     (capacityVO.getUsedCapacity() + capacityVO.getReservedCapacity())/(capacityVO.getTotalCapacity() * overCommitRatio);
             podByCombinedCapacity.merge(podId, capacityMetric, Double::sum);
@@ -554,6 +587,12 @@ public class FirstFitPlanner extends AdapterBase implements DeploymentClusterPla
     }
 
 
+    // looks the overcommit ratio of each cluster up once, rather than once for each of its capacities
+    private float getOverCommitRatio(Map<Pair<Long, String>, Float> overCommitRatios, Long clusterId, String overCommitRatioParam) {
+        return overCommitRatios.computeIfAbsent(new Pair<>(clusterId, overCommitRatioParam),
+                key -> Float.parseFloat(clusterDetailsDao.findDetail(clusterId, overCommitRatioParam).getValue()));
+    }
+
     private Pair<List<Long>, Map<Long, Double>> getOrderedClustersByCapacity(long id, long vmId, boolean isZone) {
         double cpuToMemoryWeight = ConfigurationManager.HostCapacityTypeCpuMemoryWeight.value();
         short capacityType = getHostCapacityTypeToOrderCluster(
@@ -584,13 +623,13 @@ public class FirstFitPlanner extends AdapterBase implements DeploymentClusterPla
 
     public Map<Long, Double> getClusterByCombinedCapacities(List<CapacityVO> capacities, double cpuToMemoryWeight) {
         Map<Long, Double> clusterByCombinedCapacity = new HashMap<>();
+        Map<Pair<Long, String>, Float> overCommitRatios = new HashMap<>();
         for (CapacityVO capacityVO : capacities) {
             boolean isCPUCapacity = capacityVO.getCapacityType() == Capacity.CAPACITY_TYPE_CPU;
             long clusterId = capacityVO.getClusterId();
             double applicableWeight = isCPUCapacity ? cpuToMemoryWeight : 1 - cpuToMemoryWeight;
             String overCommitRatioParam = isCPUCapacity ? ApiConstants.CPU_OVERCOMMIT_RATIO : ApiConstants.MEMORY_OVERCOMMIT_RATIO;
-            ClusterDetailsVO overCommitRatioVO = clusterDetailsDao.findDetail(clusterId, overCommitRatioParam);
-            float overCommitRatio = Float.parseFloat(overCommitRatioVO.getValue());
+            float overCommitRatio = getOverCommitRatio(overCommitRatios, clusterId, overCommitRatioParam);
             double capacityMetric = applicableWeight *
                     (capacityVO.getUsedCapacity() + capacityVO.getReservedCapacity())/(capacityVO.getTotalCapacity() * overCommitRatio);
             clusterByCombinedCapacity.merge(clusterId, capacityMetric, Double::sum);
@@ -95,6 +95,10 @@ import com.cloud.configuration.ConfigurationManager;
 import com.cloud.dc.DataCenter;
 import com.cloud.dc.DataCenter.NetworkType;
 import com.cloud.dc.dao.DataCenterDao;
+import com.cloud.deploy.DataCenterDeployment;
+import com.cloud.deploy.DeployDestination;
+import com.cloud.deploy.DeploymentPlanner.ExcludeList;
+import com.cloud.deploy.DeploymentPlanningManager;
 import com.cloud.event.ActionEvent;
 import com.cloud.event.ActionEventUtils;
 import com.cloud.event.EventTypes;
@@ -186,6 +190,8 @@ import com.cloud.vm.UserVmVO;
 import com.cloud.vm.VMInstanceVO;
 import com.cloud.vm.VirtualMachine;
 import com.cloud.vm.VirtualMachineManager;
+import com.cloud.vm.VirtualMachineProfile;
+import com.cloud.vm.VirtualMachineProfileImpl;
 import com.cloud.vm.VmDetailConstants;
 import com.cloud.vm.VmStats;
 import com.cloud.vm.dao.DomainRouterDao;
@@ -283,6 +289,8 @@ public class AutoScaleManagerImpl extends ManagerBase implements AutoScaleManage
     @Inject
     private VirtualMachineManager virtualMachineManager;
     @Inject
+    private DeploymentPlanningManager planningMgr;
+    @Inject
     GuestOSDao guestOSDao;
 
     private static final String PARAM_ROOT_DISK_SIZE = "rootdisksize";
@@ -2013,6 +2021,23 @@ public class AutoScaleManagerImpl extends ManagerBase implements AutoScaleManage
         }
     }
 
+    /**
+     * Starts the VM on the host planned for it, or lets the planner choose one when there is none or it cannot be
+     * used anymore.
+     */
+    private UserVmVO startNewVM(long vmId, Long plannedHostId) {
+        if (plannedHostId != null) {
+            try {
+                CallContext.current().setEventDetails("Vm Id: " + vmId);
+                return userVmMgr.startVirtualMachine(vmId, null, null, plannedHostId, new HashMap<>(), null, false).first();
+            } catch (CloudRuntimeException | ResourceUnavailableException | ResourceAllocationException | InsufficientCapacityException ex) {
+                logger.info("Unable to start VM with id {} on its planned host with id {}, deploying it on another host: {}", vmId, plannedHostId,
+                        ex.getMessage());
+            }
+        }
+        return startNewVM(vmId);
+    }
+
     private UserVmVO startNewVM(long vmId) {
         try {
             CallContext.current().setEventDetails("Vm Id: " + vmId);
@@ -2098,6 +2123,7 @@ public class AutoScaleManagerImpl extends ManagerBase implements AutoScaleManage
             return;
         }
         try {
+            List<UserVm> vms = new ArrayList<>();
             for (int i = 0; i < numVm; i++) {
                 ActionEventUtils.onStartedActionEvent(User.UID_SYSTEM, asGroup.getAccountId(), EventTypes.EVENT_AUTOSCALEVMGROUP_SCALEUP,
                         "Scaling Up AutoScale VM group " + groupId, groupId, ApiCommandResourceType.AutoScaleVmGroup.toString(),
@@ -2113,36 +2139,14 @@ public class AutoScaleManagerImpl extends ManagerBase implements AutoScaleManage
 
                 // Add an Inactive-dummy record to statistics table
                 createInactiveDummyRecord(asGroup.getId());
+                vms.add(vm);
+            }
 
-                try {
-                    startNewVM(vm.getId());
-                    createInactiveDummyRecord(asGroup.getId());
-                    if (assignLBruleToNewVm(vm.getId(), asGroup)) {
-                        // update last_quietTime
-                        List<AutoScaleVmGroupPolicyMapVO> groupPolicyVOs = autoScaleVmGroupPolicyMapDao
-                                .listByVmGroupId(groupId);
-                        for (AutoScaleVmGroupPolicyMapVO groupPolicyVO : groupPolicyVOs) {
-                            AutoScalePolicyVO vo = autoScalePolicyDao
-                                    .findById(groupPolicyVO.getPolicyId());
-                            if (vo.getAction().equals(AutoScalePolicy.Action.SCALEUP)) {
-                                vo.setLastQuietTime(new Date());
-                                autoScalePolicyDao.persist(vo);
-                                break;
-                            }
-                        }
-                        ActionEventUtils.onCompletedActionEvent(User.UID_SYSTEM, asGroup.getAccountId(), EventVO.LEVEL_INFO, EventTypes.EVENT_AUTOSCALEVMGROUP_SCALEUP,
-                                String.format("Started and assigned LB rule for VM %s in AutoScale VM group %s", vm, asGroup), groupId, ApiCommandResourceType.AutoScaleVmGroup.toString(), 0);
-                    } else {
-                        logger.error("Can not assign LB rule for this new VM");
-                        ActionEventUtils.onCompletedActionEvent(User.UID_SYSTEM, asGroup.getAccountId(), EventVO.LEVEL_ERROR, EventTypes.EVENT_AUTOSCALEVMGROUP_SCALEUP,
-                                String.format("Failed to assign LB rule for VM %s in AutoScale VM group %s", vm, asGroup), groupId, ApiCommandResourceType.AutoScaleVmGroup.toString(), 0);
-                        break;
-                    }
-                } catch (ServerApiException e) {
-                    logger.error("Can not deploy new VM for scaling up in the group {}. Waiting for next round", asGroup);
-                    ActionEventUtils.onCompletedActionEvent(User.UID_SYSTEM, asGroup.getAccountId(), EventVO.LEVEL_ERROR, EventTypes.EVENT_AUTOSCALEVMGROUP_SCALEUP,
-                            String.format("Failed to start VM %s in AutoScale VM group %s", vm, asGroup), groupId, ApiCommandResourceType.AutoScaleVmGroup.toString(), 0);
-                    destroyVm(vm.getId());
+            Map<Long, Long> plannedHostIds = planHostsOfNewVms(vms);
+            for (int i = 0; i < vms.size(); i++) {
+                UserVm vm = vms.get(i);
+                if (!startNewVmOfGroup(asGroup, vm, plannedHostIds.get(vm.getId()))) {
+                    destroyVmsNotStarted(asGroup, vms.subList(i + 1, vms.size()));
                     break;
                 }
             }
@@ -2153,6 +2157,83 @@ public class AutoScaleManagerImpl extends ManagerBase implements AutoScaleManage
         }
     }
 
+    /**
+     * Starts a new VM of the group and assigns it to the load balancer of the group.
+     * @return false when the VM could not be started or assigned, and the group is not to be scaled up further
+     */
+    private boolean startNewVmOfGroup(AutoScaleVmGroupVO asGroup, UserVm vm, Long plannedHostId) {
+        try {
+            startNewVM(vm.getId(), plannedHostId);
+            createInactiveDummyRecord(asGroup.getId());
+            if (assignLBruleToNewVm(vm.getId(), asGroup)) {
+                // update last_quietTime
+                List<AutoScaleVmGroupPolicyMapVO> groupPolicyVOs = autoScaleVmGroupPolicyMapDao
+                        .listByVmGroupId(asGroup.getId());
+                for (AutoScaleVmGroupPolicyMapVO groupPolicyVO : groupPolicyVOs) {
+                    AutoScalePolicyVO vo = autoScalePolicyDao
+                            .findById(groupPolicyVO.getPolicyId());
+                    if (vo.getAction().equals(AutoScalePolicy.Action.SCALEUP)) {
+                        vo.setLastQuietTime(new Date());
+                        autoScalePolicyDao.persist(vo);
+                        break;
+                    }
+                }
+                ActionEventUtils.onCompletedActionEvent(User.UID_SYSTEM, asGroup.getAccountId(), EventVO.LEVEL_INFO, EventTypes.EVENT_AUTOSCALEVMGROUP_SCALEUP,
+                        String.format("Started and assigned LB rule for VM %s in AutoScale VM group %s", vm, asGroup), asGroup.getId(), ApiCommandResourceType.AutoScaleVmGroup.toString(), 0);
+            } else {
+                logger.error("Can not assign LB rule for this new VM");
+                ActionEventUtils.onCompletedActionEvent(User.UID_SYSTEM, asGroup.getAccountId(), EventVO.LEVEL_ERROR, EventTypes.EVENT_AUTOSCALEVMGROUP_SCALEUP,
+                        String.format("Failed to assign LB rule for VM %s in AutoScale VM group %s", vm, asGroup), asGroup.getId(), ApiCommandResourceType.AutoScaleVmGroup.toString(), 0);
+                return false;
+            }
+        } catch (ServerApiException e) {
+            logger.error("Can not deploy new VM for scaling up in the group {}. Waiting for next round", asGroup);
+            ActionEventUtils.onCompletedActionEvent(User.UID_SYSTEM, asGroup.getAccountId(), EventVO.LEVEL_ERROR, EventTypes.EVENT_AUTOSCALEVMGROUP_SCALEUP,
+                    String.format("Failed to start VM %s in AutoScale VM group %s", vm, asGroup), asGroup.getId(), ApiCommandResourceType.AutoScaleVmGroup.toString(), 0);
+            destroyVm(vm.getId());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Plans the hosts of the new VMs of the group in one pass, when there are several of them, so that the hosts
+     * found suitable for the first VM are reused for the others.
+     * @return the id of the host planned for each VM, missing for the VMs left to the planner when they are started
+     */
+    protected Map<Long, Long> planHostsOfNewVms(List<UserVm> vms) {
+        Map<Long, Long> plannedHostIds = new HashMap<>();
+        if (vms.size() < 2) {
+            return plannedHostIds;
+        }
+        List<VirtualMachineProfile> vmProfiles = new ArrayList<>();
+        for (UserVm vm : vms) {
+            vmProfiles.add(new VirtualMachineProfileImpl(vm, null, serviceOfferingDao.findById(vm.getId(), vm.getServiceOfferingId()),
+                    accountDao.findById(vm.getAccountId()), null));
+        }
+        try {
+            Map<VirtualMachineProfile, DeployDestination> destinations = planningMgr.planDeployments(vmProfiles,
+                    new DataCenterDeployment(vms.get(0).getDataCenterId()), new ExcludeList(), null);
+            for (Map.Entry<VirtualMachineProfile, DeployDestination> destination : destinations.entrySet()) {
+                if (destination.getValue() != null && destination.getValue().getHost() != null) {
+                    plannedHostIds.put(destination.getKey().getId(), destination.getValue().getHost().getId());
+                }
+            }
+        } catch (InsufficientServerCapacityException | CloudRuntimeException ex) {
+            logger.info("Unable to plan the deployment of {} new VMs, each of them is planned when it is started: {}", vms.size(), ex.getMessage());
+        }
+        return plannedHostIds;
+    }
+
+    private void destroyVmsNotStarted(AutoScaleVmGroupVO asGroup, List<UserVm> vms) {
+        for (UserVm vm : vms) {
+            ActionEventUtils.onCompletedActionEvent(User.UID_SYSTEM, asGroup.getAccountId(), EventVO.LEVEL_ERROR, EventTypes.EVENT_AUTOSCALEVMGROUP_SCALEUP,
+                    String.format("Scaling up AutoScale VM group %s stopped before starting VM %s", asGroup, vm), asGroup.getId(),
+                    ApiCommandResourceType.AutoScaleVmGroup.toString(), 0);
+            destroyVm(vm.getId());
+        }
+    }
+
     @Override
     public void doScaleDown(final long groupId) {
         AutoScaleVmGroupVO asGroup = autoScaleVmGroupDao.findById(groupId);
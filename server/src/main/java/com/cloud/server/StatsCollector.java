@@ -19,11 +19,20 @@ package com.cloud.server;
 import static com.cloud.configuration.ConfigurationManagerImpl.DELETE_QUERY_BATCH_SIZE;
 import static com.cloud.utils.NumbersUtil.toHumanReadableSize;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.RuntimeMXBean;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -32,16 +41,24 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -63,6 +80,7 @@ import org.apache.cloudstack.utils.bytescale.ByteScaleUtils;
 import org.apache.cloudstack.utils.graphite.GraphiteClient;
 import org.apache.cloudstack.utils.graphite.GraphiteException;
 import org.apache.cloudstack.utils.identity.ManagementServerNode;
+import org.apache.cloudstack.utils.stats.TimeSeriesStore;
 import org.apache.cloudstack.utils.usage.UsageUtils;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
@@ -162,6 +180,7 @@ import com.cloud.vm.dao.NicDao;
 import com.cloud.vm.dao.UserVmDao;
 import com.cloud.vm.dao.VMInstanceDao;
 import com.cloud.vm.dao.VmStatsDao;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.JvmAttributeGaugeSet;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
@@ -274,6 +293,11 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
     private static final ConfigKey<Integer> StatsTimeout = new ConfigKey<>("Advanced", Integer.class, "stats.timeout", "60000",
             "The timeout for stats call in milli seconds.", true,
             ConfigKey.Scope.Cluster);
+    private static final ConfigKey<Integer> StatsCollectorWorkers = new ConfigKey<>("Advanced", Integer.class, "stats.collector.workers", "16",
+            "The number of threads collecting the host and VM stats of different hosts in parallel.", false);
+    protected static final ConfigKey<Boolean> vmStatsCollectionSharded = new ConfigKey<>("Advanced", Boolean.class, "vm.stats.collection.sharded", "true",
+            "When set to 'true' each management server collects the VM stats of the hosts connected to it only, otherwise every management server collects them from all hosts.",
+            true);
     private static final ConfigKey<String> statsOutputUri = new ConfigKey<>("Advanced", String.class, "stats.output.uri", "",
             "URI to send StatsCollector statistics to. The collector is defined on the URI scheme. Example: graphite://graphite-hostaddress:port or influxdb://influxdb-hostaddress/dbname. Note that the port is optional, if not added the default port for the respective collector (graphite or influxdb) will be used. Additionally, the database name '/dbname' is  also optional; default db name is 'cloudstack'. You must create and configure the database if using influxdb.",
             true);
@@ -282,6 +306,11 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                     + "On the other hand, when set to 'false', the VM metrics API will just display the latest metrics collected.", true);
     protected static ConfigKey<Integer> vmStatsMaxRetentionTime = new ConfigKey<>("Advanced", Integer.class, "vm.stats.max.retention.time", "720",
             "The maximum time (in minutes) for keeping VM stats records in the database. The VM stats cleanup process will be disabled if this is set to 0 or less than 0.", true);
+    protected static final ConfigKey<Boolean> vmStatsHistoryInMemory = new ConfigKey<>("Advanced", Boolean.class, "vm.stats.history.in.memory", "false",
+            "When set to 'true' the VM stats history is kept in memory, with the raw samples of the last hour and 5 minute averages up to vm.stats.max.retention.time, instead of in the database. "
+                    + "Every management server then collects the VM stats from all hosts, so vm.stats.collection.sharded is ignored.", false);
+    protected static final ConfigKey<String> vmStatsHistorySnapshotFile = new ConfigKey<>("Advanced", String.class, "vm.stats.history.snapshot.file", "",
+            "The file where the in-memory VM stats history is saved every 5 minutes and on shutdown, and loaded from on startup. If empty, the history is lost on restart.", false);
 
     protected static ConfigKey<Boolean> vmStatsCollectUserVMOnly = new ConfigKey<>("Advanced", Boolean.class, "vm.stats.user.vm.only", "false",
             "When set to 'false' stats for system VMs will be collected otherwise stats collection will be done only for user VMs", true);
@@ -300,6 +329,7 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
             .create();
 
     private ScheduledExecutorService _executor = null;
+    private ThreadPoolExecutor hostStatsExecutor = null;
     @Inject
     private AgentManager _agentMgr;
     @Inject
@@ -366,6 +396,27 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
 
     private static final long DEFAULT_INITIAL_DELAY = 15000L;
 
+    private static final long VM_STATS_HISTORY_RAW_PERIOD = 60 * ONE_MINUTE_IN_MILLISCONDS;
+    private static final long VM_STATS_HISTORY_BUCKET = 5 * ONE_MINUTE_IN_MILLISCONDS;
+    private static final int VM_STATS_HISTORY_DEFAULT_RETENTION = 720;
+    private static final int VM_STATS_CPU_UTILIZATION = 0;
+    private static final int VM_STATS_NUM_CPUS = 1;
+    private static final int VM_STATS_MEMORY_KBS = 2;
+    private static final int VM_STATS_INT_FREE_MEMORY_KBS = 3;
+    private static final int VM_STATS_TARGET_MEMORY_KBS = 4;
+    private static final int VM_STATS_NETWORK_READ_KBS = 5;
+    private static final int VM_STATS_NETWORK_WRITE_KBS = 6;
+    private static final int VM_STATS_DISK_READ_KBS = 7;
+    private static final int VM_STATS_DISK_WRITE_KBS = 8;
+    private static final int VM_STATS_DISK_READ_IOS = 9;
+    private static final int VM_STATS_DISK_WRITE_IOS = 10;
+    private static final int VM_STATS_METRIC_COUNT = 11;
+
+    /**
+     * The VM stats history when {@code vm.stats.history.in.memory} is enabled, null otherwise.
+     */
+    protected TimeSeriesStore vmStatsHistory = null;
+
     private long hostStatsInterval = -1L;
     private long vmStatsInterval = -1L;
     private long storageStatsInterval = -1L;
@@ -415,9 +466,16 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
     @Override
     public boolean stop() {
         _executor.shutdown();
+        hostStatsExecutor.shutdownNow();
+        saveVmStatsHistory();
         return true;
     }
 
+    private void registerGauge(String name, Gauge<Long> gauge) {
+        METRIC_REGISTRY.remove(name);
+        METRIC_REGISTRY.register(name, gauge);
+    }
+
     private void registerAll(String prefix, MetricSet metricSet, MetricRegistry registry) {
         String registryTemplate = new String(prefix + "%s");
         for (Map.Entry<String, Metric> entry : metricSet.getMetrics().entrySet()) {
@@ -432,12 +490,20 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
 
     protected void init(Map<String, String> configs) {
         _executor = Executors.newScheduledThreadPool(6, new NamedThreadFactory("StatsCollector"));
+        int hostStatsWorkers = Math.max(1, StatsCollectorWorkers.value());
+        hostStatsExecutor = new ThreadPoolExecutor(hostStatsWorkers, hostStatsWorkers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new NamedThreadFactory("StatsCollector-Host"));
+        hostStatsExecutor.allowCoreThreadTimeOut(true);
 
         hostStatsInterval = NumbersUtil.parseLong(configs.get("host.stats.interval"), ONE_MINUTE_IN_MILLISCONDS);
         vmStatsInterval = NumbersUtil.parseLong(configs.get("vm.stats.interval"), ONE_MINUTE_IN_MILLISCONDS);
         storageStatsInterval = NumbersUtil.parseLong(configs.get("storage.stats.interval"), ONE_MINUTE_IN_MILLISCONDS);
         volumeStatsInterval = NumbersUtil.parseLong(configs.get("volume.stats.interval"), ONE_MINUTE_IN_MILLISCONDS);
         autoScaleStatsInterval = AutoScaleManager.AutoScaleStatsInterval.value();
+        if (vmStatsHistoryInMemory.value()) {
+            vmStatsHistory = createVmStatsHistory();
+            loadVmStatsHistory();
+        }
         ManagementServerStatusAdministrator managementServerStatusAdministrator = new ManagementServerStatusAdministrator();
         clusterManager.registerStatusAdministrator(managementServerStatusAdministrator);
         clusterManager.registerListener(managementServerStatusAdministrator);
@@ -492,6 +558,10 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
 
         _executor.scheduleWithFixedDelay(new VmStatsCleaner(), DEFAULT_INITIAL_DELAY, 60000L, TimeUnit.MILLISECONDS);
 
+        if (vmStatsHistory != null && StringUtils.isNotBlank(vmStatsHistorySnapshotFile.value())) {
+            _executor.scheduleWithFixedDelay(new VmStatsHistorySnapshotTask(), VM_STATS_HISTORY_BUCKET, VM_STATS_HISTORY_BUCKET, TimeUnit.MILLISECONDS);
+        }
+
         _executor.scheduleWithFixedDelay(new VolumeStatsCleaner(), DEFAULT_INITIAL_DELAY, 60000L, TimeUnit.MILLISECONDS);
 
         scheduleCollection(MANAGEMENT_SERVER_STATUS_COLLECTION_INTERVAL, new ManagementServerCollector(), 1L);
@@ -648,18 +718,30 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
         return new Pair<>(idInstanceMap, instanceNameIdMap);
     }
 
-    class HostCollector extends AbstractStatsCollector {
+    class HostCollector extends AbstractHostFanOutStatsCollector<HostStatsEntry> {
+        HostCollector() {
+            super("host", hostStatsInterval);
+        }
+
         @Override
-        protected void runInContext() {
+        protected HostStatsEntry collect(HostVO host) {
+            return (HostStatsEntry) _resourceMgr.getHostStatistics(host);
+        }
+
+        @Override
+        protected void runCycle() {
             try {
+                // host stats are only kept in memory and are served by every management server, so they are not sharded
                 SearchCriteria<HostVO> sc = createSearchCriteriaForHostTypeRoutingStateUpAndNotInMaintenance();
                 List<HostVO> hosts = _hostDao.search(sc, null);
 
                 logger.debug(String.format("HostStatsCollector is running to process %d UP hosts", hosts.size()));
 
                 Map<Object, Object> metrics = new HashMap<>();
-                for (HostVO host : hosts) {
-                    HostStatsEntry hostStatsEntry = (HostStatsEntry) _resourceMgr.getHostStatistics(host);
+                Map<HostVO, HostStatsEntry> hostStatsByHost = collectInParallel(hosts);
+                for (Map.Entry<HostVO, HostStatsEntry> hostStats : hostStatsByHost.entrySet()) {
+                    HostVO host = hostStats.getKey();
+                    HostStatsEntry hostStatsEntry = hostStats.getValue();
                     if (hostStatsEntry != null) {
                         hostStatsEntry.setHostVo(host);
                         metrics.put(hostStatsEntry.getHostId(), hostStatsEntry);
@@ -1218,58 +1300,74 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
         }
     }
 
-    class VmStatsCollector extends AbstractStatsCollector {
+    class VmStatsCollector extends AbstractHostFanOutStatsCollector<Boolean> {
+        VmStatsCollector() {
+            super("vm", vmStatsInterval);
+        }
+
         @Override
-        protected void runInContext() {
+        protected void runCycle() {
             try {
                 SearchCriteria<HostVO> sc = createSearchCriteriaForHostTypeRoutingStateUpAndNotInMaintenance();
+                if (vmStatsHistory == null && vmStatsCollectionSharded.value()) {
+                    // VM stats are persisted, so each management server only needs to collect them from the hosts connected to it
+                    sc.addAnd("managementServerId", SearchCriteria.Op.EQ, mgmtSrvrId);
+                }
                 List<HostVO> hosts = _hostDao.search(sc, null);
 
                 logger.debug(String.format("VmStatsCollector is running to process VMs across %d UP hosts", hosts.size()));
 
-                Map<Object, Object> metrics = new HashMap<>();
-                for (HostVO host : hosts) {
-                    Date timestamp = new Date();
-                    Pair<Map<Long, VMInstanceVO>, Map<String, Long>> vmsAndMap = getVmMapForStatsForHost(host);
-                    Map<Long, VMInstanceVO> vmMap = vmsAndMap.first();
-                    try {
-                        Map<Long, ? extends VmStats> vmStatsById = virtualMachineManager.getVirtualMachineStatistics(
-                                host, vmsAndMap.second());
-                        if (MapUtils.isEmpty(vmStatsById)) {
-                            continue;
-                        }
-                        Set<Long> vmIdSet = vmStatsById.keySet();
-                        for (Long vmId : vmIdSet) {
-                            VmStatsEntry statsForCurrentIteration = (VmStatsEntry)vmStatsById.get(vmId);
-                            statsForCurrentIteration.setVmId(vmId);
-                            VMInstanceVO vm = vmMap.get(vmId);
-                            statsForCurrentIteration.setVmUuid(vm.getUuid());
-
-                            persistVirtualMachineStats(statsForCurrentIteration, timestamp);
-
-                            if (externalStatsType == ExternalStatsProtocol.GRAPHITE) {
-                                prepareVmMetricsForGraphite(metrics, statsForCurrentIteration);
-                            } else {
-                                metrics.put(statsForCurrentIteration.getVmId(), statsForCurrentIteration);
-                            }
-                        }
+                collectInParallel(hosts);
+            } catch (Throwable t) {
+                logger.error("Error trying to retrieve VM stats", t);
+            }
+        }
 
-                        if (!metrics.isEmpty()) {
-                            if (externalStatsType == ExternalStatsProtocol.GRAPHITE) {
-                                sendVmMetricsToGraphiteHost(metrics, host);
-                            } else if (externalStatsType == ExternalStatsProtocol.INFLUXDB) {
-                                sendMetricsToInfluxdb(metrics);
-                            }
-                        }
+        @Override
+        protected Boolean collect(HostVO host) {
+            Date timestamp = new Date();
+            Pair<Map<Long, VMInstanceVO>, Map<String, Long>> vmsAndMap = getVmMapForStatsForHost(host);
+            Map<Long, VMInstanceVO> vmMap = vmsAndMap.first();
+            try {
+                Map<Long, ? extends VmStats> vmStatsById = virtualMachineManager.getVirtualMachineStatistics(
+                        host, vmsAndMap.second());
+                if (MapUtils.isEmpty(vmStatsById)) {
+                    return false;
+                }
+                Map<Object, Object> metrics = new HashMap<>();
+                Set<Long> vmIdSet = vmStatsById.keySet();
+                List<VmStatsVO> vmStatsToPersist = new ArrayList<>(vmIdSet.size());
+                for (Long vmId : vmIdSet) {
+                    VmStatsEntry statsForCurrentIteration = (VmStatsEntry)vmStatsById.get(vmId);
+                    statsForCurrentIteration.setVmId(vmId);
+                    VMInstanceVO vm = vmMap.get(vmId);
+                    statsForCurrentIteration.setVmUuid(vm.getUuid());
+
+                    if (vmStatsHistory != null) {
+                        recordVmStatsHistory(statsForCurrentIteration, timestamp);
+                    } else {
+                        vmStatsToPersist.add(createVirtualMachineStatsVO(statsForCurrentIteration, timestamp));
+                    }
 
-                        metrics.clear();
-                    } catch (Exception e) {
-                        logger.debug("Failed to get VM stats for : {}", host);
+                    if (externalStatsType == ExternalStatsProtocol.GRAPHITE) {
+                        prepareVmMetricsForGraphite(metrics, statsForCurrentIteration);
+                    } else {
+                        metrics.put(statsForCurrentIteration.getVmId(), statsForCurrentIteration);
                     }
                 }
+                vmStatsDao.persistBatch(vmStatsToPersist);
 
-            } catch (Throwable t) {
-                logger.error("Error trying to retrieve VM stats", t);
+                if (!metrics.isEmpty()) {
+                    if (externalStatsType == ExternalStatsProtocol.GRAPHITE) {
+                        sendVmMetricsToGraphiteHost(metrics, host);
+                    } else if (externalStatsType == ExternalStatsProtocol.INFLUXDB) {
+                        sendMetricsToInfluxdb(metrics);
+                    }
+                }
+                return true;
+            } catch (Exception e) {
+                logger.debug("Failed to get VM stats for : {}", host);
+                return false;
             }
         }
 
@@ -1299,6 +1397,145 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
         }
     }
 
+    class VmStatsHistorySnapshotTask extends ManagedContextRunnable {
+        @Override
+        protected void runInContext() {
+            saveVmStatsHistory();
+        }
+    }
+
+    /**
+     * Creates the in-memory VM stats history, keeping the raw samples of the last hour and
+     * 5 minute averages for the rest of {@code vm.stats.max.retention.time}.
+     */
+    protected TimeSeriesStore createVmStatsHistory() {
+        long interval = vmStatsInterval > 0 ? vmStatsInterval : ONE_MINUTE_IN_MILLISCONDS;
+        long retention = getVmStatsHistoryRetentionInMinutes() * ONE_MINUTE_IN_MILLISCONDS;
+        int rawSamples = (int)Math.max(1, Math.min(retention, VM_STATS_HISTORY_RAW_PERIOD) / interval);
+        int buckets = (int)Math.max(1, retention / VM_STATS_HISTORY_BUCKET);
+        logger.info("Keeping the VM stats history in memory, with {} raw samples and {} averages of {} ms per VM.", rawSamples, buckets, VM_STATS_HISTORY_BUCKET);
+        return new TimeSeriesStore(VM_STATS_METRIC_COUNT, new TimeSeriesStore.Tier(0, rawSamples), new TimeSeriesStore.Tier(VM_STATS_HISTORY_BUCKET, buckets));
+    }
+
+    private int getVmStatsHistoryRetentionInMinutes() {
+        Integer maxRetentionTime = vmStatsMaxRetentionTime.value();
+        return maxRetentionTime != null && maxRetentionTime > 0 ? maxRetentionTime : VM_STATS_HISTORY_DEFAULT_RETENTION;
+    }
+
+    protected void loadVmStatsHistory() {
+        String snapshotFile = vmStatsHistorySnapshotFile.value();
+        if (StringUtils.isBlank(snapshotFile) || !Files.exists(Paths.get(snapshotFile))) {
+            return;
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(snapshotFile)))) {
+            vmStatsHistory.readFrom(in);
+            logger.info("Loaded the stats history of {} VMs from [{}].", vmStatsHistory.size(), snapshotFile);
+        } catch (IOException e) {
+            logger.warn("Unable to load the VM stats history from [{}], starting with an empty history.", snapshotFile, e);
+        }
+    }
+
+    /**
+     * Saves the in-memory VM stats history to {@code vm.stats.history.snapshot.file}, replacing the previous snapshot only once the new one is complete.
+     */
+    protected void saveVmStatsHistory() {
+        String snapshotFile = vmStatsHistorySnapshotFile.value();
+        if (vmStatsHistory == null || StringUtils.isBlank(snapshotFile)) {
+            return;
+        }
+        Path snapshotPath = Paths.get(snapshotFile);
+        Path temporaryPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporaryPath))) {
+                vmStatsHistory.writeTo(out);
+            }
+            Files.move(temporaryPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Saved the stats history of {} VMs to [{}].", vmStatsHistory.size(), snapshotFile);
+        } catch (IOException e) {
+            logger.warn("Unable to save the VM stats history to [{}].", snapshotFile, e);
+        }
+    }
+
+    protected void recordVmStatsHistory(VmStatsEntry statsForCurrentIteration, Date timestamp) {
+        double[] values = new double[VM_STATS_METRIC_COUNT];
+        values[VM_STATS_CPU_UTILIZATION] = statsForCurrentIteration.getCPUUtilization();
+        values[VM_STATS_NUM_CPUS] = statsForCurrentIteration.getNumCPUs();
+        values[VM_STATS_MEMORY_KBS] = statsForCurrentIteration.getMemoryKBs();
+        values[VM_STATS_INT_FREE_MEMORY_KBS] = statsForCurrentIteration.getIntFreeMemoryKBs();
+        values[VM_STATS_TARGET_MEMORY_KBS] = statsForCurrentIteration.getTargetMemoryKBs();
+        values[VM_STATS_NETWORK_READ_KBS] = statsForCurrentIteration.getNetworkReadKBs();
+        values[VM_STATS_NETWORK_WRITE_KBS] = statsForCurrentIteration.getNetworkWriteKBs();
+        values[VM_STATS_DISK_READ_KBS] = statsForCurrentIteration.getDiskReadKBs();
+        values[VM_STATS_DISK_WRITE_KBS] = statsForCurrentIteration.getDiskWriteKBs();
+        values[VM_STATS_DISK_READ_IOS] = statsForCurrentIteration.getDiskReadIOs();
+        values[VM_STATS_DISK_WRITE_IOS] = statsForCurrentIteration.getDiskWriteIOs();
+        vmStatsHistory.record(statsForCurrentIteration.getVmId(), timestamp.getTime(), values);
+    }
+
+    protected VmStatsEntry createVmStatsEntry(long vmId, TimeSeriesStore.Sample sample) {
+        VmStatsEntry vmStatsEntry = new VmStatsEntry();
+        vmStatsEntry.setVmId(vmId);
+        vmStatsEntry.setCPUUtilization(sample.getValue(VM_STATS_CPU_UTILIZATION));
+        vmStatsEntry.setNumCPUs((int)sample.getValue(VM_STATS_NUM_CPUS));
+        vmStatsEntry.setMemoryKBs(sample.getValue(VM_STATS_MEMORY_KBS));
+        vmStatsEntry.setIntFreeMemoryKBs(sample.getValue(VM_STATS_INT_FREE_MEMORY_KBS));
+        vmStatsEntry.setTargetMemoryKBs(sample.getValue(VM_STATS_TARGET_MEMORY_KBS));
+        vmStatsEntry.setNetworkReadKBs(sample.getValue(VM_STATS_NETWORK_READ_KBS));
+        vmStatsEntry.setNetworkWriteKBs(sample.getValue(VM_STATS_NETWORK_WRITE_KBS));
+        vmStatsEntry.setDiskReadKBs(sample.getValue(VM_STATS_DISK_READ_KBS));
+        vmStatsEntry.setDiskWriteKBs(sample.getValue(VM_STATS_DISK_WRITE_KBS));
+        vmStatsEntry.setDiskReadIOs(sample.getValue(VM_STATS_DISK_READ_IOS));
+        vmStatsEntry.setDiskWriteIOs(sample.getValue(VM_STATS_DISK_WRITE_IOS));
+        return vmStatsEntry;
+    }
+
+    /**
+     * Gets the latest or the accumulation of the stats of a given VM from the in-memory history.
+     * The I/O stats of downsampled samples are averages, so they are weighted by the number of samples they stand for.
+     */
+    protected VmStatsEntry getVmStatsFromHistory(long vmId, boolean accumulate) {
+        if (!accumulate) {
+            TimeSeriesStore.Sample latest = vmStatsHistory.getLatest(vmId);
+            return latest == null ? null : createVmStatsEntry(vmId, latest);
+        }
+        List<TimeSeriesStore.Sample> samples = vmStatsHistory.getSamples(vmId, Long.MIN_VALUE, Long.MAX_VALUE);
+        if (samples.isEmpty()) {
+            return null;
+        }
+        VmStatsEntry vmStatsEntry = createVmStatsEntry(vmId, samples.remove(samples.size() - 1));
+        for (TimeSeriesStore.Sample sample : samples) {
+            vmStatsEntry.setNetworkReadKBs(vmStatsEntry.getNetworkReadKBs() + sample.getValue(VM_STATS_NETWORK_READ_KBS) * sample.getCount());
+            vmStatsEntry.setNetworkWriteKBs(vmStatsEntry.getNetworkWriteKBs() + sample.getValue(VM_STATS_NETWORK_WRITE_KBS) * sample.getCount());
+            vmStatsEntry.setDiskReadKBs(vmStatsEntry.getDiskReadKBs() + sample.getValue(VM_STATS_DISK_READ_KBS) * sample.getCount());
+            vmStatsEntry.setDiskWriteKBs(vmStatsEntry.getDiskWriteKBs() + sample.getValue(VM_STATS_DISK_WRITE_KBS) * sample.getCount());
+            vmStatsEntry.setDiskReadIOs(vmStatsEntry.getDiskReadIOs() + sample.getValue(VM_STATS_DISK_READ_IOS) * sample.getCount());
+            vmStatsEntry.setDiskWriteIOs(vmStatsEntry.getDiskWriteIOs() + sample.getValue(VM_STATS_DISK_WRITE_IOS) * sample.getCount());
+        }
+        return vmStatsEntry;
+    }
+
+    public boolean isVmStatsHistoryInMemory() {
+        return vmStatsHistory != null;
+    }
+
+    /**
+     * Gets the stats of a given VM from the in-memory history, oldest first, as the records that would have been persisted in the database.
+     *
+     * @param vmId the specific VM.
+     * @param startDate the start date to filtering, may be null.
+     * @param endDate the end date to filtering, may be null.
+     */
+    public List<VmStatsVO> getVmStatsHistory(long vmId, Date startDate, Date endDate) {
+        long from = startDate != null ? startDate.getTime() : Long.MIN_VALUE;
+        long to = endDate != null ? endDate.getTime() : Long.MAX_VALUE;
+        List<TimeSeriesStore.Sample> samples = vmStatsHistory.getSamples(vmId, from, to);
+        List<VmStatsVO> vmStatsVOList = new ArrayList<>(samples.size());
+        for (TimeSeriesStore.Sample sample : samples) {
+            vmStatsVOList.add(createVirtualMachineStatsVO(createVmStatsEntry(vmId, sample), new Date(sample.getTimestamp())));
+        }
+        return vmStatsVOList;
+    }
+
     /**
      * Gets the latest or the accumulation of the stats collected from a given VM.
      *
@@ -1307,6 +1544,9 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
      * @return the latest or the accumulation of the stats for the specified VM.
      */
     public VmStats getVmStats(long vmId, Boolean accumulate) {
+        if (vmStatsHistory != null) {
+            return getVmStatsFromHistory(vmId, accumulate != null ? accumulate : BooleanUtils.toBoolean(vmStatsIncrementMetrics.value()));
+        }
         List<VmStatsVO> vmStatsVOList = vmStatsDao.findByVmIdOrderByTimestampDesc(vmId);
 
         if (CollectionUtils.isEmpty(vmStatsVOList)) {
@@ -1457,6 +1697,8 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                                 return;
 
                             Set<Long> vmIdSet = vmDiskStatsById.keySet();
+                            List<VolumeStatsVO> volumeStatsToPersist = new ArrayList<>();
+                            List<VmDiskStatisticsVO> vmDiskStatsToUpdate = new ArrayList<>();
                             for (Long vmId : vmIdSet) {
                                 List<? extends VmDiskStats> vmDiskStats = vmDiskStatsById.get(vmId);
                                 if (vmDiskStats == null)
@@ -1476,7 +1718,7 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                                     VmDiskStatisticsVO vmDiskStat_lock = _vmDiskStatsDao.lock(vm.getAccountId(), vm.getDataCenterId(), vmId, volume.getId());
 
                                     if (persistVolumeStats) {
-                                        persistVolumeStats(volume.getId(), vmDiskStatEntry, vm.getHypervisorType(), timestamp);
+                                        volumeStatsToPersist.add(createVolumeStatsVO(volume.getId(), vmDiskStatEntry, vm.getHypervisorType(), timestamp));
                                     }
 
                                     if (areAllDiskStatsZero(vmDiskStatEntry)) {
@@ -1525,9 +1767,12 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                                         vmDiskStat_lock.setAggIORead(vmDiskStat_lock.getNetIORead() + vmDiskStat_lock.getCurrentIORead());
                                     }
 
-                                    _vmDiskStatsDao.update(vmDiskStat_lock.getId(), vmDiskStat_lock);
+                                    vmDiskStatsToUpdate.add(vmDiskStat_lock);
                                 }
                             }
+                            // the rows stay locked until the transaction ends, so the writes can be sent at once
+                            volumeStatsDao.persistBatch(volumeStatsToPersist);
+                            _vmDiskStatsDao.updateBatch(vmDiskStatsToUpdate);
                         }
                     });
                 } catch (Exception e) {
@@ -1566,6 +1811,7 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                                 return;
 
                             Set<Long> vmIdSet = vmNetworkStatsById.keySet();
+                            List<UserStatisticsVO> vmNetworkStatsToUpdate = new ArrayList<>();
                             for (Long vmId : vmIdSet) {
                                 List<? extends VmNetworkStats> vmNetworkStats = vmNetworkStatsById.get(vmId);
                                 if (CollectionUtils.isEmpty(vmNetworkStats))
@@ -1630,9 +1876,10 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                                         vmNetworkStat_lock.setAggBytesSent(vmNetworkStat_lock.getNetBytesSent() + vmNetworkStat_lock.getCurrentBytesSent());
                                     }
 
-                                    _userStatsDao.update(vmNetworkStat_lock.getId(), vmNetworkStat_lock);
+                                    vmNetworkStatsToUpdate.add(vmNetworkStat_lock);
                                 }
                             }
+                            _userStatsDao.updateBatch(vmNetworkStatsToUpdate);
                         }
                     });
                 } catch (Exception e) {
@@ -1837,6 +2084,108 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
 
     }
 
+    /**
+     * Collects the stats of a set of hosts in parallel on the bounded {@link #hostStatsExecutor}, waiting at most
+     * stats.timeout (of the cluster of the host) for each host. A host whose previous collection has not
+     * finished yet is skipped, so a slow host never has more than one stats request in flight. The duration
+     * of the cycles, how late they started and the number of hosts that timed out or were skipped are
+     * registered as metrics of the management server.
+     */
+    abstract class AbstractHostFanOutStatsCollector<T> extends AbstractStatsCollector {
+        private final long interval;
+        private final Set<Long> hostsInProgress = ConcurrentHashMap.newKeySet();
+        private final AtomicLong hostsTimedOut = new AtomicLong();
+        private final AtomicLong hostsSkipped = new AtomicLong();
+        private volatile long lastCycleStart;
+        private volatile long lastCycleDuration;
+        private volatile long lastCycleLag;
+
+        AbstractHostFanOutStatsCollector(String name, long interval) {
+            this.interval = interval;
+            String prefix = "statscollector." + name + ".";
+            registerGauge(prefix + "cycle.duration", () -> lastCycleDuration);
+            registerGauge(prefix + "cycle.lag", () -> lastCycleLag);
+            registerGauge(prefix + "hosts.timedout", hostsTimedOut::get);
+            registerGauge(prefix + "hosts.skipped", hostsSkipped::get);
+        }
+
+        /**
+         * Collects the stats of a single host, called from the worker threads.
+         */
+        protected abstract T collect(HostVO host);
+
+        protected abstract void runCycle();
+
+        @Override
+        protected void runInContext() {
+            long start = System.currentTimeMillis();
+            if (lastCycleStart > 0) {
+                lastCycleLag = Math.max(0, start - lastCycleStart - lastCycleDuration - interval);
+            }
+            lastCycleStart = start;
+            try {
+                runCycle();
+            } finally {
+                lastCycleDuration = System.currentTimeMillis() - start;
+                if (lastCycleDuration > interval) {
+                    logger.warn(String.format("%s took %d ms, more than its interval of %d ms", getClass().getSimpleName(), lastCycleDuration, interval));
+                }
+            }
+        }
+
+        /**
+         * @return the stats of the hosts that answered in time, in the order of the given hosts.
+         */
+        protected Map<HostVO, T> collectInParallel(List<HostVO> hosts) {
+            Map<HostVO, CompletableFuture<T>> futures = new LinkedHashMap<>();
+            for (HostVO host : hosts) {
+                if (!hostsInProgress.add(host.getId())) {
+                    hostsSkipped.incrementAndGet();
+                    logger.debug("Skipping stats collection of host {} as the previous one is still running", host);
+                    continue;
+                }
+                CompletableFuture<T> future = new CompletableFuture<>();
+                try {
+                    hostStatsExecutor.execute(new ManagedContextRunnable() {
+                        @Override
+                        protected void runInContext() {
+                            try {
+                                future.complete(collect(host));
+                            } catch (Throwable t) {
+                                future.completeExceptionally(t);
+                            } finally {
+                                hostsInProgress.remove(host.getId());
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    hostsInProgress.remove(host.getId());
+                    throw e;
+                }
+                futures.put(host, future);
+            }
+
+            long start = System.currentTimeMillis();
+            Map<HostVO, T> results = new LinkedHashMap<>();
+            for (Map.Entry<HostVO, CompletableFuture<T>> entry : futures.entrySet()) {
+                HostVO host = entry.getKey();
+                long timeout = StatsTimeout.valueIn(host.getClusterId());
+                try {
+                    results.put(host, entry.getValue().get(Math.max(0, start + timeout - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+                } catch (TimeoutException e) {
+                    hostsTimedOut.incrementAndGet();
+                    logger.warn("Timed out after {} ms collecting the stats of host {}", timeout, host);
+                } catch (ExecutionException e) {
+                    logger.warn("Failed to collect the stats of host {}", host, e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return results;
+        }
+    }
+
     /**
      * This class allows to writing metrics in InfluxDB for the table that matches the Collector extending it.
      * Thus, VmStatsCollector and HostCollector can use same method to write on different measures (host_stats or vm_stats table).
@@ -1958,11 +2307,11 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
     }
 
     /**
-     * Persists VM stats in the database.
+     * Creates the record of the VM stats to be persisted in the database.
      * @param statsForCurrentIteration the metrics stats data to persist.
      * @param timestamp the time that will be stamped.
      */
-    protected void persistVirtualMachineStats(VmStatsEntry statsForCurrentIteration, Date timestamp) {
+    protected VmStatsVO createVirtualMachineStatsVO(VmStatsEntry statsForCurrentIteration, Date timestamp) {
         VmStatsEntryBase vmStats = new VmStatsEntryBase(statsForCurrentIteration.getVmId(), statsForCurrentIteration.getMemoryKBs(), statsForCurrentIteration.getIntFreeMemoryKBs(),
                 statsForCurrentIteration.getTargetMemoryKBs(), statsForCurrentIteration.getCPUUtilization(), statsForCurrentIteration.getNetworkReadKBs(),
                 statsForCurrentIteration.getNetworkWriteKBs(), statsForCurrentIteration.getNumCPUs(), statsForCurrentIteration.getDiskReadKBs(),
@@ -1970,7 +2319,7 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                 statsForCurrentIteration.getEntityType());
         VmStatsVO vmStatsVO = new VmStatsVO(statsForCurrentIteration.getVmId(), msId, timestamp, gson.toJson(vmStats));
         logger.trace(String.format("Recording VM stats: [%s].", vmStatsVO.toString()));
-        vmStatsDao.persist(vmStatsVO);
+        return vmStatsVO;
     }
 
     private String getVmDiskStatsEntryAsString(VmDiskStatsEntry statsForCurrentIteration, Hypervisor.HypervisorType hypervisorType) {
@@ -1994,16 +2343,16 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
     }
 
     /**
-     * Persists VM disk stats in the database.
+     * Creates the record of the VM disk stats to be persisted in the database.
      * @param statsForCurrentIteration the metrics stats data to persist.
      * @param timestamp the time that will be stamped.
      */
-    protected void persistVolumeStats(long volumeId, VmDiskStatsEntry statsForCurrentIteration, Hypervisor.HypervisorType hypervisorType, Date timestamp) {
+    protected VolumeStatsVO createVolumeStatsVO(long volumeId, VmDiskStatsEntry statsForCurrentIteration, Hypervisor.HypervisorType hypervisorType, Date timestamp) {
         VolumeStatsVO volumeStatsVO = new VolumeStatsVO(volumeId, msId, timestamp, getVmDiskStatsEntryAsString(statsForCurrentIteration, hypervisorType));
         if (logger.isDebugEnabled()) {
             logger.debug(String.format("Recording volume stats: [%s].", volumeStatsVO));
         }
-        volumeStatsDao.persist(volumeStatsVO);
+        return volumeStatsVO;
     }
 
     /**
@@ -2011,6 +2360,13 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
      * parameter {@code vm.stats.max.retention.time}.
      */
     protected void cleanUpVirtualMachineStats() {
+        if (vmStatsHistory != null) {
+            // the history of each VM is bounded already, only the VMs that are not reported anymore need to be dropped
+            long limit = System.currentTimeMillis() - getVmStatsHistoryRetentionInMinutes() * ONE_MINUTE_IN_MILLISCONDS;
+            int removed = vmStatsHistory.removeIdle(limit);
+            logger.trace("Removed the stats history of {} VMs.", removed);
+            return;
+        }
         Integer maxRetentionTime = vmStatsMaxRetentionTime.value();
         if (maxRetentionTime <= 0) {
             logger.debug(String.format("Skipping VM stats cleanup. The [%s] parameter [%s] is set to 0 or less than 0.",
@@ -2195,7 +2551,8 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
     @Override
     public ConfigKey<?>[] getConfigKeys() {
         return new ConfigKey<?>[] {vmDiskStatsInterval, vmDiskStatsIntervalMin, vmNetworkStatsInterval, vmNetworkStatsIntervalMin, StatsTimeout, statsOutputUri,
-            vmStatsIncrementMetrics, vmStatsMaxRetentionTime, vmStatsCollectUserVMOnly, vmDiskStatsRetentionEnabled, vmDiskStatsMaxRetentionTime,
+            vmStatsIncrementMetrics, vmStatsMaxRetentionTime, vmStatsHistoryInMemory, vmStatsHistorySnapshotFile, vmStatsCollectUserVMOnly, vmDiskStatsRetentionEnabled, vmDiskStatsMaxRetentionTime,
+                StatsCollectorWorkers, vmStatsCollectionSharded,
                 MANAGEMENT_SERVER_STATUS_COLLECTION_INTERVAL,
                 DATABASE_SERVER_STATUS_COLLECTION_INTERVAL,
                 DATABASE_SERVER_LOAD_HISTORY_RETENTION_NUMBER};
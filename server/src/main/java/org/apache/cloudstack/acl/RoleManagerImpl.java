@@ -47,9 +47,12 @@ import org.apache.cloudstack.acl.RolePermissionEntity.Permission;
 import org.apache.cloudstack.context.CallContext;
 import org.apache.cloudstack.framework.config.ConfigKey;
 import org.apache.cloudstack.framework.config.Configurable;
+import org.apache.cloudstack.framework.messagebus.MessageBus;
+import org.apache.cloudstack.framework.messagebus.PublishScope;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import com.cloud.cluster.ClusterManager;
 import com.cloud.event.ActionEvent;
 import com.cloud.event.EventTypes;
 import com.cloud.exception.PermissionDeniedException;
@@ -75,6 +78,27 @@ public class RoleManagerImpl extends ManagerBase implements RoleService, Configu
     private RolePermissionsDao rolePermissionsDao;
     @Inject
     private AccountManager accountManager;
+    @Inject
+    private MessageBus messageBus;
+    @Inject
+    private ClusterManager clusterManager;
+
+    static final String ROLE_PERMISSIONS_NOTIFICATION_SUBJECT = "RolePermissions";
+
+    @Override
+    public boolean start() {
+        clusterManager.registerNotificationListener(ROLE_PERMISSIONS_NOTIFICATION_SUBJECT, (sourcePeer, payload) ->
+                messageBus.publish(null, MESSAGE_ROLE_PERMISSIONS_CHANGED_EVENT, PublishScope.LOCAL, Long.parseLong(payload)));
+        return super.start();
+    }
+
+    /**
+     * Lets the API access checkers of all the management servers know that the role, or its permissions, changed.
+     */
+    protected void notifyRolePermissionsChanged(final long roleId) {
+        messageBus.publish(null, MESSAGE_ROLE_PERMISSIONS_CHANGED_EVENT, PublishScope.LOCAL, roleId);
+        clusterManager.publishNotification(ROLE_PERMISSIONS_NOTIFICATION_SUBJECT, String.valueOf(roleId));
+    }
 
     public void checkCallerAccess() {
         if (!isEnabled()) {
@@ -227,7 +251,7 @@ public class RoleManagerImpl extends ManagerBase implements RoleService, Configu
             throw new CloudRuntimeException("Role already exists");
         }
 
-        return Transaction.execute(new TransactionCallback<RoleVO>() {
+        RoleVO importedRole = Transaction.execute(new TransactionCallback<RoleVO>() {
             @Override
             public RoleVO doInTransaction(TransactionStatus status) {
                 RoleVO newRole = null;
@@ -274,6 +298,8 @@ public class RoleManagerImpl extends ManagerBase implements RoleService, Configu
                 return newRole;
             }
         });
+        notifyRolePermissionsChanged(importedRole.getId());
+        return importedRole;
     }
 
     @Override
@@ -292,6 +318,7 @@ public class RoleManagerImpl extends ManagerBase implements RoleService, Configu
             }
             roleVO.setPublicRole(publicRole);
             roleDao.update(role.getId(), roleVO);
+            notifyRolePermissionsChanged(role.getId());
             return role;
         }
 
@@ -315,6 +342,7 @@ public class RoleManagerImpl extends ManagerBase implements RoleService, Configu
         }
         roleVO.setPublicRole(publicRole);
         roleDao.update(role.getId(), roleVO);
+        notifyRolePermissionsChanged(role.getId());
         return role;
     }
 
@@ -330,7 +358,7 @@ public class RoleManagerImpl extends ManagerBase implements RoleService, Configu
         }
         List<? extends Account> accounts = accountDao.findAccountsByRole(role.getId());
         if (accounts == null || accounts.size() == 0) {
-            return Transaction.execute(new TransactionCallback<Boolean>() {
+            boolean deleted = Transaction.execute(new TransactionCallback<Boolean>() {
                 @Override
                 public Boolean doInTransaction(TransactionStatus status) {
                     List<? extends RolePermission> rolePermissions = rolePermissionsDao.findAllByRoleIdSorted(role.getId());
@@ -347,6 +375,8 @@ public class RoleManagerImpl extends ManagerBase implements RoleService, Configu
                     return false;
                 }
             });
+            notifyRolePermissionsChanged(role.getId());
+            return deleted;
         }
         throw new PermissionDeniedException("Found accounts that have role in use, won't allow to delete role");
     }
@@ -359,7 +389,7 @@ public class RoleManagerImpl extends ManagerBase implements RoleService, Configu
         if (role.getState().equals(state)) {
             throw new PermissionDeniedException(String.format("Role is already %s", state));
         }
-        return Transaction.execute(new TransactionCallback<Boolean>() {
+        boolean updated = Transaction.execute(new TransactionCallback<Boolean>() {
             @Override
             public Boolean doInTransaction(TransactionStatus status) {
                 RoleVO roleVO = roleDao.findById(role.getId());
@@ -367,6 +397,8 @@ public class RoleManagerImpl extends ManagerBase implements RoleService, Configu
                 return roleDao.update(role.getId(), roleVO);
             }
         });
+        notifyRolePermissionsChanged(role.getId());
+        return updated;
     }
 
     @Override
@@ -393,12 +425,14 @@ public class RoleManagerImpl extends ManagerBase implements RoleService, Configu
             throw new PermissionDeniedException("Rule already exists for the role: " + role.getName());
         }
 
-        return Transaction.execute(new TransactionCallback<RolePermissionVO>() {
+        RolePermissionVO rolePermission = Transaction.execute(new TransactionCallback<RolePermissionVO>() {
             @Override
             public RolePermissionVO doInTransaction(TransactionStatus status) {
                 return rolePermissionsDao.persist(new RolePermissionVO(role.getId(), rule.toString(), permission, description));
             }
         });
+        notifyRolePermissionsChanged(role.getId());
+        return rolePermission;
     }
 
     @Override
@@ -408,7 +442,9 @@ public class RoleManagerImpl extends ManagerBase implements RoleService, Configu
         if (role.isDefault()) {
             throw new PermissionDeniedException("Role permission cannot be updated for Default roles");
         }
-        return role != null && newOrder != null && rolePermissionsDao.update(role, newOrder);
+        boolean updated = role != null && newOrder != null && rolePermissionsDao.update(role, newOrder);
+        notifyRolePermissionsChanged(role.getId());
+        return updated;
     }
 
     @Override
@@ -417,7 +453,9 @@ public class RoleManagerImpl extends ManagerBase implements RoleService, Configu
         if (role.isDefault()) {
             throw new PermissionDeniedException("Role permission cannot be updated for Default roles");
         }
-        return role != null && rolePermissionsDao.update(role, rolePermission, permission);
+        boolean updated = role != null && rolePermissionsDao.update(role, rolePermission, permission);
+        notifyRolePermissionsChanged(role.getId());
+        return updated;
     }
 
     @Override
@@ -428,7 +466,9 @@ public class RoleManagerImpl extends ManagerBase implements RoleService, Configu
         if (role.isDefault()) {
             throw new PermissionDeniedException("Role permission cannot be deleted for Default roles");
         }
-        return rolePermission != null && rolePermissionsDao.remove(rolePermission.getId());
+        boolean deleted = rolePermission != null && rolePermissionsDao.remove(rolePermission.getId());
+        notifyRolePermissionsChanged(role.getId());
+        return deleted;
     }
 
     @Override
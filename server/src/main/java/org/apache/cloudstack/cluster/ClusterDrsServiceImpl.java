@@ -91,20 +91,34 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.cloud.org.Grouping.AllocationState.Disabled;
 import static org.apache.cloudstack.cluster.ClusterDrsAlgorithm.getClusterImbalance;
 import static org.apache.cloudstack.cluster.ClusterDrsAlgorithm.getClusterDrsMetric;
+import static org.apache.cloudstack.cluster.ClusterDrsAlgorithm.getDrsMetricType;
+import static org.apache.cloudstack.cluster.ClusterDrsAlgorithm.getDrsMetricUseRatio;
 import static org.apache.cloudstack.cluster.ClusterDrsAlgorithm.getMetricValue;
 
 public class ClusterDrsServiceImpl extends ManagerBase implements ClusterDrsService, PluggableService {
 
     private static final String CLUSTER_LOCK_STR = "drs.plan.cluster.%s";
 
+    /**
+     * Minimum number of VM and host combinations of an iteration for which the candidates are evaluated in
+     * parallel, below it the overhead of splitting the work is larger than the evaluation itself.
+     */
+    static final int PARALLEL_EVALUATION_MIN_CANDIDATES = 1024;
+
     AsyncJobDispatcher asyncJobDispatcher;
 
     @Inject
@@ -144,6 +158,8 @@ public class ClusterDrsServiceImpl extends ManagerBase implements ClusterDrsServ
 
     Map<String, ClusterDrsAlgorithm> drsAlgorithmMap = new HashMap<>();
 
+    ForkJoinPool drsPlanPool;
+
     public AsyncJobDispatcher getAsyncJobDispatcher() {
         return asyncJobDispatcher;
     }
@@ -175,6 +191,27 @@ public class ClusterDrsServiceImpl extends ManagerBase implements ClusterDrsServ
         };
         Timer vmSchedulerTimer = new Timer("VMSchedulerPollTask");
         vmSchedulerTimer.schedule(schedulerPollTask, 5000L, 60 * 1000L);
+
+        int threads = ClusterDrsPlanGenerationThreads.value();
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        if (threads > 1) {
+            drsPlanPool = new ForkJoinPool(threads, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("DrsPlanWorker-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        if (drsPlanPool != null) {
+            drsPlanPool.shutdownNow();
+            drsPlanPool = null;
+        }
         return true;
     }
 
@@ -385,47 +422,52 @@ public class ClusterDrsServiceImpl extends ManagerBase implements ClusterDrsServ
             Map<Long, Ternary<Long, Long, Long>> hostCpuMap, Map<Long, Ternary<Long, Long, Long>> hostMemoryMap
     ) throws ConfigurationException {
         ClusterDrsAlgorithm algorithm = getDrsAlgorithm(ClusterDrsAlgorithm.valueIn(cluster.getId()));
-        int iteration = 0;
-        List<Ternary<VirtualMachine, Host, Host>> migrationPlan = new ArrayList<>();
-        while (iteration < maxIterations && algorithm.needsDrs(cluster, new ArrayList<>(hostCpuMap.values()),
-                new ArrayList<>(hostMemoryMap.values()))) {
-
-            logger.debug("Starting DRS iteration {} for cluster {}", iteration + 1, cluster);
-            // Re-evaluate affinity constraints with current (simulated) VM placements
-            Map<Long, ExcludeList> vmToExcludesMap = getVmToExcludesMap(vmList, hostMap, vmsWithAffinityGroups,
-                    vmToCompatibleHostsCache, vmIdServiceOfferingMap);
-
-            logger.debug("Completed affinity evaluation for DRS iteration {} for cluster {}", iteration + 1, cluster);
-
-            Pair<VirtualMachine, Host> bestMigration = getBestMigration(cluster, algorithm, vmList,
-                    vmIdServiceOfferingMap, hostCpuMap, hostMemoryMap,
-                    vmToCompatibleHostsCache, vmToStorageMotionCache, vmToExcludesMap);
-            VirtualMachine vm = bestMigration.first();
-            Host destHost = bestMigration.second();
-            if (destHost == null || vm == null || originalHostIdVmIdMap.get(destHost.getId()).contains(vm.getId())) {
-                logger.debug("VM migrating to it's original host or no host found for migration");
-                break;
-            }
-            logger.debug("Plan for VM {} to migrate from host {} to host {}", vm, hostMap.get(vm.getHostId()), destHost);
+        algorithm.preparePlan(cluster, hostVmMap);
+        try {
+            int iteration = 0;
+            List<Ternary<VirtualMachine, Host, Host>> migrationPlan = new ArrayList<>();
+            while (iteration < maxIterations && algorithm.needsDrs(cluster, new ArrayList<>(hostCpuMap.values()),
+                    new ArrayList<>(hostMemoryMap.values()))) {
+
+                logger.debug("Starting DRS iteration {} for cluster {}", iteration + 1, cluster);
+                // Re-evaluate affinity constraints with current (simulated) VM placements
+                Map<Long, ExcludeList> vmToExcludesMap = getVmToExcludesMap(vmList, hostMap, vmsWithAffinityGroups,
+                        vmToCompatibleHostsCache, vmIdServiceOfferingMap);
+
+                logger.debug("Completed affinity evaluation for DRS iteration {} for cluster {}", iteration + 1, cluster);
+
+                Pair<VirtualMachine, Host> bestMigration = getBestMigration(cluster, algorithm, vmList,
+                        vmIdServiceOfferingMap, hostCpuMap, hostMemoryMap,
+                        vmToCompatibleHostsCache, vmToStorageMotionCache, vmToExcludesMap);
+                VirtualMachine vm = bestMigration.first();
+                Host destHost = bestMigration.second();
+                if (destHost == null || vm == null || originalHostIdVmIdMap.get(destHost.getId()).contains(vm.getId())) {
+                    logger.debug("VM migrating to it's original host or no host found for migration");
+                    break;
+                }
+                logger.debug("Plan for VM {} to migrate from host {} to host {}", vm, hostMap.get(vm.getHostId()), destHost);
 
-            ServiceOffering serviceOffering = vmIdServiceOfferingMap.get(vm.getId());
-            migrationPlan.add(new Ternary<>(vm, hostMap.get(vm.getHostId()), hostMap.get(destHost.getId())));
+                ServiceOffering serviceOffering = vmIdServiceOfferingMap.get(vm.getId());
+                migrationPlan.add(new Ternary<>(vm, hostMap.get(vm.getHostId()), hostMap.get(destHost.getId())));
 
-            hostVmMap.get(vm.getHostId()).remove(vm);
-            hostVmMap.get(destHost.getId()).add(vm);
+                hostVmMap.get(vm.getHostId()).remove(vm);
+                hostVmMap.get(destHost.getId()).add(vm);
 
-            long vmCpu = (long) serviceOffering.getCpu() * serviceOffering.getSpeed();
-            long vmMemory = serviceOffering.getRamSize() * 1024L * 1024L;
+                long vmCpu = (long) serviceOffering.getCpu() * serviceOffering.getSpeed();
+                long vmMemory = serviceOffering.getRamSize() * 1024L * 1024L;
 
-            // Updating the map as per the migration
-            hostCpuMap.get(vm.getHostId()).first(hostCpuMap.get(vm.getHostId()).first() - vmCpu);
-            hostCpuMap.get(destHost.getId()).first(hostCpuMap.get(destHost.getId()).first() + vmCpu);
-            hostMemoryMap.get(vm.getHostId()).first(hostMemoryMap.get(vm.getHostId()).first() - vmMemory);
-            hostMemoryMap.get(destHost.getId()).first(hostMemoryMap.get(destHost.getId()).first() + vmMemory);
-            vm.setHostId(destHost.getId());
-            iteration++;
+                // Updating the map as per the migration
+                hostCpuMap.get(vm.getHostId()).first(hostCpuMap.get(vm.getHostId()).first() - vmCpu);
+                hostCpuMap.get(destHost.getId()).first(hostCpuMap.get(destHost.getId()).first() + vmCpu);
+                hostMemoryMap.get(vm.getHostId()).first(hostMemoryMap.get(vm.getHostId()).first() - vmMemory);
+                hostMemoryMap.get(destHost.getId()).first(hostMemoryMap.get(destHost.getId()).first() + vmMemory);
+                vm.setHostId(destHost.getId());
+                iteration++;
+            }
+            return migrationPlan;
+        } finally {
+            algorithm.finishPlan(cluster);
         }
-        return migrationPlan;
     }
 
     private Map<Long, ExcludeList> getVmToExcludesMap(List<VirtualMachine> vmList, Map<Long, Host> hostMap,
@@ -598,39 +640,128 @@ public class ClusterDrsServiceImpl extends ManagerBase implements ClusterDrsServ
         double[] baseMetricsArray = baseMetricsAndIndexMap.first();
         Map<Long, Integer> hostIdToIndexMap = baseMetricsAndIndexMap.second();
 
-        double improvement = 0;
-        Pair<VirtualMachine, Host> bestMigration = new Pair<>(null, null);
+        List<MigrationCandidate> candidates;
+        if (drsPlanPool != null && (long) vmList.size() * hostCpuCapacityMap.size() >= PARALLEL_EVALUATION_MIN_CANDIDATES) {
+            candidates = getBestMigrationsInParallel(cluster, algorithm, vmList, vmIdServiceOfferingMap, hostCpuCapacityMap,
+                    hostMemoryCapacityMap, vmToCompatibleHostsCache, vmToStorageMotionCache, vmToExcludesMap, preImbalance,
+                    baseMetricsArray, hostIdToIndexMap);
+        } else {
+            candidates = new ArrayList<>();
+            for (VirtualMachine vm : vmList) {
+                MigrationCandidate candidate = getBestMigrationForVm(cluster, algorithm, vm,
+                        vmIdServiceOfferingMap, hostCpuCapacityMap, hostMemoryCapacityMap, vmToCompatibleHostsCache,
+                        vmToStorageMotionCache, vmToExcludesMap, preImbalance, baseMetricsArray, hostIdToIndexMap);
+                if (candidate != null) {
+                    candidates.add(candidate);
+                }
+            }
+        }
 
-        for (VirtualMachine vm : vmList) {
-            List<? extends Host> compatibleHosts = vmToCompatibleHostsCache.get(vm.getId());
-            Map<Host, Boolean> requiresStorageMotion = vmToStorageMotionCache.get(vm.getId());
-            ExcludeList excludes = vmToExcludesMap.get(vm.getId());
+        // Candidates are in the order of vmList, keeping the first of equal improvements makes the plan
+        // independent of the number of threads
+        MigrationCandidate best = null;
+        for (MigrationCandidate candidate : candidates) {
+            if (best == null || candidate.improvement > best.improvement) {
+                best = candidate;
+            }
+        }
+        return best == null ? new Pair<>(null, null) : new Pair<>(best.vm, best.host);
+    }
 
-            ServiceOffering serviceOffering = vmIdServiceOfferingMap.get(vm.getId());
-            if (skipDrs(vm, compatibleHosts, serviceOffering)) {
-                continue;
+    /**
+     * Evaluates the VMs of the list on {@link #drsPlanPool}. Each task only reads the capacity maps and the
+     * pre-calculated metrics, which are not modified until the best migration of the iteration is chosen.
+     *
+     * @return the best migration of every VM that has one, in the order of vmList
+     */
+    private List<MigrationCandidate> getBestMigrationsInParallel(Cluster cluster, ClusterDrsAlgorithm algorithm,
+            List<VirtualMachine> vmList, Map<Long, ServiceOffering> vmIdServiceOfferingMap,
+            Map<Long, Ternary<Long, Long, Long>> hostCpuCapacityMap,
+            Map<Long, Ternary<Long, Long, Long>> hostMemoryCapacityMap,
+            Map<Long, List<? extends Host>> vmToCompatibleHostsCache,
+            Map<Long, Map<Host, Boolean>> vmToStorageMotionCache, Map<Long, ExcludeList> vmToExcludesMap,
+            Double preImbalance, double[] baseMetricsArray, Map<Long, Integer> hostIdToIndexMap)
+            throws ConfigurationException {
+        try {
+            return drsPlanPool.submit(() -> IntStream.range(0, vmList.size()).parallel()
+                    .mapToObj(index -> {
+                        try {
+                            return getBestMigrationForVm(cluster, algorithm, vmList.get(index),
+                                    vmIdServiceOfferingMap, hostCpuCapacityMap, hostMemoryCapacityMap,
+                                    vmToCompatibleHostsCache, vmToStorageMotionCache, vmToExcludesMap, preImbalance,
+                                    baseMetricsArray, hostIdToIndexMap);
+                        } catch (ConfigurationException e) {
+                            throw new CompletionException(e);
+                        }
+                    })
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CloudRuntimeException(String.format("Interrupted while generating DRS plan for cluster %s", cluster), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ?
+                    e.getCause().getCause() : e.getCause();
+            if (cause instanceof ConfigurationException) {
+                throw (ConfigurationException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw new CloudRuntimeException(String.format("Failed to generate DRS plan for cluster %s", cluster), cause);
+        }
+    }
 
-            long vmCpu = (long) serviceOffering.getCpu() * serviceOffering.getSpeed();
-            long vmMemory = serviceOffering.getRamSize() * 1024L * 1024L;
+    private MigrationCandidate getBestMigrationForVm(Cluster cluster, ClusterDrsAlgorithm algorithm,
+            VirtualMachine vm, Map<Long, ServiceOffering> vmIdServiceOfferingMap,
+            Map<Long, Ternary<Long, Long, Long>> hostCpuCapacityMap,
+            Map<Long, Ternary<Long, Long, Long>> hostMemoryCapacityMap,
+            Map<Long, List<? extends Host>> vmToCompatibleHostsCache,
+            Map<Long, Map<Host, Boolean>> vmToStorageMotionCache, Map<Long, ExcludeList> vmToExcludesMap,
+            Double preImbalance, double[] baseMetricsArray, Map<Long, Integer> hostIdToIndexMap)
+            throws ConfigurationException {
+        List<? extends Host> compatibleHosts = vmToCompatibleHostsCache.get(vm.getId());
+        Map<Host, Boolean> requiresStorageMotion = vmToStorageMotionCache.get(vm.getId());
+        ExcludeList excludes = vmToExcludesMap.get(vm.getId());
+
+        ServiceOffering serviceOffering = vmIdServiceOfferingMap.get(vm.getId());
+        if (skipDrs(vm, compatibleHosts, serviceOffering)) {
+            return null;
+        }
 
-            for (Host destHost : compatibleHosts) {
-                Ternary<Double, Double, Double> metrics = getMetricsForMigration(cluster, algorithm, vm, vmCpu,
-                        vmMemory, serviceOffering, destHost, hostCpuCapacityMap, hostMemoryCapacityMap,
-                        requiresStorageMotion, preImbalance, baseMetricsArray, hostIdToIndexMap, excludes);
-                if (metrics == null) {
-                    continue;
-                }
-                Double currentImprovement = metrics.first();
-                Double cost = metrics.second();
-                Double benefit = metrics.third();
-                if (benefit > cost && (currentImprovement > improvement)) {
-                    bestMigration = new Pair<>(vm, destHost);
-                    improvement = currentImprovement;
-                }
+        long vmCpu = (long) serviceOffering.getCpu() * serviceOffering.getSpeed();
+        long vmMemory = serviceOffering.getRamSize() * 1024L * 1024L;
+
+        double improvement = 0;
+        Host bestHost = null;
+        for (Host destHost : compatibleHosts) {
+            Ternary<Double, Double, Double> metrics = getMetricsForMigration(cluster, algorithm, vm, vmCpu,
+                    vmMemory, serviceOffering, destHost, hostCpuCapacityMap, hostMemoryCapacityMap,
+                    requiresStorageMotion, preImbalance, baseMetricsArray, hostIdToIndexMap, excludes);
+            if (metrics == null) {
+                continue;
+            }
+            Double currentImprovement = metrics.first();
+            Double cost = metrics.second();
+            Double benefit = metrics.third();
+            if (benefit > cost && (currentImprovement > improvement)) {
+                bestHost = destHost;
+                improvement = currentImprovement;
             }
         }
-        return bestMigration;
+        return bestHost == null ? null : new MigrationCandidate(vm, bestHost, improvement);
+    }
+
+    private static final class MigrationCandidate {
+        private final VirtualMachine vm;
+        private final Host host;
+        private final double improvement;
+
+        private MigrationCandidate(VirtualMachine vm, Host host, double improvement) {
+            this.vm = vm;
+            this.host = host;
+            this.improvement = improvement;
+        }
     }
 
     private boolean skipDrs(VirtualMachine vm, List<? extends Host> compatibleHosts, ServiceOffering serviceOffering) {
@@ -655,6 +786,8 @@ public class ClusterDrsServiceImpl extends ManagerBase implements ClusterDrsServ
     ) {
         double[] baseMetricsArray = new double[baseMetricsMap.size()];
         Map<Long, Integer> hostIdToIndexMap = new HashMap<>();
+        String metricType = getDrsMetricType(cluster.getId());
+        boolean useRatio = getDrsMetricUseRatio(cluster.getId());
 
         int index = 0;
         for (Map.Entry<Long, Ternary<Long, Long, Long>> entry : baseMetricsMap.entrySet()) {
@@ -663,7 +796,7 @@ public class ClusterDrsServiceImpl extends ManagerBase implements ClusterDrsServ
             long used = metrics.first();
             long actualTotal = metrics.third() - metrics.second();
             long free = actualTotal - metrics.first();
-            Double metricValue = getMetricValue(cluster.getId(), used, free, actualTotal, null);
+            Double metricValue = getMetricValue(metricType, useRatio, used, free, actualTotal, null);
             if (metricValue != null) {
                 baseMetricsArray[index] = metricValue;
                 hostIdToIndexMap.put(hostId, index);
@@ -857,7 +990,7 @@ public class ClusterDrsServiceImpl extends ManagerBase implements ClusterDrsServ
     public ConfigKey<?>[] getConfigKeys() {
         return new ConfigKey<?>[]{ClusterDrsPlanExpireInterval, ClusterDrsEnabled, ClusterDrsInterval, ClusterDrsMaxMigrations,
                 ClusterDrsAlgorithm, ClusterDrsImbalanceThreshold, ClusterDrsMetric, ClusterDrsMetricType, ClusterDrsMetricUseRatio,
-                ClusterDrsImbalanceSkipThreshold};
+                ClusterDrsImbalanceSkipThreshold, ClusterDrsPlanGenerationThreads};
     }
 
     @Override
@@ -900,7 +1033,7 @@ public class ClusterDrsServiceImpl extends ManagerBase implements ClusterDrsServ
         }
 
         try {
-            List<Ternary<VirtualMachine, Host, Host>> plan = getDrsPlan(cluster, cmd.getMaxMigrations());
+            List<Ternary<VirtualMachine, Host, Host>> plan = getDrsPlanHoldingClusterLock(cluster, cmd.getMaxMigrations());
             long eventId = ActionEventUtils.onActionEvent(User.UID_SYSTEM, Account.ACCOUNT_ID_SYSTEM,
                     Domain.ROOT_DOMAIN,
                     EventTypes.EVENT_CLUSTER_DRS_GENERATE,
@@ -933,6 +1066,30 @@ public class ClusterDrsServiceImpl extends ManagerBase implements ClusterDrsServ
         }
     }
 
+    /**
+     * Generates the DRS plan of the cluster holding the lock of the cluster, as the scheduled plans are, so that the
+     * algorithm never generates two plans of the same cluster at once.
+     *
+     * @throws CloudRuntimeException
+     *         if another plan of the cluster is being generated or executed
+     */
+    List<Ternary<VirtualMachine, Host, Host>> getDrsPlanHoldingClusterLock(Cluster cluster, int maxIterations) throws ConfigurationException {
+        GlobalLock clusterLock = GlobalLock.getInternLock(String.format(CLUSTER_LOCK_STR, cluster.getId()));
+        try {
+            if (!clusterLock.lock(30)) {
+                throw new CloudRuntimeException(String.format(
+                        "Unable to generate a DRS plan for the cluster %s as another plan is being generated or executed for it", cluster.getName()));
+            }
+            try {
+                return getDrsPlan(cluster, maxIterations);
+            } finally {
+                clusterLock.unlock();
+            }
+        } finally {
+            clusterLock.releaseRef();
+        }
+    }
+
     /**
      * Returns a list of ClusterDrsPlanMigrationResponse objects for the given list of ClusterDrsPlanMigrationVO
      * objects.
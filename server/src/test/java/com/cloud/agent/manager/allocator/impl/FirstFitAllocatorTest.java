@@ -18,14 +18,20 @@
 
 package com.cloud.agent.manager.allocator.impl;
 
+import com.cloud.capacity.Capacity;
 import com.cloud.capacity.CapacityManager;
 import com.cloud.capacity.CapacityVO;
+import com.cloud.capacity.HostCapacityIndex;
 import com.cloud.deploy.DeploymentPlan;
 import com.cloud.deploy.DeploymentPlanner;
+import com.cloud.host.DetailVO;
 import com.cloud.host.Host;
+import com.cloud.host.dao.HostDetailsDao;
 import com.cloud.offering.ServiceOffering;
 import com.cloud.resource.ResourceManager;
 import com.cloud.service.dao.ServiceOfferingDetailsDao;
+import com.cloud.storage.GuestOSCategoryVO;
+import com.cloud.storage.dao.GuestOSCategoryDao;
 import com.cloud.user.Account;
 import com.cloud.utils.Pair;
 import com.cloud.vm.VirtualMachineProfile;
@@ -34,6 +40,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -43,10 +50,16 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -171,6 +184,98 @@ public class FirstFitAllocatorTest {
         assertTrue(result.isEmpty());
     }
 
+    @Test
+    public void testAllocateTo_GPUNotRequired() {
+        List<Host> inputHosts = Arrays.asList(host1);
+        when(avoid.shouldAvoid(host1)).thenReturn(false);
+        when(offeringDetailsDao.findDetail(eq(123L), anyString())).thenReturn(null);
+        when(capacityMgr.checkIfHostHasCpuCapabilityAndCapacity(eq(host1), eq(offering), eq(true))).thenReturn(new Pair<>(true, true));
+
+        List<Host> result = allocator.allocateTo(vmProfile, plan, offering, null, avoid, inputHosts, 1, true, account);
+
+        assertEquals(List.of(host1), result);
+        verify(resourceMgr, never()).isGPUDeviceAvailable(any(ServiceOffering.class), any(Host.class), any());
+    }
+
+    private HostCapacityIndex createIndexWithReservedMemory() {
+        // 2 GB of memory are free on host 1, 1 GB of which is reserved for stopped VMs
+        CapacityVO cpu = new CapacityVO(1L, 1L, 1L, 1L, 0L, 4000L, Capacity.CAPACITY_TYPE_CPU);
+        CapacityVO memory = new CapacityVO(1L, 1L, 1L, 1L, 2048L * 1024 * 1024, 4096L * 1024 * 1024, Capacity.CAPACITY_TYPE_MEMORY);
+        memory.setReservedCapacity(1024L * 1024 * 1024);
+        HostCapacityIndex index = new HostCapacityIndex();
+        index.reload(List.of(cpu, memory), Map.of(1L, new Pair<>(1f, 1f)));
+        return index;
+    }
+
+    @Test
+    public void testAllocateTo_IndexCountsReservedCapacityAsUsedWhenConsidered() {
+        FirstFitAllocator spyAllocator = spy(allocator);
+        doReturn(createIndexWithReservedMemory()).when(spyAllocator).getLoadedHostCapacityIndex();
+        when(host1.getId()).thenReturn(1L);
+        when(host2.getId()).thenReturn(2L);
+        when(avoid.shouldAvoid(host2)).thenReturn(false);
+        when(offeringDetailsDao.findDetail(eq(123L), anyString())).thenReturn(null);
+        when(capacityMgr.checkIfHostHasCpuCapabilityAndCapacity(eq(host2), eq(offering), eq(true))).thenReturn(new Pair<>(true, true));
+
+        List<Host> result = spyAllocator.allocateTo(vmProfile, plan, offering, null, avoid, new ArrayList<>(List.of(host1, host2)), 1, true, account);
+
+        // host 1 is full according to the index, host 2 not being in it is checked first
+        assertEquals(List.of(host2), result);
+        verify(capacityMgr, never()).checkIfHostHasCpuCapabilityAndCapacity(eq(host1), any(), anyBoolean());
+    }
+
+    @Test
+    public void testAllocateTo_HostWithoutIndexedCapacityIsStillCheckedAgainstTheDatabase() {
+        FirstFitAllocator spyAllocator = spy(allocator);
+        doReturn(createIndexWithReservedMemory()).when(spyAllocator).getLoadedHostCapacityIndex();
+        when(host1.getId()).thenReturn(1L);
+        when(avoid.shouldAvoid(host1)).thenReturn(false);
+        when(offeringDetailsDao.findDetail(eq(123L), anyString())).thenReturn(null);
+        // the capacity was released on another management server since the index was loaded
+        when(capacityMgr.checkIfHostHasCpuCapabilityAndCapacity(eq(host1), eq(offering), eq(true))).thenReturn(new Pair<>(true, true));
+
+        List<Host> result = spyAllocator.allocateTo(vmProfile, plan, offering, null, avoid, List.of(host1), 1, true, account);
+
+        assertEquals(List.of(host1), result);
+        verify(avoid, never()).addHost(1L);
+    }
+
+    @Test
+    public void testAllocateTo_IndexIgnoresReservedCapacityWhenNotConsidered() {
+        FirstFitAllocator spyAllocator = spy(allocator);
+        doReturn(createIndexWithReservedMemory()).when(spyAllocator).getLoadedHostCapacityIndex();
+        when(host1.getId()).thenReturn(1L);
+        when(avoid.shouldAvoid(host1)).thenReturn(false);
+        when(offeringDetailsDao.findDetail(eq(123L), anyString())).thenReturn(null);
+        when(capacityMgr.checkIfHostHasCpuCapabilityAndCapacity(eq(host1), eq(offering), eq(false))).thenReturn(new Pair<>(true, true));
+
+        List<Host> result = spyAllocator.allocateTo(vmProfile, plan, offering, null, avoid, List.of(host1), 1, false, account);
+
+        assertEquals(List.of(host1), result);
+        verify(avoid, never()).addHost(1L);
+    }
+
+    @Test
+    public void testGetHostGuestOSCategories() {
+        HostDetailsDao hostDetailsDao = mock(HostDetailsDao.class);
+        GuestOSCategoryDao guestOSCategoryDao = mock(GuestOSCategoryDao.class);
+        allocator._hostDetailsDao = hostDetailsDao;
+        allocator._guestOSCategoryDao = guestOSCategoryDao;
+        when(host1.getId()).thenReturn(1L);
+        when(host2.getId()).thenReturn(2L);
+        when(hostDetailsDao.findByName("guest.os.category.id")).thenReturn(List.of(new DetailVO(1L, "guest.os.category.id", "7"),
+                new DetailVO(2L, "guest.os.category.id", "7"), new DetailVO(3L, "guest.os.category.id", "8")));
+        GuestOSCategoryVO category = mock(GuestOSCategoryVO.class);
+        when(category.getName()).thenReturn("Ubuntu");
+        when(guestOSCategoryDao.findById(7L)).thenReturn(category);
+
+        Map<Long, String> hostGuestOSCategories = allocator.getHostGuestOSCategories(Arrays.asList(host1, host2));
+
+        assertEquals(Map.of(1L, "Ubuntu", 2L, "Ubuntu"), hostGuestOSCategories);
+        verify(guestOSCategoryDao, times(1)).findById(7L);
+        verify(guestOSCategoryDao, never()).findById(8L);
+    }
+
     @Test
     public void testHostByCombinedCapacityOrder() {
         // Test scenario 1: Default capacity usage (0.5 weight)
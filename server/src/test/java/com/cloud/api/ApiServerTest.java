@@ -18,11 +18,19 @@ package com.cloud.api;
 
 import com.cloud.domain.Domain;
 import com.cloud.user.Account;
+import com.cloud.user.AccountManager;
 import com.cloud.user.User;
 import com.cloud.user.UserAccount;
 import com.cloud.utils.exception.CloudRuntimeException;
 import org.apache.cloudstack.framework.config.ConfigKey;
 import org.apache.cloudstack.user.UserPasswordResetManager;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -34,9 +42,11 @@ import org.mockito.MockedConstruction;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.apache.cloudstack.user.UserPasswordResetManager.UserPasswordResetEnabled;
 
@@ -49,6 +59,9 @@ public class ApiServerTest {
     @Mock
     UserPasswordResetManager userPasswordResetManager;
 
+    @Mock
+    AccountManager accountMgr;
+
     @BeforeClass
     public static void beforeClass() throws Exception {
         overrideDefaultConfigValue(UserPasswordResetEnabled, "_value", true);
@@ -66,8 +79,8 @@ public class ApiServerTest {
     }
 
     private void runTestSetupIntegrationPortListenerInvalidPorts(Integer port) {
-        try (MockedConstruction<ApiServer.ListenerThread> mocked =
-                     Mockito.mockConstruction(ApiServer.ListenerThread.class)) {
+        try (MockedConstruction<IntegrationApiServer> mocked =
+                     Mockito.mockConstruction(IntegrationApiServer.class)) {
             apiServer.setupIntegrationPortListener(port);
             Assert.assertTrue(mocked.constructed().isEmpty());
         }
@@ -83,17 +96,31 @@ public class ApiServerTest {
     }
 
     @Test
-    public void testSetupIntegrationPortListenerValidPort() {
+    public void testSetupIntegrationPortListenerValidPort() throws IOException {
         Integer validPort = 8080;
-        try (MockedConstruction<ApiServer.ListenerThread> mocked =
-                     Mockito.mockConstruction(ApiServer.ListenerThread.class)) {
+        try (MockedConstruction<IntegrationApiServer> mocked =
+                     Mockito.mockConstruction(IntegrationApiServer.class)) {
             apiServer.setupIntegrationPortListener(validPort);
             Assert.assertFalse(mocked.constructed().isEmpty());
-            ApiServer.ListenerThread listenerThread = mocked.constructed().get(0);
-            Mockito.verify(listenerThread).start();
+            IntegrationApiServer integrationApiServer = mocked.constructed().get(0);
+            Mockito.verify(integrationApiServer).start();
         }
     }
 
+    @Test
+    public void handleTestDoesNotRecordTheNameOfAnUnknownCommand() throws Exception {
+        ApiServer apiServerSpy = Mockito.spy(apiServer);
+        Mockito.when(accountMgr.getSystemUser()).thenReturn(Mockito.mock(User.class));
+        Mockito.when(accountMgr.getSystemAccount()).thenReturn(Mockito.mock(Account.class));
+        Mockito.doReturn("{}").when(apiServerSpy).handleRequest(Mockito.any(Map.class), Mockito.anyString(), Mockito.any(StringBuilder.class));
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, null);
+        HttpContext context = new BasicHttpContext();
+
+        apiServerSpy.handle(new BasicHttpRequest("GET", "/client/api?command=notAnApiCommand&response=json"), response, context);
+
+        Assert.assertNull(context.getAttribute(IntegrationApiServer.COMMAND_ATTRIBUTE));
+    }
+
     @Test
     public void testForgotPasswordSuccess() {
         UserAccount userAccount = Mockito.mock(UserAccount.class);
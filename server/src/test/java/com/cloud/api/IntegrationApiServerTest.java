@@ -0,0 +1,151 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.api;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IntegrationApiServerTest {
+
+    private IntegrationApiServer server;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private static void send(Socket socket, String... uris) throws IOException {
+        StringBuilder requests = new StringBuilder();
+        for (String uri : uris) {
+            requests.append("GET ").append(uri).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        }
+        OutputStream out = socket.getOutputStream();
+        out.write(requests.toString().getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * Reads the status line and the body of a response of known length.
+     */
+    private static List<String> readResponse(BufferedReader in) throws IOException {
+        List<String> response = new ArrayList<>();
+        response.add(in.readLine());
+        int length = 0;
+        for (String header = in.readLine(); !header.isEmpty(); header = in.readLine()) {
+            if (header.toLowerCase().startsWith("content-length:")) {
+                length = Integer.parseInt(header.substring("content-length:".length()).trim());
+            }
+        }
+        char[] body = new char[length];
+        for (int read = 0; read < length; ) {
+            read += in.read(body, read, length - read);
+        }
+        response.add(new String(body));
+        return response;
+    }
+
+    @Test
+    public void handleTestAnswersPipelinedRequestsInOrderOnOneConnection() throws IOException {
+        server = new IntegrationApiServer((request, response, context) -> {
+            String uri = request.getRequestLine().getUri();
+            String command = uri.substring(uri.indexOf('=') + 1);
+            if (command.equals("slow")) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            context.setAttribute(IntegrationApiServer.COMMAND_ATTRIBUTE, command);
+            response.setEntity(new StringEntity(command));
+        }, 0, 4, 10);
+        server.start();
+
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            send(socket, "/client/api?command=slow", "/client/api?command=fast");
+
+            Assert.assertEquals(List.of("HTTP/1.1 200 OK", "slow"), readResponse(in));
+            Assert.assertEquals(List.of("HTTP/1.1 200 OK", "fast"), readResponse(in));
+
+            // the connection is kept alive for the next request
+            send(socket, "/client/api?command=fast");
+            Assert.assertEquals(List.of("HTTP/1.1 200 OK", "fast"), readResponse(in));
+        }
+
+        Assert.assertEquals(2L, server.getCommandLatencies().get("fast").values().stream().mapToLong(Long::longValue).sum());
+        Assert.assertEquals(1L, server.getCommandLatencies().get("slow").values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    public void handleTestRejectsRequestsWhenTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        server = new IntegrationApiServer((request, response, context) -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            response.setEntity(new StringEntity("done"));
+        }, 0, 1, 1);
+        server.start();
+
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                Socket socket = new Socket("localhost", server.getLocalPort());
+                sockets.add(socket);
+                send(socket, "/client/api?command=listZones");
+                // wait for the request to reach the worker or the queue before sending the next one
+                for (long deadline = System.currentTimeMillis() + 5000; server.getActiveWorkers() + server.getQueuedRequests() < Math.min(i + 1, 2)
+                        && System.currentTimeMillis() < deadline; ) {
+                    Thread.sleep(10);
+                }
+            }
+
+            BufferedReader rejected = new BufferedReader(new InputStreamReader(sockets.get(2).getInputStream(), StandardCharsets.US_ASCII));
+            Assert.assertTrue(readResponse(rejected).get(0).startsWith("HTTP/1.1 503"));
+            Assert.assertEquals(1, server.getRejectedRequests());
+
+            release.countDown();
+            for (int i = 0; i < 2; i++) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(sockets.get(i).getInputStream(), StandardCharsets.US_ASCII));
+                Assert.assertEquals(List.of("HTTP/1.1 200 OK", "done"), readResponse(in));
+            }
+        } finally {
+            release.countDown();
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+}
@@ -39,6 +39,7 @@ import org.apache.cloudstack.api.BaseCmd;
 import org.apache.cloudstack.api.Parameter;
 import org.apache.cloudstack.api.ServerApiException;
 import org.apache.cloudstack.api.command.user.address.AssociateIPAddrCmd;
+import org.apache.cloudstack.api.response.UserVmResponse;
 import org.apache.cloudstack.acl.SecurityChecker;
 import org.apache.cloudstack.context.CallContext;
 
@@ -50,7 +51,9 @@ import com.cloud.exception.ResourceUnavailableException;
 import com.cloud.user.Account;
 import com.cloud.user.AccountManager;
 import com.cloud.user.User;
+import com.cloud.utils.db.EntityManager;
 import com.cloud.vm.VMInstanceVO;
+import com.cloud.vm.VirtualMachine;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ParamProcessWorkerTest {
@@ -74,6 +77,9 @@ public class ParamProcessWorkerTest {
     @Mock
     BaseCmd baseCmdMock;
 
+    @Mock
+    private EntityManager entityManagerMock;
+
     private Account[] owners = new Account[]{ownerAccountMock};
 
     private Map<Object, SecurityChecker.AccessType> entities = new HashMap<>();
@@ -95,6 +101,9 @@ public class ParamProcessWorkerTest {
         @Parameter(name = "vmHostNameParam", type = CommandType.STRING, validations = {ApiArgValidator.RFCComplianceDomainName})
         String vmHostNameParam;
 
+        @Parameter(name = "vmids", type = CommandType.LIST, collectionType = CommandType.UUID, entityType = UserVmResponse.class, since = "4.23.0")
+        List<Long> vmIds;
+
         @Override
         public void execute() throws ResourceUnavailableException, InsufficientCapacityException, ServerApiException, ConcurrentOperationException,
                 ResourceAllocationException, NetworkRuleConflictException {
@@ -232,4 +241,52 @@ public class ParamProcessWorkerTest {
 
         Mockito.verify(accountManagerMock).validateAccountHasAccessToResource(callingAccountMock, SecurityChecker.AccessType.UseEntry, vmInstanceVo);
     }
+
+    private VMInstanceVO mockVm(long id, String uuid) {
+        VMInstanceVO vm = Mockito.mock(VMInstanceVO.class);
+        Mockito.lenient().when(vm.getId()).thenReturn(id);
+        Mockito.lenient().when(vm.getUuid()).thenReturn(uuid);
+        return vm;
+    }
+
+    @Test
+    public void translateUuidsToInternalIdsTestLooksUpAllUuidsInOneQuery() throws Exception {
+        Parameter annotation = TestCmd.class.getDeclaredField("vmIds").getAnnotation(Parameter.class);
+        String uuid1 = "5e4e7a3c-1b1a-4f6e-9a55-2a3d0c9b6f01";
+        String uuid2 = "5e4e7a3c-1b1a-4f6e-9a55-2a3d0c9b6f02";
+        Mockito.doReturn(List.of(mockVm(1L, uuid1), mockVm(2L, uuid2))).when(entityManagerMock)
+                .listByUuidsIncludingRemoved(Mockito.eq(VirtualMachine.class), Mockito.anyCollection());
+
+        List<Long> result = paramProcessWorkerSpy.translateUuidsToInternalIds(List.of(uuid2, uuid1), annotation);
+
+        Assert.assertEquals(List.of(2L, 1L), result);
+        Mockito.verify(entityManagerMock, Mockito.never()).findByUuidIncludingRemoved(Mockito.any(), Mockito.anyString());
+    }
+
+    @Test
+    public void processParametersTestSetsListOfUuids() {
+        String uuid1 = "5e4e7a3c-1b1a-4f6e-9a55-2a3d0c9b6f01";
+        String uuid2 = "5e4e7a3c-1b1a-4f6e-9a55-2a3d0c9b6f02";
+        Mockito.doReturn(List.of(mockVm(1L, uuid1), mockVm(2L, uuid2))).when(entityManagerMock)
+                .listByUuidsIncludingRemoved(Mockito.eq(VirtualMachine.class), Mockito.anyCollection());
+        final HashMap<String, String> params = new HashMap<String, String>();
+        params.put("vmids", uuid1 + "," + uuid2);
+        final TestCmd cmd = new TestCmd();
+
+        paramProcessWorkerSpy.processParameters(cmd, params);
+
+        Assert.assertEquals(List.of(1L, 2L), cmd.vmIds);
+    }
+
+    @Test
+    public void findEntitiesByIdsTestLooksUpMissingIdsOneByOne() {
+        VMInstanceVO vm = mockVm(1L, "5e4e7a3c-1b1a-4f6e-9a55-2a3d0c9b6f01");
+        Mockito.doReturn(List.of(vm)).when(entityManagerMock).listAllByIds(Mockito.eq(VirtualMachine.class), Mockito.anyCollection());
+
+        List<Object> result = paramProcessWorkerSpy.findEntitiesByIds(new Class<?>[] {VirtualMachine.class}, List.of(1L, 3L));
+
+        Assert.assertEquals(List.of(vm), result);
+        Mockito.verify(entityManagerMock).findById(VirtualMachine.class, 3L);
+        Mockito.verify(entityManagerMock, Mockito.never()).findById(VirtualMachine.class, 1L);
+    }
 }
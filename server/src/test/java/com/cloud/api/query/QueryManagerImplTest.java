@@ -78,6 +78,7 @@ import com.cloud.api.query.vo.EventJoinVO;
 import com.cloud.api.query.vo.TemplateJoinVO;
 import com.cloud.api.query.vo.UserAccountJoinVO;
 import com.cloud.api.query.vo.UserVmJoinVO;
+import com.cloud.api.query.vo.VolumeJoinVO;
 import com.cloud.dc.ClusterVO;
 import com.cloud.dc.dao.ClusterDao;
 import com.cloud.domain.DomainVO;
@@ -247,6 +248,72 @@ public class QueryManagerImplTest {
         }
     }
 
+    @Test
+    public void searchForEventsKeepsTheOrderOfTheIdsPage() {
+        ListEventsCmd cmd = setupMockListEventsCmd();
+        List<EventVO> events = new ArrayList<>();
+        List<EventJoinVO> eventJoins = new ArrayList<>();
+        for (long id : new long[] {3L, 2L, 1L}) {
+            EventVO event = mock(EventVO.class);
+            Mockito.when(event.getId()).thenReturn(id);
+            events.add(event);
+        }
+        for (long id : new long[] {1L, 3L, 2L}) {
+            EventJoinVO eventJoin = mock(EventJoinVO.class);
+            Mockito.when(eventJoin.getId()).thenReturn(id);
+            eventJoins.add(eventJoin);
+        }
+        Mockito.when(eventDao.searchAndCount(Mockito.any(), Mockito.any(Filter.class))).thenReturn(new Pair<>(events, events.size()));
+        Mockito.when(eventJoinDao.searchByIds(Mockito.any(Long[].class))).thenReturn(eventJoins);
+
+        List<Long> responseIds = new ArrayList<>();
+        try (MockedStatic<ViewResponseHelper> ignored = Mockito.mockStatic(ViewResponseHelper.class)) {
+            Mockito.when(ViewResponseHelper.createEventResponse(Mockito.any(EventJoinVO[].class))).thenAnswer(invocation -> {
+                for (Object eventJoin : invocation.getArguments()) {
+                    responseIds.add(((EventJoinVO)eventJoin).getId());
+                }
+                return new ArrayList<EventResponse>();
+            });
+            queryManager.searchForEvents(cmd);
+        }
+        Assert.assertEquals(List.of(3L, 2L, 1L), responseIds);
+    }
+
+    @Test
+    public void orderByIdsKeepsTheRowsOfAnIdTogetherInTheirOrder() {
+        List<VolumeJoinVO> rows = new ArrayList<>();
+        for (long id : new long[] {7L, 5L, 7L, 9L}) {
+            VolumeJoinVO row = mock(VolumeJoinVO.class);
+            Mockito.when(row.getId()).thenReturn(id);
+            rows.add(row);
+        }
+
+        List<VolumeJoinVO> ordered = QueryManagerImpl.orderByIds(rows, new Long[] {9L, 7L, 5L});
+
+        Assert.assertEquals(List.of(rows.get(3), rows.get(0), rows.get(2), rows.get(1)), ordered);
+    }
+
+    @Test
+    public void getNextAfterIdTestEncodesTheLastIdOfAFullPage() {
+        List<VolumeJoinVO> rows = new ArrayList<>();
+        for (long id : new long[] {9L, 7L, 7L, 5L}) {
+            VolumeJoinVO row = mock(VolumeJoinVO.class);
+            Mockito.when(row.getId()).thenReturn(id);
+            rows.add(row);
+        }
+
+        String nextAfterId = QueryManagerImpl.getNextAfterId(rows, 3L);
+
+        Assert.assertEquals(Long.valueOf(5L), QueryManagerImpl.decodeAfterId(nextAfterId));
+        Assert.assertNull(QueryManagerImpl.getNextAfterId(rows, 4L));
+        Assert.assertNull(QueryManagerImpl.getNextAfterId(rows, null));
+    }
+
+    @Test(expected = InvalidParameterValueException.class)
+    public void decodeAfterIdTestFailsOnATokenNotReturnedByAPreviousPage() {
+        QueryManagerImpl.decodeAfterId(UUID.randomUUID().toString());
+    }
+
     @Test(expected = InvalidParameterValueException.class)
     public void searchForEventsFailResourceTypeNull() {
         ListEventsCmd cmd  = setupMockListEventsCmd();
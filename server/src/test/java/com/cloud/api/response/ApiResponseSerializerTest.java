@@ -0,0 +1,130 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.api.response;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cloudstack.api.response.ListResponse;
+import org.apache.cloudstack.api.response.SuccessResponse;
+import org.apache.cloudstack.api.response.UserVmResponse;
+import org.apache.cloudstack.context.CallContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.cloud.api.ApiDBUtils;
+import com.cloud.server.ManagementServer;
+import com.cloud.user.Account;
+import com.cloud.user.AccountVO;
+import com.cloud.user.UserVO;
+import com.cloud.utils.HttpUtils;
+
+public class ApiResponseSerializerTest {
+
+    @Before
+    public void setUp() throws Exception {
+        registerCaller(Account.Type.ADMIN);
+        // the XML response carries the version of the management server
+        setManagementServer(Mockito.mock(ManagementServer.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CallContext.unregisterAll();
+        setManagementServer(null);
+    }
+
+    private void setManagementServer(ManagementServer managementServer) throws Exception {
+        Field field = ApiDBUtils.class.getDeclaredField("s_ms");
+        field.setAccessible(true);
+        field.set(null, managementServer);
+    }
+
+    private void registerCaller(Account.Type type) {
+        CallContext.register(new UserVO(2L), new AccountVO("caller", 1L, null, type, "4a3c1b7e-0d2c-11ef-a1b5-0242ac120002"));
+    }
+
+    private ListResponse<UserVmResponse> createListResponse(int vms) {
+        List<UserVmResponse> responses = new ArrayList<>();
+        for (int i = 0; i < vms; i++) {
+            UserVmResponse vm = new UserVmResponse();
+            vm.setName("vm <" + i + ">");
+            vm.setPassword("secret");
+            vm.setDisplayVm(true);
+            vm.setObjectName("virtualmachine");
+            responses.add(vm);
+        }
+        ListResponse<UserVmResponse> response = new ListResponse<>();
+        response.setResponses(responses, vms);
+        response.setResponseName("listvirtualmachinesresponse");
+        return response;
+    }
+
+    @Test
+    public void toJSONSerializedStringTestWritesTheListWithoutEscapingHtmlCharacters() {
+        StringBuilder log = new StringBuilder();
+
+        String json = ApiResponseSerializer.toJSONSerializedString(createListResponse(2), log);
+
+        Assert.assertTrue(json.startsWith("{\"listvirtualmachinesresponse\":{\"count\":2,\"virtualmachine\":[{"));
+        Assert.assertTrue(json.endsWith("}]}}"));
+        Assert.assertTrue(json.contains("\"name\":\"vm <1>\""));
+        Assert.assertTrue(json.contains("\"password\":\"secret\""));
+        Assert.assertFalse(log.toString().contains("secret"));
+        Assert.assertTrue(log.toString().contains("\"name\":\"vm <1>\""));
+    }
+
+    @Test
+    public void toJSONSerializedStringTestWritesAnEmptyList() {
+        Assert.assertEquals("{\"listvirtualmachinesresponse\":{}}", ApiResponseSerializer.toJSONSerializedString(createListResponse(0), new StringBuilder()));
+    }
+
+    @Test
+    public void toJSONSerializedStringTestWritesASuccessResponse() {
+        Assert.assertEquals("{\"deletevirtualmachineresponse\":{\"success\":true}}",
+                ApiResponseSerializer.toJSONSerializedString(new SuccessResponse("deletevirtualmachineresponse"), new StringBuilder()));
+    }
+
+    @Test
+    public void toJSONSerializedStringTestHidesAdminFieldsFromOtherAccountTypes() {
+        Assert.assertTrue(ApiResponseSerializer.toJSONSerializedString(createListResponse(1), new StringBuilder()).contains("\"displayvm\":true"));
+
+        CallContext.unregister();
+        registerCaller(Account.Type.NORMAL);
+
+        Assert.assertFalse(ApiResponseSerializer.toJSONSerializedString(createListResponse(1), new StringBuilder()).contains("displayvm"));
+    }
+
+    @Test
+    public void writeSerializedResponseTestWritesWhatToSerializedStringReturns() throws IOException {
+        for (String responseType : new String[] {HttpUtils.RESPONSE_TYPE_JSON, HttpUtils.RESPONSE_TYPE_XML}) {
+            StringWriter out = new StringWriter();
+            StringBuilder log = new StringBuilder();
+
+            ApiResponseSerializer.writeSerializedResponse(createListResponse(3), responseType, out, log);
+
+            Assert.assertEquals(ApiResponseSerializer.toSerializedString(createListResponse(3), responseType), out.toString());
+            Assert.assertFalse(log.toString().contains("secret"));
+        }
+    }
+}
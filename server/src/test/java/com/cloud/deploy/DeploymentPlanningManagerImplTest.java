@@ -18,6 +18,7 @@ package com.cloud.deploy;
 
 
 import com.cloud.agent.AgentManager;
+import com.cloud.agent.manager.allocator.HostAllocator;
 import com.cloud.capacity.CapacityManager;
 import com.cloud.capacity.dao.CapacityDao;
 import com.cloud.configuration.ConfigurationManagerImpl;
@@ -105,6 +106,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
@@ -305,6 +307,86 @@ public class DeploymentPlanningManagerImplTest {
         assertNull("DataCenter is in avoid set, destination should be null! ", dest);
     }
 
+    @Test
+    public void batchPlanCountsTheCapacityPlannedOnHosts() {
+        DeploymentPlanningManagerImpl.BatchPlan batch = new DeploymentPlanningManagerImpl.BatchPlan();
+        long[] free = {1000L, 1024L};
+
+        Assert.assertTrue(batch.hasCapacity(host, 500, 512L, h -> free));
+        batch.plan(host, 500, 512L, h -> free);
+        Assert.assertTrue(batch.listHostsWithoutCapacity(500, 512L).isEmpty());
+        batch.plan(host, 500, 512L, h -> free);
+
+        Assert.assertFalse(batch.hasCapacity(host, 1, 1L, h -> free));
+        Assert.assertEquals(List.of(hostId), batch.listHostsWithoutCapacity(1, 1L));
+    }
+
+    @Test
+    public void planDeploymentsAvoidsHostsFilledByThePreviousVms() throws InsufficientServerCapacityException, AffinityConflictException {
+        ServiceOfferingVO svcOffering = new ServiceOfferingVO("testOffering", 1, 512, 500, 1, 1, false, false, false, "test dpm",
+                false, VirtualMachine.Type.User, null, "FirstFitPlanner", true, false);
+        VMInstanceVO vm = Mockito.mock(VMInstanceVO.class);
+        List<VirtualMachineProfile> vmProfiles = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            VirtualMachineProfile profile = Mockito.mock(VirtualMachineProfile.class);
+            Mockito.when(profile.getVirtualMachine()).thenReturn(vm);
+            Mockito.when(profile.getServiceOffering()).thenReturn(svcOffering);
+            vmProfiles.add(profile);
+        }
+        DataCenterDeployment plan = new DataCenterDeployment(dataCenterId);
+        Mockito.doReturn(new long[] {1000L, 1024L * 1024L * 1024L}).when(_dpm).getFreeCapacity(host);
+        Mockito.doReturn(new DeployDestination(dc, null, null, host)).when(_dpm).planDeployment(ArgumentMatchers.any(VirtualMachineProfile.class),
+                ArgumentMatchers.eq(plan), ArgumentMatchers.any(ExcludeList.class), ArgumentMatchers.eq(_planner), ArgumentMatchers.anyList());
+
+        Map<VirtualMachineProfile, DeployDestination> destinations = _dpm.planDeployments(vmProfiles, plan, new ExcludeList(), _planner);
+
+        Assert.assertEquals(vmProfiles, new ArrayList<>(destinations.keySet()));
+        ArgumentCaptor<ExcludeList> avoidsCaptor = ArgumentCaptor.forClass(ExcludeList.class);
+        Mockito.verify(_dpm, Mockito.times(3)).planDeployment(ArgumentMatchers.any(VirtualMachineProfile.class), ArgumentMatchers.eq(plan),
+                avoidsCaptor.capture(), ArgumentMatchers.eq(_planner), ArgumentMatchers.anyList());
+        Assert.assertFalse(avoidsCaptor.getAllValues().get(1).getHostsToAvoid().contains(hostId));
+        Assert.assertTrue(avoidsCaptor.getAllValues().get(2).getHostsToAvoid().contains(hostId));
+    }
+
+    @Test
+    public void planDeploymentsPlacesTheFollowingVmsOnTheSuitableHostsOfTheFirstOne() throws InsufficientServerCapacityException, AffinityConflictException {
+        ServiceOfferingVO svcOffering = new ServiceOfferingVO("testOffering", 1, 512, 500, 1, 1, false, false, false, "test dpm",
+                false, VirtualMachine.Type.User, null, "FirstFitPlanner", true, false);
+        VMInstanceVO vm = Mockito.mock(VMInstanceVO.class);
+        Mockito.when(vm.getLastHostId()).thenReturn(null);
+        List<VirtualMachineProfile> vmProfiles = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            VirtualMachineProfile profile = Mockito.mock(VirtualMachineProfile.class);
+            Mockito.when(profile.getVirtualMachine()).thenReturn(vm);
+            Mockito.when(profile.getServiceOffering()).thenReturn(svcOffering);
+            vmProfiles.add(profile);
+        }
+        DataCenterDeployment plan = new DataCenterDeployment(dataCenterId);
+        ClusterVO cluster = Mockito.mock(ClusterVO.class);
+        Mockito.when(cluster.getId()).thenReturn(clusterId);
+        Mockito.doReturn(new long[] {10000L, 10L * 1024L * 1024L * 1024L}).when(_dpm).getFreeCapacity(host);
+        Mockito.doReturn(new DeployDestination(dc, null, cluster, host)).when(_dpm).planDeployment(ArgumentMatchers.any(VirtualMachineProfile.class),
+                ArgumentMatchers.eq(plan), ArgumentMatchers.any(ExcludeList.class), ArgumentMatchers.eq(_planner), ArgumentMatchers.anyList());
+        Mockito.doReturn(List.of(host)).when(_dpm).findSuitableHosts(ArgumentMatchers.any(VirtualMachineProfile.class), ArgumentMatchers.any(DeploymentPlan.class),
+                ArgumentMatchers.any(ExcludeList.class), ArgumentMatchers.eq(HostAllocator.RETURN_UPTO_ALL));
+        Map<Volume, List<StoragePool>> suitablePools = Map.of(Mockito.mock(Volume.class), List.of(Mockito.mock(StoragePool.class)));
+        Mockito.doReturn(new Pair<>(suitablePools, new ArrayList<Volume>())).when(_dpm).findSuitablePoolsForVolumes(ArgumentMatchers.any(VirtualMachineProfile.class),
+                ArgumentMatchers.any(DeploymentPlan.class), ArgumentMatchers.any(ExcludeList.class), ArgumentMatchers.anyInt());
+        Mockito.doReturn(new Pair<>(host, new HashMap<Volume, StoragePool>())).when(_dpm).findPotentialDeploymentResources(ArgumentMatchers.anyList(),
+                ArgumentMatchers.anyMap(), ArgumentMatchers.any(ExcludeList.class), ArgumentMatchers.any(), ArgumentMatchers.anyList(), ArgumentMatchers.any(),
+                ArgumentMatchers.any(VirtualMachine.class));
+
+        Map<VirtualMachineProfile, DeployDestination> destinations = _dpm.planDeployments(vmProfiles, plan, new ExcludeList(), _planner);
+
+        for (VirtualMachineProfile profile : vmProfiles) {
+            Assert.assertEquals(host, destinations.get(profile).getHost());
+        }
+        Mockito.verify(_dpm, Mockito.times(1)).planDeployment(ArgumentMatchers.any(VirtualMachineProfile.class), ArgumentMatchers.eq(plan),
+                ArgumentMatchers.any(ExcludeList.class), ArgumentMatchers.eq(_planner), ArgumentMatchers.anyList());
+        Mockito.verify(_dpm, Mockito.times(1)).findSuitableHosts(ArgumentMatchers.any(VirtualMachineProfile.class), ArgumentMatchers.any(DeploymentPlan.class),
+                ArgumentMatchers.any(ExcludeList.class), ArgumentMatchers.eq(HostAllocator.RETURN_UPTO_ALL));
+    }
+
     @Test
     public void plannerCannotHandleTest() throws InsufficientServerCapacityException, AffinityConflictException {
         ServiceOfferingVO svcOffering =
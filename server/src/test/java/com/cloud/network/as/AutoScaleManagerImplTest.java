@@ -91,6 +91,8 @@ import com.cloud.api.dispatch.DispatchChain;
 import com.cloud.api.dispatch.DispatchChainFactory;
 import com.cloud.dc.DataCenter;
 import com.cloud.dc.DataCenterVO;
+import com.cloud.deploy.DeployDestination;
+import com.cloud.deploy.DeploymentPlanningManager;
 import com.cloud.event.ActionEventUtils;
 import com.cloud.exception.AgentUnavailableException;
 import com.cloud.exception.InsufficientCapacityException;
@@ -147,6 +149,7 @@ import com.cloud.user.AccountVO;
 import com.cloud.user.SSHKeyPairVO;
 import com.cloud.user.User;
 import com.cloud.user.UserVO;
+import com.cloud.user.dao.AccountDao;
 import com.cloud.user.dao.SSHKeyPairDao;
 import com.cloud.user.dao.UserDao;
 import com.cloud.uservm.UserVm;
@@ -265,6 +268,10 @@ public class AutoScaleManagerImplTest {
     VirtualMachineManager virtualMachineManager;
     @Mock
     GuestOSDao guestOSDao;
+    @Mock
+    DeploymentPlanningManager planningMgr;
+    @Mock
+    AccountDao accountDao;
 
     AccountVO account;
     UserVO user;
@@ -1531,6 +1538,51 @@ public class AutoScaleManagerImplTest {
         }
     }
 
+    @Test
+    public void testDoScaleUpStartsTheVmsOnTheirPlannedHosts() throws ResourceUnavailableException, InsufficientCapacityException, ResourceAllocationException {
+        try (MockedStatic<ActionEventUtils> ignored = Mockito.mockStatic(ActionEventUtils.class)) {
+            when(autoScaleVmGroupDao.findById(vmGroupId)).thenReturn(asVmGroupMock);
+            when(asVmGroupMock.getId()).thenReturn(vmGroupId);
+            when(asVmGroupMock.getMaxMembers()).thenReturn(maxMembers);
+            when(autoScaleVmGroupVmMapDao.countAvailableVmsByGroup(vmGroupId)).thenReturn(maxMembers - 2);
+            when(asVmGroupMock.getState()).thenReturn(AutoScaleVmGroup.State.ENABLED);
+
+            when(autoScaleVmGroupDao.updateState(vmGroupId, AutoScaleVmGroup.State.ENABLED, AutoScaleVmGroup.State.SCALING)).thenReturn(true);
+            when(autoScaleVmGroupDao.updateState(vmGroupId, AutoScaleVmGroup.State.SCALING, AutoScaleVmGroup.State.ENABLED)).thenReturn(true);
+            UserVmVO secondVmMock = Mockito.mock(UserVmVO.class);
+            Mockito.doReturn(userVmMock, secondVmMock).when(autoScaleManagerImplSpy).createNewVM(asVmGroupMock);
+            when(userVmMock.getId()).thenReturn(virtualMachineId);
+            when(secondVmMock.getId()).thenReturn(virtualMachineId + 1);
+
+            HostVO secondHostMock = Mockito.mock(HostVO.class);
+            when(hostMock.getId()).thenReturn(hostId);
+            when(secondHostMock.getId()).thenReturn(hostId + 1);
+            when(planningMgr.planDeployments(any(), any(), any(), any())).thenAnswer(invocation -> {
+                List<VirtualMachineProfile> vmProfiles = invocation.getArgument(0);
+                Map<VirtualMachineProfile, DeployDestination> destinations = new LinkedHashMap<>();
+                destinations.put(vmProfiles.get(0), new DeployDestination(null, null, null, hostMock));
+                destinations.put(vmProfiles.get(1), new DeployDestination(null, null, null, secondHostMock));
+                return destinations;
+            });
+
+            when(asVmGroupMock.getLoadBalancerId()).thenReturn(loadBalancerId);
+            when(lbVmMapDao.listByLoadBalancerId(loadBalancerId)).thenReturn(new ArrayList<>());
+            when(loadBalancingRulesService.assignToLoadBalancer(anyLong(), any(), any(), eq(true))).thenReturn(true);
+            Mockito.doReturn(new Pair<UserVmVO, Map<VirtualMachineProfile.Param, Object>>(userVmMock, null)).when(userVmMgr)
+                    .startVirtualMachine(virtualMachineId, null, null, hostId, new HashMap<>(), null, false);
+            Mockito.doReturn(new Pair<UserVmVO, Map<VirtualMachineProfile.Param, Object>>(secondVmMock, null)).when(userVmMgr)
+                    .startVirtualMachine(virtualMachineId + 1, null, null, hostId + 1, new HashMap<>(), null, false);
+
+            autoScaleManagerImplSpy.doScaleUp(vmGroupId, 2);
+
+            Mockito.verify(planningMgr).planDeployments(any(), any(), any(), any());
+            Mockito.verify(userVmMgr).startVirtualMachine(virtualMachineId, null, null, hostId, new HashMap<>(), null, false);
+            Mockito.verify(userVmMgr).startVirtualMachine(virtualMachineId + 1, null, null, hostId + 1, new HashMap<>(), null, false);
+            Mockito.verify(userVmMgr, Mockito.never()).startVirtualMachine(anyLong(), any(), any(), any());
+            Mockito.verify(loadBalancingRulesService, Mockito.times(2)).assignToLoadBalancer(anyLong(), any(), any(), eq(true));
+        }
+    }
+
     @Test
     public void testDoScaleDown() {
         try (MockedStatic<ActionEventUtils> ignored = Mockito.mockStatic(ActionEventUtils.class)) {
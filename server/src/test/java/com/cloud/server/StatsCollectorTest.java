@@ -33,13 +33,13 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import com.cloud.utils.DateUtil;
 import com.google.gson.JsonSyntaxException;
 import org.apache.cloudstack.framework.config.ConfigKey;
 import org.apache.cloudstack.storage.datastore.db.StoragePoolVO;
-import org.apache.commons.collections.CollectionUtils;
 import org.influxdb.InfluxDB;
 import org.influxdb.InfluxDBFactory;
 import org.influxdb.dto.BatchPoints;
@@ -57,13 +57,13 @@ import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
-import org.mockito.stubbing.Answer;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import com.cloud.agent.api.GetStorageStatsAnswer;
 import com.cloud.agent.api.GetStorageStatsCommand;
 import com.cloud.agent.api.VmDiskStatsEntry;
 import com.cloud.agent.api.VmStatsEntry;
+import com.cloud.host.HostVO;
 import com.cloud.hypervisor.Hypervisor;
 import com.cloud.server.StatsCollector.ExternalStatsProtocol;
 import com.cloud.storage.StorageStats;
@@ -97,9 +97,6 @@ public class StatsCollectorTest {
     @Mock
     VmStatsEntry statsForCurrentIterationMock;
 
-    @Captor
-    ArgumentCaptor<VmStatsVO> vmStatsVOCaptor = ArgumentCaptor.forClass(VmStatsVO.class);
-
     @Captor
     ArgumentCaptor<Boolean> booleanCaptor = ArgumentCaptor.forClass(Boolean.class);
 
@@ -336,18 +333,15 @@ public class StatsCollectorTest {
     }
 
     @Test
-    public void persistVirtualMachineStatsTestPersistsSuccessfully() {
+    public void createVirtualMachineStatsVOTestCreatesSuccessfully() {
         statsCollector.msId = 1L;
         Date timestamp = new Date();
         VmStatsEntry statsForCurrentIteration = new VmStatsEntry(2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, "vm");
-        Mockito.doReturn(new VmStatsVO()).when(vmStatsDaoMock).persist(Mockito.any());
         String expectedVmStatsStr = "{\"vmId\":2,\"cpuUtilization\":6.0,\"networkReadKBs\":7.0,\"networkWriteKBs\":8.0,\"diskReadIOs\":12.0,\"diskWriteIOs\":13.0,\"diskReadKBs\":10.0"
                 + ",\"diskWriteKBs\":11.0,\"memoryKBs\":3.0,\"intFreeMemoryKBs\":4.0,\"targetMemoryKBs\":5.0,\"numCPUs\":9,\"entityType\":\"vm\"}";
 
-        statsCollector.persistVirtualMachineStats(statsForCurrentIteration, timestamp);
+        VmStatsVO actual = statsCollector.createVirtualMachineStatsVO(statsForCurrentIteration, timestamp);
 
-        Mockito.verify(vmStatsDaoMock).persist(vmStatsVOCaptor.capture());
-        VmStatsVO actual = vmStatsVOCaptor.getAllValues().get(0);
         Assert.assertEquals(Long.valueOf(2L), actual.getVmId());
         Assert.assertEquals(Long.valueOf(1L), actual.getMgmtServerId());
         Assert.assertEquals(convertJsonToOrderedMap(expectedVmStatsStr), convertJsonToOrderedMap(actual.getVmStatsData()));
@@ -397,6 +391,37 @@ public class StatsCollectorTest {
         Mockito.verify(statsCollector, Mockito.never()).accumulateVmMetricsStats(Mockito.anyList());
     }
 
+    private VmStatsEntry createVmStatsEntry(double cpuUtilization, double networkReadKBs, double diskWriteIOs) {
+        VmStatsEntry vmStatsEntry = new VmStatsEntry();
+        vmStatsEntry.setVmId(1L);
+        vmStatsEntry.setCPUUtilization(cpuUtilization);
+        vmStatsEntry.setNumCPUs(2);
+        vmStatsEntry.setMemoryKBs(1024);
+        vmStatsEntry.setNetworkReadKBs(networkReadKBs);
+        vmStatsEntry.setDiskWriteIOs(diskWriteIOs);
+        return vmStatsEntry;
+    }
+
+    @Test
+    public void getVmStatsTestWithInMemoryHistory() {
+        setVmStatsMaxRetentionTimeValue("60");
+        statsCollector.vmStatsHistory = statsCollector.createVmStatsHistory();
+        statsCollector.recordVmStatsHistory(createVmStatsEntry(10, 1.5, 3), new Date(1000L));
+        statsCollector.recordVmStatsHistory(createVmStatsEntry(20, 2.5, 4), new Date(2000L));
+
+        VmStats latest = statsCollector.getVmStats(1L, false);
+        VmStats accumulated = statsCollector.getVmStats(1L, true);
+
+        Assert.assertEquals(20, latest.getCPUUtilization(), 0);
+        Assert.assertEquals(2.5, latest.getNetworkReadKBs(), 0);
+        Assert.assertEquals(20, accumulated.getCPUUtilization(), 0);
+        Assert.assertEquals(2, ((VmStatsEntry)accumulated).getNumCPUs());
+        Assert.assertEquals(4.0, accumulated.getNetworkReadKBs(), 0);
+        Assert.assertEquals(7.0, accumulated.getDiskWriteIOs(), 0);
+        Assert.assertNull(statsCollector.getVmStats(2L, true));
+        Mockito.verifyNoInteractions(vmStatsDaoMock);
+    }
+
     @Test
     public void accumulateVmMetricsStatsTest() {
         String fakeStatsData1 = "{\"vmId\":1,\"cpuUtilization\":1.0,\"networkReadKBs\":1.0,"
@@ -502,16 +527,8 @@ public class StatsCollectorTest {
                     writeDiff,
                     readDiff);
         }
-        List<VolumeStatsVO> persistedStats = new ArrayList<>();
-        Mockito.when(volumeStatsDao.persist(Mockito.any(VolumeStatsVO.class))).thenAnswer((Answer<VolumeStatsVO>) invocation -> {
-            VolumeStatsVO statsVO = (VolumeStatsVO) invocation.getArguments()[0];
-            persistedStats.add(statsVO);
-            return statsVO;
-        });
-        statsCollector.persistVolumeStats(volumeId, statsForCurrentIteration, hypervisorType, timestamp);
-        Assert.assertTrue(CollectionUtils.isNotEmpty(persistedStats));
-        Assert.assertNotNull(persistedStats.get(0));
-        VolumeStatsVO stat = persistedStats.get(0);
+        VolumeStatsVO stat = statsCollector.createVolumeStatsVO(volumeId, statsForCurrentIteration, hypervisorType, timestamp);
+        Assert.assertNotNull(stat);
         Assert.assertEquals(volumeId, stat.getVolumeId());
         VmDiskStatsEntry entry = gson.fromJson(stat.getVolumeStatsData(), VmDiskStatsEntry.class);
         Assert.assertEquals(vmName, entry.getVmName());
@@ -724,4 +741,46 @@ public class StatsCollectorTest {
             return date;
         }
     }
+
+    private StatsCollector.AbstractHostFanOutStatsCollector<String> createFanOutCollector() {
+        ReflectionTestUtils.setField(statsCollector, "hostStatsExecutor", Executors.newFixedThreadPool(2));
+        return statsCollector.new AbstractHostFanOutStatsCollector<String>("test", 1000L) {
+            @Override
+            protected String collect(HostVO host) {
+                if (host.getId() == 2L) {
+                    throw new CloudRuntimeException("unreachable host");
+                }
+                return host.getName();
+            }
+
+            @Override
+            protected void runCycle() {
+            }
+
+            @Override
+            protected Point createInfluxDbPoint(Object metricsObject) {
+                return null;
+            }
+        };
+    }
+
+    private HostVO createHost(long id) {
+        HostVO host = Mockito.mock(HostVO.class);
+        Mockito.when(host.getId()).thenReturn(id);
+        Mockito.when(host.getName()).thenReturn("host" + id);
+        return host;
+    }
+
+    @Test
+    public void collectInParallelTestReturnsStatsOfHostsThatAnswered() {
+        HostVO host1 = createHost(1L);
+        HostVO host2 = createHost(2L);
+        HostVO host3 = createHost(3L);
+
+        Map<HostVO, String> result = createFanOutCollector().collectInParallel(Arrays.asList(host1, host2, host3));
+
+        Assert.assertEquals(Arrays.asList(host1, host3), new ArrayList<>(result.keySet()));
+        Assert.assertEquals("host1", result.get(host1));
+        Assert.assertEquals("host3", result.get(host3));
+    }
 }
@@ -29,6 +29,7 @@ import javax.naming.ConfigurationException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -196,6 +197,17 @@ public class MockUsageEventDao implements UsageEventDao{
         return entity;
     }
 
+    @Override
+    public List<UsageEventVO> persistBatch(List<UsageEventVO> entities) {
+        persistedItems.addAll(entities);
+        return entities;
+    }
+
+    @Override
+    public int updateBatch(List<UsageEventVO> entities) {
+        return 0;
+    }
+
     @Override
     public boolean remove(Long id) {
         return false;
@@ -339,6 +351,11 @@ public class MockUsageEventDao implements UsageEventDao{
         return null;
     }
 
+    @Override
+    public Iterator<UsageEventVO> searchIterator(SearchCriteria<UsageEventVO> sc, int fetchSize) {
+        return Collections.emptyIterator();
+    }
+
     @Override
     public int expunge(SearchCriteria<UsageEventVO> sc, Filter filter) {
         return 0;
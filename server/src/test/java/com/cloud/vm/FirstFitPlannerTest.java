@@ -64,6 +64,7 @@ import org.springframework.test.context.support.AnnotationConfigContextLoader;
 
 import com.cloud.capacity.Capacity;
 import com.cloud.capacity.CapacityManager;
+import com.cloud.capacity.HostCapacityIndex;
 import com.cloud.capacity.dao.CapacityDao;
 import com.cloud.configuration.Config;
 import com.cloud.dc.ClusterDetailsDao;
@@ -126,6 +127,8 @@ public class FirstFitPlannerTest {
     @Inject
     CapacityDao capacityDao;
     @Inject
+    CapacityManager capacityMgr;
+    @Inject
     AccountManager accountMgr;
     @Inject
     ServiceOfferingDao serviceOfferingDao;
@@ -193,6 +196,27 @@ public class FirstFitPlannerTest {
         assertTrue("Reordered cluster list is not honoring the implict host tags", (clusterList.equals(reorderedClusterList)));
     }
 
+    @Test
+    public void checkClusterReorderingFallsBackToTheDatabaseWhenTheCapacityIndexHasNoCluster() throws InsufficientServerCapacityException {
+        VirtualMachineProfileImpl vmProfile = mock(VirtualMachineProfileImpl.class);
+        DataCenterDeployment plan = mock(DataCenterDeployment.class);
+        ExcludeList avoids = mock(ExcludeList.class);
+        initializeForTest(vmProfile, plan, avoids);
+
+        HostCapacityIndex index = new HostCapacityIndex();
+        index.reload(new ArrayList<>(), new HashMap<>());
+        when(capacityMgr.getHostCapacityIndex()).thenReturn(index);
+        String key = CapacityManager.HostCapacityIndexEnabled.key();
+        when(configDepot.getConfigStringValue(key, ConfigKey.Scope.Global, null)).thenReturn(Boolean.TRUE.toString());
+        try {
+            List<Long> clusterList = planner.orderClusters(vmProfile, plan, avoids);
+
+            assertTrue("The clusters with enough capacity in the database are not listed", clusterList.equals(Arrays.asList(4L, 3L, 1L, 5L, 6L, 2L)));
+        } finally {
+            when(configDepot.getConfigStringValue(key, ConfigKey.Scope.Global, null)).thenReturn(null);
+        }
+    }
+
     @Test
     public void checkClusterReorderingForDeployVMWithThresholdCheckDisabled() throws InsufficientServerCapacityException {
         VirtualMachineProfileImpl vmProfile = mock(VirtualMachineProfileImpl.class);
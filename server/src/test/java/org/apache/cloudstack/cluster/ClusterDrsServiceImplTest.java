@@ -72,10 +72,12 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ClusterDrsServiceImplTest {
@@ -685,6 +687,13 @@ public class ClusterDrsServiceImplTest {
         clusterDrsService.generateDrsPlan(cmd);
     }
 
+    private GlobalLock mockClusterLock(boolean acquired) {
+        GlobalLock clusterLock = Mockito.mock(GlobalLock.class);
+        Mockito.when(clusterLock.lock(Mockito.anyInt())).thenReturn(acquired);
+        Mockito.when(GlobalLock.getInternLock("drs.plan.cluster.1")).thenReturn(clusterLock);
+        return clusterLock;
+    }
+
     @Test(expected = CloudRuntimeException.class)
     public void testGenerateDrsPlanConfigurationException() throws ConfigurationException {
         ClusterVO cluster = Mockito.mock(ClusterVO.class);
@@ -693,6 +702,7 @@ public class ClusterDrsServiceImplTest {
         Mockito.when(clusterDao.findById(1L)).thenReturn(cluster);
         Mockito.when(clusterDrsService.getDrsPlan(cluster, 5)).thenThrow(new ConfigurationException("test"));
         Mockito.when(cmd.getMaxMigrations()).thenReturn(5);
+        mockClusterLock(true);
 
         clusterDrsService.generateDrsPlan(cmd);
     }
@@ -717,6 +727,7 @@ public class ClusterDrsServiceImplTest {
         Mockito.when(cmd.getMaxMigrations()).thenReturn(2);
         Mockito.doReturn(List.of(new Ternary<>(vm, srcHost,
                 destHost))).when(clusterDrsService).getDrsPlan(Mockito.any(Cluster.class), Mockito.anyInt());
+        GlobalLock clusterLock = mockClusterLock(true);
 
         ClusterDrsPlanMigrationResponse migrationResponse = Mockito.mock(ClusterDrsPlanMigrationResponse.class);
 
@@ -735,6 +746,24 @@ public class ClusterDrsServiceImplTest {
             assertEquals(1L, response.getMigrationPlans().size());
             assertEquals(migrationResponse, response.getMigrationPlans().get(0));
         }
+        Mockito.verify(clusterLock).unlock();
+        Mockito.verify(clusterLock).releaseRef();
+    }
+
+    @Test
+    public void testGenerateDrsPlanWhileTheClusterIsLocked() throws ConfigurationException {
+        ClusterVO cluster = Mockito.mock(ClusterVO.class);
+        Mockito.when(cluster.getId()).thenReturn(1L);
+        Mockito.when(cluster.getAllocationState()).thenReturn(Grouping.AllocationState.Enabled);
+        Mockito.when(clusterDao.findById(1L)).thenReturn(cluster);
+        Mockito.when(cmd.getMaxMigrations()).thenReturn(2);
+        GlobalLock clusterLock = mockClusterLock(false);
+
+        assertThrows(CloudRuntimeException.class, () -> clusterDrsService.generateDrsPlan(cmd));
+
+        Mockito.verify(clusterDrsService, Mockito.never()).getDrsPlan(Mockito.any(Cluster.class), Mockito.anyInt());
+        Mockito.verify(clusterLock, Mockito.never()).unlock();
+        Mockito.verify(clusterLock).releaseRef();
     }
 
     @Test
@@ -852,6 +881,73 @@ public class ClusterDrsServiceImplTest {
         assertEquals(vm1, bestMigration.first());
     }
 
+    @Test
+    public void testGetBestMigrationInParallelMatchesSequential() throws ConfigurationException {
+        ClusterVO cluster = Mockito.mock(ClusterVO.class);
+        Mockito.when(cluster.getId()).thenReturn(1L);
+
+        List<Host> hosts = new ArrayList<>();
+        Map<Long, Ternary<Long, Long, Long>> hostCpuCapacityMap = new HashMap<>();
+        Map<Long, Ternary<Long, Long, Long>> hostMemoryCapacityMap = new HashMap<>();
+        for (long hostId = 1; hostId <= 8; hostId++) {
+            HostVO host = Mockito.mock(HostVO.class);
+            Mockito.when(host.getId()).thenReturn(hostId);
+            Mockito.when(host.getClusterId()).thenReturn(1L);
+            hosts.add(host);
+            hostCpuCapacityMap.put(hostId, new Ternary<>(hostId * 1000L, 0L, 100000L));
+            hostMemoryCapacityMap.put(hostId, new Ternary<>(hostId * 1024L * 1024L * 1024L, 0L, 128L * 1024L * 1024L * 1024L));
+        }
+
+        ServiceOffering serviceOffering = Mockito.mock(ServiceOffering.class);
+        Mockito.when(serviceOffering.getCpu()).thenReturn(1);
+        Mockito.when(serviceOffering.getSpeed()).thenReturn(1000);
+        Mockito.when(serviceOffering.getRamSize()).thenReturn(1024);
+
+        List<VirtualMachine> vmList = new ArrayList<>();
+        Map<Long, ServiceOffering> vmIdServiceOfferingMap = new HashMap<>();
+        Map<Long, List<? extends Host>> vmToCompatibleHostsCache = new HashMap<>();
+        Map<Long, Map<Host, Boolean>> vmToStorageMotionCache = new HashMap<>();
+        for (long vmId = 1; vmId <= 200; vmId++) {
+            VMInstanceVO vm = Mockito.mock(VMInstanceVO.class);
+            Mockito.when(vm.getId()).thenReturn(vmId);
+            Mockito.when(vm.getType()).thenReturn(VirtualMachine.Type.User);
+            Mockito.when(vm.getState()).thenReturn(VirtualMachine.State.Running);
+            Mockito.when(vm.getDetails()).thenReturn(Collections.emptyMap());
+            vmList.add(vm);
+            vmIdServiceOfferingMap.put(vmId, serviceOffering);
+            vmToCompatibleHostsCache.put(vmId, hosts);
+            vmToStorageMotionCache.put(vmId, Collections.emptyMap());
+        }
+
+        // Many combinations share the best improvement, the first one in the order of the VMs has to win
+        Mockito.doAnswer(invocation -> {
+            VirtualMachine vm = invocation.getArgument(1);
+            Host destHost = invocation.getArgument(3);
+            return new Ternary<>(((vm.getId() * 31 + destHost.getId() * 7) % 97) / 100.0, 0.0, 1.0);
+        }).when(balancedAlgorithm).getMetrics(Mockito.eq(cluster), Mockito.any(VirtualMachine.class),
+                Mockito.any(ServiceOffering.class), Mockito.any(Host.class), Mockito.anyMap(), Mockito.anyMap(),
+                Mockito.anyBoolean(), Mockito.anyDouble(), Mockito.any(double[].class), Mockito.anyMap());
+
+        Pair<VirtualMachine, Host> sequential = clusterDrsService.getBestMigration(cluster, balancedAlgorithm, vmList,
+                vmIdServiceOfferingMap, hostCpuCapacityMap, hostMemoryCapacityMap, vmToCompatibleHostsCache,
+                vmToStorageMotionCache, new HashMap<>());
+
+        clusterDrsService.drsPlanPool = new ForkJoinPool(4);
+        Pair<VirtualMachine, Host> parallel;
+        try {
+            parallel = clusterDrsService.getBestMigration(cluster, balancedAlgorithm, vmList,
+                    vmIdServiceOfferingMap, hostCpuCapacityMap, hostMemoryCapacityMap, vmToCompatibleHostsCache,
+                    vmToStorageMotionCache, new HashMap<>());
+        } finally {
+            clusterDrsService.stop();
+        }
+
+        assertEquals(vmList.get(5), sequential.first());
+        assertEquals(hosts.get(0), sequential.second());
+        assertEquals(sequential.first(), parallel.first());
+        assertEquals(sequential.second(), parallel.second());
+    }
+
     @Test
     public void testGetBestMigrationDifferentCluster() throws ConfigurationException {
         ClusterVO cluster = Mockito.mock(ClusterVO.class);
@@ -17,6 +17,7 @@
 package com.cloud.usage.parser;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -110,6 +111,7 @@ public class VMInstanceUsageParser extends UsageParser {
             }
         }
 
+        List<UsageVO> usageRecords = new ArrayList<>();
         for (String vmIdKey : usageVMUptimeMap.keySet()) {
             Pair<String, Long> vmUptimeInfo = usageVMUptimeMap.get(vmIdKey);
             long runningTime = vmUptimeInfo.second().longValue();
@@ -117,8 +119,8 @@ public class VMInstanceUsageParser extends UsageParser {
             // Only create a usage record if we have a runningTime of bigger than zero.
             if (runningTime > 0L) {
                 VMInfo info = vmInfosMap.get(vmIdKey);
-                createUsageRecord(UsageTypes.RUNNING_VM, runningTime, startDate, endDate, account, info.getVirtualMachineId(), vmUptimeInfo.first(), info.getZoneId(),
-                    info.getServiceOfferingId(), info.getTemplateId(), info.getHypervisorType(), info.getCpuCores(), info.getCpuSpeed(), info.getMemory());
+                usageRecords.add(createUsageRecord(UsageTypes.RUNNING_VM, runningTime, startDate, endDate, account, info.getVirtualMachineId(), vmUptimeInfo.first(), info.getZoneId(),
+                    info.getServiceOfferingId(), info.getTemplateId(), info.getHypervisorType(), info.getCpuCores(), info.getCpuSpeed(), info.getMemory()));
             }
         }
 
@@ -129,11 +131,12 @@ public class VMInstanceUsageParser extends UsageParser {
             // Only create a usage record if we have a runningTime of bigger than zero.
             if (allocatedTime > 0L) {
                 VMInfo info = vmInfosMap.get(vmIdKey);
-                createUsageRecord(UsageTypes.ALLOCATED_VM, allocatedTime, startDate, endDate, account, info.getVirtualMachineId(), vmAllocInfo.first(), info.getZoneId(),
-                    info.getServiceOfferingId(), info.getTemplateId(), info.getHypervisorType(), info.getCpuCores(), info.getCpuSpeed(), info.getMemory());
+                usageRecords.add(createUsageRecord(UsageTypes.ALLOCATED_VM, allocatedTime, startDate, endDate, account, info.getVirtualMachineId(), vmAllocInfo.first(), info.getZoneId(),
+                    info.getServiceOfferingId(), info.getTemplateId(), info.getHypervisorType(), info.getCpuCores(), info.getCpuSpeed(), info.getMemory()));
             }
         }
 
+        usageDao.persistBatch(usageRecords);
         return true;
     }
 
@@ -149,7 +152,7 @@ public class VMInstanceUsageParser extends UsageParser {
         usageDataMap.put(key, vmUsageInfo);
     }
 
-    private void createUsageRecord(int type, long runningTime, Date startDate, Date endDate, AccountVO account, long vmId, String vmName, long zoneId,
+    private UsageVO createUsageRecord(int type, long runningTime, Date startDate, Date endDate, AccountVO account, long vmId, String vmName, long zoneId,
         long serviceOfferingId, long templateId, String hypervisorType, Long cpuCores, Long cpuSpeed, Long memory) {
         // Our smallest increment is hourly for now
         logger.debug("Total running time {} ms", runningTime);
@@ -174,7 +177,7 @@ public class VMInstanceUsageParser extends UsageParser {
         UsageVO usageRecord =
             new UsageVO(Long.valueOf(zoneId), account.getId(), account.getDomainId(), usageDesc, usageDisplay + " Hrs", type, new Double(usage), Long.valueOf(vmId),
                 vmName, cpuCores, cpuSpeed, memory, Long.valueOf(serviceOfferingId), Long.valueOf(templateId), Long.valueOf(vmId), startDate, endDate, hypervisorType);
-        usageDao.persist(usageRecord);
+        return usageRecord;
     }
 
     private static class VMInfo {
@@ -17,6 +17,7 @@
 package com.cloud.usage.parser;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -103,6 +104,7 @@ public class VolumeUsageParser extends UsageParser {
             updateVolUsageData(usageMap, key, usageVol.getVolumeId(), currentDuration);
         }
 
+        List<UsageVO> usageRecords = new ArrayList<>();
         for (String volIdKey : usageMap.keySet()) {
             Pair<Long, Long> voltimeInfo = usageMap.get(volIdKey);
             long useTime = voltimeInfo.second().longValue();
@@ -110,11 +112,12 @@ public class VolumeUsageParser extends UsageParser {
             // Only create a usage record if we have a runningTime of bigger than zero.
             if (useTime > 0L) {
                 VolInfo info = diskOfferingMap.get(volIdKey);
-                createUsageRecord(UsageTypes.VOLUME, useTime, startDate, endDate, account, info.getVolumeId(), info.getZoneId(), info.getDiskOfferingId(),
-                    info.getTemplateId(), info.getVmId(), info.getSize());
+                usageRecords.add(createUsageRecord(UsageTypes.VOLUME, useTime, startDate, endDate, account, info.getVolumeId(), info.getZoneId(), info.getDiskOfferingId(),
+                    info.getTemplateId(), info.getVmId(), info.getSize()));
             }
         }
 
+        usageDao.persistBatch(usageRecords);
         return true;
     }
 
@@ -130,7 +133,7 @@ public class VolumeUsageParser extends UsageParser {
         usageDataMap.put(key, volUsageInfo);
     }
 
-    private void createUsageRecord(int type, long runningTime, Date startDate, Date endDate, AccountVO account, long volId, long zoneId, Long doId,
+    private UsageVO createUsageRecord(int type, long runningTime, Date startDate, Date endDate, AccountVO account, long volId, long zoneId, Long doId,
         Long templateId, Long vmId, long size) {
         // Our smallest increment is hourly for now
         logger.debug("Total running time {} ms", runningTime);
@@ -159,7 +162,7 @@ public class VolumeUsageParser extends UsageParser {
 
         UsageVO usageRecord = new UsageVO(zoneId, account.getId(), account.getDomainId(), usageDesc, usageDisplay + " Hrs", type, new Double(usage), vmId, null, doId, templateId, volId,
                 size, startDate, endDate);
-        usageDao.persist(usageRecord);
+        return usageRecord;
     }
 
     private static class VolInfo {
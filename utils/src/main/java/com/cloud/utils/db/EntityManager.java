@@ -58,6 +58,25 @@ public interface EntityManager {
      */
     public <T> T findByUuidIncludingRemoved(Class<T> entityType, String uuid);
 
+    /**
+     * Lists the entities of the uuid strings in a single query, including those removed entries
+     * @param <T> entity class
+     * @param entityType type of entity you're looking for.
+     * @param uuids the unique ids
+     * @return the entities found, in no particular order.
+     */
+    public <T> List<T> listByUuidsIncludingRemoved(Class<T> entityType, Collection<String> uuids);
+
+    /**
+     * Lists the entities of the ids in a single query.
+     * @param <T> class of the entity you're trying to find.
+     * @param <K> class of the id that the entity uses.
+     * @param entityType Type of the entity.
+     * @param ids id values
+     * @return the entities found, in no particular order.
+     */
+    public <T, K extends Serializable> List<T> listAllByIds(Class<T> entityType, Collection<K> ids);
+
     /**
      * Finds an entity by external id which is always String
      * @param <T> entity class
@@ -31,6 +31,8 @@ import java.nio.channels.SocketChannel;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -60,12 +62,17 @@ import com.cloud.utils.exception.CloudRuntimeException;
 public class Link {
     protected static Logger LOGGER = LogManager.getLogger(Link.class);
 
+    /* Buffers holding outgoing SSL packets are shared by all links instead of being allocated for every write */
+    private static final int MAX_POOLED_PACKET_BUFFERS = 64;
+    private static final BlockingQueue<ByteBuffer> s_packetBufferPool = new ArrayBlockingQueue<>(MAX_POOLED_PACKET_BUFFERS);
+
     private final InetSocketAddress _addr;
     private final NioConnection _connection;
     private SelectionKey _key;
     private final ConcurrentLinkedQueue<ByteBuffer[]> _writeQueue;
     private ByteBuffer _readBuffer;
     private ByteBuffer _plaintextBuffer;
+    private ByteBuffer _appBuffer;
     private Object _attach;
     private boolean _readHeader;
     private boolean _gotFollowingPacket;
@@ -107,7 +114,28 @@ public class Link {
 
     private static void doWrite(SocketChannel ch, ByteBuffer[] buffers, SSLEngine sslEngine) throws IOException {
         SSLSession sslSession = sslEngine.getSession();
-        ByteBuffer pkgBuf = ByteBuffer.allocate(sslSession.getPacketBufferSize() + 40);
+        ByteBuffer pkgBuf = acquirePacketBuffer(sslSession.getPacketBufferSize() + 40);
+        try {
+            doWrite(ch, buffers, sslEngine, pkgBuf);
+        } finally {
+            releasePacketBuffer(pkgBuf);
+        }
+    }
+
+    private static ByteBuffer acquirePacketBuffer(int size) {
+        ByteBuffer buffer = s_packetBufferPool.poll();
+        if (buffer == null || buffer.capacity() < size) {
+            return ByteBuffer.allocate(size);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static void releasePacketBuffer(ByteBuffer buffer) {
+        s_packetBufferPool.offer(buffer);
+    }
+
+    private static void doWrite(SocketChannel ch, ByteBuffer[] buffers, SSLEngine sslEngine, ByteBuffer pkgBuf) throws IOException {
         SSLEngineResult engResult;
 
         ByteBuffer headBuf = ByteBuffer.allocate(4);
@@ -238,15 +266,20 @@ public class Link {
 
         _readBuffer.flip();
 
-        ByteBuffer appBuf;
-
         SSLSession sslSession = _sslEngine.getSession();
         SSLEngineResult engResult;
         int remaining = 0;
 
+        // Unwrapped data is copied into _plaintextBuffer, so one application buffer per link is enough
+        final int appBufSize = sslSession.getApplicationBufferSize() + 40;
+        if (_appBuffer == null || _appBuffer.capacity() < appBufSize) {
+            _appBuffer = ByteBuffer.allocate(appBufSize);
+        }
+        final ByteBuffer appBuf = _appBuffer;
+
         while (_readBuffer.hasRemaining()) {
             remaining = _readBuffer.remaining();
-            appBuf = ByteBuffer.allocate(sslSession.getApplicationBufferSize() + 40);
+            appBuf.clear();
             engResult = _sslEngine.unwrap(_readBuffer, appBuf);
             if (engResult.getHandshakeStatus() != HandshakeStatus.FINISHED && engResult.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING &&
                     engResult.getStatus() != SSLEngineResult.Status.OK) {
@@ -36,9 +36,12 @@ import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -47,6 +50,9 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
 
 import javax.net.ssl.SSLEngine;
 
@@ -85,6 +91,18 @@ public abstract class NioConnection implements Callable<Boolean> {
     private final int factoryMaxNewConnectionsCount;
     protected boolean blockNewConnections;
 
+    /**
+     * Number of additional selectors that accepted connections are spread over.
+     * With the default of zero every connection is served by {@link #_selector}.
+     */
+    protected int ioSelectorCount = 0;
+    private final List<IoSelector> ioSelectors = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextIoSelector = new AtomicInteger();
+
+    private final AtomicLong sslHandshakeCount = new AtomicLong();
+    private final AtomicLong sslHandshakeTotalMillis = new AtomicLong();
+    private final LongAccumulator sslHandshakeMaxMillis = new LongAccumulator(Long::max, 0);
+
     public NioConnection(final String name, final int port, final int workers, final HandlerFactory factory) {
         _name = name;
         _isRunning = false;
@@ -107,6 +125,7 @@ public abstract class NioConnection implements Callable<Boolean> {
 
         try {
             init();
+            initIoSelectors();
         } catch (final ConnectException e) {
             logger.warn("Unable to connect to remote: is there a server running on port {}?", _port, e);
             throw new NioConnectionException(e.getMessage(), e);
@@ -125,10 +144,13 @@ public abstract class NioConnection implements Callable<Boolean> {
         if (_sslHandshakeExecutor.isShutdown()) {
             initSSLHandshakeExecutor();
         }
-        _threadExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory(this._name + "-NioConnectionHandler"));
+        _threadExecutor = Executors.newFixedThreadPool(1 + ioSelectors.size(), new NamedThreadFactory(this._name + "-NioConnectionHandler"));
         _isRunning = true;
         blockNewConnections = false;
         _futureTask = _threadExecutor.submit(this);
+        for (final IoSelector ioSelector : ioSelectors) {
+            _threadExecutor.submit(ioSelector);
+        }
     }
 
     public void stop() {
@@ -142,6 +164,23 @@ public abstract class NioConnection implements Callable<Boolean> {
         }
     }
 
+    private void initIoSelectors() throws IOException {
+        closeIoSelectors();
+        for (int i = 0; i < ioSelectorCount; i++) {
+            ioSelectors.add(new IoSelector(Selector.open()));
+        }
+        if (!ioSelectors.isEmpty()) {
+            logger.info("{} spreads connections over {} I/O selectors", _name, ioSelectors.size());
+        }
+    }
+
+    private void closeIoSelectors() throws IOException {
+        for (final IoSelector ioSelector : ioSelectors) {
+            ioSelector.selector.close();
+        }
+        ioSelectors.clear();
+    }
+
     private void initWorkersExecutor() {
         _executor = new ThreadPoolExecutor(_workers, 5 * _workers, 1, TimeUnit.DAYS,
                 new LinkedBlockingQueue<>(5 * _workers), new NamedThreadFactory(_name + "-Handler"),
@@ -173,36 +212,7 @@ public abstract class NioConnection implements Callable<Boolean> {
             try {
                 _selector.select(50);
 
-                // Someone is ready for I/O, get the ready keys
-                final Set<SelectionKey> readyKeys = _selector.selectedKeys();
-                final Iterator<SelectionKey> i = readyKeys.iterator();
-
-                logger.trace("Keys Processing: {}", readyKeys.size());
-                // Walk through the ready keys collection.
-                while (i.hasNext()) {
-                    final SelectionKey sk = i.next();
-                    i.remove();
-
-                    if (!sk.isValid()) {
-                        logger.trace("Selection Key is invalid: {}", sk);
-                        final Link link = (Link)sk.attachment();
-                        if (link != null) {
-                            link.terminated();
-                        } else {
-                            closeConnection(sk);
-                        }
-                    } else if (sk.isReadable()) {
-                        read(sk);
-                    } else if (sk.isWritable()) {
-                        write(sk);
-                    } else if (sk.isAcceptable()) {
-                        accept(sk);
-                    } else if (sk.isConnectable()) {
-                        connect(sk);
-                    }
-                }
-
-                logger.trace("Keys Done Processing.");
+                processSelectedKeys(_selector);
 
                 processTodos();
             } catch (final ClosedSelectorException e) {
@@ -219,6 +229,39 @@ public abstract class NioConnection implements Callable<Boolean> {
         return true;
     }
 
+    protected void processSelectedKeys(final Selector selector) throws IOException {
+        // Someone is ready for I/O, get the ready keys
+        final Set<SelectionKey> readyKeys = selector.selectedKeys();
+        final Iterator<SelectionKey> i = readyKeys.iterator();
+
+        logger.trace("Keys Processing: {}", readyKeys.size());
+        // Walk through the ready keys collection.
+        while (i.hasNext()) {
+            final SelectionKey sk = i.next();
+            i.remove();
+
+            if (!sk.isValid()) {
+                logger.trace("Selection Key is invalid: {}", sk);
+                final Link link = (Link)sk.attachment();
+                if (link != null) {
+                    link.terminated();
+                } else {
+                    closeConnection(sk);
+                }
+            } else if (sk.isReadable()) {
+                read(sk);
+            } else if (sk.isWritable()) {
+                write(sk);
+            } else if (sk.isAcceptable()) {
+                accept(sk);
+            } else if (sk.isConnectable()) {
+                connect(sk);
+            }
+        }
+
+        logger.trace("Keys Done Processing.");
+    }
+
     protected abstract void init() throws IOException;
 
     abstract void registerLink(InetSocketAddress saddr, Link link);
@@ -266,6 +309,7 @@ public abstract class NioConnection implements Callable<Boolean> {
                 final InetSocketAddress socketAddress = (InetSocketAddress)socket.getRemoteSocketAddress();
                 _factory.registerNewConnection(socketAddress);
                 _selector.wakeup();
+                final long handshakeStart = System.currentTimeMillis();
                 try {
                     final SSLEngine sslEngine = Link.initServerSSLEngine(caService, socketChannel.getRemoteAddress().toString());
                     sslEngine.setUseClientMode(false);
@@ -274,10 +318,13 @@ public abstract class NioConnection implements Callable<Boolean> {
                     if (!Link.doHandshake(socketChannel, sslEngine, getSslHandshakeTimeout())) {
                         throw new IOException("SSL handshake timed out with " + socketAddress);
                     }
+                    recordSslHandshake(System.currentTimeMillis() - handshakeStart);
                     logger.trace("SSL: Handshake done");
                     final Link link = new Link(socketAddress, nioConnection);
                     link.setSSLEngine(sslEngine);
-                    link.setKey(socketChannel.register(key.selector(), SelectionKey.OP_READ, link));
+                    final Selector linkSelector = selectorForNewLink(key.selector());
+                    link.setKey(socketChannel.register(linkSelector, SelectionKey.OP_READ, link));
+                    linkSelector.wakeup();
                     final Task task = _factory.create(Task.Type.CONNECT, link, null);
                     registerLink(socketAddress, link);
                     _executor.submit(task);
@@ -380,60 +427,64 @@ public abstract class NioConnection implements Callable<Boolean> {
 
         logger.trace("Todos Processing: {}", todos.size());
 
-        SelectionKey key;
         for (final ChangeRequest todo : todos) {
-            switch (todo.type) {
-            case ChangeRequest.CHANGEOPS:
-                try {
-                    key = (SelectionKey)todo.key;
-                    if (key != null && key.isValid()) {
-                        if (todo.att != null) {
-                            key.attach(todo.att);
-                            final Link link = (Link)todo.att;
-                            link.setKey(key);
-                        }
-                        key.interestOps(todo.ops);
-                    }
-                } catch (final CancelledKeyException e) {
-                    logger.debug("key has been cancelled");
-                }
-                break;
-            case ChangeRequest.REGISTER:
-                try {
-                    key = ((SocketChannel)todo.key).register(_selector, todo.ops, todo.att);
+            processTodo(todo, _selector);
+        }
+        logger.trace("Todos Done processing");
+    }
+
+    protected void processTodo(final ChangeRequest todo, final Selector selector) {
+        SelectionKey key;
+        switch (todo.type) {
+        case ChangeRequest.CHANGEOPS:
+            try {
+                key = (SelectionKey)todo.key;
+                if (key != null && key.isValid()) {
                     if (todo.att != null) {
+                        key.attach(todo.att);
                         final Link link = (Link)todo.att;
                         link.setKey(key);
                     }
-                } catch (final ClosedChannelException e) {
-                    logger.warn("Couldn't register socket: {}", todo.key);
-                    try {
-                        ((SocketChannel)todo.key).close();
-                    } catch (final IOException ignore) {
-                        logger.info("[ignored] socket channel");
-                    } finally {
-                        final Link link = (Link)todo.att;
-                        link.terminated();
-                    }
+                    key.interestOps(todo.ops);
                 }
-                break;
-            case ChangeRequest.CLOSE:
-                logger.trace("Trying to close {}", todo.key);
-                key = (SelectionKey)todo.key;
-                closeConnection(key);
-                if (key != null) {
-                    final Link link = (Link)key.attachment();
-                    if (link != null) {
-                        link.terminated();
-                    }
+            } catch (final CancelledKeyException e) {
+                logger.debug("key has been cancelled");
+            }
+            break;
+        case ChangeRequest.REGISTER:
+            try {
+                key = ((SocketChannel)todo.key).register(selector, todo.ops, todo.att);
+                if (todo.att != null) {
+                    final Link link = (Link)todo.att;
+                    link.setKey(key);
+                }
+            } catch (final ClosedChannelException e) {
+                logger.warn("Couldn't register socket: {}", todo.key);
+                try {
+                    ((SocketChannel)todo.key).close();
+                } catch (final IOException ignore) {
+                    logger.info("[ignored] socket channel");
+                } finally {
+                    final Link link = (Link)todo.att;
+                    link.terminated();
                 }
-                break;
-            default:
-                logger.warn("Shouldn't be here");
-                throw new RuntimeException("Shouldn't be here");
             }
+            break;
+        case ChangeRequest.CLOSE:
+            logger.trace("Trying to close {}", todo.key);
+            key = (SelectionKey)todo.key;
+            closeConnection(key);
+            if (key != null) {
+                final Link link = (Link)key.attachment();
+                if (link != null) {
+                    link.terminated();
+                }
+            }
+            break;
+        default:
+            logger.warn("Shouldn't be here");
+            throw new RuntimeException("Shouldn't be here");
         }
-        logger.trace("Todos Done processing");
     }
 
     protected void connect(final SelectionKey key) throws IOException {
@@ -543,19 +594,99 @@ public abstract class NioConnection implements Callable<Boolean> {
     }
 
     public void change(final int ops, final SelectionKey key, final Object att) {
-        final ChangeRequest todo = new ChangeRequest(key, ChangeRequest.CHANGEOPS, ops, att);
+        addChangeRequest(new ChangeRequest(key, ChangeRequest.CHANGEOPS, ops, att), key);
+    }
+
+    public void close(final SelectionKey key) {
+        addChangeRequest(new ChangeRequest(key, ChangeRequest.CLOSE, 0, null), key);
+    }
+
+    /**
+     * Queues the change on the selector that owns the key, so that the
+     * thread selecting on it picks the change up on its next wakeup.
+     */
+    private void addChangeRequest(final ChangeRequest todo, final SelectionKey key) {
+        final IoSelector ioSelector = key == null ? null : findIoSelector(key.selector());
+        if (ioSelector != null) {
+            ioSelector.todos.add(todo);
+            ioSelector.selector.wakeup();
+            return;
+        }
         synchronized (this) {
             _todos.add(todo);
         }
         _selector.wakeup();
     }
 
-    public void close(final SelectionKey key) {
-        final ChangeRequest todo = new ChangeRequest(key, ChangeRequest.CLOSE, 0, null);
+    private IoSelector findIoSelector(final Selector selector) {
+        for (final IoSelector ioSelector : ioSelectors) {
+            if (ioSelector.selector == selector) {
+                return ioSelector;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Picks the selector a newly accepted connection is registered with,
+     * round-robin over the I/O selectors when there are any.
+     */
+    protected Selector selectorForNewLink(final Selector acceptSelector) {
+        if (ioSelectors.isEmpty()) {
+            return acceptSelector;
+        }
+        return ioSelectors.get(Math.floorMod(nextIoSelector.getAndIncrement(), ioSelectors.size())).selector;
+    }
+
+    private void recordSslHandshake(final long millis) {
+        sslHandshakeCount.incrementAndGet();
+        sslHandshakeTotalMillis.addAndGet(millis);
+        sslHandshakeMaxMillis.accumulate(millis);
+    }
+
+    public long getSslHandshakeCount() {
+        return sslHandshakeCount.get();
+    }
+
+    public long getSslHandshakeAverageMillis() {
+        final long count = sslHandshakeCount.get();
+        return count == 0 ? 0 : sslHandshakeTotalMillis.get() / count;
+    }
+
+    public long getSslHandshakeMaxMillis() {
+        return sslHandshakeMaxMillis.get();
+    }
+
+    /**
+     * @return the number of tasks waiting for a worker thread.
+     */
+    public int getWorkerQueueSize() {
+        if (_executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor)_executor).getQueue().size();
+        }
+        return 0;
+    }
+
+    /**
+     * @return the number of selector change requests not yet applied.
+     */
+    public int getPendingChangeRequestsCount() {
+        int count;
         synchronized (this) {
-            _todos.add(todo);
+            count = _todos == null ? 0 : _todos.size();
         }
-        _selector.wakeup();
+        for (final IoSelector ioSelector : ioSelectors) {
+            count += ioSelector.todos.size();
+        }
+        return count;
+    }
+
+    public int getIoSelectorCount() {
+        return ioSelectorCount;
+    }
+
+    public void setIoSelectorCount(final int ioSelectorCount) {
+        this.ioSelectorCount = Math.max(ioSelectorCount, 0);
     }
 
     /* Release the resource used by the instance */
@@ -563,6 +694,7 @@ public abstract class NioConnection implements Callable<Boolean> {
         for (SocketChannel channel : socketChannels) {
             closeChannel(channel);
         }
+        closeIoSelectors();
         if (_selector != null) {
             _selector.close();
         }
@@ -594,6 +726,41 @@ public abstract class NioConnection implements Callable<Boolean> {
         }
     }
 
+    /**
+     * Event loop for one of the additional selectors. It only ever sees
+     * read and write readiness, accepts stay on the main selector.
+     */
+    protected class IoSelector implements Callable<Boolean> {
+        private final Selector selector;
+        private final Queue<ChangeRequest> todos = new ConcurrentLinkedQueue<>();
+
+        IoSelector(final Selector selector) {
+            this.selector = selector;
+        }
+
+        @Override
+        public Boolean call() {
+            while (_isRunning) {
+                try {
+                    selector.select(50);
+
+                    processSelectedKeys(selector);
+
+                    ChangeRequest todo;
+                    while ((todo = todos.poll()) != null) {
+                        processTodo(todo, selector);
+                    }
+                } catch (final ClosedSelectorException e) {
+                    logger.debug("I/O selector of {} has been closed", _name);
+                    break;
+                } catch (final IOException e) {
+                    logger.warn("Unexpected exception in I/O selector of {}", _name, e);
+                }
+            }
+            return true;
+        }
+    }
+
     public Integer getSslHandshakeTimeout() {
         return sslHandshakeTimeout;
     }
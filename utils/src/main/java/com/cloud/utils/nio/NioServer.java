@@ -45,6 +45,16 @@ public class NioServer extends NioConnection {
         links = new ConcurrentHashMap<>(1024);
     }
 
+    /**
+     * @param ioSelectorCount number of selectors, besides the accepting one,
+     *        that accepted connections are spread over for reads and writes.
+     */
+    public NioServer(final String name, final int port, final int workers, final HandlerFactory factory,
+             final CAService caService, final Integer sslHandShakeTimeout, final int ioSelectorCount) {
+        this(name, port, workers, factory, caService, sslHandShakeTimeout);
+        setIoSelectorCount(ioSelectorCount);
+    }
+
     public int getPort() {
         return serverSocket.socket().getLocalPort();
     }
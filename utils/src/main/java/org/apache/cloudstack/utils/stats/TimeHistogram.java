@@ -0,0 +1,58 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package org.apache.cloudstack.utils.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations into buckets growing by a factor of ten, from under a millisecond to ten seconds and over.
+ * Recording is lock free, so the histogram can be shared by all the threads timing the same operation.
+ */
+public class TimeHistogram {
+    private static final String[] BUCKETS = {"<1ms", "<10ms", "<100ms", "<1s", "<10s", ">=10s"};
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS.length];
+
+    public TimeHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        int bucket = 0;
+        for (long limit = TimeUnit.MILLISECONDS.toNanos(1); nanos >= limit && bucket < BUCKETS.length - 1; limit *= 10) {
+            bucket++;
+        }
+        counts[bucket].increment();
+    }
+
+    /**
+     * @return the number of durations recorded in each bucket, keyed by the label of the bucket, from the shortest.
+     */
+    public Map<String, Long> toMap() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKETS.length; i++) {
+            map.put(BUCKETS[i], counts[i].sum());
+        }
+        return map;
+    }
+}
@@ -0,0 +1,392 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package org.apache.cloudstack.utils.stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a bounded history of a fixed set of numeric metrics per entity.
+ * <p>
+ * Every entity owns one ring buffer per {@link Tier}, backed by primitive arrays, so the memory used per entity
+ * does not depend on how long the store has been running. The first tier usually keeps the raw samples, the
+ * following ones keep averages over buckets of {@link Tier#getResolution()} milliseconds and therefore cover a
+ * longer period with the same number of slots. Each tier must cover at least one bucket of the next one.
+ * <p>
+ * The store can be written to and read back from a stream, so that the history survives a restart.
+ */
+public class TimeSeriesStore {
+
+    private static final int SNAPSHOT_MAGIC = 0x43535453;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    public static final class Tier {
+        private final long resolution;
+        private final int capacity;
+
+        /**
+         * @param resolution the bucket size in milliseconds, 0 to keep every sample.
+         * @param capacity the number of samples or buckets kept.
+         */
+        public Tier(long resolution, int capacity) {
+            if (resolution < 0 || capacity <= 0) {
+                throw new IllegalArgumentException(String.format("Invalid tier with resolution %d and capacity %d.", resolution, capacity));
+            }
+            this.resolution = resolution;
+            this.capacity = capacity;
+        }
+
+        public long getResolution() {
+            return resolution;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+    }
+
+    public static final class Sample {
+        private final long timestamp;
+        private final int count;
+        private final float[] values;
+
+        private Sample(long timestamp, int count, float[] values) {
+            this.timestamp = timestamp;
+            this.count = count;
+            this.values = values;
+        }
+
+        /**
+         * @return the time of the sample, or the start of the bucket for downsampled tiers.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return the number of samples averaged into this one.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        public double getValue(int metric) {
+            return values[metric];
+        }
+    }
+
+    private final int metricCount;
+    private final Tier[] tiers;
+    private final Map<Long, Series> series = new ConcurrentHashMap<>();
+
+    public TimeSeriesStore(int metricCount, Tier... tiers) {
+        if (metricCount <= 0 || tiers.length == 0) {
+            throw new IllegalArgumentException("A time series store needs at least one metric and one tier.");
+        }
+        for (int i = 1; i < tiers.length; i++) {
+            if (tiers[i].getResolution() <= tiers[i - 1].getResolution()) {
+                throw new IllegalArgumentException("The tiers of a time series store must be ordered by increasing resolution.");
+            }
+        }
+        this.metricCount = metricCount;
+        this.tiers = tiers.clone();
+    }
+
+    public int getMetricCount() {
+        return metricCount;
+    }
+
+    /**
+     * Records the metrics of an entity. Samples older than the latest one recorded for the entity are ignored.
+     */
+    public void record(long id, long timestamp, double... values) {
+        if (values.length != metricCount) {
+            throw new IllegalArgumentException(String.format("Expected %d metric values but got %d.", metricCount, values.length));
+        }
+        series.computeIfAbsent(id, k -> new Series()).record(timestamp, values);
+    }
+
+    /**
+     * @return the most recent raw sample of the entity, or null if there is none.
+     */
+    public Sample getLatest(long id) {
+        Series entitySeries = series.get(id);
+        return entitySeries == null ? null : entitySeries.latest();
+    }
+
+    /**
+     * Returns the samples of an entity between two timestamps (both inclusive), oldest first. Each period is
+     * served by the finest tier that still covers it, so the samples never overlap.
+     */
+    public List<Sample> getSamples(long id, long from, long to) {
+        Series entitySeries = series.get(id);
+        return entitySeries == null ? new ArrayList<>() : entitySeries.samples(from, to);
+    }
+
+    public void remove(long id) {
+        series.remove(id);
+    }
+
+    /**
+     * Removes the entities that did not get a sample since the given timestamp.
+     * @return the number of entities removed.
+     */
+    public int removeIdle(long since) {
+        int removed = 0;
+        for (Iterator<Series> it = series.values().iterator(); it.hasNext();) {
+            if (it.next().lastTimestamp() < since) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        return series.size();
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeInt(metricCount);
+        out.writeInt(tiers.length);
+        for (Tier tier : tiers) {
+            out.writeLong(tier.getResolution());
+            out.writeInt(tier.getCapacity());
+        }
+        List<Map.Entry<Long, Series>> entries = new ArrayList<>(series.entrySet());
+        out.writeInt(entries.size());
+        for (Map.Entry<Long, Series> entry : entries) {
+            out.writeLong(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Loads a snapshot written by {@link #writeTo(OutputStream)}. Tiers are matched by resolution, so a snapshot
+     * taken with different capacities can still be loaded; the data of tiers that no longer exist is dropped.
+     */
+    public void readFrom(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+            throw new IOException("Not a time series snapshot or unsupported snapshot version.");
+        }
+        int snapshotMetricCount = in.readInt();
+        if (snapshotMetricCount != metricCount) {
+            throw new IOException(String.format("The snapshot has %d metrics, expected %d.", snapshotMetricCount, metricCount));
+        }
+        int[] tierMapping = new int[in.readInt()];
+        for (int i = 0; i < tierMapping.length; i++) {
+            long resolution = in.readLong();
+            in.readInt();
+            tierMapping[i] = -1;
+            for (int j = 0; j < tiers.length; j++) {
+                if (tiers[j].getResolution() == resolution) {
+                    tierMapping[i] = j;
+                }
+            }
+        }
+        int entities = in.readInt();
+        for (int i = 0; i < entities; i++) {
+            long id = in.readLong();
+            series.computeIfAbsent(id, k -> new Series()).readFrom(in, tierMapping);
+        }
+    }
+
+    private final class Ring {
+        private final long resolution;
+        private final long[] timestamps;
+        private final int[] counts;
+        private final float[] values;
+        private int next;
+        private int size;
+
+        private long bucket;
+        private int bucketCount;
+        private final double[] bucketSums;
+
+        private Ring(Tier tier) {
+            resolution = tier.getResolution();
+            timestamps = new long[tier.getCapacity()];
+            counts = new int[tier.getCapacity()];
+            values = new float[tier.getCapacity() * metricCount];
+            bucketSums = resolution > 0 ? new double[metricCount] : null;
+        }
+
+        private void offer(long timestamp, double[] sample) {
+            if (resolution == 0) {
+                append(timestamp, 1, sample, 1);
+                return;
+            }
+            long sampleBucket = timestamp - Math.floorMod(timestamp, resolution);
+            if (bucketCount > 0 && sampleBucket != bucket) {
+                append(bucket, bucketCount, bucketSums, bucketCount);
+                bucketCount = 0;
+            }
+            if (bucketCount == 0) {
+                bucket = sampleBucket;
+                Arrays.fill(bucketSums, 0);
+            }
+            for (int m = 0; m < metricCount; m++) {
+                bucketSums[m] += sample[m];
+            }
+            bucketCount++;
+        }
+
+        private void append(long timestamp, int count, double[] sample, int divisor) {
+            timestamps[next] = timestamp;
+            counts[next] = count;
+            int offset = next * metricCount;
+            for (int m = 0; m < metricCount; m++) {
+                values[offset + m] = (float)(sample[m] / divisor);
+            }
+            next = (next + 1) % timestamps.length;
+            size = Math.min(size + 1, timestamps.length);
+        }
+
+        /**
+         * @return the slot of the i-th oldest element.
+         */
+        private int slot(int i) {
+            return Math.floorMod(next - size + i, timestamps.length);
+        }
+
+        private Sample sample(int slot) {
+            float[] sample = new float[metricCount];
+            System.arraycopy(values, slot * metricCount, sample, 0, metricCount);
+            return new Sample(timestamps[slot], counts[slot], sample);
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                int slot = slot(i);
+                out.writeLong(timestamps[slot]);
+                out.writeInt(counts[slot]);
+                for (int m = 0; m < metricCount; m++) {
+                    out.writeFloat(values[slot * metricCount + m]);
+                }
+            }
+            out.writeLong(bucket);
+            out.writeInt(bucketCount);
+            for (int m = 0; m < metricCount; m++) {
+                out.writeDouble(bucketSums == null ? 0 : bucketSums[m]);
+            }
+        }
+    }
+
+    private final class Series {
+        private final Ring[] rings = new Ring[tiers.length];
+        private long lastTimestamp = Long.MIN_VALUE;
+
+        private Series() {
+            for (int i = 0; i < tiers.length; i++) {
+                rings[i] = new Ring(tiers[i]);
+            }
+        }
+
+        private synchronized void record(long timestamp, double[] values) {
+            if (timestamp < lastTimestamp) {
+                return;
+            }
+            lastTimestamp = timestamp;
+            for (Ring ring : rings) {
+                ring.offer(timestamp, values);
+            }
+        }
+
+        private synchronized long lastTimestamp() {
+            return lastTimestamp;
+        }
+
+        private synchronized Sample latest() {
+            Ring ring = rings[0];
+            return ring.size == 0 ? null : ring.sample(ring.slot(ring.size - 1));
+        }
+
+        private synchronized List<Sample> samples(long from, long to) {
+            List<Sample> result = new ArrayList<>();
+            long coveredFrom = Long.MAX_VALUE;
+            for (Ring ring : rings) {
+                if (ring.size == 0) {
+                    continue;
+                }
+                for (int i = 0; i < ring.size; i++) {
+                    int slot = ring.slot(i);
+                    long timestamp = ring.timestamps[slot];
+                    // skip the buckets overlapping with the period already served by a finer tier
+                    if (timestamp >= from && timestamp <= to && timestamp + ring.resolution <= coveredFrom) {
+                        result.add(ring.sample(slot));
+                    }
+                }
+                coveredFrom = Math.min(coveredFrom, ring.timestamps[ring.slot(0)]);
+            }
+            result.sort(Comparator.comparingLong(Sample::getTimestamp));
+            return result;
+        }
+
+        private synchronized void writeTo(DataOutputStream out) throws IOException {
+            out.writeLong(lastTimestamp);
+            for (Ring ring : rings) {
+                ring.writeTo(out);
+            }
+        }
+
+        private synchronized void readFrom(DataInputStream in, int[] tierMapping) throws IOException {
+            lastTimestamp = Math.max(lastTimestamp, in.readLong());
+            double[] sample = new double[metricCount];
+            for (int mapping : tierMapping) {
+                Ring ring = mapping < 0 ? null : rings[mapping];
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    long timestamp = in.readLong();
+                    int count = in.readInt();
+                    for (int m = 0; m < metricCount; m++) {
+                        sample[m] = in.readFloat();
+                    }
+                    if (ring != null) {
+                        ring.append(timestamp, count, sample, 1);
+                    }
+                }
+                long bucket = in.readLong();
+                int bucketCount = in.readInt();
+                for (int m = 0; m < metricCount; m++) {
+                    sample[m] = in.readDouble();
+                }
+                if (ring != null && ring.bucketSums != null) {
+                    ring.bucket = bucket;
+                    ring.bucketCount = bucketCount;
+                    System.arraycopy(sample, 0, ring.bucketSums, 0, metricCount);
+                }
+            }
+        }
+    }
+}
@@ -100,7 +100,7 @@ public class NioTest {
         testBytes = new byte[1000000];
         randomGenerator.nextBytes(testBytes);
 
-        server = new NioServer("NioTestServer", 0, 1, new NioTestServer(), null,  null);
+        server = createServer();
         try {
             server.start();
         } catch (final NioConnectionException e) {
@@ -118,6 +118,10 @@ public class NioTest {
         }
     }
 
+    protected NioServer createServer() {
+        return new NioServer("NioTestServer", 0, 1, new NioTestServer(), null,  null);
+    }
+
     @After
     public void tearDown() {
         stopClient();
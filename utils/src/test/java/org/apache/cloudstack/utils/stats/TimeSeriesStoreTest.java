@@ -0,0 +1,130 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package org.apache.cloudstack.utils.stats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimeSeriesStoreTest {
+
+    private TimeSeriesStore createStore() {
+        return new TimeSeriesStore(2, new TimeSeriesStore.Tier(0, 4), new TimeSeriesStore.Tier(100, 10));
+    }
+
+    @Test
+    public void getLatestTestReturnsTheLastRawSample() {
+        TimeSeriesStore store = createStore();
+        store.record(1L, 10, 1, 2);
+        store.record(1L, 20, 3, 4);
+
+        TimeSeriesStore.Sample latest = store.getLatest(1L);
+
+        Assert.assertEquals(20, latest.getTimestamp());
+        Assert.assertEquals(3, latest.getValue(0), 0);
+        Assert.assertEquals(4, latest.getValue(1), 0);
+        Assert.assertNull(store.getLatest(2L));
+    }
+
+    @Test
+    public void recordTestIgnoresSamplesOlderThanTheLatest() {
+        TimeSeriesStore store = createStore();
+        store.record(1L, 20, 1, 1);
+        store.record(1L, 10, 2, 2);
+
+        Assert.assertEquals(1, store.getSamples(1L, Long.MIN_VALUE, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void getSamplesTestServesOlderPeriodsFromTheDownsampledTier() {
+        TimeSeriesStore store = createStore();
+        for (long timestamp = 0; timestamp < 400; timestamp += 25) {
+            store.record(1L, timestamp, timestamp, 1);
+        }
+
+        List<TimeSeriesStore.Sample> samples = store.getSamples(1L, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        // raw samples 300, 325, 350 and 375 and the completed buckets 0, 100 and 200
+        Assert.assertEquals(7, samples.size());
+        Assert.assertEquals(0, samples.get(0).getTimestamp());
+        Assert.assertEquals(4, samples.get(0).getCount());
+        Assert.assertEquals(37.5, samples.get(0).getValue(0), 0);
+        Assert.assertEquals(200, samples.get(2).getTimestamp());
+        Assert.assertEquals(300, samples.get(3).getTimestamp());
+        Assert.assertEquals(1, samples.get(3).getCount());
+        Assert.assertEquals(375, samples.get(6).getTimestamp());
+    }
+
+    @Test
+    public void getSamplesTestFiltersByTimestamp() {
+        TimeSeriesStore store = createStore();
+        for (long timestamp = 0; timestamp < 400; timestamp += 25) {
+            store.record(1L, timestamp, timestamp, 1);
+        }
+
+        List<TimeSeriesStore.Sample> samples = store.getSamples(1L, 100, 325);
+
+        Assert.assertEquals(4, samples.size());
+        Assert.assertEquals(100, samples.get(0).getTimestamp());
+        Assert.assertEquals(325, samples.get(3).getTimestamp());
+    }
+
+    @Test
+    public void removeIdleTestRemovesEntitiesWithoutRecentSamples() {
+        TimeSeriesStore store = createStore();
+        store.record(1L, 10, 1, 1);
+        store.record(2L, 50, 1, 1);
+
+        Assert.assertEquals(1, store.removeIdle(20));
+        Assert.assertNull(store.getLatest(1L));
+        Assert.assertNotNull(store.getLatest(2L));
+    }
+
+    @Test
+    public void readFromTestRestoresASnapshot() throws IOException {
+        TimeSeriesStore store = createStore();
+        for (long timestamp = 0; timestamp < 400; timestamp += 25) {
+            store.record(1L, timestamp, timestamp, 1);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.writeTo(out);
+
+        TimeSeriesStore restored = new TimeSeriesStore(2, new TimeSeriesStore.Tier(0, 1), new TimeSeriesStore.Tier(100, 10));
+        restored.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        restored.record(1L, 400, 400, 1);
+
+        List<TimeSeriesStore.Sample> samples = restored.getSamples(1L, Long.MIN_VALUE, Long.MAX_VALUE);
+        // the raw sample 400 and the buckets 0, 100, 200 and 300, the last one completed after the restore
+        Assert.assertEquals(5, samples.size());
+        Assert.assertEquals(300, samples.get(3).getTimestamp());
+        Assert.assertEquals(337.5, samples.get(3).getValue(0), 0);
+        Assert.assertEquals(400, samples.get(4).getTimestamp());
+    }
+
+    @Test(expected = IOException.class)
+    public void readFromTestRejectsADifferentNumberOfMetrics() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        createStore().writeTo(out);
+
+        new TimeSeriesStore(3, new TimeSeriesStore.Tier(0, 4)).readFrom(new ByteArrayInputStream(out.toByteArray()));
+    }
+}